@@ -43,6 +43,10 @@ public class AlgorithmTest {
         System.out.println("\nMost efficient algorithm (by steps): " + stepWinner);
         System.out.println("Most efficient algorithm (by moves): " + moveWinner);
         
+        // One run of one building can't tell LOOK and MYLIFT apart, so compare them
+        // over many random seeds with confidence intervals
+        testLookVersusMyLift();
+        
         System.out.println("\nAll algorithm tests completed!");
     }
     
@@ -162,6 +166,34 @@ public class AlgorithmTest {
         }
     }
     
+    /**
+     * Compare LOOK and MYLIFT waits over 30 seeds of random arrivals
+     */
+    private static void testLookVersusMyLift() {
+        try {
+            System.out.println("\nComparing LOOK and MYLIFT over 30 seeds...");
+            MonteCarloRunner lookRunner = new MonteCarloRunner("test_input.txt", "Look", 1);
+            MonteCarloRunner myLiftRunner = new MonteCarloRunner("test_input.txt", "MyLift", 1);
+            lookRunner.setSteps(300);
+            myLiftRunner.setSteps(300);
+            
+            MonteCarloRunner.Summary look = lookRunner.run(1, 30);
+            MonteCarloRunner.Summary myLift = myLiftRunner.run(1, 30);
+            System.out.println(look);
+            System.out.println(myLift);
+            
+            double[] diff = MonteCarloRunner.difference(look.getMeanWait(), myLift.getMeanWait());
+            System.out.printf("Mean wait LOOK - MYLIFT: %.2f +/- %.2f steps (%s)%n", diff[0], diff[1],
+                    Math.abs(diff[0]) > diff[1] ? "significant" : "not significant");
+            
+            if (look.getSeeds() != 30 || myLift.getSeeds() != 30) {
+                throw new RuntimeException("Expected 30 seeds for each algorithm");
+            }
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
     /**
      * Check if all requests have been processed in a building
      */
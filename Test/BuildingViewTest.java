@@ -0,0 +1,129 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Tests for the scrolling building view, drawn off screen
+ */
+public class BuildingViewTest {
+    static final int FLOORS = 1000;
+    static final int LIFTS = 64;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        testDrawsVisibleFloors();
+        testFrameTime();
+
+        System.out.println("All building view tests passed!");
+    }
+
+    // scrolled to the bottom, the lifts and queues there are drawn where they should be
+    static void testDrawsVisibleFloors() {
+        System.out.println("Testing building view drawing...");
+        BuildingSnapshot snapshot = new BuildingSnapshot(FLOORS, LIFTS);
+        snapshot.liftFloor[0] = 2;
+        snapshot.liftFloor[1] = 900;
+        snapshot.queueLength[1] = 4;
+
+        JViewport viewport = new JViewport();
+        BuildingView view = show(snapshot, viewport);
+        BufferedImage image = paint(view, viewport);
+
+        // lift 0 at floor 2: the middle of its car, in view coordinates
+        int x = BuildingView.MARGIN + BuildingView.LABEL_WIDTH + 8;
+        int y = BuildingView.MARGIN + (FLOORS - 2 - 1) * 50 + 25 - viewport.getViewPosition().y;
+        check(image.getRGB(x, y) == BuildingView.LIFT_COLORS[0].getRGB(), "lift 0 should be drawn at floor 2");
+
+        // lift 1 is far above, so its shaft is empty down here
+        int shaft1 = x + BuildingView.LIFT_WIDTH + BuildingView.SHAFT_GAP;
+        check(image.getRGB(shaft1, y) == Color.LIGHT_GRAY.getRGB(), "lift 1 should not be drawn at floor 2");
+
+        // scrolled right to the queues, floor 1 has one and floor 0 doesn't
+        viewport.setViewPosition(new Point(view.getWidth() - viewport.getWidth(), viewport.getViewPosition().y));
+        image = paint(view, viewport);
+        int queueX = BuildingView.MARGIN + BuildingView.LABEL_WIDTH
+                + LIFTS * (BuildingView.LIFT_WIDTH + BuildingView.SHAFT_GAP) + BuildingView.SHAFT_GAP + 8
+                - viewport.getViewPosition().x;
+        int floor1 = BuildingView.MARGIN + (FLOORS - 1 - 1) * 50 + 25 - viewport.getViewPosition().y;
+        int floor0 = floor1 + 50;
+        check(image.getRGB(queueX, floor1) == Color.RED.getRGB(), "floor 1 queue should be drawn");
+        check(image.getRGB(queueX, floor0) == Color.WHITE.getRGB(), "floor 0 should have no queue");
+        System.out.println("Drawing test passed!");
+    }
+
+    // 1000 floors and 64 lifts, all moving every frame, should fit well inside 60 FPS
+    static void testFrameTime() {
+        System.out.println("Testing building view frame time...");
+        BuildingSnapshot snapshot = new BuildingSnapshot(FLOORS, LIFTS);
+        JViewport viewport = new JViewport();
+        BuildingView view = show(snapshot, viewport);
+        SnapshotAnimator animator = new SnapshotAnimator();
+        animator.update(snapshot, 10, 0);
+
+        BufferedImage image = new BufferedImage(viewport.getWidth(), viewport.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int frames = 300;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            BuildingSnapshot next = snapshot.copy();
+            for (int lift = 0; lift < LIFTS; lift++) {
+                next.liftFloor[lift] = (lift + frame / 5) % 12;
+            }
+            next.queueLength[frame % FLOORS]++;
+            long now = frame * 16_000_000L;
+            animator.update(next, 10, now);
+            view.update(next, animator, now);
+            paintInto(image, view, viewport);
+            snapshot = next;
+        }
+        double millisPerFrame = (System.nanoTime() - start) / 1e6 / frames;
+        check(millisPerFrame < 16, "frames took " + millisPerFrame + " ms");
+        System.out.printf("Frame time test passed! %.2f ms a frame%n", millisPerFrame);
+    }
+
+    // a view of the snapshot in an 800x600 viewport, scrolled to the ground floor
+    private static BuildingView show(BuildingSnapshot snapshot, JViewport viewport) {
+        BuildingView view = new BuildingView(50);
+        viewport.setView(view);
+        viewport.setSize(800, 600);
+        SnapshotAnimator animator = new SnapshotAnimator();
+        animator.update(snapshot, 10, 0);
+        view.update(snapshot, animator, 0);
+        view.setSize(view.getPreferredSize());
+        settle();
+        viewport.setViewPosition(new Point(0, view.getHeight() - viewport.getHeight()));
+        return view;
+    }
+
+    // let the scroll update() queued on the Event Dispatch Thread run, so it can't move the view later
+    private static void settle() {
+        try {
+            SwingUtilities.invokeAndWait(() -> { });
+        } catch (InterruptedException | InvocationTargetException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static BufferedImage paint(BuildingView view, JViewport viewport) {
+        BufferedImage image = new BufferedImage(viewport.getWidth(), viewport.getHeight(), BufferedImage.TYPE_INT_RGB);
+        paintInto(image, view, viewport);
+        return image;
+    }
+
+    // paint just the part the viewport shows, the way Swing would
+    private static void paintInto(BufferedImage image, BuildingView view, JViewport viewport) {
+        Graphics2D g = image.createGraphics();
+        Point position = viewport.getViewPosition();
+        g.translate(-position.x, -position.y);
+        g.setClip(position.x, position.y, image.getWidth(), image.getHeight());
+        view.paint(g);
+        g.dispose();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * Tests for saving and restoring simulation state
+ */
+public class CheckpointTest {
+
+    public static void main(String[] args) {
+        testMultiLiftResume();
+        testMyLiftResume();
+        testAsyncSave();
+        testWrongBuilding();
+        testOldVersion();
+
+        System.out.println("All Checkpoint tests passed!");
+    }
+
+    // a restored run should carry on exactly like the original
+    static void testMultiLiftResume() {
+        System.out.println("Testing MultiLiftLook checkpoint and resume...");
+        try {
+            MultiLiftLook original = newMultiLift(3);
+            for (int i = 0; i < 40; i++) {
+                original.NextStep();
+            }
+            // someone in lift 0 pressed the button for the top floor
+            int top = original.building.getFloors().GetFloors().size() - 1;
+            original.building.getLift(0).addStop(top);
+            byte[] checkpoint = Checkpoint.capture(original);
+
+            MultiLiftLook resumed = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 3),
+                    SimClock.simulated(1000));
+            Checkpoint.restore(checkpoint, resumed);
+            if (!Arrays.equals(checkpoint, Checkpoint.capture(resumed))) {
+                throw new RuntimeException("Restored state does not match the checkpoint");
+            }
+            if (!resumed.building.getLift(0).hasStop(top)) {
+                throw new RuntimeException("Lift 0 lost its stop");
+            }
+            String metrics = original.building.metrics().snapshot().toString();
+            if (!metrics.equals(resumed.building.metrics().snapshot().toString())) {
+                throw new RuntimeException("Metrics not restored: " + metrics + " vs "
+                        + resumed.building.metrics().snapshot());
+            }
+
+            for (int i = 0; i < 60; i++) {
+                original.NextStep();
+                resumed.NextStep();
+                String expected = BuildingSnapshot.capture(original).toString();
+                String actual = BuildingSnapshot.capture(resumed).toString();
+                if (!expected.equals(actual)) {
+                    throw new RuntimeException("Runs differ after resume: " + expected + " vs " + actual);
+                }
+            }
+            if (!Arrays.equals(Checkpoint.capture(original), Checkpoint.capture(resumed))) {
+                throw new RuntimeException("Full state differs after 60 steps");
+            }
+            // reversals and trips depend on what each lift was doing before the checkpoint
+            metrics = original.building.metrics().snapshot().toString();
+            if (!metrics.equals(resumed.building.metrics().snapshot().toString())) {
+                throw new RuntimeException("Metrics differ after resume: " + metrics + " vs "
+                        + resumed.building.metrics().snapshot());
+            }
+
+            System.out.println("MultiLiftLook checkpoint test passed! (" + checkpoint.length + " bytes)");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // MyLift keeps wait times between steps, those need to come back too
+    static void testMyLiftResume() {
+        System.out.println("Testing MyLift checkpoint and resume...");
+        try {
+            MyLift original = new MyLift(Building.FromFile("test_input.txt"), SimClock.simulated(2000));
+            original.setPassengerGenerator(new PassengerGenerator(7, 0.5));
+            for (int i = 0; i < 25; i++) {
+                original.NextStep();
+            }
+            byte[] checkpoint = Checkpoint.capture(original);
+
+            MyLift resumed = new MyLift(Building.FromFile("test_input.txt"), SimClock.simulated(2000));
+            Checkpoint.restore(checkpoint, resumed);
+            if (resumed.getStepCount() != 25 || resumed.getClock().now() != original.getClock().now()) {
+                throw new RuntimeException("Step count or clock not restored");
+            }
+
+            for (int i = 0; i < 50; i++) {
+                original.NextStep();
+                resumed.NextStep();
+            }
+            if (!Arrays.equals(Checkpoint.capture(original), Checkpoint.capture(resumed))) {
+                throw new RuntimeException("MyLift runs differ after resume");
+            }
+
+            System.out.println("MyLift checkpoint test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // checkpoints written in the background should load back the same
+    static void testAsyncSave() {
+        System.out.println("Testing background checkpoint writing...");
+        File file = new File("checkpoint_test.chk");
+        try (Checkpointer checkpointer = new Checkpointer()) {
+            MultiLiftLook algo = newMultiLift(2);
+            for (int i = 0; i < 10; i++) {
+                algo.NextStep();
+            }
+            byte[] expected = Checkpoint.capture(algo);
+            checkpointer.checkpoint(algo, file.toPath()).get();
+
+            // keep going while nothing is being written, the file should not change
+            algo.NextStep();
+            byte[] saved = Checkpoint.load(file.toPath());
+            if (!Arrays.equals(expected, saved)) {
+                throw new RuntimeException("Saved checkpoint does not match captured state");
+            }
+
+            System.out.println("Background checkpoint test passed!");
+        } catch (IOException | InvalidBuildingConfiguration | InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+
+    // restoring into a different building should fail without changing anything
+    static void testWrongBuilding() {
+        System.out.println("Testing checkpoint with the wrong building...");
+        try {
+            byte[] checkpoint = Checkpoint.capture(newMultiLift(3));
+            MultiLiftLook other = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 2),
+                    SimClock.simulated(1000));
+            try {
+                Checkpoint.restore(checkpoint, other);
+                throw new RuntimeException("Restored a 3 lift checkpoint into 2 lifts");
+            } catch (IOException expected) {
+                // good
+            }
+
+            checkpoint[checkpoint.length / 2] ^= 1;
+            try {
+                Checkpoint.restore(checkpoint, newMultiLift(3));
+                throw new RuntimeException("Restored a damaged checkpoint");
+            } catch (IOException expected) {
+                // good
+            }
+
+            System.out.println("Wrong building test passed!");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // checkpoints from before the layout last changed are refused, not misread
+    static void testOldVersion() {
+        System.out.println("Testing checkpoints from older versions...");
+        try {
+            byte[] checkpoint = Checkpoint.capture(newMultiLift(2));
+            for (int version = 1; version < Checkpoint.VERSION; version++) {
+                ByteBuffer old = ByteBuffer.wrap(checkpoint.clone());
+                old.putShort(4, (short) version);
+                // sign it again so it is the version that gets it refused, not the checksum
+                CRC32 crc = new CRC32();
+                crc.update(old.array(), 0, old.capacity() - 4);
+                old.putInt(old.capacity() - 4, (int) crc.getValue());
+                try {
+                    Checkpoint.restore(old.array(), newMultiLift(2));
+                    throw new RuntimeException("Restored a version " + version + " checkpoint");
+                } catch (IOException expected) {
+                    if (!expected.getMessage().contains("version " + version)) {
+                        throw new RuntimeException("Refused for the wrong reason: " + expected.getMessage());
+                    }
+                }
+            }
+
+            System.out.println("Old version test passed!");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static MultiLiftLook newMultiLift(int lifts) throws IOException {
+        MultiLiftLook algo = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", lifts),
+                SimClock.simulated(1000));
+        algo.setPassengerGenerator(new PassengerGenerator(42, 0.8));
+        return algo;
+    }
+}
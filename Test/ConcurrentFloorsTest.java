@@ -0,0 +1,197 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Tests for floor queues shared between threads
+ */
+public class ConcurrentFloorsTest {
+
+    public static void main(String[] args) {
+        try {
+            testRingKeepsOrder();
+            testBoardingTakesEveryoneOnce();
+            testSnapshotIsConsistent();
+            testLiftsSharingAFloor();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println("All concurrent floor tests passed!");
+    }
+
+    // the queue still comes out in order as it grows and wraps round
+    static void testRingKeepsOrder() {
+        System.out.println("Testing queue order while growing and wrapping...");
+        Queue queue = new Queue();
+        int added = 0;
+        int taken = 0;
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < round % 37; i++) {
+                queue.enqueue(added++);
+            }
+            for (int value : queue.dequeue(round % 23)) {
+                check(value == taken++, "expected " + (taken - 1) + " but got " + value);
+            }
+            check(queue.size() == added - taken, "size should be " + (added - taken) + " not " + queue.size());
+        }
+        while (!queue.isEmpty()) {
+            check(queue.dequeue() == taken++, "wrong value at the end");
+        }
+        check(queue.getTotalProcessed() == added, "every item should be counted as processed");
+        System.out.println("Order test passed! " + added + " items");
+    }
+
+    // lifts boarding while producers add: everyone is taken exactly once
+    static void testBoardingTakesEveryoneOnce() throws InterruptedException {
+        System.out.println("Testing boarding while producers add...");
+        int floors = 8;
+        int producers = 16;
+        int perProducer = 20_000;
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(floors, 8, new HashMap<>(), 1);
+        AtomicIntegerArray taken = new AtomicIntegerArray(producers * perProducer);
+        AtomicBoolean producing = new AtomicBoolean(true);
+
+        Thread[] producerThreads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            producerThreads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    // the destination is a unique id for the passenger
+                    building.GetFloor((producer + i) % floors).AddFloorRequest(producer * perProducer + i);
+                }
+            });
+        }
+        Thread[] lifts = new Thread[8];
+        for (int l = 0; l < lifts.length; l++) {
+            int lift = l;
+            lifts[l] = new Thread(() -> {
+                int floor = lift;
+                while (producing.get() || !building.GetFloor(floor).GetFloorRequests().isEmpty()) {
+                    for (int id : building.GetFloor(floor).GetFloorRequests().dequeue(1 + floor)) {
+                        taken.incrementAndGet(id);
+                    }
+                    floor = (floor + 1) % floors;
+                }
+            });
+        }
+        for (Thread thread : producerThreads) {
+            thread.start();
+        }
+        for (Thread thread : lifts) {
+            thread.start();
+        }
+        for (Thread thread : producerThreads) {
+            thread.join();
+        }
+        producing.set(false);
+        for (Thread thread : lifts) {
+            thread.join();
+        }
+
+        // anyone left over is still waiting, and counts as taken once
+        for (int floor = 0; floor < floors; floor++) {
+            for (int id : building.GetFloor(floor).GetFloorRequests().dequeue(Integer.MAX_VALUE)) {
+                taken.incrementAndGet(id);
+            }
+        }
+        for (int id = 0; id < taken.length(); id++) {
+            check(taken.get(id) == 1, "passenger " + id + " was taken " + taken.get(id) + " times");
+        }
+        System.out.println("Boarding test passed! " + taken.length() + " passengers");
+    }
+
+    // a bulk snapshot never sees one floor's change without an earlier change on another
+    static void testSnapshotIsConsistent() throws InterruptedException {
+        System.out.println("Testing queue length snapshots are consistent...");
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(4, 8, new HashMap<>(), 1);
+        FloorsState floors = building.getFloors();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        // always adds to floor 0 before floor 3, so floor 3 can never be longer
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                floors.GetFloors().get(0).AddFloorRequest(1);
+                floors.GetFloors().get(3).AddFloorRequest(1);
+                if (floors.GetFloors().get(0).GetFloorRequests().size() > 100_000) {
+                    floors.GetFloors().get(3).GetFloorRequests().dequeue(50_000);
+                    floors.GetFloors().get(0).GetFloorRequests().dequeue(50_000);
+                }
+            }
+        });
+        writer.start();
+
+        int[] lengths = new int[4];
+        long deadline = System.nanoTime() + 500_000_000L;
+        int snapshots = 0;
+        try {
+            while (System.nanoTime() < deadline) {
+                floors.queueLengths(lengths);
+                check(lengths[3] <= lengths[0], "floor 3 has " + lengths[3] + " but floor 0 only " + lengths[0]);
+                snapshots++;
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        System.out.println("Snapshot test passed! " + snapshots + " snapshots");
+    }
+
+    // several lifts stopping at the same floor on different threads never overfill or lose anyone
+    static void testLiftsSharingAFloor() throws InterruptedException {
+        System.out.println("Testing lifts boarding on the same floor...");
+        int lifts = 6;
+        int capacity = 5;
+        int people = 20_000;
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(3, capacity, new HashMap<>(), lifts);
+        for (int lift = 0; lift < lifts; lift++) {
+            building.getLift(lift).setCurrentFloor(0);
+        }
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < people; i++) {
+                building.AddPassenger(0, 2);
+            }
+        });
+        int[] delivered = new int[lifts];
+        Thread[] threads = new Thread[lifts];
+        for (int l = 0; l < lifts; l++) {
+            int lift = l;
+            threads[l] = new Thread(() -> {
+                LiftState state = building.getLift(lift);
+                while (producer.isAlive() || !building.GetFloor(0).GetFloorRequests().isEmpty()) {
+                    building.StopLift(lift);
+                    check(state.Occupancy() <= capacity, "lift " + lift + " has " + state.Occupancy() + " people");
+                    // deliver them and come back
+                    delivered[lift] += state.Occupancy();
+                    state.RemoveAllRequestsForFloor(2);
+                }
+            });
+        }
+        producer.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        producer.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        for (int count : delivered) {
+            total += count;
+        }
+        SimMetrics.Snapshot metrics = building.metrics().snapshot();
+        check(total == people, "everyone should be picked up once, got " + total);
+        check(metrics.getBoardings() == people, "boardings should be counted once each, got " + metrics.getBoardings());
+        check(metrics.getArrivals() == people, "arrivals should all be counted, got " + metrics.getArrivals());
+        System.out.println("Shared floor test passed!");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException("Test failed: " + message);
+        }
+    }
+}
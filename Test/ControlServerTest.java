@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+
+/**
+ * Tests for the NIO control server
+ */
+public class ControlServerTest {
+
+    public static void main(String[] args) {
+        PrintStream console = System.out;
+        try {
+            // the algorithm prints every move from the server thread
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            testHallCallPickedUp(console);
+            testRefusedCalls(console);
+            testCarCall(console);
+            testNoAllocationPerCall(console);
+            testBadMessage(console);
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            System.setOut(console);
+        }
+
+        System.out.println("All control server tests passed!");
+    }
+
+    // a hall call is answered with a lift straight away, and the passenger is picked up by later ticks
+    static void testHallCallPickedUp(PrintStream out) throws IOException, InterruptedException {
+        out.println("Testing a hall call is answered and picked up...");
+        MultiLiftBuilding building = building(20, 4);
+        try (ControlServer server = ControlServer.start(new MultiLiftLook(building), 0, 5);
+             Panel panel = new Panel(server.getPort())) {
+            // every lift's status comes first
+            for (int lift = 0; lift < 4; lift++) {
+                panel.read();
+                check(panel.type() == ControlServer.LIFT_STATUS && panel.lift() == lift, "should hear about lift " + lift);
+            }
+
+            panel.send(ControlServer.HALL_CALL, -1, 5, 12, 42);
+            panel.readUntil(ControlServer.ASSIGNMENT);
+            check(panel.id() == 42, "the answer should echo the id, got " + panel.id());
+            check(panel.lift() >= 0 && panel.lift() < 4, "should be given a lift, got " + panel.lift());
+            check(panel.floor() == 5, "the answer should say the floor");
+
+            // the lift reports moving as it goes to fetch them
+            panel.readUntil(ControlServer.LIFT_STATUS);
+            check(panel.id() > 0, "pushes should carry the step");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (building.metrics().snapshot().getBoardings() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            check(building.metrics().snapshot().getBoardings() == 1, "the passenger should be picked up");
+        }
+        out.println("Hall call test passed!");
+    }
+
+    // calls that make no sense get lift -1
+    static void testRefusedCalls(PrintStream out) throws IOException {
+        out.println("Testing refused calls...");
+        MultiLiftBuilding building = building(10, 2);
+        try (ControlServer server = ControlServer.start(new MultiLiftLook(building), 0, 1000);
+             Panel panel = new Panel(server.getPort())) {
+            panel.send(ControlServer.HALL_CALL, -1, 10, 3, 1);
+            panel.send(ControlServer.HALL_CALL, -1, 4, 4, 2);
+            panel.send(ControlServer.CAR_CALL, 2, 3, 0, 3);
+            panel.send(ControlServer.CAR_CALL, 0, -1, 0, 4);
+            for (int id = 1; id <= 4; id++) {
+                panel.readUntil(ControlServer.ASSIGNMENT);
+                check(panel.id() == id && panel.lift() == -1, "call " + id + " should be refused");
+            }
+            check(building.metrics().snapshot().getArrivals() == 0, "nobody should have been added");
+        }
+        out.println("Refused calls test passed!");
+    }
+
+    // a car call makes the lift stop at that floor, without adding anyone to it
+    static void testCarCall(PrintStream out) throws IOException, InterruptedException {
+        out.println("Testing car calls...");
+        MultiLiftBuilding building = building(10, 2);
+        try (ControlServer server = ControlServer.start(new MultiLiftLook(building), 0, 5);
+             Panel panel = new Panel(server.getPort())) {
+            int[] floors = {7, 7, 3};
+            for (int id = 0; id < floors.length; id++) {
+                panel.send(ControlServer.CAR_CALL, 1, floors[id], 0, id);
+                panel.readUntil(ControlServer.ASSIGNMENT);
+                check(panel.id() == id && panel.lift() == 1, "car call " + id + " got lift " + panel.lift());
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (building.metrics().snapshot().getStops() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+        // the server thread has stopped, so the lift can be looked at here
+        LiftState lift = building.getLift(1);
+        check(building.metrics().snapshot().getStops() == 2, "lift 1 should stop once at each floor, stopped "
+                + building.metrics().snapshot().getStops() + " times");
+        check(!lift.hasStop(7) && !lift.hasStop(3), "the stops should be cleared");
+        check(lift.Occupancy() == 0, "nobody should be added to the lift");
+        out.println("Car call test passed!");
+    }
+
+    // once warmed up, answering calls allocates nothing on the server thread, and is quick
+    static void testNoAllocationPerCall(PrintStream out) throws IOException {
+        out.println("Testing calls don't allocate...");
+        MultiLiftBuilding building = building(50, 8);
+        int calls = 40_000;
+        long allocated;
+        // a tick long enough that only calls are handled while we measure
+        ControlServer server = ControlServer.start(new MultiLiftLook(building), 0, 3_600_000);
+        try (server; Panel panel = new Panel(server.getPort())) {
+            for (int lift = 0; lift < 8; lift++) {
+                panel.read();
+            }
+            // grow every floor's queue to 2048 first (1200 waiting), so it doesn't grow while measuring
+            sendCalls(panel, 60_000);
+
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long id = server.getThread().getId();
+            long before = threads.getThreadAllocatedBytes(id);
+            sendCalls(panel, calls);
+            allocated = threads.getThreadAllocatedBytes(id) - before;
+        }
+
+        check(allocated < calls, allocated + " bytes allocated for " + calls + " calls");
+        // read once the server thread has stopped
+        LatencyHistogram answers = server.getAnswerTimes();
+        check(answers.getValueAtPercentile(50) < 1_000_000, "answers should take well under 1 ms, median "
+                + answers.getValueAtPercentile(50) + " ns");
+        out.println(String.format("No allocation test passed! %d bytes for %d calls, answered in %.1f us median, %.1f us 99th",
+                allocated, calls, answers.getValueAtPercentile(50) / 1e3, answers.getValueAtPercentile(99) / 1e3));
+    }
+
+    // a panel sending something that isn't a message is disconnected
+    static void testBadMessage(PrintStream out) throws IOException {
+        out.println("Testing a bad message...");
+        try (ControlServer server = ControlServer.start(new MultiLiftLook(building(10, 1)), 0, 1000);
+             Panel panel = new Panel(server.getPort())) {
+            panel.read();
+            panel.send((byte) 99, 0, 0, 0, 0);
+            check(!panel.tryRead(), "the connection should be closed");
+        }
+        out.println("Bad message test passed!");
+    }
+
+    // hall calls in batches of 100, reading every answer
+    private static void sendCalls(Panel panel, int calls) throws IOException {
+        for (int sent = 0; sent < calls; sent += 100) {
+            for (int i = 0; i < 100; i++) {
+                int floor = (sent + i) % 50;
+                panel.send(ControlServer.HALL_CALL, -1, floor, (floor + 7) % 50, sent + i);
+            }
+            for (int i = 0; i < 100; i++) {
+                panel.readUntil(ControlServer.ASSIGNMENT);
+                check(panel.id() == sent + i && panel.lift() >= 0, "call " + (sent + i) + " got lift " + panel.lift());
+            }
+        }
+    }
+
+    private static MultiLiftBuilding building(int floors, int lifts) {
+        return MultiLiftBuilding.FromRequests(floors, 8, new HashMap<>(), lifts);
+    }
+
+    // a blocking client, one message at a time
+    private static final class Panel implements AutoCloseable {
+        private final SocketChannel channel;
+        private final ByteBuffer message = ByteBuffer.allocate(ControlServer.MESSAGE_SIZE);
+        private final ByteBuffer outgoing = ByteBuffer.allocate(ControlServer.MESSAGE_SIZE);
+
+        Panel(int port) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+
+        void send(byte type, int lift, int floor, int other, int id) throws IOException {
+            outgoing.clear();
+            ControlServer.putMessage(outgoing, type, false, lift, floor, other, id);
+            outgoing.flip();
+            while (outgoing.hasRemaining()) {
+                channel.write(outgoing);
+            }
+        }
+
+        void read() throws IOException {
+            check(tryRead(), "the server closed the connection");
+        }
+
+        boolean tryRead() throws IOException {
+            message.clear();
+            while (message.hasRemaining()) {
+                if (channel.read(message) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // skip messages until one of this type
+        void readUntil(byte type) throws IOException {
+            do {
+                read();
+            } while (type() != type);
+        }
+
+        byte type() {
+            return message.get(0);
+        }
+
+        int lift() {
+            return message.getShort(2);
+        }
+
+        int floor() {
+            return message.getShort(4);
+        }
+
+        int id() {
+            return message.getInt(8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException("Test failed: " + message);
+        }
+    }
+}
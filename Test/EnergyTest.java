@@ -0,0 +1,104 @@
+import java.io.IOException;
+
+/**
+ * Tests for the energy model and meter
+ */
+public class EnergyTest {
+
+    public static void main(String[] args) {
+        testCounterweightModel();
+        testAlgorithmsUseEnergy();
+        testStandby();
+
+        System.out.println("All Energy tests passed!");
+    }
+
+    // the counterweight should make a full car going up and an empty car going down the expensive moves
+    static void testCounterweightModel() {
+        System.out.println("Testing counterweight energy model...");
+        CounterweightEnergyModel model = new CounterweightEnergyModel();
+        double emptyUp = model.moveJoules(0, 8, true);
+        double emptyDown = model.moveJoules(0, 8, false);
+        double fullUp = model.moveJoules(8, 8, true);
+        double fullDown = model.moveJoules(8, 8, false);
+
+        check(fullUp > emptyUp, "a full car should cost more to lift than an empty one");
+        check(emptyDown > emptyUp, "an empty car is lighter than the counterweight so going down costs more");
+        check(fullUp > fullDown, "a full car is heavier than the counterweight so going up costs more");
+        check(emptyUp > 0, "without regen a move never gives energy back");
+
+        CounterweightEnergyModel regen = model.withRegen(0.6);
+        check(regen.moveJoules(8, 8, false) < fullDown, "regen should recover energy going down full");
+        check(regen.moveJoules(8, 8, true) == fullUp, "regen should not change motoring moves");
+        check(model.startStopJoules(8, 8) > model.startStopJoules(0, 8), "heavier cars cost more to start");
+        System.out.println("Counterweight model test passed!");
+    }
+
+    // every algorithm should end up with energy in its lifts and a cost per trip
+    static void testAlgorithmsUseEnergy() {
+        System.out.println("Testing energy for each algorithm...");
+        try {
+            Building scanBuilding = Building.FromFile("test_input.txt");
+            runSteps(new Scan(scanBuilding), 30);
+            Building lookBuilding = Building.FromFile("test_input.txt");
+            runSteps(new Look(lookBuilding), 30);
+            Building myLiftBuilding = Building.FromFile("test_input.txt");
+            runSteps(new MyLift(myLiftBuilding), 30);
+
+            for (Building building : new Building[] { scanBuilding, lookBuilding, myLiftBuilding }) {
+                EnergyMeter meter = building.energy();
+                check(meter.getTotalJoules() > 0, "single lift used no energy");
+                check(meter.getTotalJoules() == building.getLift().getEnergyUsed(), "total should be the lift's");
+                check(meter.getPassengerTrips() > 0 && meter.getJoulesPerTrip() > 0, "no energy per trip");
+            }
+
+            MultiLiftBuilding multi = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook look = new MultiLiftLook(multi);
+            for (int i = 0; i < 30; i++) {
+                look.NextStep();
+            }
+            double sum = 0;
+            for (LiftState lift : multi.getAllLifts()) {
+                sum += lift.getEnergyUsed();
+            }
+            check(Math.abs(sum - multi.energy().getTotalJoules()) < 1e-6, "lift totals should add up");
+            check(multi.energy().getTotalKWh() > 0, "multi lift used no energy");
+            System.out.println("Algorithm energy test passed! LOOK " + lookBuilding.energy()
+                    + ", MultiLiftLook " + multi.energy());
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // once everyone is delivered the lift just sits there using standby power
+    static void testStandby() {
+        System.out.println("Testing standby energy...");
+        try {
+            Building building = Building.FromFile("test_input.txt");
+            Look look = new Look(building);
+            runSteps(look, 40);
+            check(building.metrics().snapshot().getWaitingNow() == 0, "everyone should be delivered by now");
+
+            double before = building.energy().getTotalJoules();
+            runSteps(look, 10);
+            double standby = building.energy().getModel().standbyJoules();
+            double used = building.energy().getTotalJoules() - before;
+            check(Math.abs(used - 10 * standby) < 1e-6, "idle lift should use standby only, used " + used);
+            System.out.println("Standby energy test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void runSteps(Algorithm algorithm, int steps) throws InvalidBuildingConfiguration {
+        for (int i = 0; i < steps; i++) {
+            algorithm.NextStep();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
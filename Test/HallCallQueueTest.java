@@ -0,0 +1,192 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for the lock-free hall call queue
+ */
+public class HallCallQueueTest {
+
+    public static void main(String[] args) {
+        try {
+            testOrderAndWrapping();
+            testShed();
+            testManyProducers(HallCallQueue.Overflow.BLOCK);
+            testManyProducers(HallCallQueue.Overflow.SHED);
+            testBlockWaitsForRoom();
+            testDrainedEachStep();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println("All hall call queue tests passed!");
+    }
+
+    // calls come out in the order they went in, many times round the ring
+    static void testOrderAndWrapping() {
+        System.out.println("Testing hall call order and wrapping...");
+        HallCallQueue queue = new HallCallQueue(5, HallCallQueue.Overflow.SHED);
+        check(queue.getCapacity() == 8, "capacity should round up to 8, got " + queue.getCapacity());
+
+        int[] next = {0};
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 1 + round % 8; i++) {
+                int call = round * 10 + i;
+                check(queue.add(call, -call), "should have room");
+            }
+            check(queue.size() == 1 + round % 8, "size should count the calls");
+            int expected = round * 10;
+            int taken = queue.drain((floor, destination) -> {
+                check(floor == expected + next[0] && destination == -floor, "wrong call " + floor + "," + destination);
+                next[0]++;
+            }, Integer.MAX_VALUE);
+            check(taken == 1 + round % 8, "should drain everything, got " + taken);
+            check(queue.isEmpty(), "should be empty after draining");
+            next[0] = 0;
+        }
+
+        // drain stops at max
+        for (int i = 0; i < 6; i++) {
+            queue.add(i, i);
+        }
+        check(queue.drain((floor, destination) -> {}, 4) == 4, "should stop at max");
+        check(queue.size() == 2, "two should be left");
+        System.out.println("Order and wrapping test passed!");
+    }
+
+    // a full SHED queue drops calls and counts them
+    static void testShed() {
+        System.out.println("Testing shedding when full...");
+        HallCallQueue queue = new HallCallQueue(4, HallCallQueue.Overflow.SHED);
+        for (int i = 0; i < 4; i++) {
+            check(queue.add(i, 0), "should have room for " + i);
+        }
+        check(!queue.add(4, 0), "fifth call should be shed");
+        check(!queue.add(5, 0), "sixth call should be shed");
+        check(queue.getShed() == 2, "two calls shed, got " + queue.getShed());
+
+        queue.drain((floor, destination) -> {}, 1);
+        check(queue.add(6, 0), "should have room again after draining");
+        System.out.println("Shed test passed!");
+    }
+
+    // every call from every producer arrives exactly once, in each producer's order
+    static void testManyProducers(HallCallQueue.Overflow overflow) throws InterruptedException {
+        System.out.println("Testing many producers with " + overflow + "...");
+        int producers = 8;
+        int calls = 200_000;
+        HallCallQueue queue = new HallCallQueue(1024, overflow);
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < calls; i++) {
+                    queue.add(producer, i);
+                }
+            });
+            threads[p].start();
+        }
+
+        // the producer is the floor and the call number the destination
+        int[] last = new int[producers];
+        long[] received = new long[producers];
+        java.util.Arrays.fill(last, -1);
+        boolean[] ordered = {true};
+        HallCallQueue.Sink sink = (floor, destination) -> {
+            if (destination <= last[floor]) {
+                ordered[0] = false;
+            }
+            last[floor] = destination;
+            received[floor]++;
+        };
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            if (queue.drain(sink, 256) == 0) {
+                // let a producer that was stopped part way through a call finish it
+                Thread.yield();
+            }
+        }
+        queue.drain(sink, Integer.MAX_VALUE);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        check(ordered[0], "each producer's calls should arrive in order");
+        long total = 0;
+        for (int p = 0; p < producers; p++) {
+            total += received[p];
+            if (overflow == HallCallQueue.Overflow.BLOCK) {
+                check(received[p] == calls, "producer " + p + " should get all " + calls + " calls through, got " + received[p]);
+            }
+        }
+        check(total + queue.getShed() == (long) producers * calls,
+                "every call should be received or shed: " + total + " + " + queue.getShed());
+        check(queue.isEmpty(), "should be empty at the end");
+        System.out.println(String.format("Many producers test passed! %d received, %d shed, %.1f million calls/s",
+                total, queue.getShed(), producers * calls / seconds / 1e6));
+    }
+
+    // a BLOCK producer waits while full, and gives up when the queue is closed
+    static void testBlockWaitsForRoom() throws InterruptedException {
+        System.out.println("Testing backpressure...");
+        HallCallQueue queue = new HallCallQueue(2, HallCallQueue.Overflow.BLOCK);
+        queue.add(0, 0);
+        queue.add(1, 1);
+
+        AtomicBoolean added = new AtomicBoolean();
+        Thread producer = new Thread(() -> added.set(queue.add(2, 2)));
+        producer.start();
+        Thread.sleep(50);
+        check(producer.isAlive(), "producer should wait while the queue is full");
+        queue.drain((floor, destination) -> {}, 1);
+        producer.join(5000);
+        check(!producer.isAlive() && added.get(), "producer should add once there is room");
+
+        producer = new Thread(() -> added.set(queue.add(3, 3)));
+        producer.start();
+        Thread.sleep(50);
+        queue.close();
+        producer.join(5000);
+        check(!producer.isAlive() && !added.get(), "closing should shed a waiting call");
+        System.out.println("Backpressure test passed!");
+    }
+
+    // a multi lift algorithm adds queued calls to the floors at the start of each step
+    static void testDrainedEachStep() {
+        System.out.println("Testing hall calls are drained each step...");
+        PrintStream console = System.out;
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromRequests(10, 8, new HashMap<>(), 2);
+            MultiLiftLook look = new MultiLiftLook(building, SimClock.simulated(1000));
+            HallCallQueue queue = new HallCallQueue(64, HallCallQueue.Overflow.SHED);
+            look.setHallCalls(queue);
+            queue.add(7, 0);
+            queue.add(3, 9);
+            queue.add(3, 1);
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            look.NextStep();
+            System.setOut(console);
+            check(queue.isEmpty(), "calls should be taken at the start of the step");
+            check(building.metrics().snapshot().getArrivals() == 3, "three passengers should arrive");
+            check(building.GetFloor(7).GetFloorRequests().size() + building.getLift(0).Occupancy()
+                    + building.getLift(1).Occupancy() + building.GetFloor(3).GetFloorRequests().size() == 3,
+                    "the passengers should be on their floors or in a lift");
+        } catch (InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            System.setOut(console);
+        }
+        System.out.println("Drained each step test passed!");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException("Test failed: " + message);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for the flight recorder events
+ */
+public class JfrTest {
+
+    public static void main(String[] args) {
+        testEventsRecorded();
+        testEventsDisabled();
+
+        System.out.println("All JFR tests passed!");
+    }
+
+    // a recording of a multi lift run should have every kind of event in it
+    static void testEventsRecorded() {
+        System.out.println("Testing JFR events are recorded...");
+        Map<String, Integer> counts = record(true);
+        check(counts.getOrDefault("elevator.Step", 0) == 20, "expected 20 step events, got " + counts);
+        check(counts.getOrDefault("elevator.QueueSample", 0) == 20, "expected 20 queue samples, got " + counts);
+        check(counts.getOrDefault("elevator.Assignment", 0) > 0, "no assignment events");
+        check(counts.getOrDefault("elevator.LiftStop", 0) > 0, "no lift stop events");
+        System.out.println("JFR events test passed! " + counts);
+    }
+
+    // events turned off in the settings should not appear
+    static void testEventsDisabled() {
+        System.out.println("Testing JFR events can be turned off...");
+        Map<String, Integer> counts = record(false);
+        check(!counts.containsKey("elevator.LiftStop"), "lift stops were recorded while disabled");
+        check(counts.getOrDefault("elevator.Step", 0) == 20, "steps should still be recorded");
+        System.out.println("JFR disabled events test passed!");
+    }
+
+    // runs 20 steps while recording and counts the elevator events
+    private static Map<String, Integer> record(boolean liftStops) {
+        File file = new File("jfr_test.jfr");
+        Map<String, Integer> counts = new HashMap<>();
+        try (Recording recording = new Recording()) {
+            recording.enable("elevator.Step");
+            recording.enable("elevator.Assignment");
+            recording.enable("elevator.QueueSample");
+            if (liftStops) {
+                recording.enable("elevator.LiftStop");
+            } else {
+                recording.disable("elevator.LiftStop");
+            }
+            recording.start();
+
+            MultiLiftLook algo = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 3));
+            for (int i = 0; i < 20; i++) {
+                algo.NextStep();
+            }
+
+            recording.stop();
+            recording.dump(file.toPath());
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                String name = event.getEventType().getName();
+                if (name.startsWith("elevator.")) {
+                    counts.merge(name, 1, Integer::sum);
+                }
+            }
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+        return counts;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.IOException;
+
+/**
+ * Tests for passenger journey tracking and the latency histogram
+ */
+public class JourneyTest {
+
+    public static void main(String[] args) {
+        testHistogramSmallValues();
+        testHistogramPrecision();
+        testHistogramMerge();
+        testTrackSingleLift();
+        testTrackMultiLift();
+
+        System.out.println("All Journey tests passed!");
+    }
+
+    // small values get a bucket each so percentiles are exact
+    static void testHistogramSmallValues() {
+        System.out.println("Testing histogram with small values...");
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        check(histogram.getCount() == 100, "count should be 100");
+        check(histogram.getValueAtPercentile(50) == 50, "p50 should be 50 but was " + histogram.getValueAtPercentile(50));
+        check(histogram.getValueAtPercentile(99) == 99, "p99 should be 99");
+        check(histogram.getValueAtPercentile(100) == 100, "p100 should be the max");
+        check(histogram.getMin() == 1 && histogram.getMax() == 100, "min/max wrong");
+        check(Math.abs(histogram.getMean() - 50.5) < 1e-9, "mean should be 50.5");
+        System.out.println("Small value histogram test passed!");
+    }
+
+    // large values are within the promised relative error and the size never changes
+    static void testHistogramPrecision() {
+        System.out.println("Testing histogram precision...");
+        LatencyHistogram histogram = new LatencyHistogram();
+        long value = 1;
+        for (int i = 0; i < 60; i++) {
+            int index = histogram.indexOf(value);
+            long reported = histogram.highestValueAt(index);
+            check(reported >= value, "bucket top " + reported + " below value " + value);
+            check(reported - value <= value / 64, "value " + value + " reported as " + reported);
+            value = value * 2 + 7;
+        }
+        histogram.record(Long.MAX_VALUE);
+        check(histogram.getValueAtPercentile(100) == Long.MAX_VALUE, "max value not kept");
+        System.out.println("Histogram precision test passed!");
+    }
+
+    static void testHistogramMerge() {
+        System.out.println("Testing histogram merging...");
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        LatencyHistogram both = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            long value = (i * 7919L) % 50000;
+            (i % 2 == 0 ? a : b).record(value);
+            both.record(value);
+        }
+        a.add(b);
+        check(a.getCount() == both.getCount(), "merged count wrong");
+        check(a.getValueAtPercentile(99) == both.getValueAtPercentile(99), "merged p99 wrong");
+        check(a.getMax() == both.getMax(), "merged max wrong");
+        System.out.println("Histogram merge test passed!");
+    }
+
+    // everyone in the file is waiting at step 0, LOOK delivers them when it reaches their floor
+    static void testTrackSingleLift() {
+        System.out.println("Testing journey tracking with LOOK...");
+        try {
+            Building building = Building.FromFile("test_input.txt");
+            int people = countWaiting(building.getFloors());
+            Look look = new Look(building);
+            JourneyTracker tracker = JourneyTracker.attach(look);
+
+            for (int i = 0; i < 100 && tracker.getWaiting() > 0; i++) {
+                look.NextStep();
+            }
+            check(tracker.getWaiting() == 0, "people still waiting");
+            check(tracker.getWaitTimes().getCount() == people,
+                    "expected " + people + " waits, got " + tracker.getWaitTimes().getCount());
+            check(tracker.getJourneyTimes().getCount() == people, "everyone should have been delivered");
+            check(tracker.getRideTimes().getMax() == 0, "LOOK delivers on pick up");
+            System.out.println("Single lift journey test passed! " + tracker.getWaitTimes());
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // with real boarding every passenger ends up waiting, riding or delivered
+    static void testTrackMultiLift() {
+        System.out.println("Testing journey tracking with MultiLiftLook...");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            int people = countWaiting(building.getFloors());
+            MultiLiftLook algo = new MultiLiftLook(building, SimClock.simulated(1000));
+            algo.setPassengerGenerator(new PassengerGenerator(3, 0.6));
+            JourneyTracker tracker = JourneyTracker.attach(algo);
+
+            int[] arrivals = new int[1];
+            building.events().addListener(new SimulationListener() {
+                @Override
+                public void passengerArrived(int floor, int destination) {
+                    arrivals[0]++;
+                }
+            });
+            for (int i = 0; i < 200; i++) {
+                algo.NextStep();
+            }
+            int arrived = people + arrivals[0];
+
+            int riding = 0;
+            for (LiftState lift : building.getAllLifts()) {
+                riding += lift.Occupancy();
+            }
+            check(tracker.getRiding() == riding, "tracker has " + tracker.getRiding() + " riding, lifts have " + riding);
+            check(tracker.getWaiting() == countWaiting(building.getFloors()), "waiting count differs from floors");
+            long delivered = tracker.getJourneyTimes().getCount();
+            check(delivered + riding + tracker.getWaiting() == arrived, "passengers went missing");
+            check(tracker.getWaitTimes().getCount() == delivered + riding, "every boarding should have a wait");
+            check(delivered > 0 && tracker.getRideTimes().getMax() > 0, "some rides should take time");
+            System.out.println("Multi lift journey test passed! " + tracker);
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int countWaiting(FloorsState floors) {
+        int total = 0;
+        for (FloorState floor : floors.GetFloors()) {
+            total += floor.GetFloorRequests().size();
+        }
+        return total;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
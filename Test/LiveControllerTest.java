@@ -0,0 +1,235 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Tests for the real-time controller with a thread per lift
+ */
+public class LiveControllerTest {
+
+    public static void main(String[] args) {
+        try {
+            testDeliversEveryone();
+            testFullLifts();
+            testManyLifts();
+            testVirtualThreads();
+            testStartedWithPassengers();
+            testClose();
+            testSimulatedTiming();
+            testSimulatedRepeats();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println("All live controller tests passed!");
+    }
+
+    // random calls from every floor all end up delivered
+    static void testDeliversEveryone() throws InterruptedException {
+        System.out.println("Testing live controller delivers every call...");
+        try (LiveController controller = new LiveController(building(20, 6, 4), 1000, 2000, 1000)) {
+            Random random = new Random(1);
+            for (int i = 0; i < 300; i++) {
+                call(controller, random, 20);
+            }
+            check(controller.awaitIdle(20_000), "everyone should be delivered");
+
+            SimMetrics.Snapshot metrics = controller.metrics();
+            check(metrics.getArrivals() == 300, "300 arrivals, got " + metrics.getArrivals());
+            check(metrics.getBoardings() == 300, "300 boardings, got " + metrics.getBoardings());
+            check(metrics.getAlightings() == 300, "300 alightings, got " + metrics.getAlightings());
+            System.out.println("Deliver everyone test passed! " + metrics.getStops() + " stops, "
+                    + metrics.getFloorsTravelled() + " floors travelled");
+        }
+    }
+
+    // a crowd bigger than a lift is left behind and picked up later
+    static void testFullLifts() throws InterruptedException {
+        System.out.println("Testing live controller with full lifts...");
+        try (LiveController controller = new LiveController(building(10, 2, 2), 1000, 2000, 1000)) {
+            for (int i = 0; i < 20; i++) {
+                controller.call(0, 9);
+                controller.call(9, i % 9);
+            }
+            check(controller.awaitIdle(20_000), "the crowds should all be delivered");
+            check(controller.metrics().getAlightings() == 40,
+                    "40 alightings, got " + controller.metrics().getAlightings());
+            System.out.println("Full lifts test passed!");
+        }
+    }
+
+    // lots of lifts, each with its own thread, with calls coming from another thread
+    static void testManyLifts() throws InterruptedException {
+        System.out.println("Testing live controller with many lifts...");
+        int lifts = 500;
+        try (LiveController controller = new LiveController(building(100, 8, lifts), 1000, 2000, 1000)) {
+            Thread caller = new Thread(() -> {
+                Random random = new Random(2);
+                for (int i = 0; i < 5000; i++) {
+                    call(controller, random, 100);
+                }
+            });
+            caller.start();
+            caller.join();
+            check(controller.awaitIdle(30_000), "everyone should be delivered");
+            check(controller.metrics().getAlightings() == 5000,
+                    "5000 alightings, got " + controller.metrics().getAlightings());
+            System.out.println("Many lifts test passed! " + lifts + " lifts on "
+                    + (controller.usesVirtualThreads() ? "virtual" : "platform") + " threads");
+        }
+    }
+
+    // on Java 21 and later thousands of lifts shouldn't need thousands of platform threads
+    static void testVirtualThreads() throws InterruptedException {
+        System.out.println("Testing live controller on virtual threads...");
+        if (LiveController.virtualThreadFactory() == null) {
+            // Java 17 gives each lift a platform thread, which testManyLifts covers
+            System.out.println("Virtual threads test skipped: this JVM has no virtual threads");
+            return;
+        }
+        int lifts = 5000;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int before = threads.getThreadCount();
+        try (LiveController controller = new LiveController(building(200, 8, lifts), 1000, 2000, 1000)) {
+            check(controller.usesVirtualThreads(), "controller should use virtual threads");
+            Random random = new Random(4);
+            for (int i = 0; i < 20_000; i++) {
+                call(controller, random, 200);
+            }
+            // getThreadCount() only counts platform threads, so this is the carriers and little else
+            int platform = threads.getThreadCount() - before;
+            check(platform < 2 * Runtime.getRuntime().availableProcessors() + 64,
+                    lifts + " lifts shouldn't need " + platform + " more platform threads");
+            check(controller.awaitIdle(60_000), "everyone should be delivered");
+            check(controller.metrics().getAlightings() == 20_000,
+                    "20000 alightings, got " + controller.metrics().getAlightings());
+            System.out.println("Virtual threads test passed! " + lifts + " lifts on " + platform
+                    + " more platform threads");
+        }
+    }
+
+    // a building that already had arrivals before the controller started still goes idle
+    static void testStartedWithPassengers() throws InterruptedException {
+        System.out.println("Testing live controller on a building with arrivals...");
+        MultiLiftBuilding building = building(10, 4, 2);
+        building.AddPassenger(2, 7);
+        building.AddPassenger(8, 0);
+        try (LiveController controller = new LiveController(building, 1000, 2000, 1000)) {
+            controller.call(5, 1);
+            check(controller.awaitIdle(10_000), "everyone should be delivered and the controller idle");
+            SimMetrics.Snapshot metrics = controller.metrics();
+            check(metrics.getArrivals() == 3, "3 arrivals, got " + metrics.getArrivals());
+            check(metrics.getAlightings() == 3, "3 alightings, got " + metrics.getAlightings());
+            check(metrics.getWaitingNow() == 0, "nobody should be waiting");
+            System.out.println("Started with passengers test passed!");
+        }
+    }
+
+    // closing stops the lifts and refuses new calls
+    static void testClose() {
+        System.out.println("Testing live controller close...");
+        LiveController controller = new LiveController(building(10, 4, 3), 1000, 1000, 1);
+        controller.call(0, 9);
+        controller.close();
+
+        boolean refused = false;
+        try {
+            controller.call(1, 2);
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        check(refused, "calls after close should be refused");
+
+        boolean badFloor = false;
+        try (LiveController other = new LiveController(building(10, 4, 1), 1000, 1000, 1000)) {
+            other.call(3, 10);
+        } catch (IllegalArgumentException e) {
+            badFloor = true;
+        }
+        check(badFloor, "calls to missing floors should be refused");
+        System.out.println("Close test passed!");
+    }
+
+    // on a simulated clock the rider gets out exactly when the travel and door times add up to
+    static void testSimulatedTiming() throws InterruptedException {
+        System.out.println("Testing live controller on a simulated clock...");
+        try (LiveController controller = new LiveController(building(10, 4, 1), 1000, 2000, SimClock.simulated(0))) {
+            controller.call(3, 5);
+            // up three floors, doors at 3, up two more, doors at 5
+            controller.advance(8999);
+            check(controller.metrics().getBoardings() == 1, "the rider should be aboard");
+            check(controller.metrics().getAlightings() == 0, "the rider shouldn't be out before 9000 ms");
+            controller.advance(1);
+            check(controller.metrics().getAlightings() == 1, "the rider should be out at 9000 ms");
+            check(controller.getClock().now() == 9000, "clock should read 9000, got " + controller.getClock().now());
+            check(controller.isIdle(), "controller should be idle");
+
+            controller.call(5, 0);
+            check(controller.runUntilIdle(60_000), "the second rider should be delivered");
+            // doors at 5, down five floors, doors at 0
+            check(controller.getClock().now() == 18_000, "should finish at 18000 ms, got " + controller.getClock().now());
+        }
+
+        boolean refused = false;
+        try (LiveController controller = new LiveController(building(10, 4, 1), 1000, 2000, 1000)) {
+            controller.advance(1000);
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        check(refused, "a controller on the wall clock can't be advanced");
+        System.out.println("Simulated clock timing test passed!");
+    }
+
+    // two runs with the same calls on a simulated clock come out the same, second by second
+    static void testSimulatedRepeats() throws InterruptedException {
+        System.out.println("Testing live controller repeats on a simulated clock...");
+        String first = simulatedRun();
+        String second = simulatedRun();
+        check(first.equals(second), "two simulated runs should match");
+        System.out.println("Simulated repeat test passed!");
+    }
+
+    // state of a busy building after every simulated second
+    private static String simulatedRun() throws InterruptedException {
+        StringBuilder log = new StringBuilder();
+        MultiLiftBuilding building = building(20, 6, 4);
+        try (LiveController controller = new LiveController(building, 1000, 2000, SimClock.simulated(0))) {
+            Random random = new Random(3);
+            for (int second = 0; second < 200; second++) {
+                if (second < 150) {
+                    for (int i = random.nextInt(4); i > 0; i--) {
+                        call(controller, random, 20);
+                    }
+                }
+                controller.advance(1000);
+                SimMetrics.Snapshot metrics = controller.metrics();
+                log.append(metrics.getBoardings()).append(' ').append(metrics.getAlightings()).append(' ')
+                        .append(metrics.getStops()).append(' ').append(metrics.getFloorsTravelled());
+                for (int lift = 0; lift < building.getNumLifts(); lift++) {
+                    log.append(' ').append(building.getLift(lift).getCurrentFloor());
+                }
+                log.append('\n');
+            }
+            check(controller.runUntilIdle(600_000), "everyone should be delivered");
+        }
+        return log.toString();
+    }
+
+    private static MultiLiftBuilding building(int floors, int capacity, int lifts) {
+        return MultiLiftBuilding.FromRequests(floors, capacity, new HashMap<>(), lifts);
+    }
+
+    // a call from a random floor to a different random floor
+    private static void call(LiveController controller, Random random, int floors) {
+        int floor = random.nextInt(floors);
+        int destination = random.nextInt(floors - 1);
+        controller.call(floor, destination >= floor ? destination + 1 : destination);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException("Test failed: " + message);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for the Prometheus metrics endpoint
+ */
+public class MetricsServerTest {
+
+    public static void main(String[] args) {
+        testHistogramCountAtOrBelow();
+        testScrape();
+        testOnlyGet();
+        testLiveController();
+
+        System.out.println("All Metrics Server tests passed!");
+    }
+
+    static void testHistogramCountAtOrBelow() {
+        System.out.println("Testing histogram counts at or below a value...");
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        check(histogram.getCountAtOrBelow(0) == 0, "nothing is at or below 0");
+        check(histogram.getCountAtOrBelow(10) == 10, "10 values are at or below 10");
+        check(histogram.getCountAtOrBelow(100) == 100, "everything is at or below the max");
+        check(histogram.getCountAtOrBelow(1000) == 100, "everything is below 1000");
+
+        histogram.record(100_000);
+        long count = histogram.getCountAtOrBelow(99_000);
+        check(count == 100, "a bucket above the value shouldn't count, got " + count);
+        System.out.println("Count at or below test passed!");
+    }
+
+    // the page reflects the simulation after a publish
+    static void testScrape() {
+        System.out.println("Testing metrics scrape...");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 2);
+            MultiLiftLook algo = new MultiLiftLook(building, SimClock.simulated(1000));
+            algo.setPassengerGenerator(new PassengerGenerator(11, 0.4));
+            try (MetricsServer server = MetricsServer.start(algo, 0)) {
+                String before = fetch(server.getPort());
+                check(before.contains("elevator_steps_total 0\n"), "no steps should have run yet");
+
+                // quiet, like main() runs it
+                algo.setVerbose(false);
+                PrintStream console = System.out;
+                ByteArrayOutputStream printed = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(printed));
+                try {
+                    for (int i = 0; i < 50; i++) {
+                        algo.NextStep();
+                    }
+                } finally {
+                    System.setOut(console);
+                }
+                check(printed.size() == 0, "a quiet algorithm shouldn't print: " + printed);
+                server.publish();
+                String page = fetch(server.getPort());
+
+                check(page.contains("elevator_steps_total 50\n"), "should report 50 steps");
+                check(page.contains("# TYPE elevator_wait_steps histogram"), "wait histogram missing");
+                check(page.contains("elevator_wait_steps_bucket{le=\"+Inf\"}"), "+Inf bucket missing");
+                check(page.contains("elevator_lift_floor{lift=\"1\"} "
+                        + building.getAllLifts()[1].getCurrentFloor() + "\n"), "lift 1 floor wrong");
+                int floors = building.getFloors().GetFloors().size();
+                check(page.contains("elevator_floor_waiting{floor=\"" + (floors - 1) + "\"}"), "top floor missing");
+                long boardings = building.metrics().snapshot().getBoardings();
+                check(page.contains("elevator_boardings_total " + boardings + "\n"), "boardings wrong");
+
+                // buckets never go down
+                long last = 0;
+                for (String line : page.split("\n")) {
+                    if (line.startsWith("elevator_wait_steps_bucket")) {
+                        long count = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+                        check(count >= last, "buckets should be cumulative: " + line);
+                        last = count;
+                    }
+                }
+                check(last > 0, "some waits should have been recorded");
+            }
+            check(!building.events().hasListeners(), "closing should stop the server and its journey tracker listening");
+            System.out.println("Scrape test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void testOnlyGet() {
+        System.out.println("Testing other methods are refused...");
+        try {
+            Building building = Building.FromFile("test_input.txt");
+            try (MetricsServer server = MetricsServer.start(new Look(building), 0)) {
+                HttpURLConnection connection = (HttpURLConnection) new URL(
+                        "http://localhost:" + server.getPort() + "/metrics").openConnection();
+                connection.setRequestMethod("DELETE");
+                check(connection.getResponseCode() == 405, "DELETE should be refused");
+                connection.disconnect();
+                System.out.println("Method test passed!");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // a LiveController has no steps, so the page is kept up to date by the server's own thread
+    static void testLiveController() {
+        System.out.println("Testing metrics scrape of a live controller...");
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(12, 6, new java.util.HashMap<>(), 3);
+        try (LiveController controller = new LiveController(building, 1000, 2000, 1000);
+             MetricsServer server = MetricsServer.start(controller, 0, 10)) {
+            check(fetch(server.getPort()).contains("elevator_boardings_total 0\n"), "nobody should have boarded yet");
+
+            for (int i = 0; i < 30; i++) {
+                // 1 to 11 floors on, so never the floor they're on
+                controller.call(i % 12, (i % 12 + 1 + i % 11) % 12);
+            }
+            check(controller.awaitIdle(20_000), "everyone should be delivered");
+
+            // nothing calls publish() here, the page has to catch up on its own
+            long deadline = System.currentTimeMillis() + 5000;
+            String page = fetch(server.getPort());
+            while (!page.contains("elevator_boardings_total 30\n") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                page = fetch(server.getPort());
+            }
+            check(page.contains("elevator_boardings_total 30\n"), "should report 30 boardings:\n" + page);
+            check(page.contains("elevator_arrivals_total 30\n"), "should report 30 arrivals");
+            check(page.contains("elevator_lift_floor{lift=\"2\"} "), "lift 2 missing");
+            check(!page.contains("elevator_steps_total"), "a live controller has no steps");
+            check(!page.contains("elevator_wait_steps"), "a live controller has no wait histogram");
+            System.out.println("Live controller scrape test passed!");
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String fetch(int port) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + port + "/metrics").openConnection();
+        try {
+            check(connection.getResponseCode() == 200, "scrape failed: " + connection.getResponseCode());
+            check(connection.getContentType().startsWith("text/plain"), "wrong content type");
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                in.transferTo(out);
+                return out.toString(StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.IOException;
+
+/**
+ * Tests for the simulation metrics
+ */
+public class MetricsTest {
+
+    public static void main(String[] args) {
+        testMultiLiftCounts();
+        testSingleLiftCounts();
+        testSnapshotPlus();
+
+        System.out.println("All Metrics tests passed!");
+    }
+
+    // the counters should agree with the events the building fires
+    static void testMultiLiftCounts() {
+        System.out.println("Testing metrics against events for MultiLiftLook...");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook algo = new MultiLiftLook(building, SimClock.simulated(1000));
+            algo.setPassengerGenerator(new PassengerGenerator(11, 0.7));
+            EventCounter events = new EventCounter();
+            building.events().addListener(events);
+
+            for (int i = 0; i < 150; i++) {
+                algo.NextStep();
+            }
+            SimMetrics.Snapshot metrics = building.metrics().snapshot();
+
+            check(metrics.getSteps() == 150, "steps should be 150 but was " + metrics.getSteps());
+            check(metrics.getStops() == events.stops, "stops " + metrics.getStops() + " vs " + events.stops);
+            check(metrics.getFloorsTravelled() == events.floors, "floors travelled differs");
+            check(metrics.getBoardings() == events.boarded, "boardings differ");
+            check(metrics.getAlightings() == events.alighted, "alightings differ");
+            check(metrics.getArrivals() == events.arrived, "arrivals differ");
+            check(metrics.getAssignments() == events.assigned, "assignments differ");
+            check(metrics.getWaitingNow() == metrics.getArrivals() + 16 - metrics.getBoardings(),
+                    "waiting gauge should be everyone who arrived minus everyone who boarded");
+            check(metrics.getTrips() <= metrics.getFloorsTravelled(), "more trips than floors");
+            check(metrics.getEmptyTrips() <= metrics.getTrips(), "more empty trips than trips");
+            check(metrics.getMeanOccupancy() > 0, "lifts were never occupied");
+            System.out.println("Multi lift metrics test passed! " + metrics);
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // LOOK turns round at the ends of the requests so it should reverse
+    static void testSingleLiftCounts() {
+        System.out.println("Testing metrics for LOOK...");
+        try {
+            Building building = Building.FromFile("test_input.txt");
+            Look look = new Look(building);
+            for (int i = 0; i < 40; i++) {
+                look.NextStep();
+            }
+            SimMetrics.Snapshot metrics = building.metrics().snapshot();
+            check(metrics.getBoardings() == 16, "everyone should have been picked up");
+            check(metrics.getWaitingNow() == 0, "nobody should be waiting");
+            check(metrics.getFloorsTravelled() > 0 && metrics.getReversals() > 0, "LOOK should move and turn");
+            check(metrics.getMeanWaiting() > 0, "people waited at the start");
+            System.out.println("Single lift metrics test passed! " + metrics);
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void testSnapshotPlus() {
+        System.out.println("Testing adding snapshots...");
+        try {
+            SimMetrics.Snapshot total = null;
+            long floors = 0;
+            for (int run = 0; run < 3; run++) {
+                Building building = Building.FromFile("test_input.txt");
+                Look look = new Look(building);
+                for (int i = 0; i < 10 + run; i++) {
+                    look.NextStep();
+                }
+                SimMetrics.Snapshot metrics = building.metrics().snapshot();
+                floors += metrics.getFloorsTravelled();
+                total = total == null ? metrics : total.plus(metrics);
+            }
+            check(total.getSteps() == 33, "steps should add up");
+            check(total.getFloorsTravelled() == floors, "floors should add up");
+            System.out.println("Snapshot plus test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // counts what the events say happened
+    private static final class EventCounter implements SimulationListener {
+        long stops, floors, boarded, alighted, arrived, assigned;
+
+        @Override
+        public void liftStopped(int lift, int floor, int alightedHere, int boardedHere) {
+            stops++;
+            alighted += alightedHere;
+            boarded += boardedHere;
+        }
+
+        @Override
+        public void liftMoved(int lift, int fromFloor, int toFloor) {
+            floors += Math.abs(toFloor - fromFloor);
+        }
+
+        @Override
+        public void passengerArrived(int floor, int destination) {
+            arrived++;
+        }
+
+        @Override
+        public void floorAssigned(int floor, int lift) {
+            if (lift >= 0) {
+                assigned++;
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
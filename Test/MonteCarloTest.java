@@ -0,0 +1,93 @@
+import java.io.IOException;
+
+/**
+ * Tests for the multi-seed Monte Carlo runner
+ */
+public class MonteCarloTest {
+
+    public static void main(String[] args) {
+        testEstimate();
+        testSameWithAnyThreadCount();
+        testMerging();
+
+        System.out.println("All Monte Carlo tests passed!");
+    }
+
+    // known values: mean 5, sample sd 2.138, t(7) = 2.365
+    static void testEstimate() {
+        System.out.println("Testing confidence intervals...");
+        MonteCarloRunner.Estimate estimate = new MonteCarloRunner.Estimate();
+        for (double value : new double[] {2, 4, 4, 4, 5, 5, 7, 9}) {
+            estimate.add(value);
+        }
+        check(Math.abs(estimate.getMean() - 5) < 1e-9, "mean should be 5");
+        check(Math.abs(estimate.getStandardDeviation() - 2.138) < 1e-3, "sd should be 2.138");
+        double expected = 2.365 * 2.138 / Math.sqrt(8);
+        check(Math.abs(estimate.getHalfWidth() - expected) < 1e-2,
+                "half width should be " + expected + " but was " + estimate.getHalfWidth());
+
+        MonteCarloRunner.Estimate same = new MonteCarloRunner.Estimate();
+        for (double value : new double[] {2, 4, 4, 4, 5, 5, 7, 9}) {
+            same.add(value);
+        }
+        double[] diff = MonteCarloRunner.difference(estimate, same);
+        check(diff[0] == 0 && diff[1] > 0, "identical samples should differ by 0 with some uncertainty");
+        System.out.println("Estimate test passed!");
+    }
+
+    // the seeds are merged in order, so threads don't change anything
+    static void testSameWithAnyThreadCount() {
+        System.out.println("Testing results don't depend on threads...");
+        try {
+            MonteCarloRunner one = new MonteCarloRunner("test_input.txt", "MyLift", 1);
+            one.setSteps(200);
+            one.setThreads(1);
+            MonteCarloRunner four = new MonteCarloRunner("test_input.txt", "MyLift", 1);
+            four.setSteps(200);
+            four.setThreads(4);
+
+            MonteCarloRunner.Summary a = one.run(10, 12);
+            MonteCarloRunner.Summary b = four.run(10, 12);
+            check(a.getSeeds() == 12 && b.getSeeds() == 12, "should have run 12 seeds");
+            check(a.getWaitTimes().getCount() == b.getWaitTimes().getCount(), "different number of waits");
+            check(a.getMeanWait().getMean() == b.getMeanWait().getMean(), "mean wait differs");
+            check(a.getP99Journey().getMean() == b.getP99Journey().getMean(), "p99 journey differs");
+            check(a.getMeanWait().getHalfWidth() == b.getMeanWait().getHalfWidth(), "interval differs");
+            System.out.println("Thread count test passed! " + a.getMeanWait());
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // pooled histograms hold everyone from every seed
+    static void testMerging() {
+        System.out.println("Testing merged distributions...");
+        try {
+            MonteCarloRunner runner = new MonteCarloRunner("test_input.txt", "MultiLiftLook", 3);
+            runner.setSteps(150);
+            runner.setArrivalsPerStep(0.4);
+            runner.setThreads(3);
+
+            long waits = 0;
+            for (long seed = 1; seed <= 6; seed++) {
+                waits += runner.runSeed(seed).waits.getCount();
+            }
+            MonteCarloRunner.Summary summary = runner.run(1, 6);
+            check(summary.getWaitTimes().getCount() == waits,
+                    "pooled waits " + summary.getWaitTimes().getCount() + ", seeds had " + waits);
+            check(summary.getMeanWait().getCount() == 6, "every seed should have a mean wait");
+            check(summary.getMeanWait().getLower() <= summary.getMeanWait().getMean()
+                    && summary.getMeanWait().getMean() <= summary.getMeanWait().getUpper(), "interval around mean");
+            check(summary.getP95Wait().getMean() <= summary.getP99Wait().getMean() + 1e-9, "p95 above p99");
+            System.out.println("Merge test passed!\n" + summary);
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
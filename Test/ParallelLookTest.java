@@ -0,0 +1,206 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that MultiLiftLook planning lifts in parallel gives exactly the same run as
+ * moving them one after another
+ */
+public class ParallelLookTest {
+
+    public static void main(String[] args) {
+        PrintStream console = System.out;
+        try {
+            testSameAsSequential(console);
+            testBusyFloors(console);
+            testRiderLetOff(console);
+            testSameAsRecorded(console);
+        } finally {
+            System.setOut(console);
+        }
+
+        System.out.println("All parallel LOOK tests passed!");
+    }
+
+    // every step's state and every printed line match, whatever the threshold
+    static void testSameAsSequential(PrintStream console) {
+        console.println("Testing parallel planning matches sequential...");
+        for (long seed = 1; seed <= 3; seed++) {
+            Run sequential = run(60, 40, seed, 0.2 + 40 / 20.0, Integer.MAX_VALUE, 500);
+            Run parallel = run(60, 40, seed, 0.2 + 40 / 20.0, 1, 500);
+            System.setOut(console);
+            compare(sequential, parallel, "seed " + seed);
+        }
+        console.println("Same as sequential test passed!");
+    }
+
+    // lots of lifts on few floors, so lifts keep stopping on each other's floors
+    static void testBusyFloors(PrintStream console) {
+        console.println("Testing parallel planning with lifts sharing floors...");
+        for (long seed = 1; seed <= 3; seed++) {
+            Run sequential = run(8, 64, seed, 3, Integer.MAX_VALUE, 300);
+            Run parallel = run(8, 64, seed, 3, 1, 300);
+            System.setOut(console);
+            compare(sequential, parallel, "busy seed " + seed);
+        }
+        console.println("Lifts sharing floors test passed!");
+    }
+
+    // a rider is let off at their floor even when nobody is waiting there; before, the lift
+    // turned round on that floor and carried them back and forth without ever stopping
+    static void testRiderLetOff(PrintStream console) {
+        console.println("Testing a lone rider is let off...");
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(20, 8, new HashMap<>(), 4);
+        MultiLiftLook algo = new MultiLiftLook(building);
+        building.AddPassenger(5, 12);
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            for (int step = 0; step < 40 && building.metrics().snapshot().getAlightings() == 0; step++) {
+                algo.NextStep();
+            }
+        } catch (InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            System.setOut(console);
+        }
+        SimMetrics.Snapshot metrics = building.metrics().snapshot();
+        check(metrics.getBoardings() == 1, "the passenger should be picked up");
+        check(metrics.getAlightings() == 1, "the passenger should be let off at floor 12");
+        for (int lift = 0; lift < 4; lift++) {
+            check(building.getLift(lift).Occupancy() == 0, "lift " + lift + " should be empty");
+        }
+        console.println("Rider let off test passed!");
+    }
+
+    /**
+     * Runs digested step by step, recorded from the one-lift-at-a-time Step() that came
+     * before planning in parallel. That code let a rider off only when someone was waiting on
+     * their floor, so it was recorded with the rider-stop rule from testRiderLetOff patched in;
+     * with it, the old loop and the planned one must agree on every step and every line.
+     * Each entry covers 100 more steps.
+     */
+    private static final String[] RECORDED_FEW_LIFTS = {
+        "85ce4b5c96b1f7d5", "106c9552044ebb37", "1af3a9d616848059", "dfae8fbbae61e500", "aab477e83b219583"
+    };
+    private static final String[] RECORDED_BUSY_FLOORS = {
+        "38445f91fc2d851a", "4268b06e2c313d8e", "44eacddc113730f2"
+    };
+
+    static void testSameAsRecorded(PrintStream console) {
+        console.println("Testing planning matches the recorded sequential runs...");
+        for (int threshold : new int[] { Integer.MAX_VALUE, 1 }) {
+            List<String> fewLifts = digests(60, 40, 1, 2.2, threshold, 500);
+            List<String> busyFloors = digests(8, 64, 1, 3, threshold, 300);
+            System.setOut(console);
+            checkRecorded(RECORDED_FEW_LIFTS, fewLifts, "40 lifts, threshold " + threshold);
+            checkRecorded(RECORDED_BUSY_FLOORS, busyFloors, "64 lifts, threshold " + threshold);
+        }
+        console.println("Same as recorded test passed!");
+    }
+
+    private static void checkRecorded(String[] recorded, List<String> digests, String name) {
+        check(recorded.length == digests.size(), name + ": " + digests.size() + " digests, recorded " + recorded.length);
+        for (int i = 0; i < recorded.length; i++) {
+            check(recorded[i].equals(digests.get(i)), name + ": differs from the recording by step " + (i + 1) * 100);
+        }
+    }
+
+    // SHA-256 of each step's state and printed lines so far, every 100 steps
+    static List<String> digests(int floors, int lifts, long seed, double arrivals, int threshold, int steps) {
+        Run run = run(floors, lifts, seed, arrivals, threshold, steps);
+        List<String> digests = new ArrayList<>();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int step = 0; step < steps; step++) {
+                digest.update(run.states.get(step).getBytes(StandardCharsets.UTF_8));
+                digest.update(run.stepOutput.get(step));
+                if ((step + 1) % 100 == 0) {
+                    // digest() resets, so carry on from a copy
+                    byte[] hash = ((MessageDigest) digest.clone()).digest();
+                    StringBuilder hex = new StringBuilder();
+                    for (int i = 0; i < 8; i++) {
+                        hex.append(String.format("%02x", hash[i]));
+                    }
+                    digests.add(hex.toString());
+                }
+            }
+        } catch (NoSuchAlgorithmException | CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+        return digests;
+    }
+
+    private static void compare(Run expected, Run actual, String name) {
+        check(expected.states.size() == actual.states.size(), name + ": different number of steps");
+        for (int step = 0; step < expected.states.size(); step++) {
+            check(expected.states.get(step).equals(actual.states.get(step)),
+                    name + ": state differs at step " + step + "\n  " + expected.states.get(step)
+                    + "\n  " + actual.states.get(step));
+        }
+        check(Arrays.equals(expected.output, actual.output), name + ": printed log differs");
+    }
+
+    // what a run left behind after each step, and everything it printed
+    private static class Run {
+        final List<String> states = new ArrayList<>();
+        final List<byte[]> stepOutput = new ArrayList<>();
+        byte[] output;
+    }
+
+    private static Run run(int floors, int lifts, long seed, double arrivals, int threshold, int steps) {
+        HashMap<Integer, List<Integer>> requests = new HashMap<>();
+        Random random = new Random(seed);
+        for (int floor = 1; floor <= floors; floor++) {
+            List<Integer> destinations = new ArrayList<>();
+            for (int k = 0; k < 3; k++) {
+                int destination = 1 + random.nextInt(floors);
+                if (destination != floor) {
+                    destinations.add(destination);
+                }
+            }
+            requests.put(floor, destinations);
+        }
+
+        Run run = new Run();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromRequests(floors, 6, requests, lifts);
+            MultiLiftLook look = new MultiLiftLook(building, SimClock.simulated(1000));
+            look.setParallelThreshold(threshold);
+            look.setPassengerGenerator(new PassengerGenerator(seed, arrivals));
+            for (int step = 0; step < steps; step++) {
+                ByteArrayOutputStream printed = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(printed));
+                look.NextStep();
+                run.stepOutput.add(printed.toByteArray());
+                printed.writeTo(output);
+                BuildingSnapshot snapshot = BuildingSnapshot.capture(look);
+                StringBuilder state = new StringBuilder(snapshot.toString());
+                for (int lift = 0; lift < lifts; lift++) {
+                    state.append(' ').append(snapshot.getLiftOccupancy(lift))
+                            .append(snapshot.isLiftGoingUp(lift) ? 'U' : 'D');
+                }
+                state.append(' ').append(Arrays.toString(snapshot.assignment));
+                run.states.add(state.toString());
+            }
+        } catch (InvalidBuildingConfiguration | IOException e) {
+            throw new RuntimeException(e);
+        }
+        run.output = output.toByteArray();
+        return run;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException("Test failed: " + message);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for publishing the simulation state through a memory mapped file
+ */
+public class SharedStateTest {
+
+    public static void main(String[] args) {
+        PrintStream console = System.out;
+        try {
+            testReadsMatchWrites(console);
+            testNewBuildingDetected(console);
+            testNotSharedFile();
+        } finally {
+            System.setOut(console);
+        }
+
+        System.out.println("All shared state tests passed!");
+    }
+
+    // a reader running alongside the writer only ever sees states the writer finished
+    static void testReadsMatchWrites(PrintStream console) {
+        console.println("Testing shared state reads while writing...");
+        try {
+            Path file = Files.createTempFile("shared", ".state");
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook algorithm = new MultiLiftLook(building, SimClock.simulated(1000));
+            algorithm.setPassengerGenerator(new PassengerGenerator(11, 2));
+            SharedStateWriter writer = SharedStateWriter.start(algorithm, file, 0);
+
+            // what the building looked like after each step, to check the reads against
+            ConcurrentHashMap<Long, BuildingSnapshot> written = new ConcurrentHashMap<>();
+            written.put(0L, BuildingSnapshot.capture(algorithm));
+            AtomicBoolean done = new AtomicBoolean();
+            long[] checked = new long[2];
+            String[] problem = new String[1];
+
+            Thread reader = new Thread(() -> {
+                try (SharedStateReader shared = new SharedStateReader(file)) {
+                    while (!done.get() && problem[0] == null) {
+                        BuildingSnapshot read = shared.read();
+                        BuildingSnapshot expected;
+                        while ((expected = written.get(read.getStep())) == null && !done.get()) {
+                            Thread.onSpinWait();
+                        }
+                        if (expected != null && !same(read, expected)) {
+                            problem[0] = "step " + read.getStep() + " read as " + read + " but was " + expected;
+                        }
+                        checked[0]++;
+                    }
+                    checked[1] = shared.getRetries();
+                } catch (IOException e) {
+                    problem[0] = e.toString();
+                }
+            });
+            reader.start();
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int i = 0; i < 20000; i++) {
+                algorithm.NextStep();
+                written.put(algorithm.getStepCount(), BuildingSnapshot.capture(algorithm));
+            }
+            System.setOut(console);
+            done.set(true);
+            reader.join();
+            writer.close();
+
+            check(problem[0] == null, problem[0]);
+            check(checked[0] > 10, "reader only managed " + checked[0] + " reads");
+            check(writer.getSequence() % 2 == 0, "sequence should be even between writes");
+
+            try (SharedStateReader shared = new SharedStateReader(file)) {
+                BuildingSnapshot last = shared.read();
+                check(last.getStep() == 20000, "final state should be published on close, got " + last.getStep());
+                check(same(last, BuildingSnapshot.capture(algorithm)), "final state should match the building");
+            }
+            Files.delete(file);
+            console.println("Read while writing test passed! " + checked[0] + " reads checked, "
+                    + checked[1] + " retried");
+        } catch (IOException | InterruptedException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // a new run with a different building in the same file is reported rather than misread
+    static void testNewBuildingDetected(PrintStream console) {
+        console.println("Testing a new building in the same file...");
+        try {
+            Path file = Files.createTempFile("shared", ".state");
+            MultiLiftLook first = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 2));
+            SharedStateWriter.start(first, file, 0).close();
+
+            try (SharedStateReader reader = new SharedStateReader(file)) {
+                check(reader.getNumLifts() == 2 && reader.read() != null, "should read the first run");
+
+                MultiLiftLook second = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 4));
+                SharedStateWriter.start(second, file, 0).close();
+                try {
+                    reader.read();
+                    throw new RuntimeException("should notice the building changed");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            }
+
+            try (SharedStateReader reader = new SharedStateReader(file)) {
+                check(reader.getNumLifts() == 4, "a new reader should see the second run");
+            }
+            Files.delete(file);
+            console.println("New building test passed!");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void testNotSharedFile() {
+        System.out.println("Testing a file that isn't shared state...");
+        try {
+            new SharedStateReader("test_input.txt");
+            throw new RuntimeException("should refuse a file without the header");
+        } catch (IOException e) {
+            // expected
+        }
+        System.out.println("Not shared file test passed!");
+    }
+
+    private static boolean same(BuildingSnapshot a, BuildingSnapshot b) {
+        return a.getStep() == b.getStep()
+                && Arrays.equals(a.liftFloor, b.liftFloor)
+                && Arrays.equals(a.liftUp, b.liftUp)
+                && Arrays.equals(a.liftOccupancy, b.liftOccupancy)
+                && Arrays.equals(a.liftCapacity, b.liftCapacity)
+                && Arrays.equals(a.queueLength, b.queueLength)
+                && Arrays.equals(a.assignment, b.assignment);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
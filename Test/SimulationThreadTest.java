@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for running the simulation on its own thread
+ */
+public class SimulationThreadTest {
+
+    public static void main(String[] args) {
+        PrintStream console = System.out;
+        try {
+            testRunsToTheEnd(console);
+            testSingleSteps(console);
+            testMatchesSameThread(console);
+            testSpeed(console);
+            testAnimator();
+        } finally {
+            System.setOut(console);
+        }
+
+        System.out.println("All simulation thread tests passed!");
+    }
+
+    // playing runs until every floor is clear, publishing a snapshot after each step
+    static void testRunsToTheEnd(PrintStream console) {
+        console.println("Testing simulation thread runs to the end...");
+        try {
+            Look look = new Look(Building.FromFile("test_input.txt"));
+            AtomicInteger published = new AtomicInteger();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            SimulationThread sim = SimulationThread.start(look, SimulationThread.UNLIMITED, published::incrementAndGet);
+            sim.play();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!sim.isFinished() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            check(sim.isFinished(), "simulation should finish");
+            sim.close();
+            System.setOut(console);
+
+            BuildingSnapshot latest = sim.getLatest();
+            check(sim.getFailure() == null, "should not fail: " + sim.getFailure());
+            check(latest.isEmpty(), "all floors should be clear at the end");
+            check(latest.getStep() == published.get(), "one snapshot per step, got " + published.get()
+                    + " for " + latest.getStep() + " steps");
+            check(!sim.isRunning(), "should stop when finished");
+            console.println("Run to end test passed! " + latest);
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // while paused, step() runs exactly one step each time
+    static void testSingleSteps(PrintStream console) {
+        console.println("Testing single steps...");
+        try {
+            Scan scan = new Scan(Building.FromFile("test_input.txt"));
+            AtomicInteger published = new AtomicInteger();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            SimulationThread sim = SimulationThread.start(scan, SimulationThread.UNLIMITED, published::incrementAndGet);
+            check(sim.getLatest().getStep() == 0, "should start at step 0");
+            for (int i = 1; i <= 3; i++) {
+                sim.step();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (published.get() < i && System.nanoTime() < deadline) {
+                    Thread.sleep(1);
+                }
+            }
+            Thread.sleep(50);
+            sim.close();
+            System.setOut(console);
+
+            check(published.get() == 3, "should have run 3 steps, ran " + published.get());
+            check(sim.getLatest().getStep() == 3, "latest snapshot should be step 3");
+            console.println("Single step test passed!");
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // steps asked for in a burst all run, ending in the same state as stepping here
+    static void testMatchesSameThread(PrintStream console) {
+        console.println("Testing thread gives the same result...");
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            MultiLiftLook direct = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 3));
+            for (int i = 0; i < 40; i++) {
+                direct.NextStep();
+            }
+            BuildingSnapshot expected = BuildingSnapshot.capture(direct);
+
+            MultiLiftLook threaded = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 3));
+            AtomicInteger published = new AtomicInteger();
+            SimulationThread sim = SimulationThread.start(threaded, SimulationThread.UNLIMITED, published::incrementAndGet);
+            for (int i = 0; i < 40; i++) {
+                sim.step();
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (published.get() < 40 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            sim.close();
+            System.setOut(console);
+
+            BuildingSnapshot actual = sim.getLatest();
+            check(actual.getStep() == expected.getStep(), "expected " + expected + " but got " + actual);
+            for (int lift = 0; lift < expected.getNumLifts(); lift++) {
+                check(actual.getLiftFloor(lift) == expected.getLiftFloor(lift), "lift " + lift + " in a different place");
+            }
+            console.println("Same result test passed!");
+        } catch (IOException | InterruptedException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // at 200 steps a second, half a second should run about 100 steps
+    static void testSpeed(PrintStream console) {
+        console.println("Testing steps per second...");
+        try {
+            MyLift lift = new MyLift(Building.FromFile("test_input.txt"));
+            lift.setPassengerGenerator(new PassengerGenerator(3, 6));
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            SimulationThread sim = SimulationThread.start(lift, 200);
+            sim.play();
+            Thread.sleep(500);
+            sim.pause();
+            long slow = sim.getLatest().getStep();
+
+            // unlimited should easily beat that in the same time
+            sim.setStepsPerSecond(SimulationThread.UNLIMITED);
+            sim.play();
+            Thread.sleep(500);
+            sim.close();
+            long fast = sim.getLatest().getStep() - slow;
+            System.setOut(console);
+
+            check(!sim.isFinished(), "arrivals should keep it going: " + sim.getFailure());
+            check(slow >= 60 && slow <= 140, "expected about 100 steps at 200 a second, got " + slow);
+            check(fast > slow * 2, "unlimited ran " + fast + " steps, only " + slow + " at 200 a second");
+            console.println("Speed test passed! " + slow + " steps throttled, " + fast + " unlimited");
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // lifts slide from where they are drawn to the new snapshot over one step period
+    static void testAnimator() {
+        System.out.println("Testing animation between snapshots...");
+        BuildingSnapshot first = new BuildingSnapshot(10, 2);
+        first.liftFloor[0] = 2;
+        first.liftFloor[1] = 5;
+        BuildingSnapshot second = first.copy();
+        second.liftFloor[0] = 3;
+        second.liftFloor[1] = 4;
+        BuildingSnapshot third = first.copy();
+        third.liftFloor[0] = 6;
+
+        SnapshotAnimator animator = new SnapshotAnimator();
+        check(animator.update(first, 1, 0), "first snapshot should need drawing");
+        check(animator.getLiftPosition(0, 0) == 2, "first snapshot should be drawn where it is");
+        check(!animator.update(first, 1, 10), "same snapshot shouldn't need drawing again");
+
+        long period = 1_000_000_000L;
+        check(animator.update(second, 1, 100), "new snapshot should need drawing");
+        check(Math.abs(animator.getLiftPosition(0, 100 + period / 2) - 2.5) < 1e-9, "should be half way up");
+        check(Math.abs(animator.getLiftPosition(1, 100 + period / 2) - 4.5) < 1e-9, "should be half way down");
+        check(animator.update(second, 1, 100 + period / 2), "should still be moving");
+        check(animator.getLiftPosition(0, 100 + 2 * period) == 3, "should stop at the snapshot");
+        check(!animator.isMoving(100 + 2 * period), "should have stopped");
+
+        // a snapshot arriving mid-move starts from where the lift is drawn
+        animator.update(third, 1, 100 + 2 * period);
+        animator.update(second, 1, 100 + 2 * period + period / 2);
+        check(Math.abs(animator.getLiftPosition(0, 100 + 2 * period + period / 2) - 4.5) < 1e-9,
+                "should carry on from the drawn position");
+
+        // unlimited speed jumps straight there
+        animator.update(third, SimulationThread.UNLIMITED, 0);
+        check(animator.getLiftPosition(0, 0) == 6 && !animator.isMoving(0), "should not animate at unlimited speed");
+        System.out.println("Animator test passed!");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the Flow stream of simulation events
+ */
+public class StateStreamTest {
+
+    public static void main(String[] args) {
+        try {
+            testEveryEventInOrder();
+            testSlowSubscriberDropsOldest();
+            testSlowSubscriberDropsNewest();
+            testConflate();
+            testBadRequestAndCancel();
+        } catch (InterruptedException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println("All state stream tests passed!");
+    }
+
+    // a subscriber that keeps up sees every event, in order, matching the metrics
+    static void testEveryEventInOrder() throws InterruptedException, InvalidBuildingConfiguration {
+        System.out.println("Testing a subscriber that keeps up...");
+        MultiLiftLook algo = simulation(3);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        try (StateStream stream = StateStream.attach(algo)) {
+            stream.subscribe(collector, 1 << 16, StateStream.Overflow.DROP_NEWEST);
+            run(algo, 200);
+        }
+        check(collector.done.await(5, TimeUnit.SECONDS), "should complete after close");
+
+        SimMetrics.Snapshot metrics = algo.building.metrics().snapshot();
+        long arrived = 0;
+        long stops = 0;
+        long boarded = 0;
+        long lastStep = -1;
+        for (StateStream.Event event : collector.events) {
+            check(event.getStep() >= lastStep, "events should be in step order");
+            lastStep = event.getStep();
+            if (event.getKind() == StateStream.Kind.ARRIVED) {
+                arrived++;
+            } else if (event.getKind() == StateStream.Kind.STOPPED) {
+                stops++;
+                boarded += event.getBoarded();
+            } else if (event.getKind() == StateStream.Kind.MOVED) {
+                check(event.getFromFloor() != event.getFloor(), "a move should change floor: " + event);
+            }
+        }
+        check(collector.subscription.getDropped() == 0, "nothing should be dropped");
+        check(arrived == metrics.getArrivals(), arrived + " arrivals streamed but " + metrics.getArrivals() + " counted");
+        check(stops == metrics.getStops(), stops + " stops streamed but " + metrics.getStops() + " counted");
+        check(boarded == metrics.getBoardings(), boarded + " boardings streamed but " + metrics.getBoardings() + " counted");
+        System.out.println("Keeps up test passed! " + collector.events.size() + " events");
+    }
+
+    // a subscriber that never asks keeps only the newest events and doesn't hold up the simulation
+    static void testSlowSubscriberDropsOldest() throws InterruptedException, InvalidBuildingConfiguration {
+        System.out.println("Testing a slow subscriber dropping the oldest events...");
+        MultiLiftLook algo = simulation(3);
+        Collector all = new Collector(Long.MAX_VALUE);
+        Collector slow = new Collector(0);
+        try (StateStream stream = StateStream.attach(algo)) {
+            stream.subscribe(all, 1 << 16, StateStream.Overflow.DROP_NEWEST);
+            stream.subscribe(slow, 16, StateStream.Overflow.DROP_OLDEST);
+            run(algo, 200);
+            check(slow.awaitSubscribed(), "slow subscriber should be subscribed");
+            check(slow.subscription.getBuffered() == 16, "buffer should be full, has " + slow.subscription.getBuffered());
+            slow.subscription.request(Long.MAX_VALUE);
+        }
+        check(all.done.await(5, TimeUnit.SECONDS) && slow.done.await(5, TimeUnit.SECONDS), "should complete after close");
+
+        int total = all.events.size();
+        check(slow.events.size() == 16, "should get the 16 it held, got " + slow.events.size());
+        check(slow.subscription.getDropped() == total - 16, "the rest should be dropped");
+        check(slow.events.equals(all.events.subList(total - 16, total)), "should keep the newest events");
+        System.out.println("Drop oldest test passed!");
+    }
+
+    static void testSlowSubscriberDropsNewest() throws InterruptedException, InvalidBuildingConfiguration {
+        System.out.println("Testing a slow subscriber dropping new events...");
+        MultiLiftLook algo = simulation(3);
+        Collector all = new Collector(Long.MAX_VALUE);
+        Collector slow = new Collector(0);
+        try (StateStream stream = StateStream.attach(algo)) {
+            stream.subscribe(all, 1 << 16, StateStream.Overflow.DROP_NEWEST);
+            stream.subscribe(slow, 16, StateStream.Overflow.DROP_NEWEST);
+            run(algo, 200);
+            check(slow.awaitSubscribed(), "slow subscriber should be subscribed");
+            slow.subscription.request(Long.MAX_VALUE);
+        }
+        check(all.done.await(5, TimeUnit.SECONDS) && slow.done.await(5, TimeUnit.SECONDS), "should complete after close");
+        check(slow.events.equals(all.events.subList(0, 16)), "should keep the first events");
+        System.out.println("Drop newest test passed!");
+    }
+
+    // a conflating subscriber that falls behind still ends up knowing where every lift is
+    static void testConflate() throws InterruptedException, InvalidBuildingConfiguration {
+        System.out.println("Testing a conflating subscriber...");
+        MultiLiftLook algo = simulation(4);
+        int[] startFloor = new int[4];
+        for (int lift = 0; lift < 4; lift++) {
+            startFloor[lift] = algo.building.getLift(lift).getCurrentFloor();
+        }
+        Collector slow = new Collector(0);
+        try (StateStream stream = StateStream.attach(algo)) {
+            stream.subscribe(slow, 1 << 16, StateStream.Overflow.CONFLATE);
+            run(algo, 300);
+            check(slow.awaitSubscribed(), "subscriber should be subscribed");
+            slow.subscription.request(Long.MAX_VALUE);
+        }
+        check(slow.done.await(5, TimeUnit.SECONDS), "should complete after close");
+        check(slow.subscription.getDropped() > 0, "some moves should have been merged");
+
+        int[] moves = new int[4];
+        for (StateStream.Event event : slow.events) {
+            if (event.getKind() == StateStream.Kind.MOVED) {
+                int lift = event.getLift();
+                moves[lift]++;
+                check(event.getFromFloor() == startFloor[lift], "the move should start where the lift started");
+                check(event.getFloor() == algo.building.getLift(lift).getCurrentFloor(), "the move should end where the lift is");
+            }
+        }
+        for (int lift = 0; lift < 4; lift++) {
+            check(moves[lift] <= 1, "lift " + lift + " should have at most one waiting move, had " + moves[lift]);
+        }
+        System.out.println("Conflate test passed!");
+    }
+
+    // asking for nothing is an error, and a cancelled subscriber hears nothing more
+    static void testBadRequestAndCancel() throws InterruptedException, InvalidBuildingConfiguration {
+        System.out.println("Testing bad requests and cancel...");
+        MultiLiftLook algo = simulation(2);
+        Collector bad = new Collector(0);
+        Collector cancelled = new Collector(Long.MAX_VALUE);
+        try (StateStream stream = StateStream.attach(algo)) {
+            stream.subscribe(bad);
+            stream.subscribe(cancelled);
+            check(bad.awaitSubscribed() && cancelled.awaitSubscribed(), "both should be subscribed");
+            bad.subscription.request(0);
+            check(bad.done.await(5, TimeUnit.SECONDS) && bad.error instanceof IllegalArgumentException,
+                    "request(0) should be an error");
+
+            cancelled.subscription.cancel();
+            check(stream.getSubscriberCount() == 0, "both should be gone, " + stream.getSubscriberCount() + " left");
+            run(algo, 50);
+        }
+        Thread.sleep(50);
+        check(cancelled.events.isEmpty(), "a cancelled subscriber shouldn't get events");
+        check(cancelled.done.getCount() == 1, "a cancelled subscriber shouldn't be completed");
+
+        // subscribing to a closed stream completes straight away
+        StateStream closed = StateStream.attach(algo);
+        closed.close();
+        Collector late = new Collector(1);
+        closed.subscribe(late);
+        check(late.done.await(5, TimeUnit.SECONDS), "should complete straight away");
+        System.out.println("Bad request and cancel test passed!");
+    }
+
+    private static MultiLiftLook simulation(int lifts) throws InvalidBuildingConfiguration {
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(20, 8, new HashMap<>(), lifts);
+        MultiLiftLook algo = new MultiLiftLook(building, SimClock.simulated(1000));
+        algo.setPassengerGenerator(new PassengerGenerator(5, 0.5));
+        return algo;
+    }
+
+    private static void run(MultiLiftLook algo, int steps) throws InvalidBuildingConfiguration {
+        PrintStream console = System.out;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int i = 0; i < steps; i++) {
+                algo.NextStep();
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    // keeps everything it is sent
+    private static final class Collector implements Flow.Subscriber<StateStream.Event> {
+        final List<StateStream.Event> events = new ArrayList<>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final long initialRequest;
+        volatile StateStream.Feed subscription;
+        volatile Throwable error;
+
+        Collector(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        boolean awaitSubscribed() throws InterruptedException {
+            return subscribed.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = (StateStream.Feed) subscription;
+            subscribed.countDown();
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(StateStream.Event event) {
+            synchronized (events) {
+                events.add(event);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException("Test failed: " + message);
+        }
+    }
+}
@@ -29,6 +29,96 @@ public class TestRunner {
             AlgorithmTest.main(null);
         });
         
+        // run trace tests
+        runTest("Trace Tests", () -> {
+            TraceTest.main(null);
+        });
+        
+        // run checkpoint tests
+        runTest("Checkpoint Tests", () -> {
+            CheckpointTest.main(null);
+        });
+        
+        // run journey tracking tests
+        runTest("Journey Tests", () -> {
+            JourneyTest.main(null);
+        });
+        
+        // run metrics tests
+        runTest("Metrics Tests", () -> {
+            MetricsTest.main(null);
+        });
+        
+        // run energy tests
+        runTest("Energy Tests", () -> {
+            EnergyTest.main(null);
+        });
+        
+        // run timing tests
+        runTest("Timing Tests", () -> {
+            TimingTest.main(null);
+        });
+        
+        // run flight recorder tests
+        runTest("JFR Tests", () -> {
+            JfrTest.main(null);
+        });
+        
+        // run metrics endpoint tests
+        runTest("Metrics Server Tests", () -> {
+            MetricsServerTest.main(null);
+        });
+        
+        // run multi-seed runner tests
+        runTest("Monte Carlo Tests", () -> {
+            MonteCarloTest.main(null);
+        });
+        
+        // run simulation thread tests
+        runTest("Simulation Thread Tests", () -> {
+            SimulationThreadTest.main(null);
+        });
+        
+        // run building view tests
+        runTest("Building View Tests", () -> {
+            BuildingViewTest.main(null);
+        });
+        
+        // run shared memory publishing tests
+        runTest("Shared State Tests", () -> {
+            SharedStateTest.main(null);
+        });
+        
+        // run parallel LOOK planning tests
+        runTest("Parallel LOOK Tests", () -> {
+            ParallelLookTest.main(null);
+        });
+        
+        // run real-time controller tests
+        runTest("Live Controller Tests", () -> {
+            LiveControllerTest.main(null);
+        });
+        
+        // run lock-free hall call queue tests
+        runTest("Hall Call Queue Tests", () -> {
+            HallCallQueueTest.main(null);
+        });
+        
+        // run concurrent floor queue tests
+        runTest("Concurrent Floor Tests", () -> {
+            ConcurrentFloorsTest.main(null);
+        });
+        
+        // run state stream tests
+        runTest("State Stream Tests", () -> {
+            StateStreamTest.main(null);
+        });
+        
+        // run control server tests
+        runTest("Control Server Tests", () -> {
+            ControlServerTest.main(null);
+        });
+        
         // Print overall test results
         long endTime = System.currentTimeMillis();
         double totalTime = (endTime - startTime) / 1000.0;
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Tests for decision latency timing
+ */
+public class TimingTest {
+
+    public static void main(String[] args) {
+        testPhases();
+        testSampling();
+        testBudgetAlarm();
+        testNoAllocation();
+
+        System.out.println("All Timing tests passed!");
+    }
+
+    // a multi lift step should be timed along with its dispatch and each lift's move
+    static void testPhases() {
+        System.out.println("Testing per-phase timing...");
+        try {
+            MultiLiftLook algo = new MultiLiftLook(MultiLiftBuilding.FromFile("test_input.txt", 3));
+            DecisionTimer timer = new DecisionTimer();
+            algo.setDecisionTimer(timer);
+            for (int i = 0; i < 20; i++) {
+                algo.NextStep();
+            }
+            check(timer.getHistogram(DecisionTimer.STEP).getCount() == 20, "every step should be timed");
+            check(timer.getHistogram(DecisionTimer.DISPATCH).getCount() == 20, "every dispatch should be timed");
+            check(timer.getHistogram(DecisionTimer.MOVE).getCount() == 60, "every lift move should be timed");
+            long phases = timer.getStepNanos(DecisionTimer.DISPATCH) + timer.getStepNanos(DecisionTimer.MOVE);
+            check(phases <= timer.getStepNanos(DecisionTimer.STEP), "phases can't take longer than the step");
+            System.out.println("Per-phase timing test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void testSampling() {
+        System.out.println("Testing sampled timing...");
+        try {
+            Look look = new Look(Building.FromFile("test_input.txt"));
+            DecisionTimer timer = new DecisionTimer(4, Long.MAX_VALUE, null);
+            look.setDecisionTimer(timer);
+            for (int i = 0; i < 20; i++) {
+                look.NextStep();
+            }
+            check(timer.getHistogram(DecisionTimer.STEP).getCount() == 5, "one step in four should be timed");
+            System.out.println("Sampled timing test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // a budget of 0 ns is always exceeded
+    static void testBudgetAlarm() {
+        System.out.println("Testing budget alarm...");
+        try {
+            Scan scan = new Scan(Building.FromFile("test_input.txt"));
+            long[] alarms = new long[2];
+            DecisionTimer timer = new DecisionTimer(1, 0, (step, nanos, t) -> {
+                alarms[0]++;
+                alarms[1] = step;
+            });
+            scan.setDecisionTimer(timer);
+            for (int i = 0; i < 10; i++) {
+                scan.NextStep();
+            }
+            check(alarms[0] == 10 && timer.getOverBudgetCount() == 10, "every step should go over budget");
+            check(alarms[1] == 9, "alarm should get the step number");
+            System.out.println("Budget alarm test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // timing itself should not create any garbage
+    static void testNoAllocation() {
+        System.out.println("Testing timing does not allocate...");
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Allocation counting not available, skipped");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+
+        DecisionTimer timer = new DecisionTimer(1, 1, (step, nanos, t) -> { });
+        for (int round = 0; round < 2; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 100000; i++) {
+                timer.beginStep(i);
+                long start = timer.start();
+                timer.stop(DecisionTimer.MOVE, start);
+                timer.endStep();
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            // first round warms up, the second must be clean
+            if (round == 1) {
+                check(allocated < 1024, "timing allocated " + allocated + " bytes");
+            }
+        }
+        System.out.println("No allocation test passed!");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for the binary trace recorder
+ */
+public class TraceTest {
+    
+    public static void main(String[] args) {
+        testRecordMultiLift();
+        testRecordSingleLift();
+        testReplaySeek();
+        testEventsAfterLastStep();
+        testTruncatedStep();
+        testAnalyzer();
+        testChromeExport();
+        
+        System.out.println("All Trace tests passed!");
+    }
+    
+    // record a multi lift run and check the file holds every step
+    static void testRecordMultiLift() {
+        System.out.println("Testing trace recording of MultiLiftLook...");
+        File file = new File("trace_test_multi.trace");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook algo = new MultiLiftLook(building);
+            TraceRecorder recorder = new TraceRecorder(file.getPath(), algo);
+            
+            for (int i = 0; i < 30; i++) {
+                algo.NextStep();
+            }
+            recorder.close();
+            
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            checkHeader(data, 8, 3);
+            
+            long steps = countSteps(data);
+            if (steps != 30 || recorder.getStepsRecorded() != 30) {
+                throw new RuntimeException("Expected 30 steps in trace, found " + steps);
+            }
+            
+            // a whole run of this size should only be a few bytes per step
+            if (file.length() > 30 * 32) {
+                throw new RuntimeException("Trace is bigger than expected: " + file.length() + " bytes");
+            }
+            
+            System.out.println("Multi lift trace test passed! (" + file.length() + " bytes)");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+    
+    // record a single lift run including a passenger added mid run
+    static void testRecordSingleLift() {
+        System.out.println("Testing trace recording of SCAN...");
+        File file = new File("trace_test_single.trace");
+        try {
+            Building building = Building.FromFile("test_input.txt");
+            Scan scan = new Scan(building);
+            TraceRecorder recorder = new TraceRecorder(file.getPath(), scan);
+            
+            for (int i = 0; i < 10; i++) {
+                scan.NextStep();
+            }
+            building.AddPassenger(2, 5);
+            for (int i = 0; i < 10; i++) {
+                scan.NextStep();
+            }
+            recorder.close();
+            
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            checkHeader(data, 8, 1);
+            
+            long steps = countSteps(data);
+            if (steps != 20) {
+                throw new RuntimeException("Expected 20 steps in trace, found " + steps);
+            }
+            
+            System.out.println("Single lift trace test passed! (" + file.length() + " bytes)");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+    
+    // replay a recording and check seeking anywhere gives the same state as the live run
+    static void testReplaySeek() {
+        System.out.println("Testing trace replay and seeking...");
+        File file = new File("trace_test_replay.trace");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook algo = new MultiLiftLook(building);
+            TraceRecorder recorder = new TraceRecorder(file.getPath(), algo);
+            
+            // keep what the building looked like after every step
+            ArrayList<BuildingSnapshot> expected = new ArrayList<>();
+            expected.add(BuildingSnapshot.capture(algo));
+            for (int i = 0; i < 40; i++) {
+                if (i == 12) {
+                    building.AddPassenger(3, 7);
+                }
+                algo.NextStep();
+                expected.add(BuildingSnapshot.capture(algo));
+            }
+            recorder.close();
+            
+            // small keyframe interval so seeks cross keyframes
+            TraceReplay replay = new TraceReplay(new TraceReader(file.getPath()), 4);
+            if (replay.getLastStep() != 40) {
+                throw new RuntimeException("Expected 40 steps in replay, got " + replay.getLastStep());
+            }
+            
+            int[] order = {0, 40, 17, 3, 4, 5, 39, 12, 13, 0, 25};
+            for (int step : order) {
+                checkSame(expected.get(step), replay.seek(step));
+            }
+            
+            // play forwards from the start one step at a time
+            replay.seek(0);
+            for (int step = 1; step <= 40; step++) {
+                checkSame(expected.get(step), replay.advance(1));
+            }
+            
+            System.out.println("Trace replay test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+    
+    // events after the last step end in a 0 byte, but still get their own step on close
+    static void testEventsAfterLastStep() {
+        System.out.println("Testing events after the last step...");
+        File file = new File("trace_test_after.trace");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook algo = new MultiLiftLook(building);
+            TraceRecorder recorder = new TraceRecorder(file.getPath(), algo);
+            for (int i = 0; i < 10; i++) {
+                algo.NextStep();
+            }
+            // arrival at floor 3 going to floor 0 - the op ends in a 0
+            building.AddPassenger(3, 0);
+            recorder.close();
+            
+            if (recorder.getStepsRecorded() != 11) {
+                throw new RuntimeException("The arrival should be written as an 11th step, got "
+                        + recorder.getStepsRecorded());
+            }
+            TraceReader reader = new TraceReader(file.getPath());
+            TraceReplay replay = new TraceReplay(reader, 4);
+            if (replay.getLastStep() != 11 || reader.isTruncated()) {
+                throw new RuntimeException("Expected 11 whole steps, got " + replay.getLastStep());
+            }
+            if (replay.seek(11).getQueueLength(3) != building.GetFloor(3).GetFloorRequests().size()) {
+                throw new RuntimeException("The arrival should be in the last step");
+            }
+            
+            System.out.println("Events after the last step test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+    
+    // a trace cut off part way through a step stops at the last whole step
+    static void testTruncatedStep() {
+        System.out.println("Testing a truncated trace...");
+        File file = new File("trace_test_truncated.trace");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook algo = new MultiLiftLook(building);
+            TraceRecorder recorder = new TraceRecorder(file.getPath(), algo);
+            for (int i = 0; i < 10; i++) {
+                algo.NextStep();
+            }
+            recorder.close();
+            
+            // drop the final OP_END_STEP, as if the process died mid write
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+            
+            TraceReader reader = new TraceReader(file.getPath());
+            TraceReplay replay = new TraceReplay(reader, 4);
+            if (!reader.isTruncated()) {
+                throw new RuntimeException("The reader should report the cut short step");
+            }
+            if (replay.getLastStep() != 9) {
+                throw new RuntimeException("Expected 9 whole steps, got " + replay.getLastStep());
+            }
+            
+            System.out.println("Truncated trace test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+    
+    // queries over small segments should match the same query done in one go
+    static void testAnalyzer() {
+        System.out.println("Testing trace analyzer...");
+        File file = new File("trace_test_analyzer.trace");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 2);
+            MultiLiftLook algo = new MultiLiftLook(building);
+            TraceRecorder recorder = new TraceRecorder(file.getPath(), algo);
+            
+            // count boardings and full steps for lift 0 as the run happens
+            long[] live = new long[3];
+            building.events().addListener(new SimulationListener() {
+                public void liftStopped(int lift, int floor, int alighted, int boarded) {
+                    live[0] += boarded;
+                }
+                public void stepFinished(long step) {
+                    LiftState lift = building.getLift(0);
+                    if (lift.Occupancy() >= lift.getCapacity()) {
+                        live[1]++;
+                    }
+                    live[2]++;
+                }
+            });
+            
+            for (int i = 0; i < 60; i++) {
+                if (i % 5 == 0) {
+                    building.AddPassenger(i % 8, (i * 3) % 8);
+                }
+                algo.NextStep();
+            }
+            recorder.close();
+            
+            TraceAnalyzer whole = new TraceAnalyzer(new TraceReader(file.getPath()), 1000);
+            TraceAnalyzer split = new TraceAnalyzer(new TraceReader(file.getPath()), 7);
+            
+            TraceAnalyzer.FloorStats a = whole.floorStats(0, 7, 0, 60);
+            TraceAnalyzer.FloorStats b = split.floorStats(0, 7, 0, 60);
+            if (a.getPickedUp() != live[0] || b.getPickedUp() != live[0]) {
+                throw new RuntimeException("Expected " + live[0] + " pickups, got " + a.getPickedUp()
+                        + " and " + b.getPickedUp());
+            }
+            if (a.getWaitPercentile(95) != b.getWaitPercentile(95) || a.getMaxWait() != b.getMaxWait()
+                    || Math.abs(a.getMeanQueueLength() - b.getMeanQueueLength()) > 1e-9) {
+                throw new RuntimeException("Split query differs: " + a + " vs " + b);
+            }
+            
+            // a window in the middle, on a few floors
+            TraceAnalyzer.FloorStats c = whole.floorStats(2, 5, 13, 41);
+            TraceAnalyzer.FloorStats d = split.floorStats(2, 5, 13, 41);
+            if (c.getPickedUp() != d.getPickedUp() || c.getArrived() != d.getArrived()
+                    || c.getMaxWait() != d.getMaxWait()) {
+                throw new RuntimeException("Windowed query differs: " + c + " vs " + d);
+            }
+            
+            TraceAnalyzer.LiftStats lift = split.liftStats(0, 0, 60);
+            if (lift.getSteps() != live[2] || lift.getFullSteps() != live[1]) {
+                throw new RuntimeException("Expected lift 0 full for " + live[1] + " of " + live[2]
+                        + " steps, got " + lift);
+            }
+            
+            System.out.println("Trace analyzer test passed! " + b);
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        } finally {
+            file.delete();
+        }
+    }
+    
+    // export a live run to Chrome trace JSON
+    static void testChromeExport() {
+        System.out.println("Testing Chrome trace export...");
+        try {
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile("test_input.txt", 3);
+            MultiLiftLook algo = new MultiLiftLook(building);
+            StringWriter json = new StringWriter();
+            ChromeTraceExporter exporter = new ChromeTraceExporter(json, BuildingSnapshot.capture(algo), 1000000);
+            building.events().addListener(exporter);
+            
+            for (int i = 0; i < 20; i++) {
+                algo.NextStep();
+            }
+            building.events().removeListener(exporter);
+            exporter.close();
+            
+            String text = json.toString().trim();
+            if (!text.startsWith("{") || !text.endsWith("]}")) {
+                throw new RuntimeException("Export is not a complete JSON object");
+            }
+            if (!text.contains("\"Lift 2\"") || !text.contains("assign floor") || !text.contains("\"ph\":\"X\"")
+                    || !text.contains("\"ph\":\"C\"")) {
+                throw new RuntimeException("Export is missing lift tracks, spans, counters or assignments");
+            }
+            
+            System.out.println("Chrome trace export test passed!");
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private static void checkSame(BuildingSnapshot expected, BuildingSnapshot actual) {
+        boolean same = expected.getStep() == actual.getStep();
+        for (int i = 0; i < expected.getNumLifts(); i++) {
+            same &= expected.getLiftFloor(i) == actual.getLiftFloor(i);
+            same &= expected.isLiftGoingUp(i) == actual.isLiftGoingUp(i);
+            same &= expected.getLiftOccupancy(i) == actual.getLiftOccupancy(i);
+        }
+        for (int i = 0; i < expected.getNumFloors(); i++) {
+            same &= expected.getQueueLength(i) == actual.getQueueLength(i);
+            same &= expected.getAssignment(i) == actual.getAssignment(i);
+        }
+        if (!same) {
+            throw new RuntimeException("Replay differs from live run: expected " + expected
+                    + " but got " + actual);
+        }
+    }
+    
+    // reads the start of the header and skips the rest of it
+    private static void checkHeader(ByteBuffer data, int floors, int lifts) {
+        if (data.getInt() != TraceRecorder.MAGIC) {
+            throw new RuntimeException("Trace does not start with the magic number");
+        }
+        if (data.getShort() != TraceRecorder.VERSION) {
+            throw new RuntimeException("Unexpected trace version");
+        }
+        int numFloors = readVarint(data);
+        int numLifts = readVarint(data);
+        if (numFloors != floors || numLifts != lifts) {
+            throw new RuntimeException("Expected " + floors + " floors and " + lifts
+                    + " lifts, got " + numFloors + " and " + numLifts);
+        }
+        for (int i = 0; i < numLifts; i++) {
+            readVarint(data);
+            readVarint(data);
+            data.get();
+            readVarint(data);
+        }
+        for (int i = 0; i < numFloors; i++) {
+            readVarint(data);
+            readVarint(data);
+        }
+    }
+    
+    // walks the block headers adding up the steps
+    private static long countSteps(ByteBuffer data) {
+        long steps = 0;
+        long expectedFirst = 0;
+        while (data.hasRemaining()) {
+            long first = data.getLong();
+            int count = data.getInt();
+            int length = data.getInt();
+            if (first != expectedFirst) {
+                throw new RuntimeException("Block starts at step " + first + ", expected " + expectedFirst);
+            }
+            data.position(data.position() + length);
+            steps += count;
+            expectedFirst = first + count;
+        }
+        return steps;
+    }
+    
+    private static int readVarint(ByteBuffer data) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * The code each benchmark measures.
+ *
+ * JMH won't generate benchmarks for classes in the default package and classes in a named
+ * package can't see the simulation, so the benchmarks in bench/ load this class by name
+ * (see bench.Workloads). Each method here sets up the state for one benchmark and returns
+ * the operation to time as a LongSupplier; the result should go into a Blackhole so the
+ * JIT can't throw the work away. The supplier is the only one of its type in the call,
+ * so the JIT inlines it and the lookup costs nothing once the benchmark is running.
+ */
+public final class BenchmarkWorkloads {
+    private BenchmarkWorkloads() {}
+
+    // Queue holding size floors: add one to the back, take one off the front
+    public static LongSupplier queue(int size) {
+        Queue queue = new Queue();
+        for (int i = 0; i < size; i++) {
+            queue.enqueue(i);
+        }
+        int[] next = {size};
+        return () -> {
+            queue.enqueue(next[0]++);
+            return queue.dequeue();
+        };
+    }
+
+    // ElevatorRequestQueue holding size requests: add one and take the most urgent
+    public static LongSupplier elevatorRequestQueue(int size) {
+        ElevatorRequestQueue queue = new ElevatorRequestQueue("UP");
+        for (int i = 0; i < size; i++) {
+            queue.addRequest(i % 100, i % 3 == 0 ? "DOWN" : "UP");
+        }
+        int[] next = {0};
+        return () -> {
+            int i = next[0]++;
+            queue.addRequest(i % 100, i % 3 == 0 ? "DOWN" : "UP");
+            return queue.processNextRequest();
+        };
+    }
+
+    // Adjustment on a heap of size requests spread over floors: re-rank one floor's requests
+    public static LongSupplier adjustment(int size, int floors) {
+        ArrayList<Request> heap = new ArrayList<>(size);
+        HashMap<Integer, List<Integer>> floorMap = new HashMap<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            int floor = i % floors;
+            // increasing priorities are already a valid heap
+            heap.add(new Request(floor, i, i % 2 == 0 ? "UP" : "DOWN", start - i * 10L));
+            floorMap.computeIfAbsent(floor, f -> new ArrayList<>()).add(i);
+        }
+        Adjustment adjustment = new Adjustment(heap, floorMap);
+        int[] next = {0};
+        return () -> {
+            int i = next[0]++;
+            adjustment.updatePriority(i % floors, (i / floors) % 2 == 0 ? "UP" : "DOWN");
+            return heap.get(0).priority;
+        };
+    }
+
+    // DirectionalQueue holding size requests: add one and take one going the same way
+    public static LongSupplier directionalQueue(int size, int floors) {
+        DirectionalQueue queue = new DirectionalQueue(floors);
+        for (int i = 0; i < size; i++) {
+            addDirectional(queue, i, floors);
+        }
+        int[] next = {size};
+        return () -> {
+            int i = next[0]++;
+            boolean up = addDirectional(queue, i, floors);
+            DirectionalQueue.Request request = up ? queue.getNextUpRequest() : queue.getNextDownRequest();
+            return request.getEnd();
+        };
+    }
+
+    // alternates between up and down requests, returns true for up
+    private static boolean addDirectional(DirectionalQueue queue, int i, int floors) {
+        int low = 1 + i % (floors - 1);
+        if (i % 2 == 0) {
+            queue.addRequest(low, floors);
+            return true;
+        }
+        queue.addRequest(floors, low);
+        return false;
+    }
+
+    // RequestDispatcher.getBestElevator for each floor in turn, lifts spread over the building
+    public static LongSupplier bestElevator(int floors, int lifts) throws IOException {
+        MultiLiftBuilding building = MultiLiftBuilding.FromFile(writeScenario(floors, 8, 0, 1).toString(), lifts);
+        for (int lift = 0; lift < lifts; lift++) {
+            int target = (int) ((long) lift * floors / lifts);
+            for (int floor = 0; floor < target; floor++) {
+                building.MoveLiftUp(lift);
+            }
+        }
+        RequestDispatcher dispatcher = new RequestDispatcher(building);
+        int[] next = {0};
+        return () -> {
+            int floor = next[0]++ % floors;
+            return dispatcher.getBestElevator(floor, floor == 0 ? floors - 1 : 0);
+        };
+    }
+
+    // load a building from a scenario file
+    public static LongSupplier loadBuilding(String file) {
+        return () -> {
+            try {
+                return Building.FromFile(file).getFloors().GetFloors().size();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * One step of a single lift algorithm (Scan, Look or MyLift) with passengers arriving
+     * at arrivalsPerStep. Starts with peoplePerFloor on each floor.
+     */
+    public static LongSupplier singleLiftStep(String algorithmName, int floors, int peoplePerFloor,
+                                              double arrivalsPerStep) throws IOException {
+        Building building = Building.FromFile(writeScenario(floors, 8, peoplePerFloor, 1).toString());
+        Algorithm algorithm;
+        switch (algorithmName) {
+            case "Scan":
+                algorithm = new Scan(building);
+                break;
+            case "Look":
+                algorithm = new Look(building);
+                break;
+            case "MyLift":
+                algorithm = new MyLift(building, SimClock.simulated(1000));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown algorithm " + algorithmName);
+        }
+        algorithm.setPassengerGenerator(new PassengerGenerator(42, arrivalsPerStep));
+        return () -> {
+            try {
+                algorithm.NextStep();
+            } catch (InvalidBuildingConfiguration e) {
+                throw new IllegalStateException(e);
+            }
+            return building.getLift().getCurrentFloor();
+        };
+    }
+
+    // one step of MultiLiftLook
+    public static LongSupplier multiLiftStep(int floors, int lifts, int peoplePerFloor, double arrivalsPerStep)
+            throws IOException {
+        MultiLiftBuilding building = MultiLiftBuilding.FromFile(
+                writeScenario(floors, 8, peoplePerFloor, 1).toString(), lifts);
+        MultiLiftLook algorithm = new MultiLiftLook(building, SimClock.simulated(1000));
+        algorithm.setPassengerGenerator(new PassengerGenerator(42, arrivalsPerStep));
+        return () -> {
+            try {
+                algorithm.NextStep();
+            } catch (InvalidBuildingConfiguration e) {
+                throw new IllegalStateException(e);
+            }
+            return algorithm.getStepCount();
+        };
+    }
+
+    /**
+     * HallCallQueue with the given overflow policy: { add one call, drain up to 256 calls }.
+     * The add is called from several threads at once, the drain from one.
+     */
+    public static LongSupplier[] hallCalls(int capacity, String overflow) {
+        HallCallQueue queue = new HallCallQueue(capacity, HallCallQueue.Overflow.valueOf(overflow));
+        long[] floors = {0};
+        HallCallQueue.Sink sink = (floor, destination) -> floors[0] += floor;
+        return new LongSupplier[] {
+            () -> queue.add(3, 7) ? 1 : 0,
+            () -> queue.drain(sink, 256) + floors[0]
+        };
+    }
+
+    /**
+     * Floor queues shared by three kinds of thread: producers adding passengers to a random
+     * floor, lifts boarding up to 8 people from a random floor, and a dispatcher reading
+     * every queue length at once. locking is "floor" for the queues' own per floor locks,
+     * or "building" to also hold one lock on the whole building for each operation, the
+     * way live mode used to.
+     */
+    public static LongSupplier[] floorQueues(int floors, String locking) {
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(floors, 8, new HashMap<>(), 1);
+        FloorsState state = building.getFloors();
+        boolean global = locking.equals("building");
+        int[] lengths = new int[floors];
+        LongSupplier produce = () -> {
+            int floor = ThreadLocalRandom.current().nextInt(floors);
+            int destination = floor == 0 ? 1 : floor - 1;
+            if (global) {
+                synchronized (building) {
+                    building.AddPassenger(floor, destination);
+                }
+            } else {
+                building.AddPassenger(floor, destination);
+            }
+            return floor;
+        };
+        LongSupplier board = () -> {
+            Queue queue = building.GetFloor(ThreadLocalRandom.current().nextInt(floors)).GetFloorRequests();
+            if (global) {
+                synchronized (building) {
+                    return queue.dequeue(8).size();
+                }
+            }
+            return queue.dequeue(8).size();
+        };
+        LongSupplier snapshot = () -> {
+            if (global) {
+                synchronized (building) {
+                    return state.queueLengths(lengths)[0];
+                }
+            }
+            return state.queueLengths(lengths)[0];
+        };
+        return new LongSupplier[] {produce, board, snapshot};
+    }
+
+    /**
+     * Write a scenario file with peoplePerFloor people on every floor, each going to a
+     * random other floor. The file is deleted when the JVM exits.
+     */
+    public static Path writeScenario(int floors, int capacity, int peoplePerFloor, long seed) throws IOException {
+        Path file = Files.createTempFile("scenario-" + floors + "-", ".txt");
+        file.toFile().deleteOnExit();
+        java.util.Random random = new java.util.Random(seed);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("# Number of Floors, Capacity");
+            out.println(floors + ", " + capacity);
+            out.println("# Floor Requests");
+            for (int floor = 1; floor <= floors && peoplePerFloor > 0; floor++) {
+                StringBuilder line = new StringBuilder().append(floor).append(':');
+                for (int i = 0; i < peoplePerFloor; i++) {
+                    int destination = 1 + random.nextInt(floors - 1);
+                    if (destination >= floor) {
+                        destination++;
+                    }
+                    line.append(i == 0 ? " " : ", ").append(destination);
+                }
+                out.println(line);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A log-log line chart written as an SVG file, one line per series. On log-log axes
+ * something that grows linearly has a slope of 1 and a quadratic has a slope of 2, so
+ * getSlope() gives how a metric scales.
+ */
+public final class LogLogPlot {
+    private static final String[] COLOURS = {"#1f77b4", "#d62728", "#2ca02c", "#ff7f0e", "#9467bd", "#8c564b"};
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 480;
+    private static final int LEFT = 80;
+    private static final int RIGHT = 170;
+    private static final int TOP = 40;
+    private static final int BOTTOM = 60;
+
+    private final String title;
+    private final String xLabel;
+    private final String yLabel;
+    private final Map<String, List<double[]>> series = new LinkedHashMap<>();
+
+    public LogLogPlot(String title, String xLabel, String yLabel) {
+        this.title = title;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+    }
+
+    // points that aren't positive can't go on a log scale and are left out
+    public void add(String name, double x, double y) {
+        if (x > 0 && y > 0 && !Double.isInfinite(y) && !Double.isNaN(y)) {
+            series.computeIfAbsent(name, n -> new ArrayList<>()).add(new double[] {x, y});
+        }
+    }
+
+    public boolean isEmpty() {
+        return series.isEmpty();
+    }
+
+    /**
+     * Least squares slope of log(y) against log(x) for a series, NaN with fewer than two
+     * points. Around 1 means linear, 2 quadratic, 0 constant.
+     */
+    public double getSlope(String name) {
+        List<double[]> points = series.get(name);
+        if (points == null || points.size() < 2) {
+            return Double.NaN;
+        }
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (double[] p : points) {
+            double x = Math.log10(p[0]);
+            double y = Math.log10(p[1]);
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        int n = points.size();
+        double denominator = n * sxx - sx * sx;
+        return denominator == 0 ? Double.NaN : (n * sxy - sx * sy) / denominator;
+    }
+
+    public void write(Path file) throws IOException {
+        double minX = Double.MAX_VALUE, maxX = 0, minY = Double.MAX_VALUE, maxY = 0;
+        for (List<double[]> points : series.values()) {
+            for (double[] p : points) {
+                minX = Math.min(minX, p[0]);
+                maxX = Math.max(maxX, p[0]);
+                minY = Math.min(minY, p[1]);
+                maxY = Math.max(maxY, p[1]);
+            }
+        }
+        // whole decades either side
+        int x0 = (int) Math.floor(Math.log10(minX));
+        int x1 = Math.max(x0 + 1, (int) Math.ceil(Math.log10(maxX)));
+        int y0 = (int) Math.floor(Math.log10(minY));
+        int y1 = Math.max(y0 + 1, (int) Math.ceil(Math.log10(maxY)));
+
+        int plotWidth = WIDTH - LEFT - RIGHT;
+        int plotHeight = HEIGHT - TOP - BOTTOM;
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.printf(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" "
+                    + "font-family=\"sans-serif\" font-size=\"12\">%n", WIDTH, HEIGHT);
+            out.printf(Locale.ROOT, "<rect width=\"%d\" height=\"%d\" fill=\"white\"/>%n", WIDTH, HEIGHT);
+            out.printf(Locale.ROOT, "<text x=\"%d\" y=\"%d\" font-size=\"15\" text-anchor=\"middle\">%s</text>%n",
+                    LEFT + plotWidth / 2, TOP - 15, escape(title));
+
+            // a grid line and label at each decade
+            for (int d = x0; d <= x1; d++) {
+                double x = LEFT + (double) (d - x0) / (x1 - x0) * plotWidth;
+                out.printf(Locale.ROOT, "<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%d\" stroke=\"#ddd\"/>%n",
+                        x, TOP, x, TOP + plotHeight);
+                out.printf(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">1e%d</text>%n",
+                        x, TOP + plotHeight + 18, d);
+            }
+            for (int d = y0; d <= y1; d++) {
+                double y = TOP + plotHeight - (double) (d - y0) / (y1 - y0) * plotHeight;
+                out.printf(Locale.ROOT, "<line x1=\"%d\" y1=\"%.1f\" x2=\"%d\" y2=\"%.1f\" stroke=\"#ddd\"/>%n",
+                        LEFT, y, LEFT + plotWidth, y);
+                out.printf(Locale.ROOT, "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">1e%d</text>%n",
+                        LEFT - 6, y + 4, d);
+            }
+            out.printf(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" "
+                    + "stroke=\"black\"/>%n", LEFT, TOP, plotWidth, plotHeight);
+            out.printf(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">%s</text>%n",
+                    LEFT + plotWidth / 2, HEIGHT - 15, escape(xLabel));
+            out.printf(Locale.ROOT, "<text transform=\"translate(18,%d) rotate(-90)\" text-anchor=\"middle\">"
+                    + "%s</text>%n", TOP + plotHeight / 2, escape(yLabel));
+
+            int colour = 0;
+            for (Map.Entry<String, List<double[]>> entry : series.entrySet()) {
+                String stroke = COLOURS[colour % COLOURS.length];
+                StringBuilder line = new StringBuilder();
+                for (double[] p : entry.getValue()) {
+                    double x = LEFT + (Math.log10(p[0]) - x0) / (x1 - x0) * plotWidth;
+                    double y = TOP + plotHeight - (Math.log10(p[1]) - y0) / (y1 - y0) * plotHeight;
+                    line.append(String.format(Locale.ROOT, "%.1f,%.1f ", x, y));
+                    out.printf(Locale.ROOT, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"3\" fill=\"%s\"/>%n", x, y, stroke);
+                }
+                out.printf(Locale.ROOT, "<polyline points=\"%s\" fill=\"none\" stroke=\"%s\" stroke-width=\"2\"/>%n",
+                        line.toString().trim(), stroke);
+
+                // legend with the fitted slope
+                int legendY = TOP + 10 + colour * 20;
+                double slope = getSlope(entry.getKey());
+                out.printf(Locale.ROOT, "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" stroke=\"%s\" "
+                        + "stroke-width=\"2\"/>%n", LEFT + plotWidth + 10, legendY, LEFT + plotWidth + 30, legendY, stroke);
+                out.printf(Locale.ROOT, "<text x=\"%d\" y=\"%d\">%s%s</text>%n", LEFT + plotWidth + 35, legendY + 4,
+                        escape(entry.getKey()),
+                        Double.isNaN(slope) ? "" : String.format(Locale.ROOT, " (slope %.2f)", slope));
+                colour++;
+            }
+            out.println("</svg>");
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
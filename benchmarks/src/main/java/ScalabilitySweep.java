@@ -0,0 +1,451 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Finds where each algorithm stops scaling.
+ *
+ * Starting from a base building (100 floors, 4 lifts, 1000 passengers) it changes one of
+ * floors, lifts or passengers at a time over several decades, and for every algorithm
+ * fills the building with that many passengers and runs until everyone has been delivered
+ * (or the time limit is hit). For each run it records:
+ *  - steps per second
+ *  - ns per decision (one NextStep, from a DecisionTimer)
+ *  - bytes allocated per step (by the simulation thread)
+ *  - peak heap, including the building itself
+ *  - wall time until nobody is left waiting, and until everyone has been delivered
+ *
+ * Results go to sweep.csv as each run finishes, then a log-log SVG chart is drawn for every
+ * metric against every axis. The legend of each chart shows the fitted slope: a per step
+ * cost that grows with floors (slope near 1 on the ns/decision chart) means the algorithm
+ * scans every floor each step, and a drain time slope well above 1 is superlinear.
+ *
+ * Scan and MultiLiftLook only stop where someone is waiting or assigned, so riders going
+ * to a floor nobody else uses can be carried forever. Once the floors are empty a run gets
+ * enough steps for the lifts to cross the building twice; if riders are still on board it
+ * ends as "riders stranded" instead of waiting for the time limit.
+ *
+ * Single lift algorithms are not run on the lifts axis. Runs that run out of memory are
+ * recorded as such and the sweep carries on.
+ *
+ * Usage: java -Xmx8g -cp benchmarks/target/benchmarks.jar ScalabilitySweep [options]
+ *   --floors=10,100,...      floor counts to try (default 10 to 100000)
+ *   --lifts=1,4,...          lift counts to try (default 1 to 256)
+ *   --passengers=10,100,...  passenger counts to try (default 10 to 10000000)
+ *   --base=100,4,1000        floors, lifts and passengers kept fixed while another changes
+ *   --algorithms=Scan,Look   which algorithms to run (default Scan,Look,MyLift,MultiLiftLook)
+ *   --max-seconds=30         give up on a run after this long
+ *   --capacity=8             lift capacity
+ *   --out=sweep-results      where to write the table and charts
+ *   --quick                  smaller ranges and a 5 second limit
+ */
+public final class ScalabilitySweep {
+    static final String[] ALGORITHMS = {"Scan", "Look", "MyLift", "MultiLiftLook"};
+    static final String[] AXES = {"floors", "lifts", "passengers"};
+
+    // how often (in steps) to check the time limit
+    private static final int CHECK_EVERY = 256;
+
+    private ScalabilitySweep() {}
+
+    /**
+     * What one run measured.
+     */
+    static final class Result {
+        String algorithm;
+        String axis;
+        int floors;
+        int lifts;
+        long passengers;
+        long steps;
+        boolean drained;
+        long clearNanos = -1;
+        long wallNanos;
+        double stepsPerSecond;
+        double nanosPerDecision;
+        long p99NanosPerDecision;
+        double bytesPerStep;
+        long peakHeapBytes;
+        String status = "ok";
+
+        // the swept value
+        double axisValue() {
+            switch (axis) {
+                case "floors":
+                    return floors;
+                case "lifts":
+                    return lifts;
+                default:
+                    return passengers;
+            }
+        }
+
+        static String csvHeader() {
+            return "algorithm,axis,floors,lifts,passengers,steps,drained,clear_ms,wall_ms,steps_per_sec,"
+                    + "ns_per_decision,p99_ns_per_decision,bytes_per_step,peak_heap_bytes,status";
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%b,%.3f,%.3f,%.1f,%.1f,%d,%.1f,%d,%s",
+                    algorithm, axis, floors, lifts, passengers, steps, drained, clearNanos / 1e6, wallNanos / 1e6, stepsPerSecond,
+                    nanosPerDecision, p99NanosPerDecision, bytesPerStep, peakHeapBytes, status);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long[] floors = {10, 100, 1_000, 10_000, 100_000};
+        long[] lifts = {1, 4, 16, 64, 256};
+        long[] passengers = {10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+        long[] base = {100, 4, 1_000};
+        String[] algorithms = ALGORITHMS;
+        long maxSeconds = 30;
+        int capacity = 8;
+        Path out = Paths.get("sweep-results");
+
+        for (String arg : args) {
+            String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+            if (arg.equals("--quick")) {
+                floors = new long[] {10, 100, 1_000, 10_000};
+                lifts = new long[] {1, 4, 16, 64};
+                passengers = new long[] {10, 100, 1_000, 10_000, 100_000};
+                maxSeconds = 5;
+            } else if (arg.startsWith("--floors=")) {
+                floors = parseList(value);
+            } else if (arg.startsWith("--lifts=")) {
+                lifts = parseList(value);
+            } else if (arg.startsWith("--passengers=")) {
+                passengers = parseList(value);
+            } else if (arg.startsWith("--base=")) {
+                base = parseList(value);
+                if (base.length != 3) {
+                    throw new IllegalArgumentException("--base needs floors,lifts,passengers");
+                }
+            } else if (arg.startsWith("--algorithms=")) {
+                algorithms = value.split(",");
+            } else if (arg.startsWith("--max-seconds=")) {
+                maxSeconds = Long.parseLong(value);
+            } else if (arg.startsWith("--capacity=")) {
+                capacity = Integer.parseInt(value);
+            } else if (arg.startsWith("--out=")) {
+                out = Paths.get(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        Files.createDirectories(out);
+        List<Result> results = new ArrayList<>();
+
+        // let the JIT compile each algorithm first so the first points aren't interpreted
+        System.out.println("Warming up...");
+        for (String algorithm : algorithms) {
+            run(algorithm, (int) base[0], algorithm.equals("MultiLiftLook") ? (int) base[1] : 1, base[2], capacity,
+                    1_000_000_000L);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-14s %-10s %8s %5s %9s %10s %12s %12s %10s %8s %8s  %s",
+                "algorithm", "axis", "floors", "lifts", "people", "steps/s", "ns/decision", "B/step",
+                "heap MB", "clear s", "drain s", "status"));
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(out.resolve("sweep.csv")))) {
+            csv.println(Result.csvHeader());
+            for (String axis : AXES) {
+                long[] values = axis.equals("floors") ? floors : axis.equals("lifts") ? lifts : passengers;
+                for (long value : values) {
+                    for (String algorithm : algorithms) {
+                        if (axis.equals("lifts") && !algorithm.equals("MultiLiftLook")) {
+                            continue;
+                        }
+                        int runFloors = (int) (axis.equals("floors") ? value : base[0]);
+                        int runLifts = algorithm.equals("MultiLiftLook")
+                                ? (int) (axis.equals("lifts") ? value : base[1]) : 1;
+                        long runPassengers = axis.equals("passengers") ? value : base[2];
+
+                        Result result = run(algorithm, runFloors, runLifts, runPassengers, capacity,
+                                maxSeconds * 1_000_000_000L);
+                        result.axis = axis;
+                        results.add(result);
+                        csv.println(result.toCsv());
+                        csv.flush();
+                        System.out.println(String.format(Locale.ROOT,
+                                "%-14s %-10s %8d %5d %9d %10.0f %12.0f %12.1f %10.1f %8s %8s  %s",
+                                algorithm, axis, runFloors, runLifts, runPassengers, result.stepsPerSecond,
+                                result.nanosPerDecision, result.bytesPerStep, result.peakHeapBytes / 1e6,
+                                result.clearNanos >= 0
+                                        ? String.format(Locale.ROOT, "%.2f", result.clearNanos / 1e9) : "-",
+                                result.drained ? String.format(Locale.ROOT, "%.2f", result.wallNanos / 1e9) : "-",
+                                result.status));
+                    }
+                }
+            }
+        }
+
+        System.out.println("\nFitted log-log slopes (0 constant, 1 linear, 2 quadratic):");
+        plot(results, out);
+        System.out.println("\nWrote " + out.resolve("sweep.csv") + " and charts to " + out);
+    }
+
+    /**
+     * Fill a building and run one algorithm until everyone is delivered or time runs out.
+     */
+    static Result run(String algorithm, int floors, int lifts, long passengers, int capacity, long maxNanos) {
+        Result result = new Result();
+        result.algorithm = algorithm;
+        result.floors = floors;
+        result.lifts = lifts;
+        result.passengers = passengers;
+
+        // start each run from as clean a heap as we can get
+        System.gc();
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        long thread = Thread.currentThread().getId();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            HashMap<Integer, List<Integer>> requests = placePassengers(floors, passengers, 1);
+            DecisionTimer timer = new DecisionTimer();
+            Stepper stepper;
+            if (algorithm.equals("MultiLiftLook")) {
+                stepper = multiLift(MultiLiftBuilding.FromRequests(floors, capacity, requests, lifts), timer);
+            } else {
+                stepper = singleLift(algorithm, Building.FromRequests(floors, capacity, requests), timer);
+            }
+            requests = null;
+
+            long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long steps = 0;
+            long clearedAt = stepper.waiting() == 0 ? 0 : -1;
+            boolean drained = stepper.drained();
+            while (!drained) {
+                stepper.step();
+                steps++;
+                if (clearedAt < 0 && stepper.waiting() == 0) {
+                    clearedAt = steps;
+                    result.clearNanos = System.nanoTime() - start;
+                }
+                drained = stepper.drained();
+                if (!drained && clearedAt >= 0 && steps - clearedAt > 4L * floors) {
+                    result.status = "riders stranded";
+                    break;
+                }
+                if (steps % CHECK_EVERY == 0 && System.nanoTime() - start > maxNanos) {
+                    result.status = "time limit";
+                    break;
+                }
+            }
+            long wall = System.nanoTime() - start;
+            long allocated = threads == null ? -1 : threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+            LatencyHistogram decisions = timer.getHistogram(DecisionTimer.STEP);
+            result.steps = steps;
+            result.drained = drained;
+            result.wallNanos = wall;
+            result.stepsPerSecond = wall == 0 ? 0 : steps / (wall / 1e9);
+            result.nanosPerDecision = decisions.getMean();
+            result.p99NanosPerDecision = decisions.getValueAtPercentile(99);
+            result.bytesPerStep = steps == 0 || allocated < 0 ? 0 : (double) allocated / steps;
+        } catch (OutOfMemoryError e) {
+            result.status = "out of memory";
+        } catch (InvalidBuildingConfiguration e) {
+            result.status = "invalid building";
+        } finally {
+            System.setOut(console);
+        }
+
+        for (MemoryPoolMXBean pool : heapPools) {
+            result.peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+        return result;
+    }
+
+    // passengers on random floors going to random other floors (floor indexes, like PassengerGenerator)
+    static HashMap<Integer, List<Integer>> placePassengers(int floors, long passengers, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        HashMap<Integer, List<Integer>> requests = new HashMap<>();
+        for (long i = 0; i < passengers; i++) {
+            int floor = random.nextInt(floors);
+            int destination = random.nextInt(floors - 1);
+            if (destination >= floor) {
+                destination++;
+            }
+            // the map is keyed by floor number, which starts at 1
+            requests.computeIfAbsent(floor + 1, f -> new ArrayList<>()).add(destination);
+        }
+        return requests;
+    }
+
+    // the two algorithm families share no type, this lets run() treat them the same
+    private interface Stepper {
+        void step() throws InvalidBuildingConfiguration;
+
+        long waiting();
+
+        boolean drained();
+    }
+
+    private static Stepper singleLift(String name, Building building, DecisionTimer timer) {
+        Algorithm algorithm;
+        switch (name) {
+            case "Scan":
+                algorithm = new Scan(building);
+                break;
+            case "Look":
+                algorithm = new Look(building);
+                break;
+            case "MyLift":
+                algorithm = new MyLift(building, SimClock.simulated(1000));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown algorithm " + name + ", expected one of "
+                        + Arrays.toString(ALGORITHMS));
+        }
+        algorithm.setDecisionTimer(timer);
+        SimMetrics metrics = building.metrics();
+        LiftState lift = building.getLift();
+        return new Stepper() {
+            @Override
+            public void step() throws InvalidBuildingConfiguration {
+                algorithm.NextStep();
+            }
+
+            @Override
+            public long waiting() {
+                return metrics.getWaiting();
+            }
+
+            @Override
+            public boolean drained() {
+                return metrics.getWaiting() == 0 && lift.Occupancy() == 0;
+            }
+        };
+    }
+
+    private static Stepper multiLift(MultiLiftBuilding building, DecisionTimer timer) {
+        MultiLiftLook algorithm = new MultiLiftLook(building, SimClock.simulated(1000));
+        algorithm.setDecisionTimer(timer);
+        SimMetrics metrics = building.metrics();
+        LiftState[] lifts = building.getAllLifts();
+        return new Stepper() {
+            @Override
+            public void step() throws InvalidBuildingConfiguration {
+                algorithm.NextStep();
+            }
+
+            @Override
+            public long waiting() {
+                return metrics.getWaiting();
+            }
+
+            @Override
+            public boolean drained() {
+                if (metrics.getWaiting() != 0) {
+                    return false;
+                }
+                for (LiftState lift : lifts) {
+                    if (lift.Occupancy() != 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    // null when the JVM can't count allocations
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    // one chart per metric per axis
+    private static void plot(List<Result> results, Path out) throws IOException {
+        String[] metrics = {"steps_per_sec", "ns_per_decision", "bytes_per_step", "peak_heap_bytes", "clear_seconds",
+                "drain_seconds"};
+        String[] labels = {"steps / second", "ns / decision", "bytes allocated / step", "peak heap (bytes)",
+                "wall time until nobody waits (s)", "wall time to deliver everyone (s)"};
+
+        for (String axis : AXES) {
+            for (int m = 0; m < metrics.length; m++) {
+                LogLogPlot plot = new LogLogPlot(labels[m] + " against " + axis, axis, labels[m]);
+                // runs that hit the time limit still say how fast each step was
+                for (Result r : results) {
+                    if (r.axis.equals(axis)) {
+                        plot.add(r.algorithm, r.axisValue(), value(r, metrics[m]));
+                    }
+                }
+                if (plot.isEmpty()) {
+                    continue;
+                }
+                plot.write(out.resolve(metrics[m] + "-vs-" + axis + ".svg"));
+
+                // how the cost of a decision and of draining the building grows
+                if (metrics[m].equals("ns_per_decision") || metrics[m].endsWith("_seconds")) {
+                    for (String algorithm : ALGORITHMS) {
+                        double slope = plot.getSlope(algorithm);
+                        if (!Double.isNaN(slope)) {
+                            System.out.println(String.format(Locale.ROOT, "%-14s %-15s vs %-10s slope %5.2f%s",
+                                    algorithm, metrics[m], axis, slope, slope > 1.2 ? "  superlinear" : ""));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static double value(Result r, String metric) {
+        switch (metric) {
+            case "steps_per_sec":
+                return r.stepsPerSecond;
+            case "ns_per_decision":
+                return r.nanosPerDecision;
+            case "bytes_per_step":
+                return r.bytesPerStep;
+            case "peak_heap_bytes":
+                return r.peakHeapBytes;
+            case "clear_seconds":
+                return r.clearNanos >= 0 ? r.clearNanos / 1e9 : Double.NaN;
+            default:
+                return r.drained ? r.wallNanos / 1e9 : Double.NaN;
+        }
+    }
+
+    private static long[] parseList(String value) {
+        String[] parts = value.split(",");
+        long[] values = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Long.parseLong(parts[i].trim().replace("_", ""));
+        }
+        return values;
+    }
+}
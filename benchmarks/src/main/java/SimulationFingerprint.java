@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What each algorithm does with a fixed scenario: how many steps, moves, stops and
+ * boardings it makes and how long people wait, in steps.
+ *
+ * Everything runs on a simulated clock with seeded arrivals, so the numbers only change
+ * when an algorithm's behaviour changes. The regression gate (bench.RegressionGate) expects
+ * them to match the baseline exactly, next to the timing results that only have to be
+ * statistically the same.
+ */
+public final class SimulationFingerprint {
+    static final int FLOORS = 50;
+    static final int PEOPLE_PER_FLOOR = 3;
+    static final int LIFTS = 4;
+    static final int STEPS = 2000;
+    static final long SEED = 7;
+    static final double ARRIVALS_PER_STEP = 0.3;
+
+    private SimulationFingerprint() {}
+
+    // keyed "<algorithm>.<metric>", in a fixed order
+    public static Map<String, Long> fingerprint() throws IOException, InvalidBuildingConfiguration {
+        String scenario = BenchmarkWorkloads.writeScenario(FLOORS, 8, PEOPLE_PER_FLOOR, SEED).toString();
+        Map<String, Long> values = new LinkedHashMap<>();
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (String name : new String[] {"Scan", "Look", "MyLift"}) {
+                Building building = Building.FromFile(scenario);
+                Algorithm algorithm = name.equals("Scan") ? new Scan(building)
+                        : name.equals("Look") ? new Look(building)
+                        : new MyLift(building, SimClock.simulated(1000));
+                algorithm.setPassengerGenerator(new PassengerGenerator(SEED, ARRIVALS_PER_STEP));
+                JourneyTracker journeys = JourneyTracker.attach(algorithm);
+                for (int i = 0; i < STEPS; i++) {
+                    algorithm.NextStep();
+                }
+                record(values, name, algorithm.getStepCount(), building.metrics().snapshot(), journeys);
+            }
+
+            MultiLiftBuilding building = MultiLiftBuilding.FromFile(scenario, LIFTS);
+            MultiLiftLook algorithm = new MultiLiftLook(building, SimClock.simulated(1000));
+            algorithm.setPassengerGenerator(new PassengerGenerator(SEED, ARRIVALS_PER_STEP));
+            JourneyTracker journeys = JourneyTracker.attach(algorithm);
+            for (int i = 0; i < STEPS; i++) {
+                algorithm.NextStep();
+            }
+            record(values, "MultiLiftLook", algorithm.getStepCount(), building.metrics().snapshot(), journeys);
+        } finally {
+            System.setOut(console);
+        }
+        return values;
+    }
+
+    private static void record(Map<String, Long> values, String name, long steps, SimMetrics.Snapshot metrics,
+                               JourneyTracker journeys) {
+        values.put(name + ".steps", steps);
+        values.put(name + ".moves", metrics.getFloorsTravelled());
+        values.put(name + ".emptyMoves", metrics.getEmptyFloorsTravelled());
+        values.put(name + ".stops", metrics.getStops());
+        values.put(name + ".reversals", metrics.getReversals());
+        values.put(name + ".arrivals", metrics.getArrivals());
+        values.put(name + ".boardings", metrics.getBoardings());
+        values.put(name + ".waitingAtEnd", metrics.getWaitingNow());
+
+        LatencyHistogram waits = journeys.getWaitTimes();
+        values.put(name + ".waits", waits.getCount());
+        values.put(name + ".waitP50", waits.getValueAtPercentile(50));
+        values.put(name + ".waitP99", waits.getValueAtPercentile(99));
+        values.put(name + ".waitMax", waits.getMax());
+    }
+}
@@ -0,0 +1,46 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Building.FromFile on a generated scenario with load people on every floor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildingBenchmark {
+    @Param({"10", "100", "1000"})
+    public int floors;
+
+    @Param({"1", "10"})
+    public int load;
+
+    private LongSupplier fromFile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fromFile = Workloads.create("loadBuilding", Workloads.scenario(floors, load));
+    }
+
+    @Benchmark
+    public long fromFile() {
+        return fromFile.getAsLong();
+    }
+}
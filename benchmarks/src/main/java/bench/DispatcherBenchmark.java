@@ -0,0 +1,48 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * RequestDispatcher.getBestElevator for each floor in turn, with the lifts spread evenly
+ * over the building. Looks at every lift, so should grow with lifts and not with floors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatcherBenchmark {
+    @Param({"10", "100", "1000"})
+    public int floors;
+
+    @Param({"2", "8", "32"})
+    public int lifts;
+
+    private LongSupplier bestElevator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bestElevator = Workloads.create("bestElevator", floors, lifts);
+    }
+
+    @Benchmark
+    public long getBestElevator() {
+        return bestElevator.getAsLong();
+    }
+}
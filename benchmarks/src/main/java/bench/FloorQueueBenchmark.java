@@ -0,0 +1,71 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Floor queues under contention: 16 threads adding passengers, 64 lifts boarding them and
+ * one dispatcher taking snapshots of every queue length. Compares the per floor locks with
+ * one lock on the whole building. Scores are operations per microsecond for each role.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class FloorQueueBenchmark {
+    @Param({"100"})
+    public int floors;
+
+    @Param({"floor", "building"})
+    public String locking;
+
+    private LongSupplier produce;
+    private LongSupplier board;
+    private LongSupplier snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LongSupplier[] group = Workloads.createGroup("floorQueues", floors, locking);
+        produce = group[0];
+        board = group[1];
+        snapshot = group[2];
+    }
+
+    @Benchmark
+    @Group("building")
+    @GroupThreads(16)
+    public long produce() {
+        return produce.getAsLong();
+    }
+
+    @Benchmark
+    @Group("building")
+    @GroupThreads(64)
+    public long board() {
+        return board.getAsLong();
+    }
+
+    @Benchmark
+    @Group("building")
+    @GroupThreads(1)
+    public long snapshot() {
+        return snapshot.getAsLong();
+    }
+}
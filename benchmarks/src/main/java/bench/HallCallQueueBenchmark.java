@@ -0,0 +1,62 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * HallCallQueue with four threads adding calls and one draining them, as in live mode.
+ * The add score is calls per microsecond across all four producers. With SHED it counts
+ * shed calls too, so it shows the cost of adding whether or not there was room.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class HallCallQueueBenchmark {
+    @Param({"1024", "65536"})
+    public int capacity;
+
+    @Param({"BLOCK", "SHED"})
+    public String overflow;
+
+    private LongSupplier add;
+    private LongSupplier drain;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LongSupplier[] group = Workloads.createGroup("hallCalls", capacity, overflow);
+        add = group[0];
+        drain = group[1];
+    }
+
+    @Benchmark
+    @Group("calls")
+    @GroupThreads(4)
+    public long add() {
+        return add.getAsLong();
+    }
+
+    @Benchmark
+    @Group("calls")
+    @GroupThreads(1)
+    public long drain() {
+        return drain.getAsLong();
+    }
+}
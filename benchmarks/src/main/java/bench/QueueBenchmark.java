@@ -0,0 +1,70 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The request queues, each holding size requests: one add and one remove per operation.
+ * Queue.dequeue shifts the whole list, so its time grows with size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueueBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    // floors the requests are spread over
+    @Param({"100"})
+    public int floors;
+
+    private LongSupplier queue;
+    private LongSupplier elevatorRequestQueue;
+    private LongSupplier adjustment;
+    private LongSupplier directionalQueue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queue = Workloads.create("queue", size);
+        elevatorRequestQueue = Workloads.create("elevatorRequestQueue", size);
+        adjustment = Workloads.create("adjustment", size, floors);
+        directionalQueue = Workloads.create("directionalQueue", size, floors);
+    }
+
+    @Benchmark
+    public long queue() {
+        return queue.getAsLong();
+    }
+
+    @Benchmark
+    public long elevatorRequestQueue() {
+        return elevatorRequestQueue.getAsLong();
+    }
+
+    // re-ranks the size / floors requests on one floor
+    @Benchmark
+    public long adjustment() {
+        return adjustment.getAsLong();
+    }
+
+    @Benchmark
+    public long directionalQueue() {
+        return directionalQueue.getAsLong();
+    }
+}
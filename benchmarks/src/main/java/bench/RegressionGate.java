@@ -0,0 +1,381 @@
+package bench;
+
+import org.apache.commons.math3.stat.StatUtils;
+import org.apache.commons.math3.stat.inference.TTest;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Runs the benchmarks and fails if they got worse than a stored baseline.
+ *
+ * Every benchmark's per-iteration times (or throughputs) and allocation per operation are
+ * compared with the baseline's using Welch's t-test. A result is a regression only when the
+ * difference is both significant (p below --alpha) and big enough to matter (worse by more
+ * than --min-change), so noise on a busy machine doesn't fail the build and a large change
+ * seen in a single noisy iteration doesn't either.
+ *
+ * The simulation itself is also run for a fixed number of steps on a fixed scenario (see
+ * SimulationFingerprint). That runs on a simulated clock, so steps, moves, stops and wait
+ * times must match the baseline exactly; any difference means behaviour changed.
+ *
+ * Timings only mean anything on the machine they were recorded on, so the committed
+ * benchmarks/baseline.json only holds the simulation results. Against a baseline without
+ * timings the benchmarks are run and shown but can't fail; record timings on the machine
+ * that runs the gate with --update. --simulation-only skips the benchmarks altogether.
+ *
+ * Exits with 0 when nothing got worse, 1 on a regression or a simulation change, and 2 when
+ * there is no baseline to compare with.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar bench.RegressionGate [options] [benchmark regex...]
+ *   --baseline=benchmarks/baseline.json   baseline to compare with (or write)
+ *   --update                              record a new baseline instead of comparing
+ *   --quick                               shorter iterations (use the same when recording)
+ *   --simulation-only                     only check (or record) the simulation results
+ *   --alpha=0.01                          significance level
+ *   --min-change=0.10                     smallest relative slow down that counts
+ *   --save=current.json                   also write this run's results
+ */
+public final class RegressionGate {
+    static final String ALLOC = "gc.alloc.rate.norm";
+
+    // allocation differences below this many bytes per operation are ignored
+    private static final double MIN_ALLOC_BYTES = 16;
+
+    private RegressionGate() {}
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        Path baselineFile = Paths.get("benchmarks", "baseline.json");
+        Path saveFile = null;
+        boolean update = false;
+        boolean quick = false;
+        boolean simulationOnly = false;
+        double alpha = 0.01;
+        double minChange = 0.10;
+        List<String> includes = new ArrayList<>();
+
+        for (String arg : args) {
+            String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+            if (arg.startsWith("--baseline=")) {
+                baselineFile = Paths.get(value);
+            } else if (arg.startsWith("--save=")) {
+                saveFile = Paths.get(value);
+            } else if (arg.equals("--update")) {
+                update = true;
+            } else if (arg.equals("--quick")) {
+                quick = true;
+            } else if (arg.equals("--simulation-only")) {
+                simulationOnly = true;
+            } else if (arg.startsWith("--alpha=")) {
+                alpha = Double.parseDouble(value);
+            } else if (arg.startsWith("--min-change=")) {
+                minChange = Double.parseDouble(value);
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option " + arg);
+                System.exit(2);
+            } else {
+                includes.add(arg);
+            }
+        }
+
+        if (!update && !Files.exists(baselineFile)) {
+            System.err.println("No baseline at " + baselineFile + ", record one first with --update");
+            System.exit(2);
+        }
+
+        Map<String, Object> current = new LinkedHashMap<>();
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("quick", quick);
+        settings.put("include", includes.isEmpty() ? ".*" : String.join("|", includes));
+        settings.put("java", System.getProperty("java.version"));
+        current.put("settings", settings);
+        current.put("simulation", simulationFingerprint());
+        if (!simulationOnly) {
+            current.put("benchmarks", runBenchmarks(includes, quick));
+        }
+
+        if (saveFile != null) {
+            Files.write(saveFile, Json.write(current).getBytes(StandardCharsets.UTF_8));
+        }
+        if (update) {
+            Files.write(baselineFile, Json.write(current).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote baseline " + baselineFile);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> baseline = (Map<String, Object>) Json.parse(
+                new String(Files.readAllBytes(baselineFile), StandardCharsets.UTF_8));
+        int failures = compare(baseline, current, alpha, minChange);
+        if (failures > 0) {
+            System.out.println("\nFAILED: " + failures + " regression(s) against " + baselineFile);
+            System.exit(1);
+        }
+        System.out.println("\nNo regressions against " + baselineFile);
+    }
+
+    // runs the JMH benchmarks, keyed by benchmark and parameters
+    static Map<String, Object> runBenchmarks(List<String> includes, boolean quick) throws RunnerException {
+        // iterations in one JVM vary less than separate JVMs do (JIT decisions, memory
+        // layout), so several forks are needed for the test to see the real spread
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(includes.isEmpty() ? "bench\\..*Benchmark" : String.join("|", includes))
+                .addProfiler(GCProfiler.class)
+                .forks(quick ? 2 : 3);
+        if (quick) {
+            options.warmupIterations(2).warmupTime(TimeValue.milliseconds(500))
+                    .measurementIterations(4).measurementTime(TimeValue.milliseconds(500));
+        }
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        Map<String, Object> benchmarks = new TreeMap<>();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            List<Object> scores = new ArrayList<>();
+            List<Object> alloc = new ArrayList<>();
+            for (BenchmarkResult benchmark : result.getBenchmarkResults()) {
+                for (IterationResult iteration : benchmark.getIterationResults()) {
+                    scores.add(iteration.getPrimaryResult().getScore());
+                    Result<?> allocated = iteration.getSecondaryResults().get(ALLOC);
+                    if (allocated != null) {
+                        alloc.add(allocated.getScore());
+                    }
+                }
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("mode", params.getMode().shortLabel());
+            entry.put("unit", result.getPrimaryResult().getScoreUnit());
+            entry.put("scores", scores);
+            entry.put("alloc", alloc);
+            benchmarks.put(name(params), entry);
+        }
+        return benchmarks;
+    }
+
+    // e.g. bench.StepBenchmark.nextStep[algorithm=Look,floors=100,load=0.5]
+    static String name(BenchmarkParams params) {
+        StringBuilder sb = new StringBuilder(params.getBenchmark());
+        if (!params.getParamsKeys().isEmpty()) {
+            sb.append('[');
+            boolean first = true;
+            for (String key : new TreeSet<>(params.getParamsKeys())) {
+                sb.append(first ? "" : ",").append(key).append('=').append(params.getParam(key));
+                first = false;
+            }
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+
+    // SimulationFingerprint is in the default package, see Workloads
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> simulationFingerprint() {
+        try {
+            Map<String, Long> values = (Map<String, Long>) Class.forName("SimulationFingerprint")
+                    .getMethod("fingerprint").invoke(null);
+            return new LinkedHashMap<>(values);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Simulation fingerprint failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Print a table of every difference and return how many count as failures.
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Map<String, Object> baseline, Map<String, Object> current, double alpha, double minChange) {
+        int failures = 0;
+
+        Map<String, Object> baseSettings = (Map<String, Object>) baseline.get("settings");
+        Map<String, Object> currentSettings = (Map<String, Object>) current.get("settings");
+        Map<String, Object> baseBench = (Map<String, Object>) baseline.get("benchmarks");
+        Map<String, Object> currentBench = (Map<String, Object>) current.get("benchmarks");
+        if (baseSettings != null && baseBench != null && currentBench != null
+                && !baseSettings.get("quick").equals(currentSettings.get("quick"))) {
+            System.out.println("Warning: baseline was recorded with quick=" + baseSettings.get("quick")
+                    + ", this run used quick=" + currentSettings.get("quick"));
+        }
+
+        // simulation results have to match exactly
+        Map<String, Object> baseSim = (Map<String, Object>) baseline.get("simulation");
+        Map<String, Object> currentSim = (Map<String, Object>) current.get("simulation");
+        List<String> simDiffs = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : baseSim.entrySet()) {
+            Object now = currentSim.get(entry.getKey());
+            if (now == null) {
+                simDiffs.add(String.format("  %-32s %12s -> %-12s", entry.getKey(), entry.getValue(), "missing"));
+            } else if (((Number) now).longValue() != ((Number) entry.getValue()).longValue()) {
+                simDiffs.add(String.format("  %-32s %12s -> %-12s", entry.getKey(), entry.getValue(), now));
+            }
+        }
+        for (String key : currentSim.keySet()) {
+            if (!baseSim.containsKey(key)) {
+                simDiffs.add(String.format("  %-32s %12s -> %-12s", key, "missing", currentSim.get(key)));
+            }
+        }
+        System.out.println("\n=== Simulation results (must match exactly) ===");
+        if (simDiffs.isEmpty()) {
+            System.out.println("  all " + baseSim.size() + " values match");
+        } else {
+            simDiffs.forEach(System.out::println);
+            failures += simDiffs.size();
+        }
+
+        // benchmarks only have to be statistically no worse
+        if (currentBench == null) {
+            return failures;
+        }
+        if (baseBench == null) {
+            // e.g. the committed baseline, which only has the simulation results
+            System.out.println("\nBaseline has no benchmark timings, record them on this machine with --update");
+            return failures;
+        }
+        System.out.println("\n=== Benchmarks (alpha " + alpha + ", min change " + percent(minChange) + ") ===");
+        System.out.println(String.format(Locale.ROOT, "%-70s %-6s %12s %12s %-6s %9s %9s  %s",
+                "benchmark", "metric", "baseline", "current", "unit", "change", "p", "verdict"));
+        for (Map.Entry<String, Object> entry : currentBench.entrySet()) {
+            Map<String, Object> now = (Map<String, Object>) entry.getValue();
+            Map<String, Object> before = (Map<String, Object>) baseBench.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format("%-70s %s", entry.getKey(), "new, not in baseline"));
+                continue;
+            }
+            // time per operation gets worse as it goes up, throughput as it goes down
+            boolean higherIsWorse = !Mode.Throughput.shortLabel().equals(now.get("mode"));
+            failures += compareMetric(entry.getKey(), "time", toArray(before.get("scores")),
+                    toArray(now.get("scores")), higherIsWorse, alpha, minChange, 0, (String) now.get("unit"));
+            failures += compareMetric(entry.getKey(), "alloc", toArray(before.get("alloc")),
+                    toArray(now.get("alloc")), true, alpha, minChange, MIN_ALLOC_BYTES, "B/op");
+        }
+        for (String key : baseBench.keySet()) {
+            if (!currentBench.containsKey(key)) {
+                System.out.println(String.format("%-70s %s", key, "not run"));
+            }
+        }
+        return failures;
+    }
+
+    // one row of the table, returns 1 for a regression
+    static int compareMetric(String name, String metric, double[] before, double[] now, boolean higherIsWorse,
+                             double alpha, double minChange, double minAbsolute, String unit) {
+        if (before.length == 0 || now.length == 0) {
+            return 0;
+        }
+        double meanBefore = StatUtils.mean(before);
+        double meanNow = StatUtils.mean(now);
+        double change = change(meanBefore, meanNow);
+        double p = pValue(before, now);
+        String verdict = verdict(before, now, higherIsWorse, alpha, minChange, minAbsolute);
+
+        // only show rows worth looking at, plus the time of everything
+        if (metric.equals("time") || !verdict.startsWith("ok")) {
+            System.out.println(String.format(Locale.ROOT, "%-70s %-6s %12s %12s %-6s %9s %9s  %s",
+                    shorten(name, 70), metric, format(meanBefore), format(meanNow), unit == null ? "" : unit,
+                    signedPercent(change), Double.isNaN(p) ? "-" : String.format(Locale.ROOT, "%.4f", p), verdict));
+        }
+        return verdict.startsWith("REGRESSION") ? 1 : 0;
+    }
+
+    /**
+     * "REGRESSION", "improved" or "ok", with " (no stats)" added when there were too few
+     * values for a t-test. Neither side may be empty.
+     */
+    static String verdict(double[] before, double[] now, boolean higherIsWorse,
+                          double alpha, double minChange, double minAbsolute) {
+        double meanBefore = StatUtils.mean(before);
+        double meanNow = StatUtils.mean(now);
+        double change = change(meanBefore, meanNow);
+        double worse = higherIsWorse ? change : -change;
+        double p = pValue(before, now);
+
+        boolean bigEnough = Math.abs(meanNow - meanBefore) >= minAbsolute;
+        if (Double.isNaN(p)) {
+            // too few iterations for a test, only a change of twice the minimum counts
+            return bigEnough && worse > 2 * minChange ? "REGRESSION (no stats)" : "ok (no stats)";
+        } else if (p < alpha && bigEnough && worse > minChange) {
+            return "REGRESSION";
+        } else if (p < alpha && bigEnough && worse < -minChange) {
+            return "improved";
+        }
+        return "ok";
+    }
+
+    // relative change, infinite when the baseline was 0
+    private static double change(double before, double now) {
+        return before == 0 ? (now == 0 ? 0 : Double.POSITIVE_INFINITY) : (now - before) / before;
+    }
+
+    /**
+     * Two sided p value of Welch's t-test, NaN when either side has fewer than two values.
+     * When neither side varies at all (common for allocation) the answer is 1 if they are
+     * equal and 0 if not.
+     */
+    static double pValue(double[] before, double[] now) {
+        if (before.length < 2 || now.length < 2) {
+            return Double.NaN;
+        }
+        if (StatUtils.variance(before) == 0 && StatUtils.variance(now) == 0) {
+            return StatUtils.mean(before) == StatUtils.mean(now) ? 1 : 0;
+        }
+        return new TTest().tTest(before, now);
+    }
+
+    private static double[] toArray(Object list) {
+        if (list == null) {
+            return new double[0];
+        }
+        List<?> values = (List<?>) list;
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ((Number) values.get(i)).doubleValue();
+        }
+        return array;
+    }
+
+    private static String format(double value) {
+        return Math.abs(value) >= 100 ? String.format(Locale.ROOT, "%.0f", value)
+                : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String percent(double fraction) {
+        return String.format(Locale.ROOT, "%.0f%%", fraction * 100);
+    }
+
+    private static String signedPercent(double fraction) {
+        if (Double.isInfinite(fraction)) {
+            return "new";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%", fraction * 100);
+    }
+
+    private static String shorten(String name, int width) {
+        String shortName = name.startsWith("bench.") ? name.substring("bench.".length()) : name;
+        return shortName.length() <= width ? shortName : shortName.substring(0, width - 3) + "...";
+    }
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * One NextStep of the single lift algorithms. Each building starts with 2 people on every
+ * floor and then gets load new arrivals per step on average, so the run doesn't drain.
+ * The console output the algorithms make is thrown away but still built, as it would be
+ * in a real run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StepBenchmark {
+    @Param({"Scan", "Look", "MyLift"})
+    public String algorithm;
+
+    @Param({"10", "100", "1000"})
+    public int floors;
+
+    // arrivals per step
+    @Param({"0.1", "0.5"})
+    public double load;
+
+    private LongSupplier step;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = Workloads.silence();
+        step = Workloads.create("singleLiftStep", algorithm, floors, 2, load);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public long nextStep() {
+        return step.getAsLong();
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds the workloads in BenchmarkWorkloads, which is in the default package and so can't
+ * be referred to from here. Only used while setting up, never while measuring.
+ */
+final class Workloads {
+    private static final String WORKLOADS = "BenchmarkWorkloads";
+
+    private Workloads() {}
+
+    static LongSupplier create(String name, Object... args) {
+        return (LongSupplier) invoke(name, args);
+    }
+
+    // a workload with several operations timed at once, e.g. producers and a consumer
+    static LongSupplier[] createGroup(String name, Object... args) {
+        return (LongSupplier[]) invoke(name, args);
+    }
+
+    private static Object invoke(String name, Object... args) {
+        try {
+            for (Method method : Class.forName(WORKLOADS).getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                    return method.invoke(null, args);
+                }
+            }
+            throw new IllegalArgumentException("No workload called " + name);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Setting up " + name + " failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // path of a generated scenario file
+    static String scenario(int floors, int peoplePerFloor) {
+        try {
+            Method method = Class.forName(WORKLOADS)
+                    .getMethod("writeScenario", int.class, int.class, int.class, long.class);
+            return method.invoke(null, floors, 8, peoplePerFloor, 1L).toString();
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Writing scenario failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The algorithms print every move, which would swamp what is being measured with
+     * console I/O. Returns the real stdout so it can be put back afterwards.
+     */
+    static PrintStream silence() {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return console;
+    }
+}
@@ -0,0 +1,153 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the regression gate's verdicts, its JSON and the committed baseline
+ */
+public class RegressionGateTest {
+
+    public static void main(String[] args) {
+        testRegression();
+        testImprovement();
+        testZeroVariance();
+        testNoStats();
+        testJsonRoundTrip();
+        testCommittedBaseline();
+
+        System.out.println("All regression gate tests passed!");
+    }
+
+    // a clear slow down fails, in either direction of "worse"
+    static void testRegression() {
+        System.out.println("Testing a regression is caught...");
+        double[] before = {100, 101, 99, 100, 102, 98};
+        double[] slower = {130, 131, 129, 130, 132, 128};
+        check(RegressionGate.verdict(before, slower, true, 0.01, 0.10, 0).equals("REGRESSION"),
+                "30% slower should be a regression");
+        check(RegressionGate.verdict(slower, before, false, 0.01, 0.10, 0).equals("REGRESSION"),
+                "30% less throughput should be a regression");
+        check(RegressionGate.compareMetric("bench.X.x", "time", before, slower, true, 0.01, 0.10, 0, "ns/op") == 1,
+                "a regression should count as a failure");
+
+        // significant but smaller than the minimum change
+        double[] bitSlower = {105, 106, 104, 105, 107, 103};
+        check(RegressionGate.verdict(before, bitSlower, true, 0.01, 0.10, 0).equals("ok"),
+                "5% slower is below the minimum change");
+        // big but too noisy to be sure of
+        double[] noisy = {60, 200, 90, 250, 70, 110};
+        check(RegressionGate.verdict(before, noisy, true, 0.01, 0.10, 0).equals("ok"),
+                "a noisy change shouldn't count");
+        System.out.println("Regression test passed!");
+    }
+
+    static void testImprovement() {
+        System.out.println("Testing an improvement isn't a failure...");
+        double[] before = {100, 101, 99, 100, 102, 98};
+        double[] faster = {70, 71, 69, 70, 72, 68};
+        check(RegressionGate.verdict(before, faster, true, 0.01, 0.10, 0).equals("improved"),
+                "30% faster should be an improvement");
+        check(RegressionGate.compareMetric("bench.X.x", "time", before, faster, true, 0.01, 0.10, 0, "ns/op") == 0,
+                "an improvement shouldn't fail");
+        System.out.println("Improvement test passed!");
+    }
+
+    // allocation is often exactly the same every iteration, which a t-test can't handle
+    static void testZeroVariance() {
+        System.out.println("Testing values that never vary...");
+        double[] same = {48, 48, 48, 48};
+        check(RegressionGate.pValue(same, same) == 1, "equal constants should have p 1");
+        check(RegressionGate.verdict(same, same, true, 0.01, 0.10, 16).equals("ok"), "no change should be ok");
+
+        double[] more = {96, 96, 96, 96};
+        check(RegressionGate.pValue(same, more) == 0, "different constants should have p 0");
+        check(RegressionGate.verdict(same, more, true, 0.01, 0.10, 16).equals("REGRESSION"),
+                "twice the allocation should be a regression");
+
+        // a big relative change of a few bytes is below the absolute minimum
+        double[] little = {8, 8, 8, 8};
+        double[] bitMore = {16, 16, 16, 16};
+        check(RegressionGate.verdict(little, bitMore, true, 0.01, 0.10, 16).equals("ok"),
+                "8 more bytes is below the minimum");
+        System.out.println("Zero variance test passed!");
+    }
+
+    // with one value a side there's no test, and only twice the minimum change counts
+    static void testNoStats() {
+        System.out.println("Testing too few values for a t-test...");
+        check(Double.isNaN(RegressionGate.pValue(new double[] {100}, new double[] {100, 101})),
+                "one value shouldn't give a p value");
+        check(RegressionGate.verdict(new double[] {100}, new double[] {115}, true, 0.01, 0.10, 0)
+                .equals("ok (no stats)"), "15% with no stats should be ok");
+        check(RegressionGate.verdict(new double[] {100}, new double[] {125}, true, 0.01, 0.10, 0)
+                .equals("REGRESSION (no stats)"), "25% with no stats should be a regression");
+        check(RegressionGate.compareMetric("bench.X.x", "time", new double[0], new double[] {500}, true,
+                0.01, 0.10, 0, "ns/op") == 0, "nothing to compare with shouldn't fail");
+        System.out.println("No stats test passed!");
+    }
+
+    static void testJsonRoundTrip() {
+        System.out.println("Testing JSON round trip...");
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("quick", true);
+        settings.put("include", "bench\\..*\"Step\"\n\ttab");
+        settings.put("missing", null);
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("scores", new ArrayList<>(Arrays.asList(1.5, 2.0, 1e-9, 123456.789)));
+        entry.put("alloc", new ArrayList<>());
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("settings", settings);
+        root.put("count", 9_000_000_000L);
+        root.put("negative", -3L);
+        root.put("empty", new LinkedHashMap<>());
+        root.put("entry", entry);
+
+        String text = Json.write(root);
+        Object parsed = Json.parse(text);
+        check(root.equals(parsed), "round trip changed the value:\n" + text + "\n" + parsed);
+        check(Json.write(parsed).equals(text), "writing again should give the same text");
+        check(new ArrayList<>(((Map<?, ?>) parsed).keySet()).equals(new ArrayList<>(root.keySet())),
+                "key order should be kept");
+
+        boolean refused = false;
+        try {
+            Json.parse("{\"a\": 1} extra");
+        } catch (IllegalArgumentException e) {
+            refused = true;
+        }
+        check(refused, "text after the end should be refused");
+        System.out.println("JSON round trip test passed!");
+    }
+
+    // the committed baseline has to match the simulation as it is now, or the gate fails
+    @SuppressWarnings("unchecked")
+    static void testCommittedBaseline() {
+        System.out.println("Testing the committed baseline matches the simulation...");
+        try {
+            Map<String, Object> baseline = (Map<String, Object>) Json.parse(
+                    new String(Files.readAllBytes(Paths.get("baseline.json")), StandardCharsets.UTF_8));
+            Map<String, Object> current = new LinkedHashMap<>();
+            current.put("settings", baseline.get("settings"));
+            current.put("simulation", RegressionGate.simulationFingerprint());
+            check(RegressionGate.compare(baseline, current, 0.01, 0.10) == 0,
+                    "simulation results differ from baseline.json, record it again with --update --simulation-only");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        System.out.println("Committed baseline test passed!");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException("Test failed: " + message);
+        }
+    }
+}
@@ -1,15 +1,82 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 // generic interface for algorithms
 public abstract class Algorithm {
     Building building;
 
+    // how many steps have been run so far
+    long stepCount = 0;
+
+    // the time the algorithm sees
+    final SimClock clock;
+
+    // adds new passengers at the start of every step, null for none
+    private PassengerGenerator arrivals;
+
+    // times each decision, off unless one is set
+    private DecisionTimer timer = DecisionTimer.off();
+
     public Algorithm(Building building) {
+        this(building, SimClock.system());
+    }
+
+    public Algorithm(Building building, SimClock clock) {
         this.building = building;
+        this.clock = clock;
     }
 
-    public abstract Building NextStep() throws InvalidBuildingConfiguration;
-}
+    // runs one step and lets anyone listening on the building know about it
+    public final Building NextStep() throws InvalidBuildingConfiguration {
+        SimulationEvents events = building.events();
+        events.stepStarted(stepCount);
+        if (arrivals != null) {
+            arrivals.addArrivals(building);
+        }
+        JfrEvents.Step jfrStep = JfrEvents.beginStep();
+        timer.beginStep(stepCount);
+        Building result = Step();
+        timer.endStep();
+        JfrEvents.endStep(jfrStep, this, stepCount);
+        building.metrics().stepFinished();
+        building.energy().stepFinished();
+        events.stepFinished(stepCount);
+        JfrEvents.queueSample(building.getFloors(), stepCount);
+        stepCount++;
+        clock.tick();
+        return result;
+    }
+
+    // the actual algorithm - moves the lift and handles floors for one step
+    protected abstract Building Step() throws InvalidBuildingConfiguration;
 
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    public SimClock getClock() {
+        return clock;
+    }
+
+    public PassengerGenerator getPassengerGenerator() {
+        return arrivals;
+    }
 
+    public void setPassengerGenerator(PassengerGenerator arrivals) {
+        this.arrivals = arrivals;
+    }
 
+    public DecisionTimer getDecisionTimer() {
+        return timer;
+    }
 
+    public void setDecisionTimer(DecisionTimer timer) {
+        this.timer = timer == null ? DecisionTimer.off() : timer;
+    }
 
+    // algorithms that remember things between steps save and load them here for checkpoints
+    protected void writeState(DataOutput out) throws IOException {}
+
+    protected void readState(DataInput in) throws IOException {}
+}
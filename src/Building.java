@@ -5,6 +5,15 @@ public final class Building {
     private FloorsState floors;
     private LiftState lift;
 
+    // listeners for things happening in the building (created on first use)
+    private SimulationEvents events;
+
+    // counters for this building
+    private SimMetrics metrics;
+
+    // energy used by the lift
+    private EnergyMeter energy;
+
     private Building() {}
 
     public FloorState GetCurrentFloor() {
@@ -42,14 +51,48 @@ public final class Building {
     // lets in max
     // lets out people wanting to go the floor
     public void Stop() {
+        int floor = lift.getCurrentFloor();
+
         // people who want to get out
-        lift.RemoveAllRequestsForFloor(lift.getCurrentFloor());
+        int before = lift.Occupancy();
+        lift.RemoveAllRequestsForFloor(floor);
+        int alighted = before - lift.Occupancy();
+
+        int waiting = GetCurrentFloorRequests().size();
         this.AdmitMax();
+
+        int boarded = waiting - GetCurrentFloorRequests().size();
+        metrics().liftStopped(0, alighted, boarded);
+        energy.liftStopped(0, boarded);
+        JfrEvents.liftStop(0, floor, alighted, boarded);
+        events().liftStopped(0, floor, alighted, boarded);
+    }
+
+    // empties the current floor without putting anyone in the lift
+    // LOOK and MYLIFT treat a stop as picking everyone up and dropping them off at once
+    public int ClearCurrentFloor() {
+        Queue requests = GetCurrentFloorRequests();
+        int count = requests.size();
+        while (!requests.isEmpty()) {
+            requests.dequeue();
+        }
+        metrics().liftStopped(0, 0, count);
+        energy.liftStopped(0, count);
+        JfrEvents.liftStop(0, lift.getCurrentFloor(), 0, count);
+        events().liftStopped(0, lift.getCurrentFloor(), 0, count);
+        return count;
+    }
+
+    // adds someone waiting on a floor who wants to go to destination
+    public void AddPassenger(int floor, int destination) {
+        floors.GetFloors().get(floor).AddFloorRequest(destination);
+        metrics().passengerArrived();
+        events().passengerArrived(floor, destination);
     }
 
     // checks if the lift is at the highest
     public boolean IsLiftAtTop() {
-        return floors.GetFloors().size() == (lift.currentFloor - 1);
+        return lift.currentFloor == floors.GetFloors().size() - 1;
     }
 
     // checks if the lift is at the bottom
@@ -68,6 +111,8 @@ public final class Building {
             return;
         }
         lift.currentFloor++;
+        metrics().liftMoved(0, 1);
+        energy.liftMoved(0, true);
     }
 
     public void MoveLiftDown() {
@@ -75,17 +120,24 @@ public final class Building {
             return;
         }
         lift.currentFloor--;
+        metrics().liftMoved(0, -1);
+        energy.liftMoved(0, false);
     }
 
     // move lift one space in current direction of travel
     public void LiftContinue() {
-        if (CanLiftContinue()) {
+        // turn around when we can't go any further this way
+        if ((lift.goingUp && IsLiftAtTop()) || (!lift.goingUp && IsLiftAtBottom())) {
             lift.goingUp = !lift.goingUp;
         }
         if (lift.goingUp) {
             lift.currentFloor = lift.currentFloor + 1;
+            metrics().liftMoved(0, 1);
+            energy.liftMoved(0, true);
         } else {
             lift.currentFloor = lift.currentFloor - 1;
+            metrics().liftMoved(0, -1);
+            energy.liftMoved(0, false);
         }
     }
 
@@ -98,9 +150,26 @@ public final class Building {
         return floors;
     }
 
+    // events for this building, listeners register here
+    public SimulationEvents events() {
+        if (events == null) {
+            events = new SimulationEvents(new LiftState[] { lift });
+        }
+        return events;
+    }
+
+    // counters for this building
+    public SimMetrics metrics() {
+        return metrics;
+    }
+
+    // energy used by the lift, set a different EnergyModel here
+    public EnergyMeter energy() {
+        return energy;
+    }
+
     // Load Building from a Text File
     public static Building FromFile(String filename) throws IOException {
-        Building building = new Building();
         BufferedReader reader = new BufferedReader(new FileReader(filename));
 
         String line;
@@ -131,9 +200,18 @@ public final class Building {
         }
         reader.close();
 
+        return FromRequests(numFloors, capacity, requestsMap);
+    }
+
+    // Build a building without a file, requestsMap is keyed by floor number starting at 1
+    public static Building FromRequests(int numFloors, int capacity, HashMap<Integer, List<Integer>> requestsMap) {
+        Building building = new Building();
+
         //Uses the constructor for LiftState
         building.lift = new LiftState(numFloors, capacity); 
         building.floors = new FloorsState(numFloors, requestsMap);
+        building.metrics = new SimMetrics(building.floors, new LiftState[] { building.lift });
+        building.energy = new EnergyMeter(new LiftState[] { building.lift });
 
         return building;
     }
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * A copy of everything needed to draw or analyse a building at one step:
+ * lift positions, directions and occupancy, queue lengths and dispatcher assignments.
+ * Used as replay keyframes and as the model the GUIs draw from.
+ * Values are plain arrays so copying one is cheap.
+ */
+public final class BuildingSnapshot {
+    // how many steps have been run when this was taken
+    long step;
+
+    final int[] liftCapacity;
+    final int[] liftFloor;
+    final boolean[] liftUp;
+    final int[] liftOccupancy;
+
+    final int[] queueLength;
+    final int[] assignment; // lift assigned to each floor, -1 for none
+
+    BuildingSnapshot(int numFloors, int numLifts) {
+        liftCapacity = new int[numLifts];
+        liftFloor = new int[numLifts];
+        liftUp = new boolean[numLifts];
+        liftOccupancy = new int[numLifts];
+        queueLength = new int[numFloors];
+        assignment = new int[numFloors];
+        Arrays.fill(assignment, -1);
+    }
+
+    // take a snapshot of a live building (dispatcher can be null)
+    public static BuildingSnapshot capture(FloorsState floors, LiftState[] lifts,
+                                           RequestDispatcher dispatcher, long step) {
+        int numFloors = floors.GetFloors().size();
+        BuildingSnapshot snapshot = new BuildingSnapshot(numFloors, lifts.length);
+        snapshot.step = step;
+
+        for (int i = 0; i < lifts.length; i++) {
+            snapshot.liftCapacity[i] = lifts[i].getCapacity();
+            snapshot.liftFloor[i] = lifts[i].getCurrentFloor();
+            snapshot.liftUp[i] = lifts[i].isGoingUp();
+            snapshot.liftOccupancy[i] = lifts[i].Occupancy();
+        }
+        for (int floor = 0; floor < numFloors; floor++) {
+            snapshot.queueLength[floor] = floors.GetFloors().get(floor).GetFloorRequests().size();
+            if (dispatcher != null) {
+                snapshot.assignment[floor] = dispatcher.getAssignment(floor);
+            }
+        }
+        return snapshot;
+    }
+
+    public static BuildingSnapshot capture(Algorithm algorithm) {
+        Building building = algorithm.building;
+        return capture(building.getFloors(), new LiftState[] { building.getLift() }, null,
+                algorithm.getStepCount());
+    }
+
+    public static BuildingSnapshot capture(MultiLiftAlgorithm algorithm) {
+        MultiLiftBuilding building = algorithm.building;
+        return capture(building.getFloors(), building.getAllLifts(), algorithm.dispatcher,
+                algorithm.getStepCount());
+    }
+
+    // copy the values of another snapshot of the same building into this one
+    void copyFrom(BuildingSnapshot other) {
+        step = other.step;
+        System.arraycopy(other.liftCapacity, 0, liftCapacity, 0, liftCapacity.length);
+        System.arraycopy(other.liftFloor, 0, liftFloor, 0, liftFloor.length);
+        System.arraycopy(other.liftUp, 0, liftUp, 0, liftUp.length);
+        System.arraycopy(other.liftOccupancy, 0, liftOccupancy, 0, liftOccupancy.length);
+        System.arraycopy(other.queueLength, 0, queueLength, 0, queueLength.length);
+        System.arraycopy(other.assignment, 0, assignment, 0, assignment.length);
+    }
+
+    public BuildingSnapshot copy() {
+        BuildingSnapshot copy = new BuildingSnapshot(queueLength.length, liftFloor.length);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public int getNumFloors() {
+        return queueLength.length;
+    }
+
+    public int getNumLifts() {
+        return liftFloor.length;
+    }
+
+    public int getLiftCapacity(int lift) {
+        return liftCapacity[lift];
+    }
+
+    public int getLiftFloor(int lift) {
+        return liftFloor[lift];
+    }
+
+    public boolean isLiftGoingUp(int lift) {
+        return liftUp[lift];
+    }
+
+    public int getLiftOccupancy(int lift) {
+        return liftOccupancy[lift];
+    }
+
+    public int getQueueLength(int floor) {
+        return queueLength[floor];
+    }
+
+    public int getAssignment(int floor) {
+        return assignment[floor];
+    }
+
+    // true when nobody is waiting on any floor
+    public boolean isEmpty() {
+        for (int length : queueLength) {
+            if (length > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot[step=" + step + ", lifts=" + Arrays.toString(liftFloor)
+                + ", queues=" + Arrays.toString(queueLength) + "]";
+    }
+}
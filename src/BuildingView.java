@@ -0,0 +1,318 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws a multi-lift building inside a scroll pane, so tall buildings can be scrolled and
+ * zoomed instead of squeezed into the window.
+ *
+ * Only floors and shafts that are on screen are drawn. The parts that never change for a
+ * given zoom - background, floor lines, labels and shafts - are drawn once into an image
+ * covering the visible area and a viewport either side, and painting just copies from it.
+ * update() compares the new state with what was last drawn and only asks for the lifts
+ * that moved and the queues that changed to be repainted. Swing merges those requests
+ * into one clip, and paintComponent skips anything outside it.
+ *
+ * Everything here runs on the Event Dispatch Thread.
+ */
+public class BuildingView extends JPanel implements Scrollable {
+    private static final long serialVersionUID = 1L;
+
+    static final int MARGIN = 20;
+    static final int LABEL_WIDTH = 60;
+    static final int SHAFT_GAP = 10;
+    static final int LIFT_WIDTH = 50;
+    static final int QUEUE_WIDTH = 40;
+
+    // lift colours, reused in order
+    static final Color[] LIFT_COLORS = {
+        new Color(65, 105, 225),  // royal blue
+        new Color(220, 20, 60),   // crimson
+        new Color(34, 139, 34),   // forest green
+        new Color(255, 140, 0),   // dark orange
+        new Color(138, 43, 226)   // blue violet
+    };
+
+    private int floorHeight;
+
+    // what was last drawn - paintComponent only ever draws from these
+    private BuildingSnapshot shown;
+    private double[] liftPosition = new double[0];
+    private int[] liftFloor = new int[0];
+    private boolean[] liftUp = new boolean[0];
+    private int[] queueLength = new int[0];
+
+    // static parts of the visible area and either side of it
+    private BufferedImage staticLayer;
+    private Rectangle staticArea;
+
+    public BuildingView(int floorHeight) {
+        this.floorHeight = floorHeight;
+        setBackground(Color.WHITE);
+        setOpaque(true);
+    }
+
+    /**
+     * Take in the latest state, with lift positions from the animator, and repaint
+     * whatever changed since the last call.
+     */
+    public void update(BuildingSnapshot snapshot, SnapshotAnimator animator, long nowNanos) {
+        if (snapshot == null) {
+            if (shown != null) {
+                shown = null;
+                reshape();
+            }
+            return;
+        }
+
+        boolean reshaped = shown == null || shown.getNumFloors() != snapshot.getNumFloors()
+                || shown.getNumLifts() != snapshot.getNumLifts();
+        if (reshaped) {
+            liftPosition = new double[snapshot.getNumLifts()];
+            liftFloor = new int[snapshot.getNumLifts()];
+            liftUp = new boolean[snapshot.getNumLifts()];
+            queueLength = new int[snapshot.getNumFloors()];
+        }
+
+        Rectangle visible = getVisibleRect();
+        for (int lift = 0; lift < liftPosition.length; lift++) {
+            double position = animator.getLiftPosition(lift, nowNanos);
+            int floor = snapshot.getLiftFloor(lift);
+            boolean up = snapshot.isLiftGoingUp(lift);
+            if (reshaped || liftY(position) != liftY(liftPosition[lift])
+                    || floor != liftFloor[lift] || up != liftUp[lift]) {
+                repaintIfVisible(liftBounds(lift, liftPosition[lift]), visible);
+                liftPosition[lift] = position;
+                liftFloor[lift] = floor;
+                liftUp[lift] = up;
+                repaintIfVisible(liftBounds(lift, position), visible);
+            }
+        }
+        for (int floor = 0; floor < queueLength.length; floor++) {
+            int length = snapshot.getQueueLength(floor);
+            if (length != queueLength[floor]) {
+                queueLength[floor] = length;
+                repaintIfVisible(queueBounds(floor), visible);
+            }
+        }
+        shown = snapshot;
+
+        if (reshaped) {
+            reshape();
+            // start at the ground floor
+            SwingUtilities.invokeLater(() -> scrollRectToVisible(new Rectangle(0, getHeight() - 1, 1, 1)));
+        }
+    }
+
+    public int getFloorHeight() {
+        return floorHeight;
+    }
+
+    // zoom, keeping the floor in the middle of the view where it is
+    public void setFloorHeight(int height) {
+        if (height == floorHeight) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        double middle = (visible.y + visible.height / 2.0 - MARGIN) / floorHeight;
+
+        floorHeight = height;
+        reshape();
+        SwingUtilities.invokeLater(() -> {
+            int y = (int) Math.round(MARGIN + middle * floorHeight - visible.height / 2.0);
+            scrollRectToVisible(new Rectangle(visible.x, Math.max(0, y), visible.width, visible.height));
+        });
+    }
+
+    // the size changed - lay out again and redraw everything
+    private void reshape() {
+        staticLayer = null;
+        revalidate();
+        repaint();
+    }
+
+    private void repaintIfVisible(Rectangle area, Rectangle visible) {
+        if (area.intersects(visible)) {
+            repaint(area);
+        }
+    }
+
+    private int numFloors() {
+        return shown == null ? 0 : shown.getNumFloors();
+    }
+
+    private int floorTop(int floor) {
+        return MARGIN + (numFloors() - floor - 1) * floorHeight;
+    }
+
+    private int liftY(double position) {
+        return (int) Math.round(MARGIN + (numFloors() - position - 1) * floorHeight);
+    }
+
+    private int shaftX(int lift) {
+        return MARGIN + LABEL_WIDTH + lift * (LIFT_WIDTH + SHAFT_GAP);
+    }
+
+    private int queueX() {
+        return shaftX(liftPosition.length) + SHAFT_GAP;
+    }
+
+    private Rectangle liftBounds(int lift, double position) {
+        return new Rectangle(shaftX(lift), liftY(position), LIFT_WIDTH, floorHeight + 1);
+    }
+
+    private Rectangle queueBounds(int floor) {
+        return new Rectangle(queueX(), floorTop(floor), QUEUE_WIDTH, floorHeight + 1);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (shown == null) {
+            return new Dimension(400, 200);
+        }
+        return new Dimension(queueX() + QUEUE_WIDTH + MARGIN, 2 * MARGIN + numFloors() * floorHeight);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (shown == null) {
+            super.paintComponent(g);
+            g.setColor(Color.RED);
+            g.drawString("No building loaded!", 100, 100);
+            return;
+        }
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        paintStatic(g, clip);
+
+        // floors in the clip, top to bottom
+        int floors = numFloors();
+        int highest = Math.min(floors - 1, floors - 1 - (clip.y - MARGIN) / floorHeight);
+        int lowest = Math.max(0, floors - 1 - (clip.y + clip.height - MARGIN) / floorHeight);
+
+        // queues as red circles with a count
+        int queueX = queueX();
+        if (clip.x < queueX + QUEUE_WIDTH && clip.x + clip.width > queueX) {
+            int size = Math.min(20, floorHeight - 2);
+            for (int floor = lowest; floor <= highest; floor++) {
+                if (queueLength[floor] > 0) {
+                    int y = floorTop(floor) + (floorHeight - size) / 2;
+                    g.setColor(Color.RED);
+                    g.fillOval(queueX + 5, y, size, size);
+                    if (floorHeight >= 16) {
+                        g.setColor(Color.WHITE);
+                        g.drawString("" + queueLength[floor], queueX + 11, y + size - 6);
+                    }
+                }
+            }
+        }
+
+        // lifts whose shaft is in the clip, if they are in it too
+        int inset = floorHeight / 5;
+        for (int lift = 0; lift < liftPosition.length; lift++) {
+            int x = shaftX(lift);
+            int y = liftY(liftPosition[lift]);
+            if (x > clip.x + clip.width || x + LIFT_WIDTH < clip.x
+                    || y > clip.y + clip.height || y + floorHeight < clip.y) {
+                continue;
+            }
+
+            g.setColor(LIFT_COLORS[lift % LIFT_COLORS.length]);
+            g.fillRect(x + 5, y + inset, LIFT_WIDTH - 10, floorHeight - 2 * inset);
+            g.setColor(Color.WHITE);
+            g.drawRect(x + 5, y + inset, LIFT_WIDTH - 10, floorHeight - 2 * inset);
+            if (floorHeight >= 30) {
+                g.drawString("#" + lift, x + 8, y + floorHeight / 2 + 5);
+                g.drawString(liftUp[lift] ? "▲" : "▼", x + LIFT_WIDTH - 15, y + floorHeight / 2 + 5);
+            }
+        }
+    }
+
+    // copy the static parts, drawing them again first if the clip is outside what is cached
+    private void paintStatic(Graphics g, Rectangle clip) {
+        if (staticLayer == null || !staticArea.contains(clip)) {
+            Rectangle visible = getVisibleRect().union(clip);
+            Rectangle area = new Rectangle(visible.x, visible.y - visible.height,
+                    visible.width, visible.height * 3);
+            staticArea = area.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+            if (staticArea.isEmpty()) {
+                return;
+            }
+            staticLayer = new BufferedImage(staticArea.width, staticArea.height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D layer = staticLayer.createGraphics();
+            layer.translate(-staticArea.x, -staticArea.y);
+            layer.setClip(staticArea);
+            drawStatic(layer, staticArea);
+            layer.dispose();
+        }
+        g.drawImage(staticLayer, staticArea.x, staticArea.y, null);
+    }
+
+    private void drawStatic(Graphics g, Rectangle area) {
+        g.setColor(getBackground());
+        g.fillRect(area.x, area.y, area.width, area.height);
+
+        int floors = numFloors();
+        int width = queueX() + QUEUE_WIDTH - MARGIN;
+        int height = floors * floorHeight;
+
+        // building outline
+        g.setColor(Color.BLACK);
+        g.drawRect(MARGIN, MARGIN, width, height);
+
+        // shafts
+        int top = Math.max(MARGIN, area.y);
+        int bottom = Math.min(MARGIN + height, area.y + area.height);
+        g.setColor(Color.LIGHT_GRAY);
+        for (int lift = 0; lift < liftPosition.length; lift++) {
+            int x = shaftX(lift);
+            if (bottom > top && x <= area.x + area.width && x + LIFT_WIDTH >= area.x) {
+                g.fillRect(x, top, LIFT_WIDTH, bottom - top);
+            }
+        }
+
+        // floor lines and numbers, skipping what won't fit when zoomed out
+        int highest = Math.min(floors - 1, floors - 1 - (area.y - MARGIN) / floorHeight);
+        int lowest = Math.max(0, floors - 1 - (area.y + area.height - MARGIN) / floorHeight);
+        for (int floor = lowest; floor <= highest; floor++) {
+            int y = floorTop(floor);
+            if (floorHeight >= 4) {
+                g.setColor(Color.GRAY);
+                g.drawLine(MARGIN, y, MARGIN + width, y);
+            }
+            if (floorHeight >= 14) {
+                g.setColor(Color.BLACK);
+                g.drawString("Floor " + floor, MARGIN + 5, y + floorHeight - (floorHeight - 10) / 2);
+            }
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? floorHeight : LIFT_WIDTH + SHAFT_GAP;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visible.height : visible.width;
+    }
+
+    // fill the viewport when the building is smaller than it
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Saves and restores the complete state of a running simulation.
+ *
+ * A checkpoint holds every floor queue, every lift (including the order of the people
+ * in it and the energy it has used), the metrics counted so far, the dispatcher's
+ * assignments, the step count, the clock, the passenger generator and anything the
+ * algorithm keeps between steps (see writeState). Restoring it into an algorithm of the
+ * same type on a building of the same size carries on exactly where the original left
+ * off, as long as the run uses a simulated clock.
+ *
+ * capture() only copies the state into a byte array, so it is quick and can be done
+ * between steps. Writing that to disk can then happen on another thread (see Checkpointer).
+ *
+ * VERSION goes up whenever the layout changes. Checkpoints with any other version are
+ * refused rather than converted, so ones taken before such a change can't be resumed.
+ */
+public final class Checkpoint {
+    static final int MAGIC = 0x4C43484B; // "LCHK"
+    static final short VERSION = 4;
+
+    private static final byte SINGLE_LIFT = 0;
+    private static final byte MULTI_LIFT = 1;
+
+    private Checkpoint() {}
+
+    // state of a single lift algorithm
+    public static byte[] capture(Algorithm algorithm) {
+        Building building = algorithm.building;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(estimateSize(building.getFloors(), 1));
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeader(out, SINGLE_LIFT, algorithm, building.getFloors(), 1, algorithm.getStepCount(),
+                    algorithm.getClock(), algorithm.getPassengerGenerator());
+            writeBuilding(out, building.getFloors(), new LiftState[] { building.getLift() });
+            building.energy().writeState(out);
+            building.metrics().writeState(out);
+            algorithm.writeState(out);
+            return finish(bytes, out);
+        } catch (IOException e) {
+            // only writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // state of a multi lift algorithm
+    public static byte[] capture(MultiLiftAlgorithm algorithm) {
+        MultiLiftBuilding building = algorithm.building;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    estimateSize(building.getFloors(), building.getNumLifts()));
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeader(out, MULTI_LIFT, algorithm, building.getFloors(), building.getNumLifts(),
+                    algorithm.getStepCount(), algorithm.getClock(), algorithm.getPassengerGenerator());
+            writeBuilding(out, building.getFloors(), building.getAllLifts());
+            building.energy().writeState(out);
+            building.metrics().writeState(out);
+            algorithm.dispatcher.writeState(out);
+            algorithm.writeState(out);
+            return finish(bytes, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Put a checkpoint back into an algorithm.
+     * The algorithm must be the same type as the one captured and its building must have
+     * the same number of floors and lifts. Listeners on the building are not told about
+     * the change.
+     */
+    public static void restore(byte[] checkpoint, Algorithm algorithm) throws IOException {
+        Building building = algorithm.building;
+        DataInputStream in = open(checkpoint);
+        readHeader(in, SINGLE_LIFT, algorithm, building.getFloors(), 1);
+        algorithm.stepCount = in.readLong();
+        algorithm.setPassengerGenerator(readClockAndGenerator(in, algorithm.getClock(),
+                algorithm.getPassengerGenerator()));
+        readBuilding(in, building.getFloors(), new LiftState[] { building.getLift() });
+        building.energy().readState(in);
+        building.metrics().readState(in);
+        algorithm.readState(in);
+    }
+
+    public static void restore(byte[] checkpoint, MultiLiftAlgorithm algorithm) throws IOException {
+        MultiLiftBuilding building = algorithm.building;
+        DataInputStream in = open(checkpoint);
+        readHeader(in, MULTI_LIFT, algorithm, building.getFloors(), building.getNumLifts());
+        algorithm.stepCount = in.readLong();
+        algorithm.setPassengerGenerator(readClockAndGenerator(in, algorithm.getClock(),
+                algorithm.getPassengerGenerator()));
+        readBuilding(in, building.getFloors(), building.getAllLifts());
+        building.energy().readState(in);
+        building.metrics().readState(in);
+        algorithm.dispatcher.readState(in);
+        algorithm.readState(in);
+    }
+
+    /**
+     * Write a captured checkpoint to a file.
+     * It goes to a temporary file first which is then renamed, so a crash part way
+     * through never leaves a half written checkpoint in place of a good one.
+     */
+    public static void save(byte[] checkpoint, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(checkpoint);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static byte[] load(Path file) throws IOException {
+        return Files.readAllBytes(file);
+    }
+
+    private static int estimateSize(FloorsState floors, int numLifts) {
+        ArrayList<FloorState> list = floors.GetFloors();
+        long size = 256 + list.size() * 16L + numLifts * 64L;
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    private static void writeHeader(DataOutputStream out, byte kind, Object algorithm, FloorsState floors,
+                                    int numLifts, long step, SimClock clock, PassengerGenerator arrivals)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(kind);
+        out.writeUTF(algorithm.getClass().getName());
+        out.writeInt(floors.GetFloors().size());
+        out.writeInt(numLifts);
+        out.writeLong(step);
+
+        out.writeBoolean(clock.isSimulated());
+        out.writeLong(clock.now());
+
+        out.writeBoolean(arrivals != null);
+        if (arrivals != null) {
+            out.writeLong(arrivals.getState());
+            out.writeDouble(arrivals.getArrivalsPerStep());
+        }
+    }
+
+    private static void writeBuilding(DataOutputStream out, FloorsState floors, LiftState[] lifts)
+            throws IOException {
+        ArrayList<FloorState> list = floors.GetFloors();
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).GetFloorRequests().writeState(out);
+        }
+        for (LiftState lift : lifts) {
+            lift.writeState(out);
+        }
+    }
+
+    // add a checksum of everything so far
+    private static byte[] finish(ByteArrayOutputStream bytes, DataOutputStream out) throws IOException {
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // check the checksum before anything is changed
+    private static DataInputStream open(byte[] checkpoint) throws IOException {
+        if (checkpoint.length < 10 || ByteBuffer.wrap(checkpoint).getInt(0) != MAGIC) {
+            throw new IOException("Not a checkpoint");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(checkpoint, 0, checkpoint.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(checkpoint).getInt(checkpoint.length - 4)) {
+            throw new IOException("Checkpoint is damaged (checksum does not match)");
+        }
+        return new DataInputStream(new ByteArrayInputStream(checkpoint, 0, checkpoint.length - 4));
+    }
+
+    private static void readHeader(DataInputStream in, byte kind, Object algorithm, FloorsState floors,
+                                   int numLifts) throws IOException {
+        in.readInt();
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        if (in.readByte() != kind) {
+            throw new IOException("Checkpoint is for a " + (kind == SINGLE_LIFT ? "multi" : "single")
+                    + " lift building");
+        }
+        String type = in.readUTF();
+        if (!type.equals(algorithm.getClass().getName())) {
+            throw new IOException("Checkpoint was taken from " + type + ", not "
+                    + algorithm.getClass().getName());
+        }
+        int savedFloors = in.readInt();
+        int savedLifts = in.readInt();
+        if (savedFloors != floors.GetFloors().size() || savedLifts != numLifts) {
+            throw new IOException("Checkpoint is for " + savedFloors + " floors and " + savedLifts
+                    + " lifts, building has " + floors.GetFloors().size() + " and " + numLifts);
+        }
+    }
+
+    // returns the generator to use from now on
+    private static PassengerGenerator readClockAndGenerator(DataInputStream in, SimClock clock,
+                                                            PassengerGenerator current) throws IOException {
+        boolean simulated = in.readBoolean();
+        long time = in.readLong();
+        if (simulated != clock.isSimulated()) {
+            throw new IOException("Checkpoint was taken with a " + (simulated ? "simulated" : "system")
+                    + " clock but the algorithm has a " + (simulated ? "system" : "simulated") + " one");
+        }
+        if (simulated) {
+            clock.setTime(time);
+        }
+
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long state = in.readLong();
+        double rate = in.readDouble();
+        if (current == null || current.getArrivalsPerStep() != rate) {
+            current = new PassengerGenerator(state, rate);
+        }
+        current.setState(state);
+        return current;
+    }
+
+    private static void readBuilding(DataInputStream in, FloorsState floors, LiftState[] lifts)
+            throws IOException {
+        ArrayList<FloorState> list = floors.GetFloors();
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).GetFloorRequests().readState(in);
+        }
+        for (LiftState lift : lifts) {
+            lift.readState(in);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes checkpoints in the background so the simulation doesn't wait for the disk.
+ *
+ * The state is copied on the calling thread between steps, which keeps it consistent,
+ * and a single writer thread saves the copies to disk in the order they were taken.
+ */
+public class Checkpointer implements AutoCloseable {
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // how many checkpoints have been written
+    private volatile int written = 0;
+
+    /**
+     * Take a checkpoint now and write it to file in the background.
+     * Call between steps. The future finishes when the file is safely on disk.
+     */
+    public Future<Path> checkpoint(Algorithm algorithm, Path file) {
+        return write(Checkpoint.capture(algorithm), file);
+    }
+
+    public Future<Path> checkpoint(MultiLiftAlgorithm algorithm, Path file) {
+        return write(Checkpoint.capture(algorithm), file);
+    }
+
+    private Future<Path> write(byte[] state, Path file) {
+        return writer.submit(() -> {
+            try {
+                Checkpoint.save(state, file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write checkpoint " + file, e);
+            }
+            written++;
+            return file;
+        });
+    }
+
+    public int getCheckpointsWritten() {
+        return written;
+    }
+
+    // waits for any checkpoints still being written, unless the caller is interrupted
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes a run out as Chrome trace-event JSON, which opens in chrome://tracing or Perfetto.
+ *
+ * Each lift gets a track showing when it was moving, stopped or idle, with an instant
+ * marker whenever the dispatcher assigns it a floor. Each floor gets a counter track
+ * with the number of people waiting. Events are written as they happen so the whole
+ * run never has to be held in memory.
+ *
+ * Works live (add it as a listener on a building) or from a recorded trace (see main).
+ */
+public class ChromeTraceExporter implements SimulationListener, AutoCloseable {
+    private static final int LIFT_PID = 1;
+    private static final int FLOOR_PID = 2;
+
+    // what a lift did during a step
+    private static final int IDLE = 0;
+    private static final int MOVING = 1;
+    private static final int STOPPED = 2;
+    private static final String[] STATE_NAMES = {"idle", "moving", "stopped"};
+
+    private final Writer out;
+    private final long stepMicros;
+    private boolean firstEvent = true;
+
+    // current span for each lift
+    private final int[] spanState;
+    private final long[] spanStart;
+    private final int[] stateThisStep;
+
+    // people waiting on each floor, and floors that changed this step
+    private final int[] queueLength;
+    private final boolean[] floorChanged;
+    private final int[] changedFloors;
+    private int changedCount = 0;
+
+    private long step;
+    private long lastStep = -1;
+
+    /**
+     * @param out Where to write the JSON
+     * @param start State of the building when the export starts
+     * @param stepMicros How long one step lasts on the timeline, in microseconds
+     */
+    public ChromeTraceExporter(Writer out, BuildingSnapshot start, long stepMicros) throws IOException {
+        this.out = out;
+        this.stepMicros = stepMicros;
+
+        int numLifts = start.getNumLifts();
+        int numFloors = start.getNumFloors();
+        spanState = new int[numLifts];
+        spanStart = new long[numLifts];
+        stateThisStep = new int[numLifts];
+        queueLength = new int[numFloors];
+        floorChanged = new boolean[numFloors];
+        changedFloors = new int[numFloors];
+
+        step = start.getStep();
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+
+        // name the tracks
+        writeMetadata("process_name", LIFT_PID, 0, "Lifts");
+        writeMetadata("process_name", FLOOR_PID, 0, "Floors");
+        for (int lift = 0; lift < numLifts; lift++) {
+            writeMetadata("thread_name", LIFT_PID, lift, "Lift " + lift);
+            spanStart[lift] = step;
+        }
+
+        // starting queue lengths
+        for (int floor = 0; floor < numFloors; floor++) {
+            queueLength[floor] = start.getQueueLength(floor);
+            if (queueLength[floor] > 0) {
+                writeCounter(floor, step);
+            }
+        }
+    }
+
+    @Override
+    public void stepStarted(long step) {
+        this.step = step;
+        for (int lift = 0; lift < stateThisStep.length; lift++) {
+            stateThisStep[lift] = IDLE;
+        }
+    }
+
+    @Override
+    public void passengerArrived(int floor, int destination) {
+        queueLength[floor]++;
+        markChanged(floor);
+    }
+
+    @Override
+    public void liftStopped(int lift, int floor, int alighted, int boarded) {
+        stateThisStep[lift] = STOPPED;
+        if (boarded > 0) {
+            queueLength[floor] -= boarded;
+            markChanged(floor);
+        }
+    }
+
+    @Override
+    public void liftMoved(int lift, int fromFloor, int toFloor) {
+        if (stateThisStep[lift] != STOPPED) {
+            stateThisStep[lift] = MOVING;
+        }
+    }
+
+    @Override
+    public void floorAssigned(int floor, int lift) {
+        if (lift < 0) {
+            return;
+        }
+        try {
+            startEvent();
+            out.write("{\"name\":\"assign floor ");
+            out.write(Integer.toString(floor));
+            out.write("\",\"ph\":\"i\",\"s\":\"t\",\"pid\":" + LIFT_PID + ",\"tid\":");
+            out.write(Integer.toString(lift));
+            out.write(",\"ts\":");
+            out.write(Long.toString(step * stepMicros));
+            out.write(",\"args\":{\"floor\":");
+            out.write(Integer.toString(floor));
+            out.write("}}");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void stepFinished(long step) {
+        try {
+            // close any lift span whose state changed this step
+            for (int lift = 0; lift < spanState.length; lift++) {
+                if (stateThisStep[lift] != spanState[lift]) {
+                    writeSpan(lift, step);
+                    spanState[lift] = stateThisStep[lift];
+                    spanStart[lift] = step;
+                }
+            }
+
+            // queue counters for floors that changed
+            for (int i = 0; i < changedCount; i++) {
+                int floor = changedFloors[i];
+                floorChanged[floor] = false;
+                writeCounter(floor, step);
+            }
+            changedCount = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastStep = step;
+    }
+
+    private void markChanged(int floor) {
+        if (!floorChanged[floor]) {
+            floorChanged[floor] = true;
+            changedFloors[changedCount++] = floor;
+        }
+    }
+
+    // a complete event covering the lift's current span up to endStep
+    private void writeSpan(int lift, long endStep) throws IOException {
+        long duration = endStep - spanStart[lift];
+        if (duration <= 0) {
+            return;
+        }
+        startEvent();
+        out.write("{\"name\":\"");
+        out.write(STATE_NAMES[spanState[lift]]);
+        out.write("\",\"ph\":\"X\",\"pid\":" + LIFT_PID + ",\"tid\":");
+        out.write(Integer.toString(lift));
+        out.write(",\"ts\":");
+        out.write(Long.toString(spanStart[lift] * stepMicros));
+        out.write(",\"dur\":");
+        out.write(Long.toString(duration * stepMicros));
+        out.write("}");
+    }
+
+    private void writeCounter(int floor, long atStep) throws IOException {
+        startEvent();
+        out.write("{\"name\":\"Floor ");
+        out.write(Integer.toString(floor));
+        out.write(" waiting\",\"ph\":\"C\",\"pid\":" + FLOOR_PID + ",\"ts\":");
+        out.write(Long.toString(atStep * stepMicros));
+        out.write(",\"args\":{\"waiting\":");
+        out.write(Integer.toString(queueLength[floor]));
+        out.write("}}");
+    }
+
+    private void writeMetadata(String kind, int pid, int tid, String name) throws IOException {
+        startEvent();
+        out.write("{\"name\":\"" + kind + "\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + tid
+                + ",\"args\":{\"name\":\"" + name + "\"}}");
+    }
+
+    // comma and newline between events
+    private void startEvent() throws IOException {
+        if (!firstEvent) {
+            out.write(",\n");
+        }
+        firstEvent = false;
+    }
+
+    // ends the open spans and finishes the JSON
+    @Override
+    public void close() throws IOException {
+        long end = lastStep + 1;
+        for (int lift = 0; lift < spanState.length; lift++) {
+            writeSpan(lift, end);
+        }
+        out.write("\n]}\n");
+        out.close();
+    }
+
+    /**
+     * Convert a recorded trace to Chrome JSON.
+     * @param stepMicros How long one step lasts on the timeline, in microseconds
+     */
+    public static void export(String traceFile, String jsonFile, long stepMicros) throws IOException {
+        TraceReader reader = new TraceReader(traceFile);
+        BuildingSnapshot state = reader.getInitialState();
+        Writer writer = new BufferedWriter(new FileWriter(jsonFile), 1 << 16);
+        try (ChromeTraceExporter exporter = new ChromeTraceExporter(writer, state, stepMicros)) {
+            while (reader.readStep(state, exporter)) {
+                // exporter writes as it goes
+            }
+        }
+    }
+
+    // command line: ChromeTraceExporter <trace> <output.json> [seconds per step]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java ChromeTraceExporter <trace> <output.json> [secondsPerStep]");
+            return;
+        }
+        double secondsPerStep = args.length >= 3 ? Double.parseDouble(args[2]) : 1.0;
+        export(args[0], args[1], (long) (secondsPerStep * 1_000_000));
+        System.out.println("Wrote " + args[1] + " - open it in chrome://tracing or ui.perfetto.dev");
+    }
+}
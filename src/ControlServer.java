@@ -0,0 +1,437 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * Runs the dispatcher as a service that lift panels talk to over TCP on localhost.
+ *
+ * One thread does everything: it accepts connections, reads calls, steps the algorithm
+ * on a fixed control tick and writes answers, all through a single non-blocking Selector.
+ * Nothing else touches the building, so nothing is locked. A hall call is handed to the
+ * dispatcher as soon as it is read and the lift it was given is written back in the same
+ * pass, so the answer doesn't wait for the next tick. Each tick moves the lifts and pushes
+ * the status of every lift that changed to every connection.
+ *
+ * Every message in both directions is MESSAGE_SIZE bytes, big-endian:
+ *   0 byte  type
+ *   1 byte  direction (LIFT_STATUS: 1 = up, 0 = down)
+ *   2 short lift (-1 for none)
+ *   4 short floor
+ *   6 short HALL_CALL: destination, LIFT_STATUS: occupancy, otherwise 0
+ *   8 int   id chosen by the caller, echoed in the ASSIGNMENT (LIFT_STATUS: the step)
+ *
+ *   HALL_CALL   panel to server  someone on floor wants to go to destination
+ *   CAR_CALL    panel to server  someone in lift pressed the button for floor, so it stops there
+ *   ASSIGNMENT  server to panel  the lift that will take the call, or -1 if it was refused
+ *   LIFT_STATUS server to panel  where a lift is now, sent for every lift on connecting
+ *
+ * Each connection has a fixed input and output buffer, and messages are read and written
+ * straight from them, so handling a message allocates nothing. A panel that stops reading
+ * has its status pushes skipped until its buffer empties (then it is sent every lift
+ * again), and is disconnected if there isn't room for an answer.
+ */
+public class ControlServer implements AutoCloseable {
+    public static final int MESSAGE_SIZE = 12;
+
+    public static final byte HALL_CALL = 1;
+    public static final byte CAR_CALL = 2;
+    public static final byte ASSIGNMENT = 3;
+    public static final byte LIFT_STATUS = 4;
+
+    private static final int INPUT_BUFFER_SIZE = 4096;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final MultiLiftAlgorithm algorithm;
+    private final MultiLiftBuilding building;
+    private final int numFloors;
+    private final long tickNanos;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // open connections, only used on the server thread
+    private Connection[] connections = new Connection[8];
+    private int connectionCount = 0;
+
+    // made once, so select() doesn't need a new one every time
+    private final Consumer<SelectionKey> handler = this::handle;
+
+    // what each lift was last pushed as
+    private final int[] sentFloor;
+    private final int[] sentOccupancy;
+    private final boolean[] sentUp;
+
+    // nanoseconds from reading a call to writing its answer to the socket
+    private final LatencyHistogram answerTimes = new LatencyHistogram();
+    private long calls = 0;
+    private long refused = 0;
+
+    // one panel's socket and buffers
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+        // kept ready for putting messages in, flipped only while writing
+        final ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+        // status pushes were skipped, send every lift once there is room
+        boolean behind = false;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    // serve a multi lift simulation on a port (0 picks a free one), stepping it every tickMillis
+    public static ControlServer start(MultiLiftAlgorithm algorithm, int port, long tickMillis) throws IOException {
+        ControlServer server = new ControlServer(algorithm, port, tickMillis);
+        server.thread.start();
+        return server;
+    }
+
+    ControlServer(MultiLiftAlgorithm algorithm, int port, long tickMillis) throws IOException {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("The tick must be at least 1 ms, not " + tickMillis);
+        }
+        this.algorithm = algorithm;
+        this.building = algorithm.building;
+        this.numFloors = building.getFloors().GetFloors().size();
+        this.tickNanos = tickMillis * 1_000_000;
+
+        int lifts = building.getNumLifts();
+        sentFloor = new int[lifts];
+        sentOccupancy = new int[lifts];
+        sentUp = new boolean[lifts];
+        for (int lift = 0; lift < lifts; lift++) {
+            remember(lift);
+        }
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "control-server");
+        thread.setDaemon(true);
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    // time from reading each call to writing its answer, in nanoseconds. Read after close()
+    public LatencyHistogram getAnswerTimes() {
+        return answerTimes;
+    }
+
+    // calls answered so far, refused ones included. Read after close()
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getRefused() {
+        return refused;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long nextTick = System.nanoTime() + tickNanos;
+        try {
+            while (running) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    // select(0) waits for ever, so always wait at least 1 ms
+                    selector.select(handler, Math.max(1, wait / 1_000_000));
+                } else {
+                    selector.selectNow(handler);
+                }
+                if (System.nanoTime() - nextTick >= 0) {
+                    tick();
+                    nextTick += tickNanos;
+                    if (System.nanoTime() - nextTick > tickNanos) {
+                        // fell more than a tick behind, don't try to catch up all at once
+                        nextTick = System.nanoTime() + tickNanos;
+                    }
+                }
+            }
+        } catch (IOException | InvalidBuildingConfiguration e) {
+            System.err.println("Control server stopped: " + e);
+        } finally {
+            for (int i = 0; i < connectionCount; i++) {
+                closeQuietly(connections[i].channel);
+            }
+            connectionCount = 0;
+            closeQuietly(server);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing more to do
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(connection);
+            }
+        } catch (IOException e) {
+            if (key.attachment() instanceof Connection) {
+                // the panel went away
+                disconnect((Connection) key.attachment());
+            } else {
+                System.err.println("Control server couldn't accept a connection: " + e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            Connection connection = new Connection(channel, key);
+            key.attach(connection);
+            if (connectionCount == connections.length) {
+                connections = Arrays.copyOf(connections, connectionCount * 2);
+            }
+            connections[connectionCount++] = connection;
+
+            // a new panel starts by hearing where every lift is
+            connection.behind = true;
+            catchUp(connection);
+            flush(connection);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        int read = connection.channel.read(in);
+        if (read < 0) {
+            disconnect(connection);
+            return;
+        }
+        long readAt = System.nanoTime();
+        in.flip();
+        int answered = 0;
+        while (in.remaining() >= MESSAGE_SIZE) {
+            int start = in.position();
+            byte type = in.get(start);
+            short lift = in.getShort(start + 2);
+            short floor = in.getShort(start + 4);
+            short other = in.getShort(start + 6);
+            int id = in.getInt(start + 8);
+            in.position(start + MESSAGE_SIZE);
+
+            int assigned;
+            if (type == HALL_CALL) {
+                assigned = hallCall(floor, other);
+            } else if (type == CAR_CALL) {
+                assigned = carCall(lift, floor);
+            } else {
+                System.err.println("Control server: unknown message type " + type + ", disconnecting");
+                disconnect(connection);
+                return;
+            }
+            calls++;
+            if (assigned < 0) {
+                refused++;
+            }
+            if (connection.out.remaining() < MESSAGE_SIZE) {
+                // not reading its answers, give up on it
+                disconnect(connection);
+                return;
+            }
+            putMessage(connection.out, ASSIGNMENT, false, assigned, floor, 0, id);
+            answered++;
+        }
+        in.compact();
+        flush(connection);
+        if (answered > 0) {
+            answerTimes.record(System.nanoTime() - readAt, answered);
+        }
+    }
+
+    // add the passenger and give the floor to a lift straight away, -1 if the call makes no sense
+    private int hallCall(int floor, int destination) {
+        if (floor < 0 || floor >= numFloors || destination < 0 || destination >= numFloors || floor == destination) {
+            return -1;
+        }
+        building.AddPassenger(floor, destination);
+        return algorithm.getDispatcher().getBestElevator(floor, destination);
+    }
+
+    // someone already in the lift pressed the button for floor, -1 if there is no such lift or floor
+    private int carCall(int lift, int floor) {
+        if (lift < 0 || lift >= building.getNumLifts() || floor < 0 || floor >= numFloors) {
+            return -1;
+        }
+        building.getLift(lift).addStop(floor);
+        return lift;
+    }
+
+    // step the algorithm and tell everyone about lifts that changed
+    private void tick() throws InvalidBuildingConfiguration {
+        algorithm.NextStep();
+        int step = (int) algorithm.getStepCount();
+        for (int lift = 0; lift < sentFloor.length; lift++) {
+            LiftState state = building.getLift(lift);
+            if (state.getCurrentFloor() == sentFloor[lift] && state.Occupancy() == sentOccupancy[lift]
+                    && state.isGoingUp() == sentUp[lift]) {
+                continue;
+            }
+            remember(lift);
+            for (int i = 0; i < connectionCount; i++) {
+                Connection connection = connections[i];
+                if (connection.behind || connection.out.remaining() < MESSAGE_SIZE) {
+                    connection.behind = true;
+                } else {
+                    putStatus(connection.out, lift, step);
+                }
+            }
+        }
+        for (int i = connectionCount - 1; i >= 0; i--) {
+            Connection connection = connections[i];
+            try {
+                catchUp(connection);
+                flush(connection);
+            } catch (IOException e) {
+                disconnect(connection);
+            }
+        }
+    }
+
+    // a connection that missed pushes gets every lift once it has room for them all
+    private void catchUp(Connection connection) {
+        if (connection.behind && connection.out.remaining() >= sentFloor.length * MESSAGE_SIZE) {
+            int step = (int) algorithm.getStepCount();
+            for (int lift = 0; lift < sentFloor.length; lift++) {
+                putStatus(connection.out, lift, step);
+            }
+            connection.behind = false;
+        }
+    }
+
+    private void putStatus(ByteBuffer out, int lift, int step) {
+        putMessage(out, LIFT_STATUS, sentUp[lift], lift, sentFloor[lift], sentOccupancy[lift], step);
+    }
+
+    private void remember(int lift) {
+        LiftState state = building.getLift(lift);
+        sentFloor[lift] = state.getCurrentFloor();
+        sentOccupancy[lift] = state.Occupancy();
+        sentUp[lift] = state.isGoingUp();
+    }
+
+    // write as much as the socket takes, and ask to be told when it can take the rest
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        if (out.position() == 0) {
+            return;
+        }
+        out.flip();
+        connection.channel.write(out);
+        out.compact();
+        int interest = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (connection.key.interestOps() != interest) {
+            connection.key.interestOps(interest);
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        for (int i = 0; i < connectionCount; i++) {
+            if (connections[i] == connection) {
+                connections[i] = connections[--connectionCount];
+                connections[connectionCount] = null;
+                return;
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * Put one message in a buffer, in the layout described at the top of the class.
+     * Panels can use this too.
+     */
+    public static void putMessage(ByteBuffer buffer, byte type, boolean up, int lift, int floor, int other, int id) {
+        buffer.put(type);
+        buffer.put((byte) (up ? 1 : 0));
+        buffer.putShort((short) lift);
+        buffer.putShort((short) floor);
+        buffer.putShort((short) other);
+        buffer.putInt(id);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java ControlServer <floors> <lifts> [port] [tickMillis] [seconds]");
+            return;
+        }
+        int floors = Integer.parseInt(args[0]);
+        int lifts = Integer.parseInt(args[1]);
+        int port = args.length >= 3 ? Integer.parseInt(args[2]) : 0;
+        long tickMillis = args.length >= 4 ? Long.parseLong(args[3]) : 100;
+        double seconds = args.length >= 5 ? Double.parseDouble(args[4]) : Double.POSITIVE_INFINITY;
+
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(floors, 8, new HashMap<>(), lifts);
+        MultiLiftLook algorithm = new MultiLiftLook(building, SimClock.simulated(tickMillis));
+
+        algorithm.setVerbose(false);
+        try (ControlServer server = start(algorithm, port, tickMillis)) {
+            System.out.println("Controlling " + lifts + " lifts on " + floors + " floors at localhost:"
+                    + server.getPort() + ", one step every " + tickMillis + " ms");
+            long end = seconds == Double.POSITIVE_INFINITY ? Long.MAX_VALUE
+                    : System.nanoTime() + (long) (seconds * 1e9);
+            while (System.nanoTime() < end) {
+                Thread.sleep(1000);
+                SimMetrics.Snapshot metrics = building.metrics().snapshot();
+                System.out.println(String.format("step %d: arrived %d, delivered %d, waiting %d",
+                        algorithm.getStepCount(), metrics.getArrivals(), metrics.getAlightings(),
+                        metrics.getWaitingNow()));
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * A traction lift with a counterweight, which is how most lifts are built.
+ *
+ * The counterweight balances the empty car plus a share of the rated load (usually 40-50%),
+ * so the motor only has to lift the difference. A nearly full car going up or an empty car
+ * going down makes the motor work; the other way round gravity does the work and the energy
+ * is either lost as heat in the brake or, with regenerative drives, partly fed back.
+ * Friction and drive losses are charged for every floor whichever way the car goes.
+ */
+public class CounterweightEnergyModel implements EnergyModel {
+    private static final double GRAVITY = 9.81;
+
+    private final double carMass;           // kg
+    private final double passengerMass;     // kg per person
+    private final double balance;           // share of the rated load the counterweight covers
+    private final double floorHeight;       // metres
+    private final double motorEfficiency;   // 0 to 1
+    private final double regenEfficiency;   // 0 to 1, 0 = no regenerative braking
+    private final double frictionPerFloor;  // joules
+    private final double startStopCost;     // joules for one start and stop
+    private final double standbyPerStep;    // joules
+
+    // 1000 kg car, 75 kg people, 45% balance, 3.5 m floors, 85% motor, no regen,
+    // 300 W standby with 1 second steps
+    public CounterweightEnergyModel() {
+        this(1000, 75, 0.45, 3.5, 0.85, 0.0, 2000, 6000, 300);
+    }
+
+    public CounterweightEnergyModel(double carMass, double passengerMass, double balance, double floorHeight,
+                                    double motorEfficiency, double regenEfficiency, double frictionPerFloor,
+                                    double startStopCost, double standbyPerStep) {
+        if (motorEfficiency <= 0 || motorEfficiency > 1 || regenEfficiency < 0 || regenEfficiency > 1) {
+            throw new IllegalArgumentException("Efficiencies must be between 0 and 1");
+        }
+        this.carMass = carMass;
+        this.passengerMass = passengerMass;
+        this.balance = balance;
+        this.floorHeight = floorHeight;
+        this.motorEfficiency = motorEfficiency;
+        this.regenEfficiency = regenEfficiency;
+        this.frictionPerFloor = frictionPerFloor;
+        this.startStopCost = startStopCost;
+        this.standbyPerStep = standbyPerStep;
+    }
+
+    // the same lift with regenerative braking
+    public CounterweightEnergyModel withRegen(double efficiency) {
+        return new CounterweightEnergyModel(carMass, passengerMass, balance, floorHeight, motorEfficiency,
+                efficiency, frictionPerFloor, startStopCost, standbyPerStep);
+    }
+
+    @Override
+    public double moveJoules(int load, int capacity, boolean up) {
+        // how much heavier the car side is than the counterweight side
+        double counterweight = carMass + balance * capacity * passengerMass;
+        double imbalance = carMass + load * passengerMass - counterweight;
+
+        // work the motor has to do against gravity (negative when gravity helps)
+        double work = (up ? imbalance : -imbalance) * GRAVITY * floorHeight;
+
+        double energy = frictionPerFloor / motorEfficiency;
+        if (work > 0) {
+            energy += work / motorEfficiency;
+        } else {
+            energy += work * regenEfficiency;
+        }
+        return energy;
+    }
+
+    @Override
+    public double startStopJoules(int load, int capacity) {
+        // heavier cars take a bit more to get going
+        double mass = carMass + load * passengerMass;
+        return startStopCost * mass / carMass / motorEfficiency;
+    }
+
+    @Override
+    public double standbyJoules() {
+        return standbyPerStep;
+    }
+}
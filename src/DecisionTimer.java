@@ -0,0 +1,159 @@
+/**
+ * Times how long the controller takes to make its decisions, in nanoseconds.
+ *
+ * Every sampled step is timed as a whole, along with its phases: the dispatcher handing
+ * out floors, and each lift's move. Times go into one LatencyHistogram per phase.
+ * If a whole step takes longer than the budget the alarm is called with the step and how
+ * long it took; the alarm can ask the timer for the per-phase times of that step.
+ *
+ * Use sampleEvery to only time some steps - steps that are not sampled never read the clock.
+ * Timing a step never allocates, so it is safe to leave on in long runs.
+ *
+ * Usage in an algorithm:
+ *   long start = timer.start();
+ *   ... work ...
+ *   timer.stop(DecisionTimer.MOVE, start);
+ */
+public final class DecisionTimer {
+    public static final int STEP = 0;
+    public static final int DISPATCH = 1;
+    public static final int MOVE = 2;
+    private static final String[] PHASE_NAMES = {"step", "dispatch", "move"};
+
+    // returned by start() when this step isn't being timed
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    // called when a step goes over budget
+    @FunctionalInterface
+    public interface BudgetAlarm {
+        void budgetExceeded(long step, long nanos, DecisionTimer timer);
+    }
+
+    private static final DecisionTimer OFF = new DecisionTimer(0, Long.MAX_VALUE, null);
+
+    private final int sampleEvery;
+    private final long budgetNanos;
+    private final BudgetAlarm alarm;
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASE_NAMES.length];
+
+    // time spent in each phase during the current (or last) step
+    private final long[] stepNanos = new long[PHASE_NAMES.length];
+
+    private boolean sampling = false;
+    private long stepStart;
+    private long step;
+    private long overBudget = 0;
+
+    /**
+     * @param sampleEvery Time one step in this many, 1 for all of them (0 turns timing off)
+     * @param budgetNanos Longest a step should take
+     * @param alarm Called when a step takes longer than the budget, can be null
+     */
+    public DecisionTimer(int sampleEvery, long budgetNanos, BudgetAlarm alarm) {
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException("Sample rate can't be negative");
+        }
+        this.sampleEvery = sampleEvery;
+        this.budgetNanos = budgetNanos;
+        this.alarm = alarm;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    // times every step with no budget
+    public DecisionTimer() {
+        this(1, Long.MAX_VALUE, null);
+    }
+
+    // a timer that never times anything, used when none is set
+    public static DecisionTimer off() {
+        return OFF;
+    }
+
+    // called by the algorithm when a step begins
+    void beginStep(long step) {
+        // a timer that is off writes nothing, as the shared OFF one is used by every algorithm at once
+        if (sampleEvery == 0) {
+            return;
+        }
+        sampling = step % sampleEvery == 0;
+        if (sampling) {
+            this.step = step;
+            for (int i = 0; i < stepNanos.length; i++) {
+                stepNanos[i] = 0;
+            }
+            stepStart = System.nanoTime();
+        }
+    }
+
+    // called by the algorithm when a step is done
+    void endStep() {
+        if (!sampling) {
+            return;
+        }
+        long nanos = System.nanoTime() - stepStart;
+        stepNanos[STEP] = nanos;
+        phases[STEP].record(nanos);
+        sampling = false;
+
+        if (nanos > budgetNanos) {
+            overBudget++;
+            if (alarm != null) {
+                alarm.budgetExceeded(step, nanos, this);
+            }
+        }
+    }
+
+    // start timing a phase, pass the result to stop()
+    public long start() {
+        return sampling ? System.nanoTime() : NOT_SAMPLED;
+    }
+
+    public void stop(int phase, long start) {
+        if (start == NOT_SAMPLED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        phases[phase].record(nanos);
+        stepNanos[phase] += nanos;
+    }
+
+    public LatencyHistogram getHistogram(int phase) {
+        return phases[phase];
+    }
+
+    // time spent in a phase during the last sampled step
+    public long getStepNanos(int phase) {
+        return stepNanos[phase];
+    }
+
+    // how many sampled steps went over budget
+    public long getOverBudgetCount() {
+        return overBudget;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public static String phaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    // one line per phase that was timed
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Decision times (ns):");
+        for (int i = 0; i < phases.length; i++) {
+            if (phases[i].getCount() > 0) {
+                sb.append("\n  ").append(PHASE_NAMES[i]).append(": ").append(phases[i]);
+            }
+        }
+        if (budgetNanos != Long.MAX_VALUE) {
+            sb.append("\n  over budget (").append(budgetNanos).append(" ns): ").append(overBudget);
+        }
+        return sb.toString();
+    }
+}
@@ -1,4 +1,6 @@
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
@@ -16,15 +18,36 @@ public class ElevatorGUI extends JFrame {
     JButton startBtn;
     JButton stepBtn;
     JButton resetBtn;
-    JComboBox algoBox;
+    JButton replayBtn;
+    JComboBox<String> algoBox;
+    JComboBox<String> speedBox;
+    JSlider seekSlider;
     JLabel statusLbl;
     
     // variables for the simulation
     Building myBuilding;
     Algorithm currentAlgo;
     boolean isRunning = false;
-    Timer timer;
-    int steps = 0;
+    Timer timer;  // draws frames, and moves replays on
+    
+    // steps the algorithm off the EDT once started - the building belongs to it from then on
+    SimulationThread sim;
+    
+    // slides the lifts between the snapshots that get drawn
+    SnapshotAnimator animator = new SnapshotAnimator();
+    
+    // what gets drawn for a loaded building or a replay - a live run draws sim.getLatest() instead
+    BuildingSnapshot view;
+    
+    // set when we are replaying a recorded trace instead of simulating
+    TraceReplay replay;
+    double replayCarry = 0;  // part steps left over between replay ticks
+    
+    // simulation and replay speeds, in steps per second
+    String[] SPEEDS = {"1x", "10x", "100x", "1000x", "10000x", "Unlimited"};
+    
+    // frames drawn per second, whatever the speed
+    int FPS = 60;
     
     // some constants
     int FLOOR_HEIGHT = 60;  // pixels per floor
@@ -51,7 +74,7 @@ public class ElevatorGUI extends JFrame {
         controls.add(algoLbl);
         
         String[] algorithms = {"SCAN", "LOOK", "MYLIFT"};
-        algoBox = new JComboBox(algorithms);
+        algoBox = new JComboBox<>(algorithms);
         controls.add(algoBox);
         
         // add buttons
@@ -59,9 +82,23 @@ public class ElevatorGUI extends JFrame {
         stepBtn = new JButton("Step");
         resetBtn = new JButton("Reset");
         
+        replayBtn = new JButton("Replay...");
+        
         controls.add(startBtn);
         controls.add(stepBtn);
         controls.add(resetBtn);
+        controls.add(replayBtn);
+        
+        // simulation and replay speed
+        speedBox = new JComboBox<>(SPEEDS);
+        controls.add(speedBox);
+        speedBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(sim != null) {
+                    sim.setStepsPerSecond(getStepsPerSecond());
+                }
+            }
+        });
         
         // add control panel to main panel
         mainPanel.add(controls, BorderLayout.NORTH);
@@ -80,9 +117,14 @@ public class ElevatorGUI extends JFrame {
         // add building view to main panel
         mainPanel.add(buildingView, BorderLayout.CENTER);
         
-        // add status label
+        // add status label and replay position
+        JPanel bottom = new JPanel(new BorderLayout());
+        seekSlider = new JSlider(0, 0, 0);
+        seekSlider.setEnabled(false);
+        bottom.add(seekSlider, BorderLayout.NORTH);
         statusLbl = new JLabel("Select algorithm and press Start");
-        mainPanel.add(statusLbl, BorderLayout.SOUTH);
+        bottom.add(statusLbl, BorderLayout.SOUTH);
+        mainPanel.add(bottom, BorderLayout.SOUTH);
         
         // add panel to frame
         add(mainPanel);
@@ -113,16 +155,32 @@ public class ElevatorGUI extends JFrame {
             }
         });
         
-        // create a timer for animation
-        timer = new Timer(1000, new ActionListener() {
+        replayBtn.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                // run one step while timer is active
-                if(isRunning) {
-                    runOneStep();
+                // load a recorded trace
+                openReplay();
+            }
+        });
+        
+        // dragging the slider jumps straight to that step of the replay
+        seekSlider.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                if(replay != null && seekSlider.getValue() != replay.current().getStep()) {
+                    view = replay.seek(seekSlider.getValue());
+                    showReplayStatus();
+                    repaint();
                 }
             }
         });
         
+        // draw at a fixed frame rate, however fast the simulation is going
+        timer = new Timer(1000 / FPS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                renderFrame();
+            }
+        });
+        timer.start();
+        
         // show the window
         setVisible(true);
         
@@ -139,7 +197,8 @@ public class ElevatorGUI extends JFrame {
     private void loadBuilding() throws IOException {
         // for now just hardcode input.txt
         myBuilding = Building.FromFile("input.txt");
-        steps = 0;
+        view = BuildingSnapshot.capture(myBuilding.getFloors(),
+                new LiftState[] { myBuilding.getLift() }, null, 0);
         statusLbl.setText("Loaded building with " + 
                 myBuilding.getFloors().GetFloors().size() + " floors");
         repaint();
@@ -147,6 +206,24 @@ public class ElevatorGUI extends JFrame {
     
     // start the simulation
     private void startSimulation() {
+        if(replay != null) {
+            // replays are moved on by the frame timer
+            isRunning = true;
+            startBtn.setText("Stop");
+            return;
+        }
+        
+        if(sim != null) {
+            // carry on from where it was stopped
+            if(sim.isFinished()) {
+                return;
+            }
+            isRunning = true;
+            startBtn.setText("Stop");
+            sim.play();
+            return;
+        }
+        
         if(myBuilding == null) {
             try {
                 loadBuilding();
@@ -176,15 +253,26 @@ public class ElevatorGUI extends JFrame {
         startBtn.setText("Stop");
         algoBox.setEnabled(false);
         
-        // start the timer
-        timer.start();
+        // hand the algorithm over to its own thread
+        sim = SimulationThread.start(currentAlgo, getStepsPerSecond());
+        sim.play();
     }
     
     // stop the simulation
     private void stopSimulation() {
         isRunning = false;
         startBtn.setText("Start");
-        timer.stop();
+        if(sim != null) {
+            sim.pause();
+        }
+    }
+    
+    // shut down the simulation thread, if there is one
+    private void closeSimulation() {
+        if(sim != null) {
+            sim.close();
+            sim = null;
+        }
     }
     
     // reset the simulation
@@ -195,12 +283,15 @@ public class ElevatorGUI extends JFrame {
         }
         
         // reset variables
+        closeSimulation();
         myBuilding = null;
         currentAlgo = null;
-        steps = 0;
+        replay = null;
+        seekSlider.setEnabled(false);
         
         // reset ui
         algoBox.setEnabled(true);
+        stepBtn.setEnabled(true);
         statusLbl.setText("Simulation reset");
         
         // reload building
@@ -216,67 +307,151 @@ public class ElevatorGUI extends JFrame {
     
     // run one step of simulation
     private void runOneStep() {
-        if(myBuilding == null || currentAlgo == null) {
+        if(sim == null) {
             // need to initialize
-            try {
-                loadBuilding();
-                startSimulation();
-                return;
-            } catch(Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
-                return;
-            }
+            startSimulation();
+            return;
         }
         
-        try {
-            // get current state for display
-            LiftState lift = myBuilding.getLift();
-            int floor = lift.getCurrentFloor();
-            boolean up = lift.isGoingUp();
-            
-            // execute algorithm step
-            myBuilding = currentAlgo.NextStep();
-            steps++;
-            
-            // update status
-            statusLbl.setText("Step " + steps + ": Floor " + floor + ", going " + 
-                    (up ? "UP" : "DOWN"));
-            
-            // check if all requests are done
-            boolean done = true;
-            for(FloorState fs : myBuilding.getFloors().GetFloors()) {
-                if(!fs.GetFloorRequests().isEmpty()) {
-                    done = false;
-                    break;
-                }
+        if(!isRunning) {
+            sim.step();
+        }
+    }
+    
+    // called FPS times a second: moves replays on, picks up the latest step and redraws if anything changed
+    private void renderFrame() {
+        if(isRunning && replay != null) {
+            runReplayTick();
+        }
+        
+        // only the newest step is shown - any others run since the last frame are skipped
+        BuildingSnapshot latest = view;
+        if(sim != null) {
+            // checked first, so that once it is set the snapshot read is the final one
+            boolean finished = sim.isFinished();
+            latest = sim.getLatest();
+            if(latest != animator.getTarget()) {
+                showStep(latest);
             }
-            
-            if(done) {
-                stopSimulation();
-                statusLbl.setText("All requests complete in " + steps + " steps");
+            if(finished) {
+                finishSimulation(latest);
             }
-            
-            // update view
-            repaint();
-            
-        } catch(Exception ex) {
-            stopSimulation();
+        }
+        
+        if(latest != null && animator.update(latest, getStepsPerSecond(), System.nanoTime())) {
+            buildingView.repaint();
+        }
+    }
+    
+    private void showStep(BuildingSnapshot latest) {
+        statusLbl.setText("Step " + latest.getStep() + ": Floor " + latest.getLiftFloor(0) + ", going " + 
+                (latest.isLiftGoingUp(0) ? "UP" : "DOWN"));
+    }
+    
+    // the simulation has stopped for good - keep showing where it got to
+    private void finishSimulation(BuildingSnapshot latest) {
+        Exception ex = sim.getFailure();
+        view = latest;
+        closeSimulation();
+        stopSimulation();
+        
+        if(ex != null) {
             JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
             statusLbl.setText("Error: " + ex.getMessage());
+        } else {
+            // all requests are done
+            statusLbl.setText("All requests complete in " + latest.getStep() + " steps");
         }
     }
     
+    // the chosen speed, in steps per second
+    private double getStepsPerSecond() {
+        String speed = (String) speedBox.getSelectedItem();
+        if(speed.equals("Unlimited")) {
+            return SimulationThread.UNLIMITED;
+        }
+        return Double.parseDouble(speed.substring(0, speed.length() - 1));
+    }
+    
+    // pick a trace file and switch to replaying it
+    private void openReplay() {
+        JFileChooser chooser = new JFileChooser(".");
+        if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        
+        if(isRunning) {
+            stopSimulation();
+        }
+        
+        try {
+            replay = new TraceReplay(chooser.getSelectedFile().getPath());
+        } catch(Exception ex) {
+            JOptionPane.showMessageDialog(this, "Error loading trace: " + ex.getMessage());
+            return;
+        }
+        
+        // the live simulation is put aside until reset
+        closeSimulation();
+        myBuilding = null;
+        currentAlgo = null;
+        replayCarry = 0;
+        view = replay.current();
+        
+        seekSlider.setMinimum((int) replay.getFirstStep());
+        seekSlider.setMaximum((int) replay.getLastStep());
+        seekSlider.setValue((int) replay.getFirstStep());
+        seekSlider.setEnabled(true);
+        algoBox.setEnabled(false);
+        stepBtn.setEnabled(false);
+        
+        showReplayStatus();
+        repaint();
+    }
+    
+    // move the replay on by however many steps the chosen speed gives per tick
+    private void runReplayTick() {
+        double stepsPerSecond = getStepsPerSecond();
+        long toRun;
+        if(Double.isInfinite(stepsPerSecond)) {
+            // unlimited goes straight to the end
+            toRun = replay.getLastStep() - replay.current().getStep();
+        } else {
+            replayCarry += stepsPerSecond * timer.getDelay() / 1000.0;
+            toRun = (long) replayCarry;
+            replayCarry -= toRun;
+        }
+        if(toRun > 0) {
+            view = replay.advance(toRun);
+            seekSlider.setValue((int) view.getStep());
+            showReplayStatus();
+            repaint();
+        }
+        
+        if(replay.isAtEnd()) {
+            stopSimulation();
+        }
+    }
+    
+    private void showReplayStatus() {
+        statusLbl.setText("Replay step " + view.getStep() + " of " + replay.getLastStep());
+    }
+    
     // draws the elevator
     private void drawElevator(Graphics g) {
+        // drawn from the snapshot the frame timer last picked up, never the building itself
+        BuildingSnapshot view = animator.getTarget();
+        long now = System.nanoTime();
+        
         // if no building loaded, show message
-        if(myBuilding == null) {
+        if(view == null) {
             g.setColor(Color.RED);
             g.drawString("No building loaded!", 100, 100);
             return;
         }
         
         // get number of floors
-        int floors = myBuilding.getFloors().GetFloors().size();
+        int floors = view.getNumFloors();
         
         // calculate dimensions
         int width = getWidth() - 40;
@@ -299,13 +474,13 @@ public class ElevatorGUI extends JFrame {
             g.drawString("Floor " + i, 25, y + FLOOR_HEIGHT - 10);
             
             // check for requests
-            FloorState floor = myBuilding.getFloors().GetFloors().get(i);
-            if(!floor.GetFloorRequests().isEmpty()) {
+            int waiting = view.getQueueLength(i);
+            if(waiting > 0) {
                 // show requests as red circle
                 g.setColor(Color.RED);
                 g.fillOval(width - 30, y + 10, 20, 20);
                 g.setColor(Color.WHITE);
-                g.drawString("" + floor.GetFloorRequests().size(), width - 24, y + 24);
+                g.drawString("" + waiting, width - 24, y + 24);
             }
         }
         
@@ -315,9 +490,10 @@ public class ElevatorGUI extends JFrame {
         g.fillRect(shaftX - 5, 20, ELEVATOR_WIDTH + 10, height);
         
         // draw elevator
-        LiftState lift = myBuilding.getLift();
-        int elevFloor = lift.getCurrentFloor();
-        int elevY = 20 + (floors - elevFloor - 1) * FLOOR_HEIGHT;
+        // drawn part way between floors while it moves
+        int elevFloor = view.getLiftFloor(0);
+        double position = animator.getLiftPosition(0, now);
+        int elevY = (int) Math.round(20 + (floors - position - 1) * FLOOR_HEIGHT);
         
         g.setColor(Color.BLUE);
         g.fillRect(shaftX, elevY + 5, ELEVATOR_WIDTH, FLOOR_HEIGHT - 10);
@@ -329,7 +505,7 @@ public class ElevatorGUI extends JFrame {
         g.drawString("Floor: " + elevFloor, shaftX + 10, elevY + 30);
         
         // draw arrow for direction
-        if(lift.isGoingUp()) {
+        if(view.isLiftGoingUp(0)) {
             g.drawString("▲", shaftX + ELEVATOR_WIDTH - 20, elevY + 30);
         } else {
             g.drawString("▼", shaftX + ELEVATOR_WIDTH - 20, elevY + 30);
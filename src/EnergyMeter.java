@@ -0,0 +1,117 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the energy each lift in a building uses, using an EnergyModel.
+ *
+ * The building tells the meter whenever a lift moves or stops. A lift that starts moving
+ * from rest pays the start/stop cost, every floor travelled pays for the motor, and a lift
+ * that does nothing for a whole step pays standby. The running total for each lift is
+ * kept in its LiftState.
+ *
+ * Load is read from the lift's occupancy. LOOK and MYLIFT clear a floor without putting
+ * anyone in the lift, so their lifts always travel empty and their per-trip figures leave
+ * the riders' weight out.
+ */
+public final class EnergyMeter {
+    public static final double JOULES_PER_KWH = 3_600_000.0;
+
+    private final LiftState[] lifts;
+    private EnergyModel model = EnergyModel.standard();
+
+    // whether each lift is moving, and whether it did anything this step
+    private final boolean[] moving;
+    private final boolean[] active;
+
+    // people who got in a lift, added to by lifts on any thread
+    private final LongAdder passengerTrips = new LongAdder();
+
+    public EnergyMeter(LiftState[] lifts) {
+        this.lifts = lifts;
+        this.moving = new boolean[lifts.length];
+        this.active = new boolean[lifts.length];
+    }
+
+    public EnergyModel getModel() {
+        return model;
+    }
+
+    public void setModel(EnergyModel model) {
+        this.model = model;
+    }
+
+    // a lift moved one floor
+    void liftMoved(int lift, boolean up) {
+        LiftState state = lifts[lift];
+        if (!moving[lift]) {
+            moving[lift] = true;
+            state.addEnergy(model.startStopJoules(state.Occupancy(), state.getCapacity()));
+        }
+        state.addEnergy(model.moveJoules(state.Occupancy(), state.getCapacity(), up));
+        active[lift] = true;
+    }
+
+    // a lift stopped at a floor
+    void liftStopped(int lift, int boarded) {
+        moving[lift] = false;
+        active[lift] = true;
+        passengerTrips.add(boarded);
+    }
+
+    // lifts that did nothing this step use standby power and come to rest
+    void stepFinished() {
+        for (int lift = 0; lift < lifts.length; lift++) {
+            if (!active[lift]) {
+                moving[lift] = false;
+                lifts[lift].addEnergy(model.standbyJoules());
+            }
+            active[lift] = false;
+        }
+    }
+
+    public double getTotalJoules() {
+        double total = 0;
+        for (LiftState lift : lifts) {
+            total += lift.getEnergyUsed();
+        }
+        return total;
+    }
+
+    public double getTotalKWh() {
+        return getTotalJoules() / JOULES_PER_KWH;
+    }
+
+    public long getPassengerTrips() {
+        return passengerTrips.sum();
+    }
+
+    // energy for each person carried, 0 if nobody has been carried yet
+    public double getJoulesPerTrip() {
+        long trips = passengerTrips.sum();
+        return trips == 0 ? 0 : getTotalJoules() / trips;
+    }
+
+    // which lifts are moving and the trip count, for checkpoints
+    void writeState(DataOutput out) throws IOException {
+        out.writeLong(passengerTrips.sum());
+        for (boolean liftMoving : moving) {
+            out.writeBoolean(liftMoving);
+        }
+    }
+
+    void readState(DataInput in) throws IOException {
+        passengerTrips.reset();
+        passengerTrips.add(in.readLong());
+        for (int lift = 0; lift < moving.length; lift++) {
+            moving[lift] = in.readBoolean();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Energy[%.4f kWh, %d trips, %.1f kJ/trip]", getTotalKWh(), passengerTrips.sum(),
+                getJoulesPerTrip() / 1000.0);
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Works out how much energy a lift uses. Plug a different one into a building's
+ * EnergyMeter to compare drive types or buildings.
+ * Values are in joules. Negative values mean energy is given back (regenerative braking).
+ */
+public interface EnergyModel {
+    /**
+     * Energy to travel one floor
+     * @param load People in the lift
+     * @param capacity Most people the lift can hold
+     * @param up Direction of travel
+     */
+    double moveJoules(int load, int capacity, boolean up);
+
+    // getting a stopped lift moving and then stopping it again
+    double startStopJoules(int load, int capacity);
+
+    // a lift that does nothing for a step
+    double standbyJoules();
+
+    // counterweighted traction lift with typical values and no regeneration
+    static EnergyModel standard() {
+        return new CounterweightEnergyModel();
+    }
+}
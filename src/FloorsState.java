@@ -23,6 +23,51 @@ public final class FloorsState {
         }
     }
 
+    /**
+     * Every floor's queue length at a single moment, even while other threads add people
+     * and lifts board them. Reads the lengths between two reads of every queue's version
+     * and keeps them if no queue changed in between. If the floors are too busy for that,
+     * it takes every floor's lock in floor order, which can't deadlock since everything
+     * else only holds one at a time.
+     * @param into Array to fill, at least one per floor
+     * @return into
+     */
+    public int[] queueLengths(int[] into) {
+        int numFloors = Floors.size();
+        long[] versions = new long[numFloors];
+        for (int attempt = 0; attempt < 3; attempt++) {
+            for (int floor = 0; floor < numFloors; floor++) {
+                versions[floor] = Floors.get(floor).GetFloorRequests().getVersion();
+            }
+            for (int floor = 0; floor < numFloors; floor++) {
+                into[floor] = Floors.get(floor).GetFloorRequests().size();
+            }
+            boolean unchanged = true;
+            for (int floor = 0; floor < numFloors && unchanged; floor++) {
+                long version = Floors.get(floor).GetFloorRequests().getVersion();
+                unchanged = version == versions[floor] && (version & 1) == 0;
+            }
+            if (unchanged) {
+                return into;
+            }
+        }
+
+        int locked = 0;
+        try {
+            for (; locked < numFloors; locked++) {
+                Floors.get(locked).GetFloorRequests().getLock().lock();
+            }
+            for (int floor = 0; floor < numFloors; floor++) {
+                into[floor] = Floors.get(floor).GetFloorRequests().size();
+            }
+        } finally {
+            for (int floor = 0; floor < locked; floor++) {
+                Floors.get(floor).GetFloorRequests().getLock().unlock();
+            }
+        }
+        return into;
+    }
+
     // easily convert to string for debugging
     @Override
     public String toString() {
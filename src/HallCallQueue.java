@@ -0,0 +1,172 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue of hall calls that any number of threads can add to without locking,
+ * emptied by one controller thread once a tick.
+ *
+ * It is a ring of slots, each holding a sequence number and a call packed into a long.
+ * A producer claims the next slot by moving the tail on with a compare-and-set, writes the
+ * call and then publishes it by setting the slot's sequence. The consumer takes calls in
+ * order for as long as the next slot is published, and frees each slot for the producer
+ * one lap later by setting its sequence again. Producers never wait for each other except
+ * to retry a lost compare-and-set, and adding a call allocates nothing.
+ *
+ * When the ring is full the overflow policy decides: BLOCK makes the producer wait for the
+ * controller to make room (backpressure), SHED drops the call and counts it.
+ */
+public class HallCallQueue {
+    public enum Overflow { BLOCK, SHED }
+
+    // where drain() puts each call
+    public interface Sink {
+        void call(int floor, int destination);
+    }
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // the tail (written by producers) and head (written by the consumer) are kept 128 bytes
+    // apart and away from the array header, so they never share a cache line
+    private static final int TAIL = 16;
+    private static final int HEAD = 32;
+    private final long[] counters = new long[48];
+
+    // slot i is slots[2i] (sequence) and slots[2i + 1] (call)
+    private final long[] slots;
+    private final int capacity;
+    private final int mask;
+    private final Overflow overflow;
+
+    private final LongAdder shed = new LongAdder();
+    private volatile boolean closed = false;
+
+    /**
+     * @param capacity Most calls held at once, rounded up to a power of two
+     * @param overflow What to do with a call when the queue is full
+     */
+    public HallCallQueue(int capacity, Overflow overflow) {
+        if (capacity < 1 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^28, not " + capacity);
+        }
+        this.capacity = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.capacity - 1;
+        this.overflow = overflow;
+        this.slots = new long[this.capacity * 2];
+        for (int i = 0; i < this.capacity; i++) {
+            slots[2 * i] = i;
+        }
+    }
+
+    /**
+     * Add a hall call, from any thread. Returns false if the call was shed because the
+     * queue was full, or (with BLOCK) the queue was closed or the thread interrupted
+     * while waiting for room.
+     */
+    public boolean add(int floor, int destination) {
+        if (offer(floor, destination)) {
+            return true;
+        }
+        if (overflow == Overflow.SHED) {
+            shed.increment();
+            return false;
+        }
+
+        // wait for the controller to make room: spin briefly, then give up the CPU, then park
+        for (int tries = 0; !offer(floor, destination); tries++) {
+            if (closed || Thread.currentThread().isInterrupted()) {
+                shed.increment();
+                return false;
+            }
+            if (tries < 100) {
+                Thread.onSpinWait();
+            } else if (tries < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+        return true;
+    }
+
+    // add a call if there is room, without waiting or counting it as shed
+    public boolean offer(int floor, int destination) {
+        long tail = (long) LONGS.getVolatile(counters, TAIL);
+        while (true) {
+            int slot = (int) (tail & mask) << 1;
+            long sequence = (long) LONGS.getAcquire(slots, slot);
+            long lap = sequence - tail;
+            if (lap == 0) {
+                // the slot is free for this tail - try to claim it
+                if (LONGS.compareAndSet(counters, TAIL, tail, tail + 1)) {
+                    slots[slot + 1] = ((long) floor << 32) | (destination & 0xFFFFFFFFL);
+                    LONGS.setRelease(slots, slot, tail + 1);
+                    return true;
+                }
+                tail = (long) LONGS.getVolatile(counters, TAIL);
+            } else if (lap < 0) {
+                // still holds a call from the last lap that hasn't been taken
+                return false;
+            } else {
+                // another producer got here first
+                tail = (long) LONGS.getVolatile(counters, TAIL);
+            }
+        }
+    }
+
+    /**
+     * Take up to max calls in the order they were added and pass them to sink. Only one
+     * thread may drain. Stops early at a call a producer has claimed but not finished writing.
+     * @return How many calls were taken
+     */
+    public int drain(Sink sink, int max) {
+        long head = counters[HEAD];
+        int taken = 0;
+        try {
+            while (taken < max) {
+                int slot = (int) (head & mask) << 1;
+                if ((long) LONGS.getAcquire(slots, slot) != head + 1) {
+                    break;
+                }
+                long call = slots[slot + 1];
+                LONGS.setRelease(slots, slot, head + capacity);
+                head++;
+                taken++;
+                sink.call((int) (call >>> 32), (int) call);
+            }
+        } finally {
+            LONGS.setRelease(counters, HEAD, head);
+        }
+        return taken;
+    }
+
+    // calls waiting to be drained, including any being written
+    public int size() {
+        long head = (long) LONGS.getAcquire(counters, HEAD);
+        long tail = (long) LONGS.getAcquire(counters, TAIL);
+        return (int) Math.max(0, Math.min(capacity, tail - head));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    // calls dropped because the queue was full
+    public long getShed() {
+        return shed.sum();
+    }
+
+    // stop producers waiting for room, their calls are shed
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,162 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the simulation, so a recording shows what the building
+ * was doing next to GC pauses and hot methods.
+ *
+ *  - elevator.Step        one algorithm step, with its duration
+ *  - elevator.Assignment  the dispatcher gave a floor to a lift, with the cost it worked out
+ *  - elevator.LiftStop    a lift stopped, with how many got on and off
+ *  - elevator.QueueSample people waiting in the building at the end of a step
+ *
+ * They are on whenever a recording is running and can be turned off one by one in the
+ * recording settings (.jfc), e.g. {@code <event name="elevator.QueueSample"><setting
+ * name="enabled">false</setting></event>}. With no recording, or with an event turned off,
+ * the isEnabled() checks below fail and nothing else happens.
+ */
+public final class JfrEvents {
+    private JfrEvents() {}
+
+    @Name("elevator.Step")
+    @Label("Simulation Step")
+    @Category("Elevator Simulation")
+    @Description("One step of an elevator algorithm")
+    @StackTrace(false)
+    static final class Step extends Event {
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Step")
+        long step;
+    }
+
+    @Name("elevator.Assignment")
+    @Label("Dispatch Assignment")
+    @Category("Elevator Simulation")
+    @Description("The dispatcher chose a lift for a floor")
+    @StackTrace(false)
+    static final class Assignment extends Event {
+        @Label("Floor")
+        int floor;
+
+        @Label("Lift")
+        int lift;
+
+        @Label("Cost")
+        @Description("Adjusted distance of the chosen lift, lower is better")
+        int cost;
+    }
+
+    @Name("elevator.LiftStop")
+    @Label("Lift Stop")
+    @Category("Elevator Simulation")
+    @Description("A lift stopped to let people on and off")
+    @StackTrace(false)
+    static final class LiftStop extends Event {
+        @Label("Lift")
+        int lift;
+
+        @Label("Floor")
+        int floor;
+
+        @Label("Boarded")
+        int boarded;
+
+        @Label("Alighted")
+        int alighted;
+    }
+
+    @Name("elevator.QueueSample")
+    @Label("Queue Sample")
+    @Category("Elevator Simulation")
+    @Description("People waiting at the end of a step")
+    @StackTrace(false)
+    static final class QueueSample extends Event {
+        @Label("Step")
+        long step;
+
+        @Label("Waiting")
+        long waiting;
+
+        @Label("Longest Queue")
+        int longestQueue;
+
+        @Label("Longest Queue Floor")
+        int longestQueueFloor;
+    }
+
+    // instances only used to ask whether each event is on
+    private static final Step STEP = new Step();
+    private static final Assignment ASSIGNMENT = new Assignment();
+    private static final LiftStop LIFT_STOP = new LiftStop();
+    private static final QueueSample QUEUE_SAMPLE = new QueueSample();
+
+    // start a step event, null when steps aren't being recorded
+    static Step beginStep() {
+        if (!STEP.isEnabled()) {
+            return null;
+        }
+        Step event = new Step();
+        event.begin();
+        return event;
+    }
+
+    static void endStep(Step event, Object algorithm, long step) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.algorithm = algorithm.getClass().getSimpleName();
+            event.step = step;
+            event.commit();
+        }
+    }
+
+    static void assignment(int floor, int lift, int cost) {
+        if (!ASSIGNMENT.isEnabled()) {
+            return;
+        }
+        Assignment event = new Assignment();
+        event.floor = floor;
+        event.lift = lift;
+        event.cost = cost;
+        event.commit();
+    }
+
+    static void liftStop(int lift, int floor, int alighted, int boarded) {
+        if (!LIFT_STOP.isEnabled()) {
+            return;
+        }
+        LiftStop event = new LiftStop();
+        event.lift = lift;
+        event.floor = floor;
+        event.boarded = boarded;
+        event.alighted = alighted;
+        event.commit();
+    }
+
+    // only looks at the floors when the event is on
+    static void queueSample(FloorsState floors, long step) {
+        if (!QUEUE_SAMPLE.isEnabled()) {
+            return;
+        }
+        QueueSample event = new QueueSample();
+        event.step = step;
+        event.longestQueueFloor = -1;
+        for (int floor = 0; floor < floors.GetFloors().size(); floor++) {
+            int length = floors.GetFloors().get(floor).GetFloorRequests().size();
+            event.waiting += length;
+            if (length > event.longestQueue) {
+                event.longestQueue = length;
+                event.longestQueueFloor = floor;
+            }
+        }
+        event.commit();
+    }
+}
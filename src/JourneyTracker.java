@@ -0,0 +1,243 @@
+import java.util.Arrays;
+
+/**
+ * Follows every passenger from arriving on a floor, to boarding a lift, to getting off,
+ * and records how long each part took.
+ *
+ * Floor queues only hold destinations, so the tracker keeps its own copy of the step each
+ * waiting passenger arrived, in the same first-come first-served order as the queue.
+ * Boarding moves them onto a list for the lift, and getting off at their destination
+ * records their wait, ride and total journey in histograms. Everything is kept in
+ * primitive arrays that grow with the number of people in the building at once, not
+ * with the length of the run.
+ *
+ * Times are in steps. Multiply by the clock's millisPerStep for milliseconds.
+ * LOOK and MYLIFT clear a floor without putting anyone in the lift; those passengers
+ * count as delivered when they are picked up, with a ride of 0.
+ */
+public class JourneyTracker implements SimulationListener {
+    private final LiftState[] lifts;
+    private final PassengerQueue[] waiting;
+    private final Riders[] riders;
+
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram rideTimes = new LatencyHistogram();
+    private final LatencyHistogram journeyTimes = new LatencyHistogram();
+
+    // step events are happening in
+    private long now;
+
+    // start following everyone in a single lift building
+    public static JourneyTracker attach(Algorithm algorithm) {
+        Building building = algorithm.building;
+        JourneyTracker tracker = new JourneyTracker(building.getFloors(),
+                new LiftState[] { building.getLift() }, algorithm.getStepCount());
+        building.events().addListener(tracker);
+        return tracker;
+    }
+
+    public static JourneyTracker attach(MultiLiftAlgorithm algorithm) {
+        MultiLiftBuilding building = algorithm.building;
+        JourneyTracker tracker = new JourneyTracker(building.getFloors(), building.getAllLifts(),
+                algorithm.getStepCount());
+        building.events().addListener(tracker);
+        return tracker;
+    }
+
+    /**
+     * People already waiting or riding count as having arrived (and boarded) at startStep.
+     */
+    JourneyTracker(FloorsState floors, LiftState[] lifts, long startStep) {
+        this.lifts = lifts;
+        this.now = startStep;
+
+        int numFloors = floors.GetFloors().size();
+        waiting = new PassengerQueue[numFloors];
+        for (int floor = 0; floor < numFloors; floor++) {
+            Queue queue = floors.GetFloors().get(floor).GetFloorRequests();
+            if (!queue.isEmpty()) {
+                PassengerQueue passengers = queueFor(floor);
+                for (int i = 0; i < queue.size(); i++) {
+                    passengers.add(startStep, queue.peek(i));
+                }
+            }
+        }
+
+        riders = new Riders[lifts.length];
+        for (int lift = 0; lift < lifts.length; lift++) {
+            riders[lift] = new Riders();
+            for (Object destination : lifts[lift].getCurrentlyHandlingObj()) {
+                riders[lift].add(startStep, startStep, (Integer) destination);
+            }
+        }
+    }
+
+    @Override
+    public void stepStarted(long step) {
+        now = step;
+    }
+
+    @Override
+    public void passengerArrived(int floor, int destination) {
+        queueFor(floor).add(now, destination);
+    }
+
+    @Override
+    public void liftStopped(int lift, int floor, int alighted, int boarded) {
+        Riders inLift = riders[lift];
+
+        // everyone going to this floor gets off
+        if (alighted > 0) {
+            for (int i = inLift.size - 1; i >= 0; i--) {
+                if (inLift.destination[i] == floor) {
+                    finishJourney(inLift.arrived[i], inLift.boarded[i]);
+                    inLift.remove(i);
+                }
+            }
+        }
+
+        // the people at the front of the queue get on
+        PassengerQueue queue = waiting[floor];
+        for (int i = 0; i < boarded && queue != null && queue.size > 0; i++) {
+            long arrived = queue.peekArrival();
+            waitTimes.record(now - arrived);
+            inLift.add(arrived, now, queue.peekDestination());
+            queue.poll();
+        }
+
+        // anyone the lift didn't actually keep was delivered straight away
+        int occupancy = lifts[lift].Occupancy();
+        while (inLift.size > occupancy) {
+            int last = inLift.size - 1;
+            finishJourney(inLift.arrived[last], inLift.boarded[last]);
+            inLift.remove(last);
+        }
+    }
+
+    @Override
+    public void stepFinished(long step) {
+        // anything that happens before the next step belongs to it
+        now = step + 1;
+    }
+
+    private void finishJourney(long arrived, long boarded) {
+        rideTimes.record(now - boarded);
+        journeyTimes.record(now - arrived);
+    }
+
+    private PassengerQueue queueFor(int floor) {
+        if (waiting[floor] == null) {
+            waiting[floor] = new PassengerQueue();
+        }
+        return waiting[floor];
+    }
+
+    // steps from arriving on a floor to getting in a lift
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    // steps from getting in to getting out
+    public LatencyHistogram getRideTimes() {
+        return rideTimes;
+    }
+
+    // steps from arriving to getting out
+    public LatencyHistogram getJourneyTimes() {
+        return journeyTimes;
+    }
+
+    // people still waiting on a floor
+    public int getWaiting() {
+        int total = 0;
+        for (PassengerQueue queue : waiting) {
+            if (queue != null) {
+                total += queue.size;
+            }
+        }
+        return total;
+    }
+
+    // people in lifts right now
+    public int getRiding() {
+        int total = 0;
+        for (Riders inLift : riders) {
+            total += inLift.size;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "Journeys[wait: " + waitTimes + " | ride: " + rideTimes + " | total: " + journeyTimes + "]";
+    }
+
+    // arrival steps and destinations of the people on a floor, oldest first
+    private static final class PassengerQueue {
+        long[] arrival = new long[4];
+        int[] destination = new int[4];
+        int head;
+        int size;
+
+        void add(long arrived, int dest) {
+            if (size == arrival.length) {
+                long[] biggerArrival = new long[arrival.length * 2];
+                int[] biggerDestination = new int[arrival.length * 2];
+                for (int i = 0; i < size; i++) {
+                    int from = (head + i) % arrival.length;
+                    biggerArrival[i] = arrival[from];
+                    biggerDestination[i] = destination[from];
+                }
+                arrival = biggerArrival;
+                destination = biggerDestination;
+                head = 0;
+            }
+            int slot = (head + size) % arrival.length;
+            arrival[slot] = arrived;
+            destination[slot] = dest;
+            size++;
+        }
+
+        long peekArrival() {
+            return arrival[head];
+        }
+
+        int peekDestination() {
+            return destination[head];
+        }
+
+        void poll() {
+            head = (head + 1) % arrival.length;
+            size--;
+        }
+    }
+
+    // the people in one lift - order doesn't matter since everyone for a floor gets off together
+    private static final class Riders {
+        long[] arrived = new long[8];
+        long[] boarded = new long[8];
+        int[] destination = new int[8];
+        int size;
+
+        void add(long arrivedAt, long boardedAt, int dest) {
+            if (size == arrived.length) {
+                int bigger = arrived.length * 2;
+                arrived = Arrays.copyOf(arrived, bigger);
+                boarded = Arrays.copyOf(boarded, bigger);
+                destination = Arrays.copyOf(destination, bigger);
+            }
+            arrived[size] = arrivedAt;
+            boarded[size] = boardedAt;
+            destination[size] = dest;
+            size++;
+        }
+
+        // swap the last one into the gap
+        void remove(int index) {
+            size--;
+            arrived[index] = arrived[size];
+            boarded[index] = boarded[size];
+            destination[index] = destination[size];
+        }
+    }
+}
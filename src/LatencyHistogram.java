@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/**
+ * Counts values in log-sized buckets, like HdrHistogram.
+ *
+ * Values below 2^precisionBits each get their own bucket. Above that, every power of two
+ * is split into 2^(precisionBits - 1) equal buckets, so a value is always reported within
+ * about 1 / 2^(precisionBits - 1) of what was recorded (under 1.6% with the default of 7).
+ * The number of buckets is fixed when the histogram is made, so memory stays the same
+ * however many values are recorded. Recording never allocates.
+ *
+ * Histograms with the same precision can be added together, e.g. to combine threads or runs.
+ */
+public final class LatencyHistogram {
+    public static final int DEFAULT_PRECISION_BITS = 7;
+
+    private final int precisionBits;
+    private final int subBucketCount;   // 2^precisionBits
+    private final int halfCount;        // 2^(precisionBits - 1)
+    private final long[] counts;
+
+    private long totalCount = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    public LatencyHistogram() {
+        this(DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * @param precisionBits How finely each power of two is split (1 to 16, higher is more exact)
+     */
+    public LatencyHistogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("Precision must be between 1 and 16 bits");
+        }
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.halfCount = subBucketCount >> 1;
+        this.counts = new long[subBucketCount + (64 - precisionBits) * halfCount];
+    }
+
+    // record one value (negative values count as 0)
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    // record the same value several times
+    public void record(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)] += count;
+        totalCount += count;
+        sum += value * count;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    // add everything recorded in another histogram to this one
+    public void add(LatencyHistogram other) {
+        if (other.precisionBits != precisionBits) {
+            throw new IllegalArgumentException("Histograms have different precision");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    // exact, not rounded to a bucket
+    public long getMax() {
+        return max;
+    }
+
+    // exact, not rounded to a bucket
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * Smallest value that at least the given percentage of recorded values are at or below,
+     * rounded up to the top of its bucket (and never more than the max).
+     * @param percentile 0 to 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double clamped = Math.min(100.0, Math.max(0.0, percentile));
+        long rank = Math.max(1, (long) Math.ceil(clamped / 100.0 * totalCount));
+
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestValueAt(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * How many recorded values were at or below a value. Exact for small values, otherwise
+     * a bucket only counts once its whole range is at or below the value.
+     */
+    public long getCountAtOrBelow(long value) {
+        if (value < 0) {
+            return 0;
+        }
+        if (value >= max) {
+            return totalCount;
+        }
+        long count = 0;
+        int last = indexOf(value);
+        if (highestValueAt(last) > value) {
+            last--;
+        }
+        for (int i = 0; i <= last; i++) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    // bucket for a value
+    int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        // how far the value has to be shifted to fit in precisionBits bits
+        int shift = 64 - Long.numberOfLeadingZeros(value) - precisionBits;
+        int subBucket = (int) (value >>> shift); // halfCount to subBucketCount - 1
+        return subBucketCount + (shift - 1) * halfCount + (subBucket - halfCount);
+    }
+
+    // largest value that ends up in a bucket
+    long highestValueAt(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index - subBucketCount) / halfCount + 1;
+        long subBucket = (index - subBucketCount) % halfCount + halfCount;
+        long lowest = subBucket << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    // e.g. "n=1000 mean=4.20 p50=3 p90=9 p99=15 p99.9=21 max=22"
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2f p50=%d p90=%d p99=%d p99.9=%d max=%d", totalCount, getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), max);
+    }
+}
@@ -1,4 +1,8 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -9,10 +13,15 @@ public class LiftState {
     int capacity;
     int currentFloor; //tracks current floor
     boolean goingUp; //tracks direction
+    double energyUsed; // joules used so far, see EnergyMeter
 
     // people in the elevator
     private ArrayList<Integer> currentlyHandling = new ArrayList<>();
 
+    // floors a button inside the lift was pressed for, cleared when the lift stops there
+    private boolean[] stops = new boolean[0];
+    private int stopCount = 0;
+
     public void AddRequest(int Request) {
         currentlyHandling.add(Request);
     }
@@ -37,12 +46,65 @@ public class LiftState {
         return this.currentlyHandling.size();
     }
 
+    // copy of the destinations of everyone in the lift
+    public Object[] getCurrentlyHandlingObj() {
+        return currentlyHandling.toArray();
+    }
+
+    // someone in the lift pressed the button for floor
+    public void addStop(int floor) {
+        if (floor >= stops.length) {
+            stops = Arrays.copyOf(stops, floor + 1);
+        }
+        if (!stops[floor]) {
+            stops[floor] = true;
+            stopCount++;
+        }
+    }
+
+    public boolean hasStop(int floor) {
+        return floor >= 0 && floor < stops.length && stops[floor];
+    }
+
+    // the lift stopped at floor
+    public void clearStop(int floor) {
+        if (hasStop(floor)) {
+            stops[floor] = false;
+            stopCount--;
+        }
+    }
+
+    // lowest floor with a stop, -1 for none
+    public int getLowestStop() {
+        if (stopCount == 0) {
+            return -1;
+        }
+        int floor = 0;
+        while (!stops[floor]) {
+            floor++;
+        }
+        return floor;
+    }
+
+    // highest floor with a stop, -1 for none
+    public int getHighestStop() {
+        if (stopCount == 0) {
+            return -1;
+        }
+        int floor = stops.length - 1;
+        while (!stops[floor]) {
+            floor--;
+        }
+        return floor;
+    }
+
     // private default constructor
     // stop mistakes by marking private bad things could happen if this object is default initialised
     private LiftState() {}
 
     public LiftState(int numFloors, int capacity) {
         this.capacity = capacity;
+        this.stops = new boolean[numFloors];
         this.currentFloor = 1; 
         this.goingUp = true;  
     }
@@ -91,8 +153,55 @@ public class LiftState {
         return ret;
     }
 
+    // energy used so far in joules
+    public double getEnergyUsed() {
+        return energyUsed;
+    }
+
+    void addEnergy(double joules) {
+        energyUsed += joules;
+    }
+
     // debugging utility to print contents simply
     public String toString() {
         return "Lift[MaxCapacity = " + capacity + "]";
     }
-}
\ No newline at end of file
+
+    // write the lift, everyone in it (in order) and its stops for a checkpoint
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(currentFloor);
+        out.writeBoolean(goingUp);
+        out.writeDouble(energyUsed);
+        out.writeInt(currentlyHandling.size());
+        for (int i = 0; i < currentlyHandling.size(); i++) {
+            out.writeInt(currentlyHandling.get(i));
+        }
+        out.writeInt(stopCount);
+        for (int floor = 0; floor < stops.length; floor++) {
+            if (stops[floor]) {
+                out.writeInt(floor);
+            }
+        }
+    }
+
+    // replace the state with what writeState saved
+    void readState(DataInput in) throws IOException {
+        capacity = in.readInt();
+        currentFloor = in.readInt();
+        goingUp = in.readBoolean();
+        energyUsed = in.readDouble();
+        int size = in.readInt();
+        currentlyHandling.clear();
+        currentlyHandling.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            currentlyHandling.add(in.readInt());
+        }
+        Arrays.fill(stops, false);
+        stopCount = 0;
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            addStop(in.readInt());
+        }
+    }
+}
@@ -0,0 +1,571 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a multi-lift building in real time instead of in NextStep() steps. Every lift is
+ * driven by its own thread, which sleeps for the time it takes to travel a floor or open
+ * and close the doors, and hall calls are taken as they arrive rather than once a step.
+ *
+ * The threads only talk through queues. call() adds a hall call to a lock-free
+ * HallCallQueue and returns straight away, from any thread. Once a tick the dispatcher
+ * thread drains the calls that have come in, adds the passengers and picks a lift for each
+ * floor with RequestDispatcher.getBestElevator(), then sends the floor to that lift's
+ * queue. A lift keeps its own list of floors to visit, decides each move with the LOOK rule
+ * from MultiLiftLook, and tells the dispatcher when it has served a floor. A lift with
+ * nothing to do just waits on its queue.
+ *
+ * The build targets Java 17, and there every lift gets its own platform thread: a
+ * building with thousands of lifts runs thousands of threads, each with its own stack.
+ * Only when run on Java 21 or later, where Thread.ofVirtual() is found by reflection, are
+ * the threads virtual threads, so thousands of lifts cost a few carrier threads instead.
+ *
+ * Given a simulated SimClock instead of a speedup, travel and door times pass on that clock
+ * and nothing waits for the wall clock. The threads then take turns through a SimScheduler:
+ * advance() or runUntilIdle() moves the clock on, letting one thread run at a time in the
+ * order of the times they are waiting for. A run then comes out exactly the same every
+ * time, as long as calls are made from the thread that moves the clock, between its calls.
+ *
+ * Nothing holds a building-wide lock. Each floor's queue has its own lock, so lifts and the
+ * dispatcher only wait for each other when they use the same floor at the same moment.
+ * Each LiftState is only changed by its own lift's thread. The dispatcher reads the lifts
+ * without locking when picking one, so it may see a lift a move out of date, which is no
+ * worse than picking a lift a moment earlier.
+ */
+public class LiveController implements AutoCloseable {
+    // how often the dispatcher takes in new hall calls, in real time
+    private static final long TICK_NANOS = 1_000_000L;
+
+    // default room for hall calls between ticks
+    private static final int HALL_CALL_CAPACITY = 1 << 16;
+
+    // a lift telling the dispatcher it has stopped at a floor
+    private static final class Served {
+        final int floor;
+        final int lift;
+
+        Served(int floor, int lift) {
+            this.floor = floor;
+            this.lift = lift;
+        }
+    }
+
+    private final MultiLiftBuilding building;
+    private final RequestDispatcher dispatcher;
+    private final int numFloors;
+    private final long travelMillis;
+    private final long doorMillis;
+    private final long travelNanos;
+    private final long doorNanos;
+
+    // takes turns on a simulated clock, null when running on the wall clock
+    private final SimScheduler scheduler;
+    private final SimClock clock;
+    private final SimScheduler.Turn dispatchTurn;
+
+    private final HallCallQueue hallCalls;
+    private final HallCallQueue.Sink addCall = this::addCall;
+    private final BlockingQueue<Served> served = new LinkedBlockingQueue<>();
+    private final LiftDriver[] drivers;
+    private final List<Thread> threads = new ArrayList<>();
+    private final boolean virtualThreads;
+
+    // once idle, alightings = arrivals + this: everyone out so far plus everyone waiting or
+    // riding at the start, less the arrivals already counted by then
+    private final long alreadyInside;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Start driving a building. Times are scaled down by speedup, so with a speedup of 1000
+     * a 2 second door time takes 2 ms.
+     * @param building The building to drive, which nothing else should touch while this runs
+     * @param travelMillis Time to travel one floor
+     * @param doorMillis Time to open and close the doors at a stop
+     * @param speedup How much faster than real time to run, 1 for real time
+     */
+    public LiveController(MultiLiftBuilding building, long travelMillis, long doorMillis, double speedup) {
+        this(building, travelMillis, doorMillis, speedup,
+                new HallCallQueue(HALL_CALL_CAPACITY, HallCallQueue.Overflow.BLOCK));
+    }
+
+    /**
+     * Start driving a building, taking hall calls from the given queue. Callers can add to
+     * the queue directly instead of going through call().
+     */
+    public LiveController(MultiLiftBuilding building, long travelMillis, long doorMillis, double speedup,
+                          HallCallQueue hallCalls) {
+        this(building, travelMillis, doorMillis, speedup, SimClock.system(), hallCalls);
+    }
+
+    /**
+     * Start driving a building on a clock. On a simulated clock nothing moves until advance()
+     * or runUntilIdle() is called; the clock's own step length isn't used. The system clock
+     * runs in real time, like a speedup of 1.
+     */
+    public LiveController(MultiLiftBuilding building, long travelMillis, long doorMillis, SimClock clock) {
+        this(building, travelMillis, doorMillis, 1, clock,
+                new HallCallQueue(HALL_CALL_CAPACITY, HallCallQueue.Overflow.BLOCK));
+    }
+
+    private LiveController(MultiLiftBuilding building, long travelMillis, long doorMillis, double speedup,
+                           SimClock clock, HallCallQueue hallCalls) {
+        if (!(speedup > 0) || travelMillis < 0 || doorMillis < 0) {
+            throw new IllegalArgumentException("Times can't be negative and speedup must be positive");
+        }
+        this.clock = clock;
+        this.scheduler = clock.isSimulated() ? new SimScheduler(clock) : null;
+        // the dispatcher goes first, to hand out anyone already waiting
+        this.dispatchTurn = scheduler == null ? null : scheduler.join();
+        this.building = building;
+        this.dispatcher = new RequestDispatcher(building);
+        this.hallCalls = hallCalls;
+        SimMetrics.Snapshot start = building.metrics().snapshot();
+        this.alreadyInside = start.getWaitingNow() + start.getOccupancyNow()
+                - start.getArrivals() + start.getAlightings();
+        this.numFloors = building.getFloors().GetFloors().size();
+        this.travelMillis = travelMillis;
+        this.doorMillis = doorMillis;
+        this.travelNanos = Math.round(travelMillis * 1e6 / speedup);
+        this.doorNanos = Math.round(doorMillis * 1e6 / speedup);
+
+        ThreadFactory factory = virtualThreadFactory();
+        this.virtualThreads = factory != null;
+        if (factory == null) {
+            factory = task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+
+        Thread dispatcherThread = factory.newThread(this::dispatch);
+        dispatcherThread.setName("dispatcher");
+        threads.add(dispatcherThread);
+        LiftDriver[] drivers = new LiftDriver[building.getNumLifts()];
+        for (int i = 0; i < drivers.length; i++) {
+            drivers[i] = new LiftDriver(i);
+            Thread thread = factory.newThread(drivers[i]);
+            thread.setName("lift-" + i);
+            threads.add(thread);
+        }
+        this.drivers = drivers;
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    // Thread.ofVirtual().factory() if this JVM has it, otherwise null
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public MultiLiftBuilding getBuilding() {
+        return building;
+    }
+
+    public HallCallQueue getHallCalls() {
+        return hallCalls;
+    }
+
+    // the clock travel and door times pass on
+    public SimClock getClock() {
+        return clock;
+    }
+
+    /**
+     * On a simulated clock, let millis of simulated time pass. Every thread whose time comes
+     * in that span runs, one at a time, before this returns.
+     */
+    public void advance(long millis) throws InterruptedException {
+        simulated().advance(millis);
+    }
+
+    /**
+     * On a simulated clock, run until isIdle(), leaving the clock at the moment the last
+     * passenger got out. Returns false if that would take more than maxMillis.
+     */
+    public boolean runUntilIdle(long maxMillis) throws InterruptedException {
+        SimScheduler scheduler = simulated();
+        long end = clock.now() + maxMillis;
+        while (!isIdle()) {
+            if (!scheduler.runNext(end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SimScheduler simulated() {
+        if (scheduler == null) {
+            throw new IllegalStateException("Only a controller on a simulated clock can be advanced");
+        }
+        return scheduler;
+    }
+
+    /**
+     * A hall call: someone on floor wants to go to destination. Returns straight away,
+     * or once there is room if the queue is full and blocks. Returns false if the call was shed.
+     */
+    public boolean call(int floor, int destination) {
+        if (floor < 0 || floor >= numFloors || destination < 0 || destination >= numFloors) {
+            throw new IllegalArgumentException("No floor " + (floor < 0 || floor >= numFloors ? floor : destination));
+        }
+        if (closed) {
+            throw new IllegalStateException("Controller is closed");
+        }
+        boolean added = hallCalls.add(floor, destination);
+        wake(dispatchTurn);
+        return added;
+    }
+
+    /**
+     * True when every call made so far has been delivered: nobody waiting on a floor or
+     * riding in a lift.
+     */
+    public boolean isIdle() {
+        if (!hallCalls.isEmpty()) {
+            return false;
+        }
+        // everyone is counted as arriving before a lift can see them, and snapshot() reads
+        // alightings before arrivals, so the two can only match once everyone is out
+        SimMetrics.Snapshot metrics = building.metrics().snapshot();
+        return metrics.getAlightings() == metrics.getArrivals() + alreadyInside;
+    }
+
+    // wait until isIdle(), returns false if it took longer than timeoutMillis
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (!isIdle()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    // the building's metrics so far - the counters are exact, the gauges are a moment's look
+    public SimMetrics.Snapshot metrics() {
+        return building.metrics().snapshot();
+    }
+
+    // stops every thread and waits for them to finish, or until the caller is interrupted
+    @Override
+    public void close() {
+        closed = true;
+        hallCalls.close();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // the dispatcher thread: each tick, adds new passengers and gives their floors to lifts,
+    // and hands anyone a lift left behind to another lift
+    private void dispatch() {
+        try {
+            begin(dispatchTurn);
+            // anyone waiting from the start
+            for (int floor = 0; floor < numFloors; floor++) {
+                assign(floor, defaultDestination(floor));
+            }
+
+            while (!closed) {
+                Served stop = nextServed();
+                hallCalls.drain(addCall, hallCalls.getCapacity());
+                for (; stop != null; stop = served.poll()) {
+                    if (dispatcher.getAssignment(stop.floor) == stop.lift) {
+                        dispatcher.clearAssignment(stop.floor);
+                    }
+                    assign(stop.floor, defaultDestination(stop.floor));
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            end(dispatchTurn);
+        }
+    }
+
+    // the next lift to have stopped, or null after a tick (or a wake() on a simulated clock) without one
+    private Served nextServed() throws InterruptedException {
+        if (scheduler == null) {
+            return served.poll(TICK_NANOS, TimeUnit.NANOSECONDS);
+        }
+        Served stop = served.poll();
+        if (stop == null && hallCalls.isEmpty()) {
+            scheduler.park(dispatchTurn);
+            stop = served.poll();
+        }
+        return stop;
+    }
+
+    // a hall call drained from the queue
+    private void addCall(int floor, int destination) {
+        building.AddPassenger(floor, destination);
+        assign(floor, destination);
+    }
+
+    // give a floor with people waiting to a lift, if no lift has it yet
+    private void assign(int floor, int destination) {
+        if (dispatcher.getAssignment(floor) == -1 && !building.GetFloor(floor).GetFloorRequests().isEmpty()) {
+            LiftDriver driver = drivers[dispatcher.getBestElevator(floor, destination)];
+            driver.inbox.add(floor);
+            wake(driver.turn);
+        }
+    }
+
+    // same guess as dispatchRequests() when the destination isn't known
+    private int defaultDestination(int floor) {
+        return floor < numFloors / 2 ? numFloors - 1 : 0;
+    }
+
+    // on a simulated clock, wait for this thread's first turn
+    private void begin(SimScheduler.Turn turn) throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.begin(turn);
+        }
+    }
+
+    // on a simulated clock, give up this thread's turn for good
+    private void end(SimScheduler.Turn turn) {
+        if (scheduler != null) {
+            scheduler.leave(turn);
+        }
+    }
+
+    // on a simulated clock, let a thread waiting for work run
+    private void wake(SimScheduler.Turn turn) {
+        if (scheduler != null) {
+            scheduler.wake(turn);
+        }
+    }
+
+    // wait for millis on a simulated clock, or the scaled nanos on the wall clock
+    private void pause(SimScheduler.Turn turn, long millis, long nanos) throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.sleep(turn, millis);
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Drives one lift. Only this thread changes its LiftState.
+     */
+    private final class LiftDriver implements Runnable {
+        final int index;
+        final LiftState lift;
+
+        // floors sent by the dispatcher
+        final BlockingQueue<Integer> inbox = new LinkedBlockingQueue<>();
+
+        // this thread's turn on a simulated clock, null on the wall clock
+        final SimScheduler.Turn turn;
+
+        // floors this lift has been given and not yet served
+        final boolean[] stops = new boolean[numFloors];
+        int stopCount = 0;
+
+        LiftDriver(int index) {
+            this.index = index;
+            this.lift = building.getLift(index);
+            this.turn = scheduler == null ? null : scheduler.join();
+        }
+
+        @Override
+        public void run() {
+            try {
+                begin(turn);
+                while (!closed) {
+                    // wait for work when there is nothing to do, otherwise just pick up anything new
+                    Integer floor = stopCount == 0 && lift.Occupancy() == 0 ? nextFloor() : inbox.poll();
+                    while (floor != null) {
+                        if (!stops[floor]) {
+                            stops[floor] = true;
+                            stopCount++;
+                        }
+                        floor = inbox.poll();
+                    }
+                    step();
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } finally {
+                end(turn);
+            }
+        }
+
+        // wait for a floor from the dispatcher
+        private Integer nextFloor() throws InterruptedException {
+            if (scheduler == null) {
+                return inbox.take();
+            }
+            Integer floor = inbox.poll();
+            while (floor == null) {
+                scheduler.park(turn);
+                floor = inbox.poll();
+            }
+            return floor;
+        }
+
+        // decide and carry out one move
+        private void step() throws InterruptedException {
+            int currentFloor = lift.getCurrentFloor();
+            boolean full = lift.Occupancy() >= lift.getCapacity();
+
+            // lowest and highest floors to visit, from the floors given and the passengers' destinations
+            int lowest = -1;
+            int highest = -1;
+            boolean dropOff = false;
+            for (Object passenger : lift.getCurrentlyHandlingObj()) {
+                if (passenger instanceof Integer) {
+                    int destination = (Integer) passenger;
+                    if (destination >= 0 && destination < numFloors) {
+                        dropOff |= destination == currentFloor;
+                        lowest = lowest == -1 ? destination : Math.min(lowest, destination);
+                        highest = Math.max(highest, destination);
+                    }
+                }
+            }
+            if (stopCount > 0) {
+                for (int floor = 0; floor < numFloors; floor++) {
+                    if (stops[floor]) {
+                        lowest = lowest == -1 ? floor : Math.min(lowest, floor);
+                        highest = Math.max(highest, floor);
+                    }
+                }
+            }
+
+            boolean waiting = !building.GetCurrentFloorRequests(index).isEmpty();
+
+            // a full lift passes its floors by and comes back once it has room
+            if (dropOff || (!full && (waiting || stops[currentFloor]))) {
+                stop(currentFloor);
+                return;
+            }
+
+            switch (MultiLiftLook.look(currentFloor, lift.isGoingUp(), lowest, highest)) {
+                case UP:
+                    move(true);
+                    break;
+                case DOWN:
+                    move(false);
+                    break;
+                case TURN_DOWN:
+                    lift.setGoingUp(false);
+                    break;
+                case TURN_UP:
+                    lift.setGoingUp(true);
+                    break;
+                case TURN_DOWN_AND_MOVE:
+                    move(false);
+                    break;
+                case TURN_UP_AND_MOVE:
+                    move(true);
+                    break;
+                default:
+                    // IDLE: the next loop waits on the inbox
+                    break;
+            }
+        }
+
+        private void move(boolean up) throws InterruptedException {
+            pause(turn, travelMillis, travelNanos);
+            if (up) {
+                building.MoveLiftUp(index);
+            } else {
+                building.MoveLiftDown(index);
+            }
+        }
+
+        private void stop(int floor) throws InterruptedException {
+            pause(turn, doorMillis, doorNanos);
+            building.StopLift(index);
+            if (stops[floor]) {
+                stops[floor] = false;
+                stopCount--;
+            }
+            // let the dispatcher clear the floor, or hand anyone left behind to another lift
+            served.add(new Served(floor, index));
+            wake(dispatchTurn);
+        }
+    }
+
+    /**
+     * Runs a building with random hall calls in real time (or faster) and prints progress.
+     * Usage: java LiveController <floors> <lifts> [callsPerSecond] [speedup] [seconds]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java LiveController <floors> <lifts> [callsPerSecond] [speedup] [seconds]");
+            return;
+        }
+        int floors = Integer.parseInt(args[0]);
+        int lifts = Integer.parseInt(args[1]);
+        double callsPerSecond = args.length >= 3 ? Double.parseDouble(args[2]) : lifts;
+        double speedup = args.length >= 4 ? Double.parseDouble(args[3]) : 1;
+        double seconds = args.length >= 5 ? Double.parseDouble(args[4]) : 10;
+
+        MultiLiftBuilding building = MultiLiftBuilding.FromRequests(floors, 8, new java.util.HashMap<>(), lifts);
+        java.util.Random random = new java.util.Random();
+        try (LiveController controller = new LiveController(building, 2000, 5000, speedup)) {
+            System.out.println("Driving " + lifts + " lifts on " + (controller.usesVirtualThreads()
+                    ? "virtual threads" : "platform threads (virtual threads need Java 21)"));
+            long start = System.nanoTime();
+            long end = start + (long) (seconds * 1e9);
+            long nextReport = start + 1_000_000_000L;
+            double calls = 0;
+            long lastNanos = start;
+            while (System.nanoTime() < end) {
+                long now = System.nanoTime();
+                calls += callsPerSecond * (now - lastNanos) / 1e9;
+                lastNanos = now;
+                for (; calls >= 1; calls--) {
+                    int floor = random.nextInt(floors);
+                    int destination = random.nextInt(floors - 1);
+                    controller.call(floor, destination >= floor ? destination + 1 : destination);
+                }
+                if (now >= nextReport) {
+                    SimMetrics.Snapshot metrics = controller.metrics();
+                    System.out.println(String.format("%.0f s: arrived %d, boarded %d, delivered %d, waiting %d",
+                            (now - start) / 1e9, metrics.getArrivals(), metrics.getBoardings(),
+                            metrics.getAlightings(), metrics.getWaitingNow()));
+                    nextReport += 1_000_000_000L;
+                }
+                Thread.sleep(1);
+            }
+        }
+    }
+}
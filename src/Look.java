@@ -5,7 +5,7 @@ public class Look extends Algorithm {
         super(buildingState);
     }
 
-    public Building NextStep() throws InvalidBuildingConfiguration {
+    protected Building Step() throws InvalidBuildingConfiguration {
         LiftState lift = building.getLift();
         FloorsState floors = building.getFloors();
         List<FloorState> floorList = floors.GetFloors();
@@ -38,7 +38,7 @@ public class Look extends Algorithm {
         //Handles cases where no requests exist
         if (highestRequest == null) {
             System.out.println("No requests in the building. Elevator remains idle.");
-            return building; // This return won't actually be reached
+            return building;
         }
 
         // Show highest & lowest requests
@@ -47,9 +47,7 @@ public class Look extends Algorithm {
         //Check if there is a request at the current floor and remove ALL requests from this floor
         Queue currentFloorRequests = floorList.get(currentFloor).GetFloorRequests();
         if (!currentFloorRequests.isEmpty()) {
-            while (!currentFloorRequests.isEmpty()) {
-                currentFloorRequests.dequeue(); // Remove each request
-            }
+            building.ClearCurrentFloor(); // Remove each request
             System.out.println("Stopping at Floor " + currentFloor + " to pick up/drop off passengers.");
 
             // Re-check if there are still requests left after removing them
@@ -65,15 +63,14 @@ public class Look extends Algorithm {
             // If still no requests, go idle (and then exit)
             if (highestRequest == null || lowestRequest == null) {
                 System.out.println("No requests in the building. Elevator remains idle.");
-                System.exit(0); // Terminate the program immediately
-                return building; // This return won't actually be reached
+                return building;
             }
         }
 
         //Move elevator in its direction, stopping at the last request in that direction
         if (goingUp) {
             if (currentFloor < highestRequest) {
-                lift.setCurrentFloor(currentFloor + 1);
+                building.MoveLiftUp();
                 System.out.println("Moving UP to Floor: " + (currentFloor + 1));
             } else {
                 lift.setGoingUp(false); // Change direction when at highest request
@@ -81,7 +78,7 @@ public class Look extends Algorithm {
             }
         } else {
             if (currentFloor > lowestRequest) {
-                lift.setCurrentFloor(currentFloor - 1);
+                building.MoveLiftDown();
                 System.out.println("Moving DOWN to Floor: " + (currentFloor - 1));
             } else {
                 lift.setGoingUp(true); // Change direction when at lowest request
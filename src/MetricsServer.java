@@ -0,0 +1,329 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the state of a running simulation at http://localhost:port/metrics in the
+ * Prometheus text format, so a long run can be watched with Prometheus or just curl.
+ *
+ * The simulation thread copies what is needed into a new immutable Snapshot at most every
+ * publishInterval and swaps it in through a volatile field. Requests only ever read the
+ * latest snapshot, so a scrape never locks or pauses the simulation, and the simulation
+ * never waits for a scrape.
+ *
+ * A LiveController has no steps, so serving one publishes from a timer thread of its own
+ * instead. The counters are read from the LongAdders in SimMetrics and the gauges are a
+ * moment's look at floors and lifts other threads are changing, like metrics() gives.
+ * There is no step count or wait histogram, since waits are measured in steps.
+ *
+ * Only binds to the loopback address.
+ */
+public class MetricsServer implements SimulationListener, AutoCloseable {
+    // upper bounds (in steps) for the wait time histogram buckets
+    private static final long[] WAIT_BUCKETS = {0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private final FloorsState floors;
+    private final LiftState[] lifts;
+    private final SimMetrics metrics;
+    private final EnergyMeter energy;
+
+    // null when serving a LiveController
+    private final JourneyTracker journeys;
+    private final long publishIntervalNanos;
+
+    private final HttpServer server;
+
+    // the building being watched, to stop listening on close
+    private SimulationEvents events;
+
+    // publishes snapshots of a LiveController, null for a stepped simulation
+    private ScheduledExecutorService publisher;
+
+    // latest published state, replaced whole
+    private volatile Snapshot latest;
+
+    // for working out steps per second
+    private long lastPublishNanos;
+    private long lastPublishSteps;
+    private long stepsDone;
+
+    // everything a scrape needs, never changed once published
+    private static final class Snapshot {
+        // -1 with no steps, and then waitBucketCounts is null
+        final long step;
+        final double stepsPerSecond;
+        final int[] waiting;
+        final int[] liftFloor;
+        final int[] liftOccupancy;
+        final double[] liftEnergy;
+        final double totalJoules;
+        final long[] waitBucketCounts;
+        final long waitCount;
+        final double waitSum;
+        final SimMetrics.Snapshot metrics;
+
+        Snapshot(long step, double stepsPerSecond, int[] waiting, int[] liftFloor, int[] liftOccupancy,
+                 double[] liftEnergy, double totalJoules, long[] waitBucketCounts, long waitCount, double waitSum,
+                 SimMetrics.Snapshot metrics) {
+            this.step = step;
+            this.stepsPerSecond = stepsPerSecond;
+            this.waiting = waiting;
+            this.liftFloor = liftFloor;
+            this.liftOccupancy = liftOccupancy;
+            this.liftEnergy = liftEnergy;
+            this.totalJoules = totalJoules;
+            this.waitBucketCounts = waitBucketCounts;
+            this.waitCount = waitCount;
+            this.waitSum = waitSum;
+            this.metrics = metrics;
+        }
+    }
+
+    // serve a multi lift simulation on a port (0 picks a free one)
+    public static MetricsServer start(MultiLiftAlgorithm algorithm, int port) throws IOException {
+        MultiLiftBuilding building = algorithm.building;
+        MetricsServer server = new MetricsServer(building.getFloors(), building.getAllLifts(),
+                building.metrics(), building.energy(), JourneyTracker.attach(algorithm), port, 250);
+        server.stepsDone = algorithm.getStepCount();
+        server.events = building.events();
+        server.events.addListener(server);
+        return server;
+    }
+
+    public static MetricsServer start(Algorithm algorithm, int port) throws IOException {
+        Building building = algorithm.building;
+        MetricsServer server = new MetricsServer(building.getFloors(), new LiftState[] { building.getLift() },
+                building.metrics(), building.energy(), JourneyTracker.attach(algorithm), port, 250);
+        server.stepsDone = algorithm.getStepCount();
+        server.events = building.events();
+        server.events.addListener(server);
+        return server;
+    }
+
+    // serve a LiveController, publishing every publishIntervalMillis from a thread of its own
+    public static MetricsServer start(LiveController controller, int port, long publishIntervalMillis)
+            throws IOException {
+        if (publishIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Publish interval must be positive");
+        }
+        MultiLiftBuilding building = controller.getBuilding();
+        MetricsServer server = new MetricsServer(building.getFloors(), building.getAllLifts(),
+                building.metrics(), building.energy(), null, port, publishIntervalMillis);
+        server.publisher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.publisher.scheduleAtFixedRate(server::publish, publishIntervalMillis, publishIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        return server;
+    }
+
+    public static MetricsServer start(LiveController controller, int port) throws IOException {
+        return start(controller, port, 250);
+    }
+
+    /**
+     * @param publishIntervalMillis Shortest time between snapshots (0 to publish every step)
+     */
+    MetricsServer(FloorsState floors, LiftState[] lifts, SimMetrics metrics, EnergyMeter energy,
+                  JourneyTracker journeys, int port, long publishIntervalMillis) throws IOException {
+        this.floors = floors;
+        this.lifts = lifts;
+        this.metrics = metrics;
+        this.energy = energy;
+        this.journeys = journeys;
+        this.publishIntervalNanos = publishIntervalMillis * 1_000_000;
+
+        lastPublishNanos = System.nanoTime();
+        publish();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void stepFinished(long step) {
+        stepsDone = step + 1;
+        if (System.nanoTime() - lastPublishNanos >= publishIntervalNanos) {
+            publish();
+        }
+    }
+
+    // copy the current state into a new snapshot, only call from the simulation (or publisher) thread
+    void publish() {
+        long now = System.nanoTime();
+        double seconds = (now - lastPublishNanos) / 1e9;
+        double stepsPerSecond = seconds > 0 ? (stepsDone - lastPublishSteps) / seconds : 0;
+        lastPublishNanos = now;
+        lastPublishSteps = stepsDone;
+
+        int[] waiting = new int[floors.GetFloors().size()];
+        for (int floor = 0; floor < waiting.length; floor++) {
+            waiting[floor] = floors.GetFloors().get(floor).GetFloorRequests().size();
+        }
+        int[] liftFloor = new int[lifts.length];
+        int[] liftOccupancy = new int[lifts.length];
+        double[] liftEnergy = new double[lifts.length];
+        for (int i = 0; i < lifts.length; i++) {
+            liftFloor[i] = lifts[i].getCurrentFloor();
+            liftOccupancy[i] = lifts[i].Occupancy();
+            liftEnergy[i] = lifts[i].getEnergyUsed();
+        }
+
+        if (journeys == null) {
+            latest = new Snapshot(-1, 0, waiting, liftFloor, liftOccupancy, liftEnergy,
+                    energy.getTotalJoules(), null, 0, 0, metrics.snapshot());
+            return;
+        }
+        LatencyHistogram waits = journeys.getWaitTimes();
+        long[] buckets = new long[WAIT_BUCKETS.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = waits.getCountAtOrBelow(WAIT_BUCKETS[i]);
+        }
+
+        latest = new Snapshot(stepsDone, stepsPerSecond, waiting, liftFloor, liftOccupancy, liftEnergy,
+                energy.getTotalJoules(), buckets, waits.getCount(), waits.getMean() * waits.getCount(), metrics.snapshot());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = format(latest).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Prometheus text exposition format
+    static String format(Snapshot s) {
+        StringBuilder sb = new StringBuilder(256 + s.waiting.length * 40 + s.liftFloor.length * 120);
+
+        if (s.step >= 0) {
+            header(sb, "elevator_steps_total", "counter", "Simulation steps run");
+            sb.append("elevator_steps_total ").append(s.step).append('\n');
+            header(sb, "elevator_steps_per_second", "gauge", "Steps run per second since the last snapshot");
+            sb.append("elevator_steps_per_second ").append(s.stepsPerSecond).append('\n');
+        }
+
+        header(sb, "elevator_floor_waiting", "gauge", "People waiting on each floor");
+        for (int floor = 0; floor < s.waiting.length; floor++) {
+            sb.append("elevator_floor_waiting{floor=\"").append(floor).append("\"} ")
+                    .append(s.waiting[floor]).append('\n');
+        }
+
+        header(sb, "elevator_lift_floor", "gauge", "Floor each lift is on");
+        for (int lift = 0; lift < s.liftFloor.length; lift++) {
+            sb.append("elevator_lift_floor{lift=\"").append(lift).append("\"} ")
+                    .append(s.liftFloor[lift]).append('\n');
+        }
+        header(sb, "elevator_lift_occupancy", "gauge", "People in each lift");
+        for (int lift = 0; lift < s.liftOccupancy.length; lift++) {
+            sb.append("elevator_lift_occupancy{lift=\"").append(lift).append("\"} ")
+                    .append(s.liftOccupancy[lift]).append('\n');
+        }
+        header(sb, "elevator_lift_energy_joules_total", "counter", "Energy used by each lift");
+        for (int lift = 0; lift < s.liftEnergy.length; lift++) {
+            sb.append("elevator_lift_energy_joules_total{lift=\"").append(lift).append("\"} ")
+                    .append(s.liftEnergy[lift]).append('\n');
+        }
+        header(sb, "elevator_energy_joules_total", "counter", "Energy used by the building, including standby");
+        sb.append("elevator_energy_joules_total ").append(s.totalJoules).append('\n');
+
+        if (s.waitBucketCounts != null) {
+            header(sb, "elevator_wait_steps", "histogram", "Steps from arriving on a floor to boarding a lift");
+            for (int i = 0; i < WAIT_BUCKETS.length; i++) {
+                sb.append("elevator_wait_steps_bucket{le=\"").append(WAIT_BUCKETS[i]).append("\"} ")
+                        .append(s.waitBucketCounts[i]).append('\n');
+            }
+            sb.append("elevator_wait_steps_bucket{le=\"+Inf\"} ").append(s.waitCount).append('\n');
+            sb.append("elevator_wait_steps_sum ").append(s.waitSum).append('\n');
+            sb.append("elevator_wait_steps_count ").append(s.waitCount).append('\n');
+        }
+
+        SimMetrics.Snapshot m = s.metrics;
+        counter(sb, "elevator_stops_total", "Times a lift stopped", m.getStops());
+        counter(sb, "elevator_floors_travelled_total", "Floors travelled by all lifts", m.getFloorsTravelled());
+        counter(sb, "elevator_reversals_total", "Times a lift changed direction", m.getReversals());
+        counter(sb, "elevator_boardings_total", "People who got in a lift", m.getBoardings());
+        counter(sb, "elevator_arrivals_total", "People who arrived on a floor", m.getArrivals());
+        counter(sb, "elevator_reassignments_total", "Floors moved to a different lift", m.getReassignments());
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "counter", help);
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    @Override
+    public void close() {
+        // the journey tracker was attached just for us, so it goes too
+        if (events != null) {
+            events.removeListener(this);
+            events.removeListener(journeys);
+        }
+        if (publisher != null) {
+            publisher.shutdownNow();
+        }
+        server.stop(0);
+    }
+
+    /**
+     * Run a long MultiLiftLook simulation with random arrivals and serve its metrics.
+     * Usage: java MetricsServer <building file> <lifts> <port> [arrivalsPerStep] [stepMillis]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java MetricsServer <building file> <lifts> <port> "
+                    + "[arrivalsPerStep] [stepMillis]");
+            return;
+        }
+        MultiLiftBuilding building = MultiLiftBuilding.FromFile(args[0], Integer.parseInt(args[1]));
+        double rate = args.length >= 4 ? Double.parseDouble(args[3]) : 0.5;
+        long stepMillis = args.length >= 5 ? Long.parseLong(args[4]) : 0;
+
+        MultiLiftLook algorithm = new MultiLiftLook(building, SimClock.simulated(1000));
+        algorithm.setPassengerGenerator(new PassengerGenerator(System.nanoTime(), rate));
+        MetricsServer server = start(algorithm, Integer.parseInt(args[2]));
+        System.out.println("Serving metrics on http://localhost:" + server.getPort() + "/metrics");
+
+        algorithm.setVerbose(false);
+        try {
+            while (true) {
+                algorithm.NextStep();
+                if (stepMillis > 0) {
+                    Thread.sleep(stepMillis);
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs one scenario and algorithm with many different random seeds and summarises how long
+ * people waited across all of them, with confidence intervals.
+ *
+ * Each seed starts from the scenario file and adds random arrivals for a fixed number of
+ * steps. The seeds run in parallel, each on its own building. A finished seed is reduced to
+ * its wait and journey LatencyHistograms, which are merged into the pooled totals and then
+ * dropped. A histogram is a fixed size however many values it holds, and only a few seeds
+ * are ever running or waiting to be merged, so memory stays the same for 10 seeds or 10
+ * million.
+ *
+ * For the mean, p95 and p99 of each seed the summary keeps a running mean and variance
+ * across seeds, which gives a 95% confidence interval for each one. The pooled histograms
+ * give the distribution over every passenger in every seed.
+ *
+ * The same first seed and count always give the same summary, whatever the thread count.
+ */
+public class MonteCarloRunner {
+    private final String scenarioFile;
+    private final String algorithm;
+    private final int lifts;
+
+    private int steps = 1000;
+    private double arrivalsPerStep = 0.5;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param scenarioFile Building to start every seed from
+     * @param algorithm Scan, Look, MyLift or MultiLiftLook
+     * @param lifts Number of lifts, only used by MultiLiftLook
+     */
+    public MonteCarloRunner(String scenarioFile, String algorithm, int lifts) {
+        if (!algorithm.equals("Scan") && !algorithm.equals("Look") && !algorithm.equals("MyLift")
+                && !algorithm.equals("MultiLiftLook")) {
+            throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+        }
+        this.scenarioFile = scenarioFile;
+        this.algorithm = algorithm;
+        this.lifts = lifts;
+    }
+
+    // how many steps each seed runs for
+    public void setSteps(int steps) {
+        this.steps = steps;
+    }
+
+    public void setArrivalsPerStep(double arrivalsPerStep) {
+        this.arrivalsPerStep = arrivalsPerStep;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Run seeds firstSeed, firstSeed + 1, ... and merge them.
+     * The algorithms print every move, so System.out is silenced until this returns.
+     */
+    public Summary run(long firstSeed, int seeds) throws IOException, InvalidBuildingConfiguration {
+        Summary summary = new Summary(algorithm);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "monte-carlo");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<SeedResult> completed = new ExecutorCompletionService<>(executor);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            // at most a couple of seeds per thread are running or waiting to be merged
+            int window = threads * 2;
+            int submitted = 0;
+            List<SeedResult> finished = new ArrayList<>();
+            while (summary.seeds < seeds) {
+                while (submitted < seeds && submitted - summary.seeds < window) {
+                    long seed = firstSeed + submitted++;
+                    completed.submit(() -> runSeed(seed));
+                }
+                finished.add(completed.take().get());
+                // merge in seed order so the result doesn't depend on which thread finished first
+                finished.sort((x, y) -> Long.compare(x.seed, y.seed));
+                while (!finished.isEmpty() && finished.get(0).seed == firstSeed + summary.seeds) {
+                    summary.add(finished.remove(0));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InvalidBuildingConfiguration) {
+                throw (InvalidBuildingConfiguration) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            System.setOut(console);
+            executor.shutdownNow();
+        }
+        return summary;
+    }
+
+    // one seed from start to finish
+    SeedResult runSeed(long seed) throws IOException, InvalidBuildingConfiguration {
+        JourneyTracker journeys;
+        if (algorithm.equals("MultiLiftLook")) {
+            MultiLiftLook algo = new MultiLiftLook(MultiLiftBuilding.FromFile(scenarioFile, lifts),
+                    SimClock.simulated(1000));
+            algo.setPassengerGenerator(new PassengerGenerator(seed, arrivalsPerStep));
+            journeys = JourneyTracker.attach(algo);
+            for (int i = 0; i < steps; i++) {
+                algo.NextStep();
+            }
+        } else {
+            Building building = Building.FromFile(scenarioFile);
+            Algorithm algo = algorithm.equals("Scan") ? new Scan(building)
+                    : algorithm.equals("Look") ? new Look(building)
+                    : new MyLift(building, SimClock.simulated(1000));
+            algo.setPassengerGenerator(new PassengerGenerator(seed, arrivalsPerStep));
+            journeys = JourneyTracker.attach(algo);
+            for (int i = 0; i < steps; i++) {
+                algo.NextStep();
+            }
+        }
+        return new SeedResult(seed, journeys.getWaitTimes(), journeys.getJourneyTimes());
+    }
+
+    // what is kept of a seed until it is merged
+    static final class SeedResult {
+        final long seed;
+        final LatencyHistogram waits;
+        final LatencyHistogram journeys;
+
+        SeedResult(long seed, LatencyHistogram waits, LatencyHistogram journeys) {
+            this.seed = seed;
+            this.waits = waits;
+            this.journeys = journeys;
+        }
+    }
+
+    /**
+     * Running mean and variance of one number across seeds (Welford's method), and a 95%
+     * confidence interval for its mean.
+     */
+    public static final class Estimate {
+        private long n = 0;
+        private double mean = 0;
+        private double m2 = 0;
+
+        void add(double value) {
+            n++;
+            double delta = value - mean;
+            mean += delta / n;
+            m2 += delta * (value - mean);
+        }
+
+        public long getCount() {
+            return n;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStandardDeviation() {
+            return n < 2 ? 0 : Math.sqrt(m2 / (n - 1));
+        }
+
+        // half the width of the 95% confidence interval, NaN with fewer than two seeds
+        public double getHalfWidth() {
+            return n < 2 ? Double.NaN : tCritical95(n - 1) * getStandardDeviation() / Math.sqrt(n);
+        }
+
+        public double getLower() {
+            return mean - getHalfWidth();
+        }
+
+        public double getUpper() {
+            return mean + getHalfWidth();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.2f +/- %.2f", mean, getHalfWidth());
+        }
+    }
+
+    /**
+     * Everything merged from the seeds run so far.
+     */
+    public static final class Summary {
+        private final String algorithm;
+        private int seeds = 0;
+
+        private final LatencyHistogram waits = new LatencyHistogram();
+        private final LatencyHistogram journeys = new LatencyHistogram();
+
+        private final Estimate meanWait = new Estimate();
+        private final Estimate p95Wait = new Estimate();
+        private final Estimate p99Wait = new Estimate();
+        private final Estimate meanJourney = new Estimate();
+        private final Estimate p95Journey = new Estimate();
+        private final Estimate p99Journey = new Estimate();
+
+        Summary(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        void add(SeedResult result) {
+            seeds++;
+            waits.add(result.waits);
+            journeys.add(result.journeys);
+            // a seed where nobody boarded says nothing about how long boarding takes
+            if (result.waits.getCount() > 0) {
+                meanWait.add(result.waits.getMean());
+                p95Wait.add(result.waits.getValueAtPercentile(95));
+                p99Wait.add(result.waits.getValueAtPercentile(99));
+            }
+            if (result.journeys.getCount() > 0) {
+                meanJourney.add(result.journeys.getMean());
+                p95Journey.add(result.journeys.getValueAtPercentile(95));
+                p99Journey.add(result.journeys.getValueAtPercentile(99));
+            }
+        }
+
+        public String getAlgorithm() { return algorithm; }
+        public int getSeeds() { return seeds; }
+
+        // every passenger in every seed
+        public LatencyHistogram getWaitTimes() { return waits; }
+        public LatencyHistogram getJourneyTimes() { return journeys; }
+
+        // across seeds
+        public Estimate getMeanWait() { return meanWait; }
+        public Estimate getP95Wait() { return p95Wait; }
+        public Estimate getP99Wait() { return p99Wait; }
+        public Estimate getMeanJourney() { return meanJourney; }
+        public Estimate getP95Journey() { return p95Journey; }
+        public Estimate getP99Journey() { return p99Journey; }
+
+        @Override
+        public String toString() {
+            return algorithm + " over " + seeds + " seeds (95% CI, steps):"
+                    + "\n  wait:    mean " + meanWait + ", p95 " + p95Wait + ", p99 " + p99Wait
+                    + "\n  journey: mean " + meanJourney + ", p95 " + p95Journey + ", p99 " + p99Journey
+                    + "\n  all waits:    " + waits
+                    + "\n  all journeys: " + journeys;
+        }
+    }
+
+    /**
+     * 95% confidence interval for how much bigger a's mean is than b's (Welch), as
+     * {difference, half width}. If the interval doesn't include 0 the difference is real.
+     */
+    public static double[] difference(Estimate a, Estimate b) {
+        double va = a.getStandardDeviation() * a.getStandardDeviation() / a.getCount();
+        double vb = b.getStandardDeviation() * b.getStandardDeviation() / b.getCount();
+        double se = Math.sqrt(va + vb);
+        // Welch-Satterthwaite degrees of freedom
+        double df = (va + vb) * (va + vb)
+                / (va * va / (a.getCount() - 1) + vb * vb / (b.getCount() - 1));
+        double halfWidth = se == 0 ? 0 : tCritical95(Double.isNaN(df) ? 1 : Math.max(1, (long) df)) * se;
+        return new double[] {a.getMean() - b.getMean(), halfWidth};
+    }
+
+    // two sided 95% critical values of Student's t for 1 to 30 degrees of freedom
+    private static final double[] T95 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    static double tCritical95(long degreesOfFreedom) {
+        if (degreesOfFreedom <= T95.length) {
+            return T95[(int) Math.max(1, degreesOfFreedom) - 1];
+        }
+        // close to the table at 30 and to the normal 1.96 beyond
+        return 1.96 + 2.4 / degreesOfFreedom;
+    }
+
+    /**
+     * Usage: java MonteCarloRunner <building file> <algorithm[,algorithm]> <seeds> [steps] [arrivalsPerStep] [lifts]
+     * With two algorithms the difference in mean wait is also shown.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java MonteCarloRunner <building file> <algorithm[,algorithm]> <seeds> "
+                    + "[steps] [arrivalsPerStep] [lifts]");
+            return;
+        }
+        String[] algorithms = args[1].split(",");
+        int seeds = Integer.parseInt(args[2]);
+        int steps = args.length >= 4 ? Integer.parseInt(args[3]) : 1000;
+        double rate = args.length >= 5 ? Double.parseDouble(args[4]) : 0.5;
+        int lifts = args.length >= 6 ? Integer.parseInt(args[5]) : 1;
+
+        List<Summary> summaries = new ArrayList<>();
+        for (String algorithm : algorithms) {
+            MonteCarloRunner runner = new MonteCarloRunner(args[0], algorithm, lifts);
+            runner.setSteps(steps);
+            runner.setArrivalsPerStep(rate);
+            long start = System.nanoTime();
+            Summary summary = runner.run(1, seeds);
+            System.out.println(summary);
+            System.out.println(String.format(Locale.ROOT, "  (%.1f s)", (System.nanoTime() - start) / 1e9));
+            summaries.add(summary);
+        }
+        if (summaries.size() == 2) {
+            Summary a = summaries.get(0);
+            Summary b = summaries.get(1);
+            double[] diff = difference(a.getMeanWait(), b.getMeanWait());
+            System.out.println(String.format(Locale.ROOT, "Mean wait %s - %s: %.2f +/- %.2f steps (%s)",
+                    a.getAlgorithm(), b.getAlgorithm(), diff[0], diff[1],
+                    Math.abs(diff[0]) > diff[1] ? "significant" : "not significant"));
+        }
+    }
+}
@@ -1,4 +1,6 @@
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
@@ -10,36 +12,64 @@ import java.util.ArrayList;
 public class MultiElevatorGUI extends JFrame {
     // UI components
     JPanel mainPanel;
-    JPanel buildingView;
+    BuildingView buildingView;
+    JScrollPane buildingScroll;
     JButton startBtn;
     JButton stepBtn;
     JButton resetBtn;
-    JComboBox numElevsBox;
+    JButton replayBtn;
+    JButton attachBtn;
+    JComboBox<String> numElevsBox;
+    JComboBox<String> speedBox;
+    JComboBox<String> zoomBox;
+    JSlider seekSlider;
     JLabel statusLbl;
     
     // simulation variables
     MultiLiftBuilding myBuilding;
     MultiLiftAlgorithm currentAlgo;
     boolean isRunning = false;
-    Timer timer;
-    int steps = 0;
+    Timer timer;  // draws frames, and moves replays on
+    
+    // steps the algorithm off the EDT once started - the building belongs to it from then on
+    SimulationThread sim;
+    
+    // slides the lifts between the snapshots that get drawn
+    SnapshotAnimator animator = new SnapshotAnimator();
+    
+    // what gets drawn for a loaded building or a replay - a live run draws sim.getLatest() instead
+    BuildingSnapshot view;
+    
+    // set when we are replaying a recorded trace instead of simulating
+    TraceReplay replay;
+    double replayCarry = 0;  // part steps left over between replay ticks
+    
+    // set when we are watching a simulation running in another process
+    SharedStateReader attached;
+    
+    // simulation and replay speeds, in steps per second
+    String[] SPEEDS = {"1x", "10x", "100x", "1000x", "10000x", "Unlimited"};
+    
+    // frames drawn per second, whatever the speed
+    int FPS = 60;
     
     // constants for drawing
-    int FLOOR_HEIGHT = 50;  // pixels per floor
-    int ELEVATOR_WIDTH = 50;
+    int FLOOR_HEIGHT = 50;  // pixels per floor at 100%
     
-    // random colors for elevators
-    Color[] elevatorColors = {
-        new Color(65, 105, 225),  // royal blue
-        new Color(220, 20, 60),   // crimson
-        new Color(34, 139, 34),   // forest green
-        new Color(255, 140, 0),   // dark orange
-        new Color(138, 43, 226)   // blue violet
-    };
+    // zoom levels, as a share of FLOOR_HEIGHT
+    String[] ZOOMS = {"10%", "25%", "50%", "100%", "200%"};
+    
+    // scenario to load the building from
+    String scenarioFile;
     
     // constructor
     public MultiElevatorGUI() {
+        this("input.txt");
+    }
+    
+    public MultiElevatorGUI(String scenarioFile) {
         super("Multi-Elevator Simulator");
+        this.scenarioFile = scenarioFile;
         
         // setup window
         setSize(700, 600);
@@ -57,8 +87,8 @@ public class MultiElevatorGUI extends JFrame {
         JLabel numElevsLbl = new JLabel("Number of Elevators:");
         controls.add(numElevsLbl);
         
-        String[] elevCounts = {"2", "3", "4", "5"};
-        numElevsBox = new JComboBox(elevCounts);
+        String[] elevCounts = {"2", "3", "4", "5", "8", "16", "32", "64"};
+        numElevsBox = new JComboBox<>(elevCounts);
         controls.add(numElevsBox);
         
         // control buttons
@@ -66,30 +96,66 @@ public class MultiElevatorGUI extends JFrame {
         stepBtn = new JButton("Step");
         resetBtn = new JButton("Reset");
         
+        replayBtn = new JButton("Replay...");
+        attachBtn = new JButton("Attach...");
+        
         controls.add(startBtn);
         controls.add(stepBtn);
         controls.add(resetBtn);
+        controls.add(replayBtn);
+        controls.add(attachBtn);
+        
+        // simulation and replay speed
+        speedBox = new JComboBox<>(SPEEDS);
+        controls.add(speedBox);
+        speedBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(sim != null) {
+                    sim.setStepsPerSecond(getStepsPerSecond());
+                }
+            }
+        });
+        
+        // zoom
+        zoomBox = new JComboBox<>(ZOOMS);
+        zoomBox.setSelectedItem("100%");
+        controls.add(zoomBox);
+        zoomBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                buildingView.setFloorHeight(getFloorHeight());
+            }
+        });
         
         // add controls to main panel
         mainPanel.add(controls, BorderLayout.NORTH);
         
-        // building view in center - using anonymous inner class to override paintComponent
-        buildingView = new JPanel() {
-            // drawing function
-            @Override
-            public void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                drawBuilding(g);
+        // building view in center, scrolling when it is too tall for the window
+        buildingView = new BuildingView(FLOOR_HEIGHT);
+        buildingScroll = new JScrollPane(buildingView);
+        
+        // ctrl + mouse wheel zooms, the wheel on its own scrolls as usual
+        buildingView.addMouseWheelListener(new MouseWheelListener() {
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if(e.isControlDown()) {
+                    int zoom = zoomBox.getSelectedIndex() - e.getWheelRotation();
+                    zoomBox.setSelectedIndex(Math.max(0, Math.min(ZOOMS.length - 1, zoom)));
+                } else {
+                    buildingScroll.dispatchEvent(SwingUtilities.convertMouseEvent(buildingView, e, buildingScroll));
+                }
             }
-        };
-        buildingView.setBackground(Color.WHITE);
+        });
         
         // add building view to main panel
-        mainPanel.add(buildingView, BorderLayout.CENTER);
+        mainPanel.add(buildingScroll, BorderLayout.CENTER);
         
-        // status label at bottom
+        // status label and replay position at bottom
+        JPanel bottom = new JPanel(new BorderLayout());
+        seekSlider = new JSlider(0, 0, 0);
+        seekSlider.setEnabled(false);
+        bottom.add(seekSlider, BorderLayout.NORTH);
         statusLbl = new JLabel("Select options and press Start");
-        mainPanel.add(statusLbl, BorderLayout.SOUTH);
+        bottom.add(statusLbl, BorderLayout.SOUTH);
+        mainPanel.add(bottom, BorderLayout.SOUTH);
         
         // add panel to frame
         add(mainPanel);
@@ -117,19 +183,48 @@ public class MultiElevatorGUI extends JFrame {
             }
         });
         
-        // timer for animation - runs step every second
-        timer = new Timer(1000, new ActionListener() {
+        replayBtn.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                if(isRunning) {
-                    runOneStep();
+                openReplay();
+            }
+        });
+        
+        attachBtn.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                // watch a shared state file
+                JFileChooser chooser = new JFileChooser(".");
+                if(chooser.showOpenDialog(MultiElevatorGUI.this) == JFileChooser.APPROVE_OPTION) {
+                    attach(chooser.getSelectedFile().getPath());
+                }
+            }
+        });
+        
+        // dragging the slider jumps straight to that step of the replay
+        seekSlider.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                if(replay != null && seekSlider.getValue() != replay.current().getStep()) {
+                    view = replay.seek(seekSlider.getValue());
+                    showReplayStatus();
+                    repaint();
                 }
             }
         });
         
+        // draw at a fixed frame rate, however fast the simulation is going
+        timer = new Timer(1000 / FPS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                renderFrame();
+            }
+        });
+        timer.start();
+        
         // make window visible
         setVisible(true);
         
-        // try to load the building
+        // try to load the building, unless we are only here to watch another process
+        if(scenarioFile == null) {
+            return;
+        }
         try {
             loadBuilding();
         } catch(Exception ex) {
@@ -143,9 +238,9 @@ public class MultiElevatorGUI extends JFrame {
         // get selected elevator count
         int numElevators = Integer.parseInt((String)numElevsBox.getSelectedItem());
         
-        // load from input.txt
-        myBuilding = MultiLiftBuilding.FromFile("input.txt", numElevators);
-        steps = 0;
+        // load from the scenario file
+        myBuilding = MultiLiftBuilding.FromFile(scenarioFile, numElevators);
+        view = BuildingSnapshot.capture(myBuilding.getFloors(), myBuilding.getAllLifts(), null, 0);
         
         // show message
         statusLbl.setText("Loaded building with " + 
@@ -158,6 +253,24 @@ public class MultiElevatorGUI extends JFrame {
     
     // start the simulation
     private void startSimulation() {
+        if(replay != null) {
+            // replays are moved on by the frame timer
+            isRunning = true;
+            startBtn.setText("Stop");
+            return;
+        }
+        
+        if(sim != null) {
+            // carry on from where it was stopped
+            if(sim.isFinished()) {
+                return;
+            }
+            isRunning = true;
+            startBtn.setText("Stop");
+            sim.play();
+            return;
+        }
+        
         if(myBuilding == null) {
             try {
                 loadBuilding();
@@ -180,15 +293,26 @@ public class MultiElevatorGUI extends JFrame {
         startBtn.setText("Stop");
         numElevsBox.setEnabled(false);
         
-        // start timer
-        timer.start();
+        // hand the algorithm over to its own thread
+        sim = SimulationThread.start(currentAlgo, getStepsPerSecond());
+        sim.play();
     }
     
     // stop the simulation
     private void stopSimulation() {
         isRunning = false;
         startBtn.setText("Start");
-        timer.stop();
+        if(sim != null) {
+            sim.pause();
+        }
+    }
+    
+    // shut down the simulation thread, if there is one
+    private void closeSimulation() {
+        if(sim != null) {
+            sim.close();
+            sim = null;
+        }
     }
     
     // reset simulation
@@ -199,12 +323,17 @@ public class MultiElevatorGUI extends JFrame {
         }
         
         // reset variables
+        closeSimulation();
+        detach();
         myBuilding = null;
         currentAlgo = null;
-        steps = 0;
+        replay = null;
+        seekSlider.setEnabled(false);
         
         // update UI
         numElevsBox.setEnabled(true);
+        startBtn.setEnabled(true);
+        stepBtn.setEnabled(true);
         statusLbl.setText("Simulation reset");
         
         // reload building
@@ -220,138 +349,216 @@ public class MultiElevatorGUI extends JFrame {
     
     // run one step of simulation
     private void runOneStep() {
-        if(myBuilding == null || currentAlgo == null) {
-            try {
-                loadBuilding();
-                startSimulation();
-                return;
-            } catch(Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
-                return;
-            }
+        if(sim == null) {
+            startSimulation();
+            return;
         }
         
-        try {
-            // run one step of algorithm
-            myBuilding = currentAlgo.NextStep();
-            steps++;
-            
-            // get status info - summarize elevator locations
-            StringBuilder status = new StringBuilder("Step " + steps + ": ");
-            for(int i = 0; i < myBuilding.getNumLifts(); i++) {
-                LiftState lift = myBuilding.getLift(i);
-                status.append("E").append(i).append("@").append(lift.getCurrentFloor());
-                if(i < myBuilding.getNumLifts() - 1) {
-                    status.append(", ");
-                }
+        if(!isRunning) {
+            sim.step();
+        }
+    }
+    
+    // called FPS times a second: moves replays on, picks up the latest step and redraws if anything changed
+    private void renderFrame() {
+        if(isRunning && replay != null) {
+            runReplayTick();
+        }
+        
+        if(attached != null) {
+            readAttached();
+        }
+        
+        // only the newest step is shown - any others run since the last frame are skipped
+        BuildingSnapshot latest = view;
+        if(sim != null) {
+            // checked first, so that once it is set the snapshot read is the final one
+            boolean finished = sim.isFinished();
+            latest = sim.getLatest();
+            if(latest != animator.getTarget()) {
+                showStep(latest);
             }
-            
-            statusLbl.setText(status.toString());
-            
-            // check if all requests are done
-            boolean done = true;
-            for(FloorState fs : myBuilding.getFloors().GetFloors()) {
-                if(!fs.GetFloorRequests().isEmpty()) {
-                    done = false;
-                    break;
-                }
+            if(finished) {
+                finishSimulation(latest);
             }
-            
-            if(done) {
-                stopSimulation();
-                statusLbl.setText("All requests complete in " + steps + " steps!");
+        }
+        
+        // only what moved or changed gets repainted
+        long now = System.nanoTime();
+        // another process's speed isn't known, so attached lifts are drawn where they are
+        double stepsPerSecond = attached != null ? SimulationThread.UNLIMITED : getStepsPerSecond();
+        if(latest != null && animator.update(latest, stepsPerSecond, now)) {
+            buildingView.update(latest, animator, now);
+        }
+    }
+    
+    private void showStep(BuildingSnapshot latest) {
+        // get status info - summarize elevator locations
+        StringBuilder status = new StringBuilder("Step " + latest.getStep() + ": ");
+        for(int i = 0; i < latest.getNumLifts(); i++) {
+            status.append("E").append(i).append("@").append(latest.getLiftFloor(i));
+            if(i < latest.getNumLifts() - 1) {
+                status.append(", ");
             }
-            
-            // update display
-            repaint();
-            
-        } catch(Exception ex) {
-            stopSimulation();
+        }
+        statusLbl.setText(status.toString());
+    }
+    
+    // the simulation has stopped for good - keep showing where it got to
+    private void finishSimulation(BuildingSnapshot latest) {
+        Exception ex = sim.getFailure();
+        view = latest;
+        closeSimulation();
+        stopSimulation();
+        
+        if(ex != null) {
             JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
             statusLbl.setText("Error: " + ex.getMessage());
+        } else {
+            // all requests are done
+            statusLbl.setText("All requests complete in " + latest.getStep() + " steps!");
         }
     }
     
-    // draw the building and elevators
-    private void drawBuilding(Graphics g) {
-        // check if building is loaded
-        if(myBuilding == null) {
-            g.setColor(Color.RED);
-            g.drawString("No building loaded!", 100, 100);
+    // pixels per floor at the chosen zoom
+    private int getFloorHeight() {
+        String zoom = (String) zoomBox.getSelectedItem();
+        int percent = Integer.parseInt(zoom.substring(0, zoom.length() - 1));
+        return Math.max(2, FLOOR_HEIGHT * percent / 100);
+    }
+    
+    // the chosen speed, in steps per second
+    private double getStepsPerSecond() {
+        String speed = (String) speedBox.getSelectedItem();
+        if(speed.equals("Unlimited")) {
+            return SimulationThread.UNLIMITED;
+        }
+        return Double.parseDouble(speed.substring(0, speed.length() - 1));
+    }
+    
+    // pick a trace file and switch to replaying it
+    private void openReplay() {
+        JFileChooser chooser = new JFileChooser(".");
+        if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
             return;
         }
         
-        // get building info
-        int floors = myBuilding.getFloors().GetFloors().size();
-        int numElevs = myBuilding.getNumLifts();
-        
-        // calculate dimensions
-        int width = getWidth() - 40;
-        int height = floors * FLOOR_HEIGHT;
-        
-        // draw building outline
-        g.setColor(Color.BLACK);
-        g.drawRect(20, 20, width, height);
-        
-        // draw floors
-        for(int i = 0; i < floors; i++) {
-            int y = 20 + (floors - i - 1) * FLOOR_HEIGHT;
-            
-            // floor line
-            g.setColor(Color.GRAY);
-            g.drawLine(20, y, 20 + width, y);
-            
-            // floor number
-            g.setColor(Color.BLACK);
-            g.drawString("Floor " + i, 25, y + FLOOR_HEIGHT - 10);
-            
-            // check for requests
-            FloorState floor = myBuilding.getFloors().GetFloors().get(i);
-            if(!floor.GetFloorRequests().isEmpty()) {
-                // show requests as red circle with count
-                g.setColor(Color.RED);
-                g.fillOval(width - 30, y + 10, 20, 20);
-                g.setColor(Color.WHITE);
-                g.drawString("" + floor.GetFloorRequests().size(), width - 24, y + 24);
-            }
+        if(isRunning) {
+            stopSimulation();
+        }
+        
+        try {
+            replay = new TraceReplay(chooser.getSelectedFile().getPath());
+        } catch(Exception ex) {
+            JOptionPane.showMessageDialog(this, "Error loading trace: " + ex.getMessage());
+            return;
+        }
+        
+        // the live simulation is put aside until reset
+        closeSimulation();
+        detach();
+        myBuilding = null;
+        currentAlgo = null;
+        replayCarry = 0;
+        view = replay.current();
+        
+        seekSlider.setMinimum((int) replay.getFirstStep());
+        seekSlider.setMaximum((int) replay.getLastStep());
+        seekSlider.setValue((int) replay.getFirstStep());
+        seekSlider.setEnabled(true);
+        numElevsBox.setEnabled(false);
+        stepBtn.setEnabled(false);
+        
+        showReplayStatus();
+        repaint();
+    }
+    
+    // watch a shared state file that a SharedStateWriter in another process is publishing to
+    private void attach(String file) {
+        if(isRunning) {
+            stopSimulation();
         }
         
-        // gap between elevator shafts
-        int shaftGap = 10;
-        int totalShaftWidth = (ELEVATOR_WIDTH + shaftGap) * numElevs;
-        int startX = (width - totalShaftWidth) / 2;
-        
-        // draw each elevator shaft and elevator
-        for(int i = 0; i < numElevs; i++) {
-            int shaftX = startX + i * (ELEVATOR_WIDTH + shaftGap);
-            
-            // elevator shaft
-            g.setColor(Color.LIGHT_GRAY);
-            g.fillRect(shaftX, 20, ELEVATOR_WIDTH, height);
-            
-            // get elevator info
-            LiftState lift = myBuilding.getLift(i);
-            int elevFloor = lift.getCurrentFloor();
-            int elevY = 20 + (floors - elevFloor - 1) * FLOOR_HEIGHT;
-            
-            // elevator car
-            g.setColor(elevatorColors[i % elevatorColors.length]);
-            g.fillRect(shaftX + 5, elevY + 10, ELEVATOR_WIDTH - 10, FLOOR_HEIGHT - 20);
-            g.setColor(Color.WHITE);
-            g.drawRect(shaftX + 5, elevY + 10, ELEVATOR_WIDTH - 10, FLOOR_HEIGHT - 20);
-            
-            // elevator number
-            g.drawString("#" + i, shaftX + 15, elevY + 30);
-            
-            // direction arrow
-            if(lift.isGoingUp()) {
-                g.drawString("▲", shaftX + ELEVATOR_WIDTH - 15, elevY + 30);
-            } else {
-                g.drawString("▼", shaftX + ELEVATOR_WIDTH - 15, elevY + 30);
+        SharedStateReader reader;
+        try {
+            reader = new SharedStateReader(file);
+        } catch(Exception ex) {
+            JOptionPane.showMessageDialog(this, "Error attaching: " + ex.getMessage());
+            return;
+        }
+        
+        // the live simulation and any replay are put aside until reset
+        closeSimulation();
+        detach();
+        attached = reader;
+        myBuilding = null;
+        currentAlgo = null;
+        replay = null;
+        view = null;
+        
+        seekSlider.setEnabled(false);
+        numElevsBox.setEnabled(false);
+        startBtn.setEnabled(false);
+        stepBtn.setEnabled(false);
+        statusLbl.setText("Attached to " + file + " - " + reader.getNumFloors() + " floors, "
+                + reader.getNumLifts() + " elevators");
+    }
+    
+    // pick up the latest state from the shared file - never waits for the other process
+    private void readAttached() {
+        try {
+            BuildingSnapshot state = attached.read();
+            if(state != null && (view == null || state.getStep() != view.getStep())) {
+                view = state;
+                statusLbl.setText("Attached: step " + state.getStep());
             }
+        } catch(IllegalStateException ex) {
+            // a new run with a different building started - the old mapping is no use
+            detach();
+            startBtn.setEnabled(true);
+            statusLbl.setText(ex.getMessage());
         }
     }
     
+    private void detach() {
+        if(attached != null) {
+            try {
+                attached.close();
+            } catch(IOException ex) {
+                // nothing to do, we are finished with it
+            }
+            attached = null;
+        }
+    }
+    
+    // move the replay on by however many steps the chosen speed gives per tick
+    private void runReplayTick() {
+        double stepsPerSecond = getStepsPerSecond();
+        long toRun;
+        if(Double.isInfinite(stepsPerSecond)) {
+            // unlimited goes straight to the end
+            toRun = replay.getLastStep() - replay.current().getStep();
+        } else {
+            replayCarry += stepsPerSecond * timer.getDelay() / 1000.0;
+            toRun = (long) replayCarry;
+            replayCarry -= toRun;
+        }
+        if(toRun > 0) {
+            view = replay.advance(toRun);
+            seekSlider.setValue((int) view.getStep());
+            showReplayStatus();
+            repaint();
+        }
+        
+        if(replay.isAtEnd()) {
+            stopSimulation();
+        }
+    }
+    
+    private void showReplayStatus() {
+        statusLbl.setText("Replay step " + view.getStep() + " of " + replay.getLastStep());
+    }
+    
     // main method
     public static void main(String[] args) {
         // try to set look and feel
@@ -361,7 +568,11 @@ public class MultiElevatorGUI extends JFrame {
             // ignore errors
         }
         
-        // create GUI
-        new MultiElevatorGUI();
+        // --attach <file> watches a simulation running elsewhere, anything else is a scenario file
+        if(args.length >= 2 && args[0].equals("--attach")) {
+            new MultiElevatorGUI(null).attach(args[1]);
+        } else {
+            new MultiElevatorGUI(args.length > 0 ? args[0] : "input.txt");
+        }
     }
 }
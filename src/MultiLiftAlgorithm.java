@@ -1,3 +1,6 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -7,14 +10,143 @@ public abstract class MultiLiftAlgorithm {
     protected MultiLiftBuilding building;
     protected RequestDispatcher dispatcher;
     
+    // how many steps have been run so far
+    protected long stepCount = 0;
+    
+    // the time the algorithm sees
+    protected final SimClock clock;
+    
+    // adds new passengers at the start of every step, null for none
+    private PassengerGenerator arrivals;
+    
+    // hall calls from other threads, added to the floors at the start of every step, null for none
+    private HallCallQueue hallCalls;
+    
+    // times each decision, off unless one is set
+    protected DecisionTimer timer = DecisionTimer.off();
+    
+    // print every move, on unless turned off
+    private boolean verbose = true;
+    
     public MultiLiftAlgorithm(MultiLiftBuilding building) {
+        this(building, SimClock.system());
+    }
+    
+    public MultiLiftAlgorithm(MultiLiftBuilding building, SimClock clock) {
         this.building = building;
         this.dispatcher = new RequestDispatcher(building);
+        this.clock = clock;
+    }
+    
+    /**
+     * Run one step of the algorithm and tell anyone listening on the building
+     * @return Updated building state
+     */
+    public final MultiLiftBuilding NextStep() throws InvalidBuildingConfiguration {
+        SimulationEvents events = building.events();
+        events.stepStarted(stepCount);
+        if (arrivals != null) {
+            arrivals.addArrivals(building);
+        }
+        if (hallCalls != null) {
+            // at most one queue's worth, so a flood of calls can't hold up the step
+            hallCalls.drain(building::AddPassenger, hallCalls.getCapacity());
+        }
+        JfrEvents.Step jfrStep = JfrEvents.beginStep();
+        timer.beginStep(stepCount);
+        MultiLiftBuilding result = Step();
+        timer.endStep();
+        JfrEvents.endStep(jfrStep, this, stepCount);
+        building.metrics().stepFinished();
+        building.energy().stepFinished();
+        events.stepFinished(stepCount);
+        JfrEvents.queueSample(building.getFloors(), stepCount);
+        stepCount++;
+        clock.tick();
+        return result;
     }
     
     /**
-     * Run one step of the algorithm
+     * The algorithm itself - moves every lift for one step
      * @return Updated building state
      */
-    public abstract MultiLiftBuilding NextStep() throws InvalidBuildingConfiguration;
+    protected abstract MultiLiftBuilding Step() throws InvalidBuildingConfiguration;
+    
+    public long getStepCount() {
+        return stepCount;
+    }
+    
+    public RequestDispatcher getDispatcher() {
+        return dispatcher;
+    }
+    
+    public SimClock getClock() {
+        return clock;
+    }
+    
+    public PassengerGenerator getPassengerGenerator() {
+        return arrivals;
+    }
+    
+    public void setPassengerGenerator(PassengerGenerator arrivals) {
+        this.arrivals = arrivals;
+    }
+    
+    public HallCallQueue getHallCalls() {
+        return hallCalls;
+    }
+    
+    /**
+     * Take hall calls from other threads, e.g. panels or a network feed
+     * @param hallCalls Queue the callers add to, or null to stop taking calls
+     */
+    public void setHallCalls(HallCallQueue hallCalls) {
+        this.hallCalls = hallCalls;
+    }
+    
+    public DecisionTimer getDecisionTimer() {
+        return timer;
+    }
+    
+    /**
+     * Time every decision (the dispatcher is timed too)
+     * @param timer Timer to use, or null to stop timing
+     */
+    public void setDecisionTimer(DecisionTimer timer) {
+        this.timer = timer == null ? DecisionTimer.off() : timer;
+        dispatcher.setDecisionTimer(this.timer);
+    }
+    
+    public boolean isVerbose() {
+        return verbose;
+    }
+    
+    /**
+     * Turn printing every move (and the dispatcher's assignments) on or off. Long runs
+     * turn it off, or the log drowns everything else.
+     * @param verbose False to print nothing
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+        dispatcher.setVerbose(verbose);
+    }
+    
+    // print a line about a move, unless turned off
+    protected void log(String line) {
+        if (verbose) {
+            System.out.println(line);
+        }
+    }
+    
+    /**
+     * Algorithms that remember things between steps save them here for checkpoints
+     * @param out Where to write the state
+     */
+    protected void writeState(DataOutput out) throws IOException {}
+    
+    /**
+     * Load what writeState saved
+     * @param in Where to read the state from
+     */
+    protected void readState(DataInput in) throws IOException {}
 }
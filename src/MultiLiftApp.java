@@ -44,6 +44,7 @@ public class MultiLiftApp {
             // Print final state
             System.out.println("\nFinal Building State:");
             System.out.println(building);
+            System.out.println(building.energy());
             
         } catch (IOException e) {
             System.out.println("Error loading file: " + e.getMessage());
@@ -15,11 +15,23 @@ public class MultiLiftBuilding {
     // number of lifts in the building
     private int numLifts;
     
+    // listeners for things happening in the building
+    private SimulationEvents events;
+    
+    // counters for this building
+    private SimMetrics metrics;
+    
+    // energy used by the lifts
+    private EnergyMeter energy;
+    
     // Constructor
     public MultiLiftBuilding(FloorsState floors, LiftState[] lifts) {
         this.floors = floors;
         this.lifts = lifts;
         this.numLifts = lifts.length;
+        this.events = new SimulationEvents(lifts);
+        this.metrics = new SimMetrics(floors, lifts);
+        this.energy = new EnergyMeter(lifts);
     }
     
     // Get the state of a specific floor
@@ -54,14 +66,34 @@ public class MultiLiftBuilding {
         
         // Remove passengers going to this floor
         LiftState lift = lifts[liftIndex];
+        int before = lift.Occupancy();
         lift.RemoveAllRequestsForFloor(lift.getCurrentFloor());
+        lift.clearStop(lift.getCurrentFloor());
+        int alighted = before - lift.Occupancy();
         
-        // Add waiting passengers (up to capacity)
+        // Add waiting passengers (up to capacity), taken in one go in case
+        // another lift is boarding on this floor at the same time
         Queue currentRequests = GetCurrentFloorRequests(liftIndex);
         int space = lift.getCapacity() - lift.Occupancy();
+        int boarded = 0;
         if(space > 0 && !currentRequests.isEmpty()) {
-            lift.AddRequest(currentRequests.dequeue(Math.min(space, currentRequests.size())));
+            List<Integer> boarding = currentRequests.dequeue(space);
+            boarded = boarding.size();
+            lift.AddRequest(boarding);
         }
+        
+        metrics.liftStopped(liftIndex, alighted, boarded);
+        energy.liftStopped(liftIndex, boarded);
+        JfrEvents.liftStop(liftIndex, lift.getCurrentFloor(), alighted, boarded);
+        events.liftStopped(liftIndex, lift.getCurrentFloor(), alighted, boarded);
+    }
+    
+    // Add someone waiting on a floor who wants to go to destination
+    public void AddPassenger(int floor, int destination) {
+        // counted first, so a lift on another thread can't deliver someone not yet counted
+        metrics.passengerArrived();
+        GetFloor(floor).AddFloorRequest(destination);
+        events.passengerArrived(floor, destination);
     }
     
     // Check if a lift is at the top floor
@@ -90,6 +122,8 @@ public class MultiLiftBuilding {
             LiftState lift = lifts[liftIndex];
             lift.setCurrentFloor(lift.getCurrentFloor() + 1);
             lift.setGoingUp(true);
+            metrics.liftMoved(liftIndex, 1);
+            energy.liftMoved(liftIndex, true);
         }
     }
     
@@ -103,6 +137,8 @@ public class MultiLiftBuilding {
             LiftState lift = lifts[liftIndex];
             lift.setCurrentFloor(lift.getCurrentFloor() - 1);
             lift.setGoingUp(false);
+            metrics.liftMoved(liftIndex, -1);
+            energy.liftMoved(liftIndex, false);
         }
     }
     
@@ -149,6 +185,21 @@ public class MultiLiftBuilding {
         return lifts;
     }
     
+    // Events for this building, listeners register here
+    public SimulationEvents events() {
+        return events;
+    }
+    
+    // Counters for this building
+    public SimMetrics metrics() {
+        return metrics;
+    }
+    
+    // Energy used by the lifts, set a different EnergyModel here
+    public EnergyMeter energy() {
+        return energy;
+    }
+    
     // Load multi-elevator building from file
     public static MultiLiftBuilding FromFile(String filename, int numElevators) throws IOException {
         // First read the building configuration
@@ -184,6 +235,12 @@ public class MultiLiftBuilding {
         }
         reader.close();
         
+        return FromRequests(numFloors, capacity, requestsMap, numElevators);
+    }
+    
+    // Build without a file, requestsMap is keyed by floor number starting at 1
+    public static MultiLiftBuilding FromRequests(int numFloors, int capacity,
+                                                 HashMap<Integer, List<Integer>> requestsMap, int numElevators) {
         // Create multiple elevators
         LiftState[] lifts = new LiftState[numElevators];
         for (int i = 0; i < numElevators; i++) {
@@ -1,18 +1,62 @@
-import java.util.List;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Multi-elevator implementation of LOOK algorithm
  * Each elevator follows LOOK algorithm for its assigned floors
+ *
+ * Every lift's move is first planned from the state at the start of the step and then
+ * carried out in lift order. Planning only reads, so with enough lifts it is done in
+ * parallel. Carrying out is sequential and deterministic. A lift only sees what an earlier
+ * lift did in the same step in two ways: an earlier lift stopped on its floor, or it cleared
+ * one of its assigned floors. When that happens the lift's plan is worked out again at that
+ * point, so the result (and the printed log) is exactly the same as moving the lifts one
+ * after another.
+ *
+ * Only planning is parallel. Moves aren't carried out in parallel, even split up by which
+ * lift owns which floors: a stop takes people off a floor queue and clears the dispatcher's
+ * assignment, both of which other lifts read, and the log has to come out in lift order.
  */
 public class MultiLiftLook extends MultiLiftAlgorithm {
+    // what a lift decided to do this step
+    enum Move { STOP, IDLE, UP, DOWN, TURN_DOWN, TURN_DOWN_AND_MOVE, TURN_UP, TURN_UP_AND_MOVE }
     
+    // no assigned floors, in the range arrays
+    private static final int NONE = -1;
+    
+    // plan in parallel once there are at least this many lifts
+    private int parallelThreshold = 32;
+    
+    // scratch space for a step, kept between steps to save allocating
+    private Move[] planned = new Move[0];
+    private int[] lowestAssigned = new int[0];
+    private int[] highestAssigned = new int[0];
+    private boolean[] rangeChanged = new boolean[0];
+    private boolean[] stoppedAt = new boolean[0];
     // Constructor
     public MultiLiftLook(MultiLiftBuilding building) {
         super(building);
     }
     
+    // use a simulated clock to get the same result every run
+    public MultiLiftLook(MultiLiftBuilding building, SimClock clock) {
+        super(building, clock);
+    }
+    
+    /**
+     * Plan lifts in parallel when there are at least this many of them
+     * @param lifts Lift count to go parallel at, Integer.MAX_VALUE to always plan one by one
+     */
+    public void setParallelThreshold(int lifts) {
+        this.parallelThreshold = lifts;
+    }
+    
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+    
     @Override
-    public MultiLiftBuilding NextStep() throws InvalidBuildingConfiguration {
+    protected MultiLiftBuilding Step() throws InvalidBuildingConfiguration {
         // Check that building is valid
         if (building.getFloors().GetFloors().isEmpty()) {
             throw new InvalidBuildingConfiguration();
@@ -27,124 +71,228 @@ public class MultiLiftLook extends MultiLiftAlgorithm {
         // Dispatch requests
         dispatcher.dispatchRequests();
         
-        // For each elevator, use LOOK algorithm
-        for (int i = 0; i < building.getNumLifts(); i++) {
-            moveElevator(i);
+        int numLifts = building.getNumLifts();
+        int numFloors = building.getFloors().GetFloors().size();
+        prepare(numLifts, numFloors);
+        
+        // plan every lift at once from the state as it is now - nothing is changed here
+        boolean parallel = numLifts >= parallelThreshold;
+        if (parallel) {
+            IntStream.range(0, numLifts).parallel().forEach(i -> planned[i] = plan(i));
+        }
+        
+        // then carry the plans out in lift order, planning again if an earlier lift got in the way
+        for (int i = 0; i < numLifts; i++) {
+            long start = timer.start();
+            LiftState lift = building.getLift(i);
+            
+            // Print current state
+            log("Elevator " + i + " at Floor: " + lift.getCurrentFloor() + 
+                    " | Direction: " + (lift.isGoingUp() ? "UP" : "DOWN"));
+            
+            Move move = planned[i];
+            if (!parallel || stoppedAt[lift.getCurrentFloor()] || rangeChanged[i]) {
+                if (rangeChanged[i]) {
+                    findAssignedRange(i);
+                }
+                move = plan(i);
+            }
+            moveElevator(i, move);
+            timer.stop(DecisionTimer.MOVE, start);
         }
         
         return building;
     }
     
+    // size the scratch arrays and fill in each lift's lowest and highest assigned floor
+    private void prepare(int numLifts, int numFloors) {
+        if (planned.length != numLifts) {
+            planned = new Move[numLifts];
+            lowestAssigned = new int[numLifts];
+            highestAssigned = new int[numLifts];
+            rangeChanged = new boolean[numLifts];
+        }
+        if (stoppedAt.length != numFloors) {
+            stoppedAt = new boolean[numFloors];
+        }
+        Arrays.fill(lowestAssigned, NONE);
+        Arrays.fill(highestAssigned, NONE);
+        Arrays.fill(rangeChanged, false);
+        Arrays.fill(stoppedAt, false);
+        
+        // one pass over the floors rather than one per lift
+        for (int floor = 0; floor < numFloors; floor++) {
+            int lift = dispatcher.getAssignment(floor);
+            if (lift >= 0 && lift < numLifts) {
+                if (lowestAssigned[lift] == NONE) {
+                    lowestAssigned[lift] = floor;
+                }
+                highestAssigned[lift] = floor;
+            }
+        }
+    }
+    
+    // an earlier lift cleared one of this lift's floors, so look its floors up again
+    private void findAssignedRange(int liftIndex) {
+        lowestAssigned[liftIndex] = NONE;
+        highestAssigned[liftIndex] = NONE;
+        for (int floor : dispatcher.getAssignedFloors(liftIndex)) {
+            if (lowestAssigned[liftIndex] == NONE) {
+                lowestAssigned[liftIndex] = floor;
+            }
+            highestAssigned[liftIndex] = floor;
+        }
+        rangeChanged[liftIndex] = false;
+    }
+    
     /**
-     * Move one elevator using LOOK algorithm
-     * @param liftIndex The elevator to move
+     * Decide what one elevator does this step using LOOK. Only reads the building,
+     * so any number of these can run at once.
+     * @param liftIndex The elevator to plan
      */
-    private void moveElevator(int liftIndex) {
+    private Move plan(int liftIndex) {
         // Get elevator info
         LiftState lift = building.getLift(liftIndex);
-        List<FloorState> floorList = building.getFloors().GetFloors();
+        int numFloors = building.getFloors().GetFloors().size();
         int currentFloor = lift.getCurrentFloor();
-        boolean goingUp = lift.isGoingUp();
-        
-        // Print current state
-        System.out.println("Elevator " + liftIndex + " at Floor: " + currentFloor + 
-                " | Direction: " + (goingUp ? "UP" : "DOWN"));
         
-        // Check for requests at current floor
-        Queue currentFloorRequests = building.GetCurrentFloorRequests(liftIndex);
-        
-        if (!currentFloorRequests.isEmpty()) {
-            // Handle requests at current floor
-            building.StopLift(liftIndex);
-            System.out.println("Elevator " + liftIndex + " stopping at Floor " + 
-                    currentFloor + " to pick up/drop off passengers.");
-            
-            // Clear assignment for this floor
-            dispatcher.clearAssignment(currentFloor);
-            
-            // Done with this step - no movement for this elevator
-            return;
+        // Check for requests at current floor, or a button pressed for it inside the lift
+        if (!building.GetCurrentFloorRequests(liftIndex).isEmpty() || lift.hasStop(currentFloor)) {
+            return Move.STOP;
         }
         
-        // Get floors assigned to this elevator
-        List<Integer> assignedFloors = dispatcher.getAssignedFloors(liftIndex);
-        
         // Find highest and lowest assigned floors
-        Integer highestAssigned = null;
-        Integer lowestAssigned = null;
+        int highest = highestAssigned[liftIndex];
+        int lowest = lowestAssigned[liftIndex];
         
-        for (Integer floor : assignedFloors) {
-            if (highestAssigned == null || floor > highestAssigned) {
-                highestAssigned = floor;
-            }
-            if (lowestAssigned == null || floor < lowestAssigned) {
-                lowestAssigned = floor;
-            }
+        // and the floors buttons were pressed for
+        int highestStop = lift.getHighestStop();
+        if (highestStop != NONE) {
+            int lowestStop = lift.getLowestStop();
+            highest = Math.max(highest, highestStop);
+            lowest = lowest == NONE ? lowestStop : Math.min(lowest, lowestStop);
         }
         
         // Also consider floors with passengers who want to get off
-        for (int i = 0; i < floorList.size(); i++) {
-            // Check if any passengers want to get off at this floor
-            Object[] liftPassengers = lift.getCurrentlyHandlingObj();
-            for (Object passenger : liftPassengers) {
-                if (passenger instanceof Integer && (Integer)passenger == i) {
-                    // Someone wants to get off at floor i
-                    if (highestAssigned == null || i > highestAssigned) {
-                        highestAssigned = i;
+        for (Object passenger : lift.getCurrentlyHandlingObj()) {
+            if (passenger instanceof Integer) {
+                int floor = (Integer) passenger;
+                if (floor == currentFloor) {
+                    // let them off even if nobody is waiting here
+                    return Move.STOP;
+                }
+                if (floor >= 0 && floor < numFloors) {
+                    if (highest == NONE || floor > highest) {
+                        highest = floor;
                     }
-                    if (lowestAssigned == null || i < lowestAssigned) {
-                        lowestAssigned = i;
+                    if (lowest == NONE || floor < lowest) {
+                        lowest = floor;
                     }
-                    break;
                 }
             }
         }
         
+        return look(currentFloor, lift.isGoingUp(), lowest, highest);
+    }
+    
+    /**
+     * The LOOK rule on its own: keep going while there are floors to visit ahead,
+     * otherwise turn round. Also used by LiveController for each lift.
+     * @param currentFloor Where the lift is
+     * @param goingUp Which way it is heading
+     * @param lowest Lowest floor it has to visit, -1 for none
+     * @param highest Highest floor it has to visit, -1 for none
+     */
+    static Move look(int currentFloor, boolean goingUp, int lowest, int highest) {
         // If no assigned floors, stay put
-        if (highestAssigned == null || lowestAssigned == null) {
-            System.out.println("Elevator " + liftIndex + " has no assigned floors. Remaining idle.");
-            return;
+        if (highest == NONE) {
+            return Move.IDLE;
         }
         
         // LOOK algorithm logic
         if (goingUp) {
-            if (currentFloor < highestAssigned) {
+            if (currentFloor < highest) {
+                return Move.UP;
+            }
+            // change direction, and start moving down if there are requests below
+            return currentFloor > lowest ? Move.TURN_DOWN_AND_MOVE : Move.TURN_DOWN;
+        } else {
+            if (currentFloor > lowest) {
+                return Move.DOWN;
+            }
+            return currentFloor < highest ? Move.TURN_UP_AND_MOVE : Move.TURN_UP;
+        }
+    }
+    
+    /**
+     * Carry out what plan() decided for one elevator
+     * @param liftIndex The elevator to move
+     * @param move What it decided to do
+     */
+    private void moveElevator(int liftIndex, Move move) {
+        LiftState lift = building.getLift(liftIndex);
+        int currentFloor = lift.getCurrentFloor();
+        
+        switch (move) {
+            case STOP:
+                // Handle requests at current floor
+                building.StopLift(liftIndex);
+                log("Elevator " + liftIndex + " stopping at Floor " + 
+                        currentFloor + " to pick up/drop off passengers.");
+                
+                // later lifts on this floor, or the lift this floor was assigned to, must plan again
+                stoppedAt[currentFloor] = true;
+                int owner = dispatcher.getAssignment(currentFloor);
+                if (owner >= 0 && owner < rangeChanged.length) {
+                    rangeChanged[owner] = true;
+                }
+                
+                // Clear assignment for this floor
+                dispatcher.clearAssignment(currentFloor);
+                break;
+            case IDLE:
+                log("Elevator " + liftIndex + " has no assigned floors. Remaining idle.");
+                break;
+            case UP:
                 // Continue going up
                 building.MoveLiftUp(liftIndex);
-                System.out.println("Elevator " + liftIndex + " moving UP to Floor: " + 
+                log("Elevator " + liftIndex + " moving UP to Floor: " + 
                         (currentFloor + 1));
-            } else {
+                break;
+            case DOWN:
+                // Continue going down
+                building.MoveLiftDown(liftIndex);
+                log("Elevator " + liftIndex + " moving DOWN to Floor: " + 
+                        (currentFloor - 1));
+                break;
+            case TURN_DOWN:
+            case TURN_DOWN_AND_MOVE:
                 // Change direction
                 lift.setGoingUp(false);
-                System.out.println("Elevator " + liftIndex + " reached highest request. " + 
+                log("Elevator " + liftIndex + " reached highest request. " + 
                         "Changing direction to DOWN.");
                 
                 // Start moving down if there are requests below
-                if (currentFloor > lowestAssigned) {
+                if (move == Move.TURN_DOWN_AND_MOVE) {
                     building.MoveLiftDown(liftIndex);
-                    System.out.println("Elevator " + liftIndex + " moving DOWN to Floor: " + 
+                    log("Elevator " + liftIndex + " moving DOWN to Floor: " + 
                             (currentFloor - 1));
                 }
-            }
-        } else {
-            if (currentFloor > lowestAssigned) {
-                // Continue going down
-                building.MoveLiftDown(liftIndex);
-                System.out.println("Elevator " + liftIndex + " moving DOWN to Floor: " + 
-                        (currentFloor - 1));
-            } else {
+                break;
+            case TURN_UP:
+            case TURN_UP_AND_MOVE:
                 // Change direction
                 lift.setGoingUp(true);
-                System.out.println("Elevator " + liftIndex + " reached lowest request. " + 
+                log("Elevator " + liftIndex + " reached lowest request. " + 
                         "Changing direction to UP.");
                 
                 // Start moving up if there are requests above
-                if (currentFloor < highestAssigned) {
+                if (move == Move.TURN_UP_AND_MOVE) {
                     building.MoveLiftUp(liftIndex);
-                    System.out.println("Elevator " + liftIndex + " moving UP to Floor: " + 
+                    log("Elevator " + liftIndex + " moving UP to Floor: " + 
                             (currentFloor + 1));
                 }
-            }
+                break;
         }
     }
 }
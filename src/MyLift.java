@@ -1,3 +1,6 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
@@ -15,19 +18,24 @@ public class MyLift extends Algorithm {
     
     // Constructor
     public MyLift(Building buildingState) {
-        super(buildingState);
+        this(buildingState, SimClock.system());
+    }
+    
+    // use a simulated clock to get the same result every run
+    public MyLift(Building buildingState, SimClock clock) {
+        super(buildingState, clock);
         
         // Set up initial values for wait times
         FloorsState floors = building.getFloors();
         List<FloorState> floorList = floors.GetFloors();
         for (int i = 0; i < floorList.size(); i++) {
             floorWaitTimes.put(i, 0L);
-            lastVisitTime.put(i, System.currentTimeMillis());
+            lastVisitTime.put(i, clock.now());
         }
     }
 
     @Override
-    public Building NextStep() throws InvalidBuildingConfiguration {
+    protected Building Step() throws InvalidBuildingConfiguration {
         // Get the current elevator and building state
         LiftState lift = building.getLift();
         FloorsState floors = building.getFloors();
@@ -40,7 +48,7 @@ public class MyLift extends Algorithm {
 
         int currentFloor = lift.getCurrentFloor();
         boolean goingUp = lift.isGoingUp();
-        long currentTime = System.currentTimeMillis();
+        long currentTime = clock.now();
         
         // Update how long each floor has been waiting
         for (int i = 0; i < floorList.size(); i++) {
@@ -105,9 +113,7 @@ public class MyLift extends Algorithm {
             skipCounter = 0;
             
             // Handle requests at this floor
-            while (!currentFloorRequests.isEmpty()) {
-                currentFloorRequests.dequeue();
-            }
+            building.ClearCurrentFloor();
             
             System.out.println("Stopping at Floor " + currentFloor + " to load/unload.");
             
@@ -146,10 +152,10 @@ public class MyLift extends Algorithm {
             
             // Move toward priority floor
             if (priorityFloor > currentFloor) {
-                lift.setCurrentFloor(currentFloor + 1);
+                building.MoveLiftUp();
                 System.out.println("Moving UP to Floor: " + (currentFloor + 1));
             } else {
-                lift.setCurrentFloor(currentFloor - 1);
+                building.MoveLiftDown();
                 System.out.println("Moving DOWN to Floor: " + (currentFloor - 1));
             }
             
@@ -173,7 +179,7 @@ public class MyLift extends Algorithm {
         // Move elevator using LOOK-style logic with our improvements
         if (goingUp) {
             if (currentFloor < highest) {
-                lift.setCurrentFloor(currentFloor + 1);
+                building.MoveLiftUp();
                 System.out.println("Moving UP to Floor: " + (currentFloor + 1));
             } else {
                 lift.setGoingUp(false);
@@ -181,13 +187,13 @@ public class MyLift extends Algorithm {
                 
                 // Only move down if there are floors below with requests
                 if (currentFloor > lowest) {
-                    lift.setCurrentFloor(currentFloor - 1);
+                    building.MoveLiftDown();
                     System.out.println("Moving DOWN to Floor: " + (currentFloor - 1));
                 }
             }
         } else {
             if (currentFloor > lowest) {
-                lift.setCurrentFloor(currentFloor - 1);
+                building.MoveLiftDown();
                 System.out.println("Moving DOWN to Floor: " + (currentFloor - 1));
             } else {
                 lift.setGoingUp(true);
@@ -195,7 +201,7 @@ public class MyLift extends Algorithm {
                 
                 // Only move up if there are floors above with requests
                 if (currentFloor < highest) {
-                    lift.setCurrentFloor(currentFloor + 1);
+                    building.MoveLiftUp();
                     System.out.println("Moving UP to Floor: " + (currentFloor + 1));
                 }
             }
@@ -203,4 +209,25 @@ public class MyLift extends Algorithm {
         
         return building;
     }
+    
+    // save the wait times and skip count for a checkpoint
+    @Override
+    protected void writeState(DataOutput out) throws IOException {
+        int floors = building.getFloors().GetFloors().size();
+        out.writeInt(skipCounter);
+        for (int i = 0; i < floors; i++) {
+            out.writeLong(floorWaitTimes.get(i));
+            out.writeLong(lastVisitTime.get(i));
+        }
+    }
+    
+    @Override
+    protected void readState(DataInput in) throws IOException {
+        int floors = building.getFloors().GetFloors().size();
+        skipCounter = in.readInt();
+        for (int i = 0; i < floors; i++) {
+            floorWaitTimes.put(i, in.readLong());
+            lastVisitTime.put(i, in.readLong());
+        }
+    }
 }
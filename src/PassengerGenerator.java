@@ -0,0 +1,105 @@
+/**
+ * Adds randomly arriving passengers to a building every step.
+ *
+ * Arrivals per step follow a Poisson distribution with the given mean, each one on a random
+ * floor going to a different random floor (destinations are floor indexes, the same as
+ * the lifts use). The random numbers come from a SplitMix64 generator whose whole state is
+ * one long, so the same seed always gives the same passengers and a checkpoint can save
+ * and restore it exactly.
+ */
+public final class PassengerGenerator {
+    private final double arrivalsPerStep;
+
+    // SplitMix64 state
+    private long state;
+
+    /**
+     * @param seed Starting point for the random numbers
+     * @param arrivalsPerStep Average number of new passengers each step
+     */
+    public PassengerGenerator(long seed, double arrivalsPerStep) {
+        if (arrivalsPerStep < 0) {
+            throw new IllegalArgumentException("Arrival rate can't be negative");
+        }
+        this.state = seed;
+        this.arrivalsPerStep = arrivalsPerStep;
+    }
+
+    public void addArrivals(Building building) {
+        int numFloors = building.getFloors().GetFloors().size();
+        if (numFloors < 2) {
+            return;
+        }
+        int count = nextArrivalCount();
+        for (int i = 0; i < count; i++) {
+            int floor = nextInt(numFloors);
+            building.AddPassenger(floor, nextDestination(floor, numFloors));
+        }
+    }
+
+    public void addArrivals(MultiLiftBuilding building) {
+        int numFloors = building.getFloors().GetFloors().size();
+        if (numFloors < 2) {
+            return;
+        }
+        int count = nextArrivalCount();
+        for (int i = 0; i < count; i++) {
+            int floor = nextInt(numFloors);
+            building.AddPassenger(floor, nextDestination(floor, numFloors));
+        }
+    }
+
+    public double getArrivalsPerStep() {
+        return arrivalsPerStep;
+    }
+
+    // the whole random state, for checkpoints
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    // any floor except the one they are on
+    private int nextDestination(int floor, int numFloors) {
+        int destination = nextInt(numFloors - 1);
+        return destination >= floor ? destination + 1 : destination;
+    }
+
+    // Poisson sample, done in chunks so large rates don't underflow exp()
+    private int nextArrivalCount() {
+        int count = 0;
+        double remaining = arrivalsPerStep;
+        while (remaining > 0) {
+            double chunk = Math.min(remaining, 30.0);
+            remaining -= chunk;
+
+            double limit = Math.exp(-chunk);
+            double product = nextDouble();
+            while (product > limit) {
+                count++;
+                product *= nextDouble();
+            }
+        }
+        return count;
+    }
+
+    long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // 0 to bound - 1
+    int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    // 0 (inclusive) to 1 (exclusive)
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+}
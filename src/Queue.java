@@ -1,124 +1,266 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Basic queue implementation for the elevator control system.
  * Used to manage floor requests in the simulation.
+ *
+ * Safe to share between threads, e.g. producers adding passengers while lifts on other
+ * threads board them. Each queue has its own lock, so with one queue per floor the
+ * building is striped by floor and threads only wait for each other on the same floor.
+ * size() and isEmpty() don't lock at all. dequeue(howMany) takes everyone it returns in
+ * one go, so two lifts can't board the same person or both count on the last space.
  */
 public class Queue {
-    // store all the requests (floor numbers)
-    private ArrayList<Integer> data;
-    
+    private static final VarHandle COUNT;
+    private static final VarHandle VERSION;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            COUNT = lookup.findVarHandle(Queue.class, "count", int.class);
+            VERSION = lookup.findVarHandle(Queue.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // store all the requests (floor numbers) in a ring, oldest at head
+    private int[] data;
+    private int head = 0;
+
+    // how many are in the ring - written holding the lock, read without it
+    private volatile int count = 0;
+
+    // odd while the size is being changed and even otherwise, so a reader can tell the
+    // size stayed put between two looks
+    private volatile long version = 0;
+
     // keep track of how many items we've processed
     private int totalProcessed = 0;
-    
+
+    private final ReentrantLock lock = new ReentrantLock();
+
     // constructor - create a new empty queue
     public Queue() {
-        data = new ArrayList<Integer>();
+        data = new int[8];
     }
-    
+
     // add a single item to the queue
     public void enqueue(int floorNumber) {
-        // just add it to the end of our list
-        data.add(floorNumber);
+        lock.lock();
+        try {
+            // just add it to the end
+            ensureRoom(count + 1);
+            data[(head + count) & (data.length - 1)] = floorNumber;
+            changed(count + 1);
+        } finally {
+            lock.unlock();
+        }
     }
-    
+
     // add multiple floor requests at once
     public void enqueue(List<Integer> newRequests) {
-        // could do a for loop here but this is easier
         if (newRequests != null && newRequests.size() > 0) {
-            data.addAll(newRequests);
+            lock.lock();
+            try {
+                ensureRoom(count + newRequests.size());
+                int size = count;
+                for (int request : newRequests) {
+                    data[(head + size++) & (data.length - 1)] = request;
+                }
+                changed(size);
+            } finally {
+                lock.unlock();
+            }
         }
     }
-    
+
     // remove and return the first item
     public int dequeue() {
-        // make sure we have something to return
-        if (isEmpty()) {
-            // probably shouldn't happen but just in case
-            System.out.println("Warning: tried to dequeue from empty queue");
-            return -1; // error code
+        lock.lock();
+        try {
+            // make sure we have something to return
+            if (count == 0) {
+                // probably shouldn't happen but just in case
+                System.out.println("Warning: tried to dequeue from empty queue");
+                return -1; // error code
+            }
+
+            // take the item at the front
+            int result = data[head];
+            head = (head + 1) & (data.length - 1);
+
+            // count that we processed another request
+            totalProcessed++;
+            changed(count - 1);
+
+            return result;
+        } finally {
+            lock.unlock();
         }
-        
-        // get the item at the front
-        int result = data.get(0);
-        
-        // remove it from our list
-        data.remove(0);
-        
-        // count that we processed another request
-        totalProcessed++;
-        
-        return result;
-    }
-    
-    // remove and return multiple items
+    }
+
+    // remove and return up to howMany items, all at once
     public List<Integer> dequeue(int howMany) {
-        // create a list to hold the results
-        List<Integer> result = new ArrayList<Integer>();
-        
-        // don't try to remove more than we have
-        int actualCount = Math.min(howMany, data.size());
-        
-        // get the requested number of items
-        for (int i = 0; i < actualCount; i++) {
-            result.add(dequeue());
+        lock.lock();
+        try {
+            // don't try to remove more than we have
+            int actualCount = Math.max(0, Math.min(howMany, count));
+
+            // create a list to hold the results
+            List<Integer> result = new ArrayList<Integer>(actualCount);
+            for (int i = 0; i < actualCount; i++) {
+                result.add(data[head]);
+                head = (head + 1) & (data.length - 1);
+            }
+
+            if (actualCount > 0) {
+                totalProcessed += actualCount;
+                changed(count - actualCount);
+            }
+            return result;
+        } finally {
+            lock.unlock();
         }
-        
-        return result;
     }
-    
+
     // look at the first item without removing it
     public int peek() {
-        if (isEmpty()) {
-            // probably shouldn't happen but just in case
-            System.out.println("Warning: tried to peek at empty queue");
-            return -1; // error code
-        }
-        return data.get(0);
+        return peek(0, "Warning: tried to peek at empty queue");
     }
-    
+
     // look at any item by position
     public int peek(int position) {
-        if (position < 0 || position >= data.size()) {
-            // out of bounds
-            System.out.println("Warning: invalid position in peek: " + position);
-            return -1; // error code
+        return peek(position, "Warning: invalid position in peek: " + position);
+    }
+
+    private int peek(int position, String warning) {
+        lock.lock();
+        try {
+            if (position < 0 || position >= count) {
+                // probably shouldn't happen but just in case
+                System.out.println(warning);
+                return -1; // error code
+            }
+            return data[(head + position) & (data.length - 1)];
+        } finally {
+            lock.unlock();
         }
-        return data.get(position);
     }
-    
+
     // check if the queue is empty
     public boolean isEmpty() {
-        return data.size() == 0;
+        return count == 0;
     }
-    
+
     // get the number of items in the queue
     public int size() {
-        return data.size();
+        return count;
+    }
+
+    // changes so far, see FloorsState.queueLengths
+    long getVersion() {
+        return version;
     }
-    
+
+    ReentrantLock getLock() {
+        return lock;
+    }
+
     // for debugging - print out the queue
     public String toString() {
-        if (isEmpty()) {
-            return "[]";
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        
-        for (int i = 0; i < data.size(); i++) {
-            sb.append(data.get(i));
-            if (i < data.size() - 1) {
-                sb.append(", ");
+        lock.lock();
+        try {
+            if (count == 0) {
+                return "[]";
             }
+
+            StringBuilder sb = new StringBuilder();
+
+            for (int i = 0; i < count; i++) {
+                sb.append(data[(head + i) & (data.length - 1)]);
+                if (i < count - 1) {
+                    sb.append(", ");
+                }
+            }
+
+            return sb.toString();
+        } finally {
+            lock.unlock();
         }
-        
-        return sb.toString();
     }
-    
+
     // get total number of requests we've processed
     // (not used right now but might be useful for stats)
     public int getTotalProcessed() {
-        return totalProcessed;
+        lock.lock();
+        try {
+            return totalProcessed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // write everything in the queue for a checkpoint
+    void writeState(DataOutput out) throws IOException {
+        lock.lock();
+        try {
+            out.writeInt(totalProcessed);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(data[(head + i) & (data.length - 1)]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // replace the contents with what writeState saved
+    void readState(DataInput in) throws IOException {
+        lock.lock();
+        try {
+            totalProcessed = in.readInt();
+            int size = in.readInt();
+            head = 0;
+            ensureRoom(size);
+            for (int i = 0; i < size; i++) {
+                data[i] = in.readInt();
+            }
+            changed(size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // grow the ring to a power of two that holds size, keeping the order, holding the lock
+    private void ensureRoom(int size) {
+        if (size <= data.length) {
+            return;
+        }
+        int length = data.length;
+        while (length < size) {
+            length *= 2;
+        }
+        int[] grown = new int[length];
+        for (int i = 0; i < count; i++) {
+            grown[i] = data[(head + i) & (data.length - 1)];
+        }
+        data = grown;
+        head = 0;
+    }
+
+    // publish a new size, holding the lock. Only one thread writes at a time, so release
+    // stores are enough to keep the three writes in order and skip a full fence for each
+    private void changed(int size) {
+        long next = version + 1;
+        VERSION.setRelease(this, next);
+        COUNT.setRelease(this, size);
+        VERSION.setRelease(this, next + 1);
     }
 }
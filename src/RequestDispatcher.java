@@ -1,3 +1,6 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +14,12 @@ public class RequestDispatcher {
     // Keep track of which elevator is assigned to each floor
     private int[] floorToElevator;
     
+    // times dispatchRequests, off unless one is set
+    private DecisionTimer timer = DecisionTimer.off();
+    
+    // print each assignment, on unless turned off
+    private boolean verbose = true;
+    
     // Constructor
     public RequestDispatcher(MultiLiftBuilding building) {
         this.building = building;
@@ -70,6 +79,9 @@ public class RequestDispatcher {
         
         // Remember this assignment
         floorToElevator[requestFloor] = bestLift;
+        building.metrics().floorAssigned(requestFloor, bestLift);
+        JfrEvents.assignment(requestFloor, bestLift, shortestDistance);
+        building.events().floorAssigned(requestFloor, bestLift);
         
         return bestLift;
     }
@@ -96,6 +108,8 @@ public class RequestDispatcher {
      * Should be called periodically to update assignments
      */
     public void dispatchRequests() {
+        long start = timer.start();
+        
         // Get floors that have requests
         List<Integer> requestFloors = getFloorsWithRequests();
         
@@ -118,8 +132,28 @@ public class RequestDispatcher {
             floorToElevator[floor] = bestLift;
             
             // Print assignment for debugging
-            System.out.println("Assigned floor " + floor + " to elevator " + bestLift);
+            if (verbose) {
+                System.out.println("Assigned floor " + floor + " to elevator " + bestLift);
+            }
         }
+        
+        timer.stop(DecisionTimer.DISPATCH, start);
+    }
+    
+    /**
+     * Set the timer used for dispatchRequests
+     * @param timer The timer (usually the algorithm's)
+     */
+    public void setDecisionTimer(DecisionTimer timer) {
+        this.timer = timer;
+    }
+    
+    /**
+     * Turn printing each assignment on or off
+     * @param verbose False to print nothing
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
     }
     
     /**
@@ -127,7 +161,19 @@ public class RequestDispatcher {
      * @param floor The floor that was handled
      */
     public void clearAssignment(int floor) {
-        floorToElevator[floor] = -1;
+        if (floorToElevator[floor] != -1) {
+            floorToElevator[floor] = -1;
+            building.events().floorAssigned(floor, -1);
+        }
+    }
+    
+    /**
+     * Get the elevator a floor is assigned to
+     * @param floor The floor to look up
+     * @return Elevator index, or -1 if the floor is not assigned
+     */
+    public int getAssignment(int floor) {
+        return floorToElevator[floor];
     }
     
     /**
@@ -146,4 +192,24 @@ public class RequestDispatcher {
         
         return result;
     }
+    
+    /**
+     * Save the assignments for a checkpoint
+     * @param out Where to write them
+     */
+    void writeState(DataOutput out) throws IOException {
+        for (int i = 0; i < floorToElevator.length; i++) {
+            out.writeInt(floorToElevator[i]);
+        }
+    }
+    
+    /**
+     * Load assignments saved by writeState (no events are fired)
+     * @param in Where to read them from
+     */
+    void readState(DataInput in) throws IOException {
+        for (int i = 0; i < floorToElevator.length; i++) {
+            floorToElevator[i] = in.readInt();
+        }
+    }
 }
@@ -3,7 +3,7 @@ public class Scan extends Algorithm {
         super(buildingState);
     }
 
-    public Building NextStep() throws InvalidBuildingConfiguration {
+    protected Building Step() throws InvalidBuildingConfiguration {
         if (super.building.getLift().getCapacity() == 0) {
             throw new InvalidBuildingConfiguration();
         }
@@ -1,9 +1,11 @@
+import java.io.File;
 import java.io.IOException;
 
 /**
  * ScenarioTestRunner:
  * Runs SCAN, LOOK, and MYLIFT on multiple .txt scenario files.
  * Shows pass/fail style results similar to the existing TestRunner pattern.
+ * Run with "--trace <dir>" to record a trace of every run into that directory.
  */
 public class ScenarioTestRunner {
 
@@ -11,9 +13,17 @@ public class ScenarioTestRunner {
     private static int totalTests = 0;
     private static int passedTests = 0;
 
+    // where to write traces (null = don't record)
+    private static String traceDir = null;
+
     public static void main(String[] args) {
         System.out.println("=== Starting Scenario Tests ===\n");
 
+        if (args.length >= 2 && args[0].equals("--trace")) {
+            traceDir = args[1];
+            new File(traceDir).mkdirs();
+        }
+
         long startTime = System.currentTimeMillis();
 
         // List out the files you want to test
@@ -56,19 +66,19 @@ public class ScenarioTestRunner {
         // SCAN
         runTest("SCAN on " + fileName, () -> {
             Building building = Building.FromFile(fileName);
-            runAlgorithm("SCAN", new Scan(building));
+            runAlgorithm("SCAN", fileName, new Scan(building));
         });
 
         // LOOK
         runTest("LOOK on " + fileName, () -> {
             Building building = Building.FromFile(fileName);
-            runAlgorithm("LOOK", new Look(building));
+            runAlgorithm("LOOK", fileName, new Look(building));
         });
 
         // MYLIFT
         runTest("MYLIFT on " + fileName, () -> {
             Building building = Building.FromFile(fileName);
-            runAlgorithm("MYLIFT", new MyLift(building));
+            runAlgorithm("MYLIFT", fileName, new MyLift(building));
         });
     }
 
@@ -93,7 +103,22 @@ public class ScenarioTestRunner {
     /**
      * Simulate an algorithm by repeatedly calling NextStep().
      */
-    private static void runAlgorithm(String algoName, Algorithm algo) throws InvalidBuildingConfiguration {
+    private static void runAlgorithm(String algoName, String fileName, Algorithm algo)
+            throws InvalidBuildingConfiguration, IOException {
+        // optionally record every step
+        TraceRecorder recorder = null;
+        if (traceDir != null) {
+            String traceName = algoName + "_" + fileName.replace(".txt", "") + ".trace";
+            recorder = new TraceRecorder(new File(traceDir, traceName).getPath(), algo);
+        }
+
+        // time how long everyone waits
+        JourneyTracker journeys = JourneyTracker.attach(algo);
+
+        // time every decision against a 2 ms control tick
+        DecisionTimer timer = new DecisionTimer(1, 2_000_000, null);
+        algo.setDecisionTimer(timer);
+
         int steps = 0;
         int moves = 0;
         boolean isDone = false;
@@ -114,6 +139,10 @@ public class ScenarioTestRunner {
             isDone = allRequestsProcessed(algo.building);
         }
 
+        if (recorder != null) {
+            recorder.close();
+        }
+
         if (!isDone) {
             // If we never finished, throw an exception to mark test as failed
             throw new RuntimeException(
@@ -122,6 +151,18 @@ public class ScenarioTestRunner {
         } else {
             System.out.println(algoName + " completed in " + steps
                 + " steps (" + moves + " moves).");
+            System.out.println("  Wait (steps): " + journeys.getWaitTimes());
+            System.out.println("  Journey (steps): " + journeys.getJourneyTimes());
+            System.out.println("  " + algo.building.metrics().snapshot());
+            System.out.println("  " + algo.building.energy());
+            // LOOK and MYLIFT clear floors without putting anyone in the lift
+            SimMetrics.Snapshot metrics = algo.building.metrics().snapshot();
+            long neverCarried = metrics.getBoardings() - metrics.getAlightings() - algo.building.getLift().Occupancy();
+            if (neverCarried > 0) {
+                System.out.println("  (" + neverCarried + " of the trips never rode in the lift, so the energy is "
+                        + "for an empty car and kJ/trip leaves out their load)");
+            }
+            System.out.println("  " + timer.toString().replace("\n", "\n  "));
         }
     }
 
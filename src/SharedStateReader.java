@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the state a SharedStateWriter publishes into a memory mapped file, from any process
+ * and at any time, without the writer ever knowing.
+ *
+ * A read copies the state out between two reads of the sequence number and retries if the
+ * writer was part way through, so it only ever returns a state the writer finished. The
+ * writer is never held up; a reader can at worst spin for a few microseconds. If the
+ * sequence stays odd (the writer died mid-write) the read gives up and returns null.
+ */
+public class SharedStateReader implements AutoCloseable {
+    // how long to keep retrying before deciding the writer is stuck
+    private static final long GIVE_UP_NANOS = 100_000_000L;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final int numFloors;
+    private final int numLifts;
+
+    // when the last state read was written, in ms since the epoch
+    private long writtenMillis;
+
+    // reads that had to be retried because the writer was busy
+    private long retries;
+
+    public SharedStateReader(String filename) throws IOException {
+        this(Paths.get(filename));
+    }
+
+    public SharedStateReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (channel.size() < SharedStateWriter.HEADER_SIZE) {
+            channel.close();
+            throw new IOException("Not a shared state file: " + path);
+        }
+        data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        data.order(ByteOrder.nativeOrder());
+
+        if (data.getInt(0) != SharedStateWriter.MAGIC) {
+            channel.close();
+            throw new IOException("Not a shared state file: " + path);
+        }
+        if (data.getInt(4) != SharedStateWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported shared state version " + data.getInt(4));
+        }
+        numFloors = data.getInt(SharedStateWriter.FLOORS_OFFSET);
+        numLifts = data.getInt(SharedStateWriter.LIFTS_OFFSET);
+        if (data.capacity() < SharedStateWriter.HEADER_SIZE + numLifts * SharedStateWriter.LIFT_SIZE
+                + numFloors * SharedStateWriter.FLOOR_SIZE) {
+            channel.close();
+            throw new IOException("Shared state file is shorter than its header says: " + path);
+        }
+    }
+
+    public int getNumFloors() {
+        return numFloors;
+    }
+
+    public int getNumLifts() {
+        return numLifts;
+    }
+
+    public long getWrittenMillis() {
+        return writtenMillis;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * The latest complete state, or null if the writer has been stuck mid-write for too long.
+     * Throws IllegalStateException if a new run has started with a different sized building.
+     */
+    public BuildingSnapshot read() {
+        BuildingSnapshot snapshot = new BuildingSnapshot(numFloors, numLifts);
+        return readInto(snapshot) ? snapshot : null;
+    }
+
+    // same as read() but fills in a snapshot of the right size, returns false if it gave up
+    public boolean readInto(BuildingSnapshot snapshot) {
+        long started = System.nanoTime();
+        while (true) {
+            long before = (long) SharedStateWriter.SEQUENCE.getAcquire(data, SharedStateWriter.SEQUENCE_OFFSET);
+            if ((before & 1) == 0) {
+                int floors = data.getInt(SharedStateWriter.FLOORS_OFFSET);
+                int lifts = data.getInt(SharedStateWriter.LIFTS_OFFSET);
+                boolean sameShape = floors == numFloors && lifts == numLifts;
+                long written = data.getLong(SharedStateWriter.TIME_OFFSET);
+                if (sameShape) {
+                    copy(snapshot);
+                }
+
+                // none of the reads above may move after the second sequence read
+                VarHandle.loadLoadFence();
+                long after = (long) SharedStateWriter.SEQUENCE.getOpaque(data, SharedStateWriter.SEQUENCE_OFFSET);
+                if (before == after) {
+                    if (!sameShape) {
+                        throw new IllegalStateException("The shared state file now holds a " + floors
+                                + " floor, " + lifts + " lift building - open it again");
+                    }
+                    writtenMillis = written;
+                    return true;
+                }
+            }
+
+            retries++;
+            if (System.nanoTime() - started > GIVE_UP_NANOS) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // plain reads - may see a half written state, which the sequence check throws away
+    private void copy(BuildingSnapshot snapshot) {
+        snapshot.step = data.getLong(SharedStateWriter.STEP_OFFSET);
+        int offset = SharedStateWriter.HEADER_SIZE;
+        for (int lift = 0; lift < numLifts; lift++) {
+            snapshot.liftFloor[lift] = data.getInt(offset);
+            snapshot.liftOccupancy[lift] = data.getInt(offset + 4);
+            snapshot.liftCapacity[lift] = data.getInt(offset + 8);
+            snapshot.liftUp[lift] = data.getInt(offset + 12) != 0;
+            offset += SharedStateWriter.LIFT_SIZE;
+        }
+        for (int floor = 0; floor < numFloors; floor++) {
+            snapshot.queueLength[floor] = data.getInt(offset);
+            snapshot.assignment[floor] = data.getInt(offset + 4);
+            offset += SharedStateWriter.FLOOR_SIZE;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * A console dashboard for a shared state file: prints a summary line every interval.
+     * Usage: java SharedStateReader <shared file> [intervalMillis]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java SharedStateReader <shared file> [intervalMillis]");
+            return;
+        }
+        long interval = args.length >= 2 ? Long.parseLong(args[1]) : 1000;
+
+        try (SharedStateReader reader = new SharedStateReader(args[0])) {
+            System.out.println("Watching " + reader.getNumFloors() + " floors, " + reader.getNumLifts() + " lifts");
+            long lastStep = -1;
+            long lastNanos = System.nanoTime();
+            while (true) {
+                BuildingSnapshot state = reader.read();
+                long now = System.nanoTime();
+                if (state == null) {
+                    System.out.println("Writer is stuck part way through an update");
+                } else {
+                    System.out.println(summary(reader, state, lastStep, (now - lastNanos) / 1e9));
+                    lastStep = state.getStep();
+                }
+                lastNanos = now;
+                Thread.sleep(interval);
+            }
+        }
+    }
+
+    private static String summary(SharedStateReader reader, BuildingSnapshot state, long lastStep, double seconds) {
+        int waiting = 0;
+        int busiest = 0;
+        for (int floor = 0; floor < state.getNumFloors(); floor++) {
+            waiting += state.getQueueLength(floor);
+            if (state.getQueueLength(floor) > state.getQueueLength(busiest)) {
+                busiest = floor;
+            }
+        }
+        int riding = 0;
+        for (int lift = 0; lift < state.getNumLifts(); lift++) {
+            riding += state.getLiftOccupancy(lift);
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append("step ").append(state.getStep());
+        if (lastStep >= 0) {
+            line.append(String.format(" (%.0f steps/s)", (state.getStep() - lastStep) / seconds));
+        }
+        line.append("  waiting ").append(waiting)
+                .append("  busiest floor ").append(busiest).append(" (").append(state.getQueueLength(busiest)).append(')')
+                .append("  riding ").append(riding);
+
+        // lift positions, as many as fit on a line
+        line.append("  lifts");
+        for (int lift = 0; lift < Math.min(state.getNumLifts(), 16); lift++) {
+            line.append(' ').append(state.getLiftFloor(lift)).append(state.isLiftGoingUp(lift) ? '^' : 'v');
+        }
+        if (state.getNumLifts() > 16) {
+            line.append(" ...");
+        }
+
+        long age = System.currentTimeMillis() - reader.getWrittenMillis();
+        if (age > 2000) {
+            line.append("  [no update for ").append(age / 1000).append(" s]");
+        }
+        return line.toString();
+    }
+}
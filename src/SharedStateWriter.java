@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Publishes the state of a running simulation into a memory mapped file, so a viewer in
+ * another process (SharedStateReader, or MultiElevatorGUI --attach) can watch a headless
+ * run whenever it likes.
+ *
+ * The file is guarded by a seqlock. Before writing, the writer makes the sequence number
+ * odd; after writing, it makes it even again. A reader copies the state out and keeps it
+ * only if the sequence was the same even number before and after. The writer never waits
+ * for readers and doesn't know whether there are any. Publishing is limited to once per
+ * publishIntervalMillis, since a viewer only needs what it can draw.
+ *
+ * Layout, in the machine's native byte order:
+ *   0  int  magic "ELSH"
+ *   4  int  version
+ *   8  int  floors
+ *   12 int  lifts
+ *   16 long sequence (odd while a write is in progress)
+ *   24 long step
+ *   32 long time the state was written, in ms since the epoch
+ *   64      per lift: floor, occupancy, capacity, direction (1 = up)      - 4 ints
+ *           per floor: people waiting, lift assigned (-1 for none)         - 2 ints
+ */
+public class SharedStateWriter implements SimulationListener, AutoCloseable {
+    static final int MAGIC = 0x454C5348; // "ELSH"
+    static final int VERSION = 1;
+
+    static final int FLOORS_OFFSET = 8;
+    static final int LIFTS_OFFSET = 12;
+    static final int SEQUENCE_OFFSET = 16;
+    static final int STEP_OFFSET = 24;
+    static final int TIME_OFFSET = 32;
+    static final int HEADER_SIZE = 64;
+    static final int LIFT_SIZE = 16;
+    static final int FLOOR_SIZE = 8;
+
+    // ordered access to the sequence number, which has to be 8 byte aligned
+    static final VarHandle SEQUENCE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FloorsState floors;
+    private final LiftState[] lifts;
+    private final RequestDispatcher dispatcher;
+    private final long publishIntervalNanos;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+
+    // the building being watched, to stop listening on close
+    private SimulationEvents events;
+
+    private long sequence;
+    private long stepsDone;
+    private long lastPublishNanos;
+
+    // publish a multi lift simulation to a file, at most every publishIntervalMillis (0 for every step)
+    public static SharedStateWriter start(MultiLiftAlgorithm algorithm, Path file, long publishIntervalMillis)
+            throws IOException {
+        MultiLiftBuilding building = algorithm.building;
+        SharedStateWriter writer = new SharedStateWriter(building.getFloors(), building.getAllLifts(),
+                algorithm.dispatcher, file, publishIntervalMillis, algorithm.getStepCount());
+        writer.events = building.events();
+        writer.events.addListener(writer);
+        return writer;
+    }
+
+    public static SharedStateWriter start(Algorithm algorithm, Path file, long publishIntervalMillis)
+            throws IOException {
+        Building building = algorithm.building;
+        SharedStateWriter writer = new SharedStateWriter(building.getFloors(), new LiftState[] { building.getLift() },
+                null, file, publishIntervalMillis, algorithm.getStepCount());
+        writer.events = building.events();
+        writer.events.addListener(writer);
+        return writer;
+    }
+
+    SharedStateWriter(FloorsState floors, LiftState[] lifts, RequestDispatcher dispatcher, Path file,
+                      long publishIntervalMillis, long stepsDone) throws IOException {
+        this.floors = floors;
+        this.lifts = lifts;
+        this.dispatcher = dispatcher;
+        this.publishIntervalNanos = publishIntervalMillis * 1_000_000;
+        this.stepsDone = stepsDone;
+
+        int numFloors = floors.GetFloors().size();
+        int size = HEADER_SIZE + lifts.length * LIFT_SIZE + numFloors * FLOOR_SIZE;
+        // not truncated, so a reader still attached from an earlier run never faults -
+        // it sees the new sizes in the header and knows the layout changed
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        data.order(ByteOrder.nativeOrder());
+
+        // carry on from an earlier run's sequence so no reader can mistake the two,
+        // and keep it odd until the header and first state are in
+        if (data.getInt(0) == MAGIC) {
+            sequence = (long) SEQUENCE.getVolatile(data, SEQUENCE_OFFSET);
+        }
+        sequence |= 1;
+        SEQUENCE.setVolatile(data, SEQUENCE_OFFSET, sequence);
+        VarHandle.storeStoreFence();
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        data.putInt(FLOORS_OFFSET, numFloors);
+        data.putInt(LIFTS_OFFSET, lifts.length);
+        write();
+        lastPublishNanos = System.nanoTime();
+    }
+
+    @Override
+    public void stepFinished(long step) {
+        stepsDone = step + 1;
+        long now = System.nanoTime();
+        if (now - lastPublishNanos >= publishIntervalNanos) {
+            lastPublishNanos = now;
+            publish();
+        }
+    }
+
+    // copy the current state into the file, only call from the simulation thread
+    void publish() {
+        SEQUENCE.setOpaque(data, SEQUENCE_OFFSET, ++sequence);
+        // nothing below may become visible before the sequence goes odd
+        VarHandle.storeStoreFence();
+        write();
+    }
+
+    // fill in the state and make the sequence even again, sequence must be odd
+    private void write() {
+        data.putLong(STEP_OFFSET, stepsDone);
+        data.putLong(TIME_OFFSET, System.currentTimeMillis());
+
+        int offset = HEADER_SIZE;
+        for (LiftState lift : lifts) {
+            data.putInt(offset, lift.getCurrentFloor());
+            data.putInt(offset + 4, lift.Occupancy());
+            data.putInt(offset + 8, lift.getCapacity());
+            data.putInt(offset + 12, lift.isGoingUp() ? 1 : 0);
+            offset += LIFT_SIZE;
+        }
+        int numFloors = floors.GetFloors().size();
+        for (int floor = 0; floor < numFloors; floor++) {
+            data.putInt(offset, floors.GetFloors().get(floor).GetFloorRequests().size());
+            data.putInt(offset + 4, dispatcher != null ? dispatcher.getAssignment(floor) : -1);
+            offset += FLOOR_SIZE;
+        }
+
+        // release: everything above is visible before the even sequence
+        SEQUENCE.setRelease(data, SEQUENCE_OFFSET, ++sequence);
+    }
+
+    // odd while a write is in progress, which only the simulation thread ever sees
+    public long getSequence() {
+        return sequence;
+    }
+
+    // publishes the final state so a viewer sees where the run ended
+    @Override
+    public void close() throws IOException {
+        if (events != null) {
+            events.removeListener(this);
+        }
+        publish();
+        data.force();
+        channel.close();
+    }
+
+    /**
+     * Runs a multi lift simulation flat out with random arrivals, publishing to a shared file.
+     * Usage: java SharedStateWriter <building file> <lifts> <shared file> [arrivalsPerStep] [stepMillis]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java SharedStateWriter <building file> <lifts> <shared file> "
+                    + "[arrivalsPerStep] [stepMillis]");
+            return;
+        }
+        MultiLiftBuilding building = MultiLiftBuilding.FromFile(args[0], Integer.parseInt(args[1]));
+        double rate = args.length >= 4 ? Double.parseDouble(args[3]) : 0.5;
+        long stepMillis = args.length >= 5 ? Long.parseLong(args[4]) : 0;
+
+        MultiLiftLook algorithm = new MultiLiftLook(building, SimClock.simulated(1000));
+        algorithm.setPassengerGenerator(new PassengerGenerator(System.nanoTime(), rate));
+        SharedStateWriter writer = start(algorithm, Paths.get(args[2]), 1);
+        System.out.println("Publishing to " + args[2] + " - attach with java SharedStateReader " + args[2]
+                + " or java MultiElevatorGUI --attach " + args[2]);
+
+        algorithm.setVerbose(false);
+        try {
+            while (true) {
+                algorithm.NextStep();
+                if (stepMillis > 0) {
+                    Thread.sleep(stepMillis);
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
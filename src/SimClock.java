@@ -0,0 +1,61 @@
+/**
+ * The time algorithms see, in milliseconds.
+ *
+ * A system clock just reads the wall clock. A simulated clock starts at a fixed time and
+ * moves on by the same amount after every step, so a run gives the same answer however
+ * fast the machine is and can be checkpointed and resumed exactly.
+ */
+public final class SimClock {
+    private final boolean simulated;
+    private final long millisPerStep;
+
+    // current time for a simulated clock
+    private long now;
+
+    private SimClock(boolean simulated, long start, long millisPerStep) {
+        this.simulated = simulated;
+        this.now = start;
+        this.millisPerStep = millisPerStep;
+    }
+
+    // reads System.currentTimeMillis()
+    public static SimClock system() {
+        return new SimClock(false, 0, 0);
+    }
+
+    // starts at 0 and advances by millisPerStep after each step
+    public static SimClock simulated(long millisPerStep) {
+        return simulated(0, millisPerStep);
+    }
+
+    public static SimClock simulated(long start, long millisPerStep) {
+        if (millisPerStep < 0) {
+            throw new IllegalArgumentException("Time can't go backwards");
+        }
+        return new SimClock(true, start, millisPerStep);
+    }
+
+    public long now() {
+        return simulated ? now : System.currentTimeMillis();
+    }
+
+    // called by the algorithm at the end of every step
+    void tick() {
+        if (simulated) {
+            now += millisPerStep;
+        }
+    }
+
+    public boolean isSimulated() {
+        return simulated;
+    }
+
+    public long getMillisPerStep() {
+        return millisPerStep;
+    }
+
+    // used when restoring a checkpoint
+    void setTime(long time) {
+        now = time;
+    }
+}
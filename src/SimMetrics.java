@@ -0,0 +1,297 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and gauges kept by a building as it runs: stops, floors travelled, reversals,
+ * empty trips, boardings, dispatcher (re)assignments, and occupancy and queue lengths
+ * added up over time.
+ *
+ * The buildings and the dispatcher update these directly, so they are always on. Counters
+ * are LongAdders, which spread updates over several cells when threads collide, so lifts
+ * stepped on different threads or several runs sharing a registry don't fight over one
+ * cache line. Per lift values are plain arrays since each lift is only moved by one thread.
+ *
+ * Call snapshot() at the end of a run to get a fixed copy of everything.
+ */
+public final class SimMetrics {
+    private final FloorsState floors;
+    private final LiftState[] lifts;
+
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder stops = new LongAdder();
+    private final LongAdder emptyStops = new LongAdder();
+    private final LongAdder floorsTravelled = new LongAdder();
+    private final LongAdder emptyFloorsTravelled = new LongAdder();
+    private final LongAdder reversals = new LongAdder();
+    private final LongAdder trips = new LongAdder();
+    private final LongAdder emptyTrips = new LongAdder();
+    private final LongAdder boardings = new LongAdder();
+    private final LongAdder alightings = new LongAdder();
+    private final LongAdder arrivals = new LongAdder();
+    private final LongAdder assignments = new LongAdder();
+    private final LongAdder reassignments = new LongAdder();
+
+    // sum over every step of the people in lifts / people waiting
+    private final LongAdder occupancySteps = new LongAdder();
+    private final LongAdder waitingSteps = new LongAdder();
+
+    // gauge: people waiting on floors right now
+    private final LongAdder waiting = new LongAdder();
+
+    // last direction each lift moved (1 up, -1 down, 0 not yet) and whether it is between stops
+    private final int[] lastDirection;
+    private final boolean[] inTrip;
+
+    // lift each floor was last assigned to, so we can spot a floor moving to another lift
+    private final int[] lastAssigned;
+
+    public SimMetrics(FloorsState floors, LiftState[] lifts) {
+        this.floors = floors;
+        this.lifts = lifts;
+        this.lastDirection = new int[lifts.length];
+        this.inTrip = new boolean[lifts.length];
+        this.lastAssigned = new int[floors.GetFloors().size()];
+        Arrays.fill(lastAssigned, -1);
+        recountWaiting();
+    }
+
+    // a lift stopped at a floor
+    void liftStopped(int lift, int alighted, int boarded) {
+        stops.increment();
+        if (alighted == 0 && boarded == 0) {
+            emptyStops.increment();
+        }
+        if (alighted > 0) {
+            alightings.add(alighted);
+        }
+        if (boarded > 0) {
+            boardings.add(boarded);
+            waiting.add(-boarded);
+        }
+        inTrip[lift] = false;
+    }
+
+    // a lift moved one floor up (direction 1) or down (-1)
+    void liftMoved(int lift, int direction) {
+        floorsTravelled.increment();
+        boolean empty = lifts[lift].Occupancy() == 0;
+        if (empty) {
+            emptyFloorsTravelled.increment();
+        }
+        if (lastDirection[lift] != 0 && lastDirection[lift] != direction) {
+            reversals.increment();
+        }
+        lastDirection[lift] = direction;
+
+        // first move since the last stop starts a new trip
+        if (!inTrip[lift]) {
+            inTrip[lift] = true;
+            trips.increment();
+            if (empty) {
+                emptyTrips.increment();
+            }
+        }
+    }
+
+    void passengerArrived() {
+        arrivals.increment();
+        waiting.increment();
+    }
+
+    // the dispatcher gave a floor to a lift
+    void floorAssigned(int floor, int lift) {
+        assignments.increment();
+        if (lastAssigned[floor] != -1 && lastAssigned[floor] != lift) {
+            reassignments.increment();
+        }
+        lastAssigned[floor] = lift;
+    }
+
+    // adds this step's occupancy and waiting to the running totals
+    void stepFinished() {
+        steps.increment();
+        long occupancy = 0;
+        for (LiftState lift : lifts) {
+            occupancy += lift.Occupancy();
+        }
+        occupancySteps.add(occupancy);
+        waitingSteps.add(waiting.sum());
+    }
+
+    // count the people on the floors again, e.g. after a checkpoint is restored
+    void recountWaiting() {
+        long total = 0;
+        for (FloorState floor : floors.GetFloors()) {
+            total += floor.GetFloorRequests().size();
+        }
+        waiting.reset();
+        waiting.add(total);
+    }
+
+    // people waiting on floors right now, without counting the floors like snapshot() does
+    public long getWaiting() {
+        return waiting.sum();
+    }
+
+    // every counter, in the order they are checkpointed
+    private LongAdder[] counters() {
+        return new LongAdder[] { steps, stops, emptyStops, floorsTravelled, emptyFloorsTravelled, reversals,
+                trips, emptyTrips, boardings, alightings, arrivals, assignments, reassignments,
+                occupancySteps, waitingSteps };
+    }
+
+    // the counters and what each lift and floor was last doing, for checkpoints
+    void writeState(DataOutput out) throws IOException {
+        for (LongAdder counter : counters()) {
+            out.writeLong(counter.sum());
+        }
+        for (int lift = 0; lift < lifts.length; lift++) {
+            out.writeInt(lastDirection[lift]);
+            out.writeBoolean(inTrip[lift]);
+        }
+        for (int lift : lastAssigned) {
+            out.writeInt(lift);
+        }
+    }
+
+    // the floors must already be restored, the people waiting on them are counted again
+    void readState(DataInput in) throws IOException {
+        for (LongAdder counter : counters()) {
+            counter.reset();
+            counter.add(in.readLong());
+        }
+        for (int lift = 0; lift < lifts.length; lift++) {
+            lastDirection[lift] = in.readInt();
+            inTrip[lift] = in.readBoolean();
+        }
+        for (int floor = 0; floor < lastAssigned.length; floor++) {
+            lastAssigned[floor] = in.readInt();
+        }
+        recountWaiting();
+    }
+
+    // fixed copy of everything now
+    public Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        s.lifts = lifts.length;
+        s.steps = steps.sum();
+        s.stops = stops.sum();
+        s.emptyStops = emptyStops.sum();
+        s.floorsTravelled = floorsTravelled.sum();
+        s.emptyFloorsTravelled = emptyFloorsTravelled.sum();
+        s.reversals = reversals.sum();
+        s.trips = trips.sum();
+        s.emptyTrips = emptyTrips.sum();
+        s.boardings = boardings.sum();
+        s.alightings = alightings.sum();
+        s.arrivals = arrivals.sum();
+        s.assignments = assignments.sum();
+        s.reassignments = reassignments.sum();
+        s.occupancySteps = occupancySteps.sum();
+        s.waitingSteps = waitingSteps.sum();
+
+        // gauges are read straight from the building
+        for (FloorState floor : floors.GetFloors()) {
+            int length = floor.GetFloorRequests().size();
+            s.waitingNow += length;
+            s.longestQueue = Math.max(s.longestQueue, length);
+        }
+        for (LiftState lift : lifts) {
+            s.occupancyNow += lift.Occupancy();
+        }
+        return s;
+    }
+
+    /**
+     * Values of every metric at one moment. Snapshots from separate runs can be added
+     * together with plus(), e.g. to total a sweep.
+     */
+    public static final class Snapshot {
+        long lifts;
+        long steps;
+        long stops;
+        long emptyStops;
+        long floorsTravelled;
+        long emptyFloorsTravelled;
+        long reversals;
+        long trips;
+        long emptyTrips;
+        long boardings;
+        long alightings;
+        long arrivals;
+        long assignments;
+        long reassignments;
+        long occupancySteps;
+        long waitingSteps;
+        long waitingNow;
+        long longestQueue;
+        long occupancyNow;
+
+        public long getSteps() { return steps; }
+        public long getStops() { return stops; }
+        public long getEmptyStops() { return emptyStops; }
+        public long getFloorsTravelled() { return floorsTravelled; }
+        public long getEmptyFloorsTravelled() { return emptyFloorsTravelled; }
+        public long getReversals() { return reversals; }
+        public long getTrips() { return trips; }
+        public long getEmptyTrips() { return emptyTrips; }
+        public long getBoardings() { return boardings; }
+        public long getAlightings() { return alightings; }
+        public long getArrivals() { return arrivals; }
+        public long getAssignments() { return assignments; }
+        public long getReassignments() { return reassignments; }
+        public long getOccupancySteps() { return occupancySteps; }
+        public long getWaitingSteps() { return waitingSteps; }
+        public long getWaitingNow() { return waitingNow; }
+        public long getLongestQueue() { return longestQueue; }
+        public long getOccupancyNow() { return occupancyNow; }
+
+        // average people in each lift per step
+        public double getMeanOccupancy() {
+            return steps == 0 || lifts == 0 ? 0 : (double) occupancySteps / (steps * lifts);
+        }
+
+        // average people waiting in the building per step
+        public double getMeanWaiting() {
+            return steps == 0 ? 0 : (double) waitingSteps / steps;
+        }
+
+        // totals of two snapshots (gauges are added too, the longest queue is the larger one)
+        public Snapshot plus(Snapshot other) {
+            Snapshot s = new Snapshot();
+            s.lifts = lifts + other.lifts;
+            s.steps = steps + other.steps;
+            s.stops = stops + other.stops;
+            s.emptyStops = emptyStops + other.emptyStops;
+            s.floorsTravelled = floorsTravelled + other.floorsTravelled;
+            s.emptyFloorsTravelled = emptyFloorsTravelled + other.emptyFloorsTravelled;
+            s.reversals = reversals + other.reversals;
+            s.trips = trips + other.trips;
+            s.emptyTrips = emptyTrips + other.emptyTrips;
+            s.boardings = boardings + other.boardings;
+            s.alightings = alightings + other.alightings;
+            s.arrivals = arrivals + other.arrivals;
+            s.assignments = assignments + other.assignments;
+            s.reassignments = reassignments + other.reassignments;
+            s.occupancySteps = occupancySteps + other.occupancySteps;
+            s.waitingSteps = waitingSteps + other.waitingSteps;
+            s.waitingNow = waitingNow + other.waitingNow;
+            s.longestQueue = Math.max(longestQueue, other.longestQueue);
+            s.occupancyNow = occupancyNow + other.occupancyNow;
+            return s;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Metrics[steps=%d, stops=%d (empty %d), floors=%d (empty %d), reversals=%d, "
+                    + "trips=%d (empty %d), boarded=%d, alighted=%d, arrived=%d, assignments=%d (reassigned %d), "
+                    + "meanOccupancy=%.2f, meanWaiting=%.2f, waiting=%d, longestQueue=%d]",
+                    steps, stops, emptyStops, floorsTravelled, emptyFloorsTravelled, reversals, trips, emptyTrips,
+                    boardings, alightings, arrivals, assignments, reassignments, getMeanOccupancy(),
+                    getMeanWaiting(), waitingNow, longestQueue);
+        }
+    }
+}
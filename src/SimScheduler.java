@@ -0,0 +1,179 @@
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets threads take turns on a simulated clock, so a LiveController on one comes out the
+ * same every run.
+ *
+ * Each thread taking part has a Turn. It waits for simulated time to pass with sleep(), or
+ * for another thread to wake() it with park(). Only the thread calling runNext() or
+ * advance() moves the clock: it hands the turn to the thread whose time comes first (in
+ * the order they went to sleep when times are equal) and waits for it to sleep or park
+ * again before going on. So only one thread runs at a time and what happens never depends
+ * on the thread scheduler.
+ *
+ * Each Turn has its own Condition, so handing over the turn wakes one thread, not all of them.
+ */
+final class SimScheduler {
+    // one thread's place in the queue
+    final class Turn {
+        private final Condition go = lock.newCondition();
+        private long at;
+        private long order;
+        private boolean queued = false;
+    }
+
+    private final SimClock clock;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // signalled when the running thread gives its turn back
+    private final Condition passed = lock.newCondition();
+
+    // threads waiting for a time, soonest first
+    private final PriorityQueue<Turn> due = new PriorityQueue<>(
+            (a, b) -> a.at != b.at ? Long.compare(a.at, b.at) : Long.compare(a.order, b.order));
+    private long order = 0;
+
+    // whose turn it is, null while the clock is being moved on
+    private Turn running;
+
+    SimScheduler(SimClock clock) {
+        this.clock = clock;
+    }
+
+    public SimClock getClock() {
+        return clock;
+    }
+
+    // a new thread, which first runs when the clock gets to now
+    Turn join() {
+        lock.lock();
+        try {
+            Turn turn = new Turn();
+            queue(turn, clock.now());
+            return turn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called by a thread before it does anything, returns once it is its turn
+    void begin(Turn turn) throws InterruptedException {
+        lock.lock();
+        try {
+            while (running != turn) {
+                turn.go.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // wait until millis of simulated time have passed
+    void sleep(Turn turn, long millis) throws InterruptedException {
+        lock.lock();
+        try {
+            queue(turn, clock.now() + millis);
+            pass(turn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // wait until another thread calls wake()
+    void park(Turn turn) throws InterruptedException {
+        lock.lock();
+        try {
+            pass(turn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // let a parked thread run at the current time, after anything already due then
+    void wake(Turn turn) {
+        lock.lock();
+        try {
+            if (!turn.queued && running != turn) {
+                queue(turn, clock.now());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a thread has finished for good, e.g. after being interrupted
+    void leave(Turn turn) {
+        lock.lock();
+        try {
+            if (turn.queued) {
+                due.remove(turn);
+                turn.queued = false;
+            }
+            if (running == turn) {
+                running = null;
+                passed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run the next thread that is due, if it is due by the time given, and wait until it
+     * sleeps or parks again. Returns false if nothing is due by then.
+     */
+    boolean runNext(long until) throws InterruptedException {
+        lock.lock();
+        try {
+            Turn next = due.peek();
+            if (next == null || next.at > until) {
+                return false;
+            }
+            due.poll();
+            next.queued = false;
+            if (next.at > clock.now()) {
+                clock.setTime(next.at);
+            }
+            running = next;
+            next.go.signal();
+            while (running != null) {
+                passed.await();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // run everything due in the next millis of simulated time, and move the clock to the end of it
+    void advance(long millis) throws InterruptedException {
+        long end = clock.now() + millis;
+        while (runNext(end)) {
+            // keep going
+        }
+        lock.lock();
+        try {
+            clock.setTime(end);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void queue(Turn turn, long at) {
+        turn.at = at;
+        turn.order = order++;
+        turn.queued = true;
+        due.add(turn);
+    }
+
+    // give the turn back and wait for the next one
+    private void pass(Turn turn) throws InterruptedException {
+        running = null;
+        passed.signal();
+        while (running != turn) {
+            turn.go.await();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Passes simulation events on to every registered listener.
+ * Each building owns one of these. Listeners are kept in a plain array that is
+ * replaced when it changes, so firing an event never allocates or locks.
+ */
+public final class SimulationEvents {
+    private static final SimulationListener[] NONE = new SimulationListener[0];
+
+    // current listeners, swapped for a new array on add/remove
+    private volatile SimulationListener[] listeners = NONE;
+
+    // lifts we watch for movement between the start and end of a step
+    private final LiftState[] lifts;
+    private final int[] floorAtStepStart;
+
+    public SimulationEvents(LiftState[] lifts) {
+        this.lifts = lifts;
+        this.floorAtStepStart = new int[lifts.length];
+    }
+
+    public synchronized void addListener(SimulationListener listener) {
+        SimulationListener[] current = listeners;
+        SimulationListener[] updated = new SimulationListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    public synchronized void removeListener(SimulationListener listener) {
+        SimulationListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                SimulationListener[] updated = new SimulationListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    public boolean hasListeners() {
+        return listeners.length > 0;
+    }
+
+    public void stepStarted(long step) {
+        // remember where every lift was so we can report moves at the end
+        for (int i = 0; i < lifts.length; i++) {
+            floorAtStepStart[i] = lifts[i].getCurrentFloor();
+        }
+        SimulationListener[] ls = listeners;
+        for (int i = 0; i < ls.length; i++) {
+            ls[i].stepStarted(step);
+        }
+    }
+
+    public void passengerArrived(int floor, int destination) {
+        SimulationListener[] ls = listeners;
+        for (int i = 0; i < ls.length; i++) {
+            ls[i].passengerArrived(floor, destination);
+        }
+    }
+
+    public void liftStopped(int lift, int floor, int alighted, int boarded) {
+        SimulationListener[] ls = listeners;
+        for (int i = 0; i < ls.length; i++) {
+            ls[i].liftStopped(lift, floor, alighted, boarded);
+        }
+    }
+
+    public void floorAssigned(int floor, int lift) {
+        SimulationListener[] ls = listeners;
+        for (int i = 0; i < ls.length; i++) {
+            ls[i].floorAssigned(floor, lift);
+        }
+    }
+
+    public void stepFinished(long step) {
+        SimulationListener[] ls = listeners;
+
+        // report any lift that ended up somewhere else
+        for (int lift = 0; lift < lifts.length; lift++) {
+            int from = floorAtStepStart[lift];
+            int to = lifts[lift].getCurrentFloor();
+            if (from != to) {
+                for (int i = 0; i < ls.length; i++) {
+                    ls[i].liftMoved(lift, from, to);
+                }
+            }
+        }
+
+        for (int i = 0; i < ls.length; i++) {
+            ls[i].stepFinished(step);
+        }
+    }
+}
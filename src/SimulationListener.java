@@ -0,0 +1,25 @@
+/**
+ * Something that wants to be told what happens inside a building while an
+ * algorithm runs (trace recorder, metrics, etc).
+ * Every method has an empty default so listeners only override what they need.
+ * Lift indexes are 0 for the single lift Building.
+ */
+public interface SimulationListener {
+    // called at the start of NextStep, before the algorithm does anything
+    default void stepStarted(long step) {}
+
+    // a new passenger joined the queue on a floor
+    default void passengerArrived(int floor, int destination) {}
+
+    // a lift stopped at a floor, letting people out and taking people from the floor queue
+    default void liftStopped(int lift, int floor, int alighted, int boarded) {}
+
+    // the dispatcher gave a floor to a lift (lift is -1 when the assignment is cleared)
+    default void floorAssigned(int floor, int lift) {}
+
+    // a lift ended the step on a different floor than it started on
+    default void liftMoved(int lift, int fromFloor, int toFloor) {}
+
+    // called at the end of NextStep once the building has been updated
+    default void stepFinished(long step) {}
+}
@@ -0,0 +1,210 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs an algorithm on its own thread for the GUIs, so a slow step never holds up the
+ * Event Dispatch Thread.
+ *
+ * Only this thread touches the algorithm and its building. After every step it captures a
+ * new BuildingSnapshot and swaps it in through an AtomicReference; a published snapshot is
+ * never changed again, so the EDT can paint getLatest() without any locking. The listener
+ * is called on the simulation thread after each step and should only schedule a repaint.
+ *
+ * The speed is set in steps per second, or UNLIMITED to run flat out. Steps are kept to
+ * the rate on average rather than each one being spaced out: when the next step is due in
+ * under a millisecond it runs straight away, so high speeds come out as short bursts.
+ */
+public class SimulationThread implements AutoCloseable {
+    public static final double UNLIMITED = Double.POSITIVE_INFINITY;
+
+    // if the steps fall this far behind the rate, give up catching up
+    private static final long MAX_LAG_NANOS = 250_000_000L;
+
+    // runs one step and captures the state it left behind
+    private interface Stepper {
+        BuildingSnapshot step() throws InvalidBuildingConfiguration;
+    }
+
+    private final Stepper stepper;
+    private final Runnable listener;
+    private final Thread thread;
+
+    // latest published state, replaced whole
+    private final AtomicReference<BuildingSnapshot> latest;
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private boolean running = false;
+    private int stepsRequested = 0;
+    private boolean closed = false;
+    private long stepPeriodNanos;
+    private long nextStepNanos;
+
+    // set when the floors run out of requests or a step throws
+    private volatile boolean finished = false;
+    private volatile Exception failure;
+
+    private SimulationThread(BuildingSnapshot initial, Stepper stepper, double stepsPerSecond, Runnable listener) {
+        this.latest = new AtomicReference<>(initial);
+        this.stepper = stepper;
+        this.stepPeriodNanos = periodNanos(stepsPerSecond);
+        this.listener = listener;
+        this.thread = new Thread(this::loop, "simulation");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public static SimulationThread start(Algorithm algorithm, double stepsPerSecond, Runnable listener) {
+        return new SimulationThread(BuildingSnapshot.capture(algorithm), () -> {
+            algorithm.NextStep();
+            return BuildingSnapshot.capture(algorithm);
+        }, stepsPerSecond, listener);
+    }
+
+    public static SimulationThread start(Algorithm algorithm, double stepsPerSecond) {
+        return start(algorithm, stepsPerSecond, () -> {});
+    }
+
+    public static SimulationThread start(MultiLiftAlgorithm algorithm, double stepsPerSecond, Runnable listener) {
+        return new SimulationThread(BuildingSnapshot.capture(algorithm), () -> {
+            algorithm.NextStep();
+            return BuildingSnapshot.capture(algorithm);
+        }, stepsPerSecond, listener);
+    }
+
+    public static SimulationThread start(MultiLiftAlgorithm algorithm, double stepsPerSecond) {
+        return start(algorithm, stepsPerSecond, () -> {});
+    }
+
+    public BuildingSnapshot getLatest() {
+        return latest.get();
+    }
+
+    // step continuously at the set speed
+    public void play() {
+        synchronized (lock) {
+            running = !finished;
+            nextStepNanos = System.nanoTime();
+            lock.notifyAll();
+        }
+    }
+
+    public void pause() {
+        synchronized (lock) {
+            running = false;
+            stepsRequested = 0;
+            lock.notifyAll();
+        }
+    }
+
+    // run one more step, when paused
+    public void step() {
+        synchronized (lock) {
+            if (!running && !finished) {
+                stepsRequested++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // steps per second, or UNLIMITED
+    public void setStepsPerSecond(double stepsPerSecond) {
+        synchronized (lock) {
+            stepPeriodNanos = periodNanos(stepsPerSecond);
+            nextStepNanos = System.nanoTime();
+            lock.notifyAll();
+        }
+    }
+
+    private static long periodNanos(double stepsPerSecond) {
+        if (!(stepsPerSecond > 0)) {
+            throw new IllegalArgumentException("Steps per second must be positive, not " + stepsPerSecond);
+        }
+        return Double.isInfinite(stepsPerSecond) ? 0 : Math.round(1e9 / stepsPerSecond);
+    }
+
+    public boolean isRunning() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // the exception that stopped the simulation, or null
+    public Exception getFailure() {
+        return failure;
+    }
+
+    // stops the thread and waits for the step in progress, if any, unless the caller is interrupted
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            synchronized (lock) {
+                while (!closed && !running && stepsRequested == 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                if (!running) {
+                    stepsRequested--;
+                }
+            }
+
+            try {
+                BuildingSnapshot snapshot = stepper.step();
+                latest.set(snapshot);
+                if (snapshot.isEmpty()) {
+                    stop(null);
+                }
+            } catch (Exception e) {
+                stop(e);
+            }
+            listener.run();
+
+            // wait until the next step is due, waking early if paused, closed or the speed changes
+            synchronized (lock) {
+                nextStepNanos += stepPeriodNanos;
+                if (System.nanoTime() - nextStepNanos > MAX_LAG_NANOS) {
+                    nextStepNanos = System.nanoTime();
+                }
+                long remaining;
+                while (running && !closed && (remaining = nextStepNanos - System.nanoTime()) >= 1_000_000L) {
+                    try {
+                        lock.wait(remaining / 1_000_000L);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void stop(Exception e) {
+        synchronized (lock) {
+            failure = e;
+            finished = true;
+            running = false;
+            stepsRequested = 0;
+        }
+    }
+}
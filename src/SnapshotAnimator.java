@@ -0,0 +1,61 @@
+/**
+ * Moves the drawn lifts smoothly towards the latest snapshot instead of jumping a whole
+ * floor per step. Used by the GUIs' render timers, on the Event Dispatch Thread only.
+ *
+ * Each time a new snapshot is seen the lifts glide from wherever they are drawn now to
+ * where the snapshot puts them, taking one step period to get there. Snapshots that
+ * arrive faster than frames are drawn just replace the target, so states in between are
+ * skipped rather than queued, and at high speeds the lifts are simply drawn where they are.
+ */
+public class SnapshotAnimator {
+    private BuildingSnapshot target;
+    private double[] from = new double[0];
+    private long changedNanos;
+    private long durationNanos;
+
+    /**
+     * Point the animation at the given snapshot if it is not already the target.
+     * Returns true if anything needs drawing again: a new snapshot, or lifts still moving.
+     */
+    public boolean update(BuildingSnapshot latest, double stepsPerSecond, long nowNanos) {
+        if (latest == target) {
+            return isMoving(nowNanos);
+        }
+
+        // start from where the lifts are drawn, unless the building changed shape
+        double[] start = new double[latest.getNumLifts()];
+        boolean sameBuilding = target != null && target.getNumLifts() == latest.getNumLifts()
+                && target.getNumFloors() == latest.getNumFloors();
+        for (int lift = 0; lift < start.length; lift++) {
+            start[lift] = sameBuilding ? getLiftPosition(lift, nowNanos) : latest.getLiftFloor(lift);
+        }
+
+        from = start;
+        target = latest;
+        changedNanos = nowNanos;
+        durationNanos = !sameBuilding || Double.isInfinite(stepsPerSecond) ? 0 : (long) (1e9 / stepsPerSecond);
+        return true;
+    }
+
+    public BuildingSnapshot getTarget() {
+        return target;
+    }
+
+    // floor to draw a lift at, part way between floors while it is moving
+    public double getLiftPosition(int lift, long nowNanos) {
+        double to = target.getLiftFloor(lift);
+        double progress = getProgress(nowNanos);
+        return from[lift] + (to - from[lift]) * progress;
+    }
+
+    public boolean isMoving(long nowNanos) {
+        return target != null && getProgress(nowNanos) < 1;
+    }
+
+    private double getProgress(long nowNanos) {
+        if (durationNanos <= 0) {
+            return 1;
+        }
+        return Math.min(1, (double) (nowNanos - changedNanos) / durationNanos);
+    }
+}
@@ -0,0 +1,456 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes what happens in a running simulation as a java.util.concurrent.Flow stream, so
+ * GUIs, trace writers and dashboards can follow the state as it changes instead of polling
+ * the building.
+ *
+ * Each subscriber gets its own bounded buffer and is fed from a pool thread, only as fast
+ * as it requests. The simulation thread just puts the event in every buffer and carries on,
+ * so it never waits for a subscriber. When a subscriber falls so far behind that its buffer
+ * is full, its overflow policy decides what it loses:
+ *   DROP_OLDEST - the oldest waiting event is dropped to make room
+ *   DROP_NEWEST - the new event is dropped
+ *   CONFLATE    - a lift's waiting move or a floor's waiting assignment is replaced by the
+ *                 newer one, so the subscriber always sees the latest state. Anything that
+ *                 can't be merged drops the oldest event when full.
+ * Dropped events are counted per subscriber, see Feed.getDropped().
+ *
+ * Events are only made while someone is subscribed, and are shared between subscribers.
+ */
+public class StateStream implements SimulationListener, Flow.Publisher<StateStream.Event>, AutoCloseable {
+    public enum Overflow { DROP_OLDEST, DROP_NEWEST, CONFLATE }
+
+    public enum Kind {
+        ARRIVED,  // a passenger joined the queue on floor, going to getDestination()
+        ASSIGNED, // floor was given to lift (-1 when the assignment is cleared)
+        STOPPED,  // lift stopped at floor, see getAlighted() and getBoarded()
+        MOVED     // lift ended the step on floor, having started on getFromFloor()
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    // one thing that happened, never changed once made
+    public static final class Event {
+        private final Kind kind;
+        private final long step;
+        private final int lift;
+        private final int floor;
+        private final int first;
+        private final int second;
+
+        Event(Kind kind, long step, int lift, int floor, int first, int second) {
+            this.kind = kind;
+            this.step = step;
+            this.lift = lift;
+            this.floor = floor;
+            this.first = first;
+            this.second = second;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public long getStep() {
+            return step;
+        }
+
+        // -1 for ARRIVED
+        public int getLift() {
+            return lift;
+        }
+
+        public int getFloor() {
+            return floor;
+        }
+
+        public int getDestination() {
+            return kind == Kind.ARRIVED ? first : -1;
+        }
+
+        public int getAlighted() {
+            return kind == Kind.STOPPED ? first : 0;
+        }
+
+        public int getBoarded() {
+            return kind == Kind.STOPPED ? second : 0;
+        }
+
+        public int getFromFloor() {
+            return kind == Kind.MOVED ? first : floor;
+        }
+
+        public String toString() {
+            switch (kind) {
+                case ARRIVED:
+                    return "step " + step + ": passenger on floor " + floor + " going to " + first;
+                case ASSIGNED:
+                    return "step " + step + ": floor " + floor + " assigned to lift " + lift;
+                case STOPPED:
+                    return "step " + step + ": lift " + lift + " stopped at floor " + floor
+                            + ", " + first + " out, " + second + " in";
+                default:
+                    return "step " + step + ": lift " + lift + " moved from floor " + first + " to " + floor;
+            }
+        }
+    }
+
+    private static final Feed[] NONE = new Feed[0];
+
+    private final SimulationEvents events;
+    private final int numLifts;
+    private final int numFloors;
+    private final ExecutorService executor;
+
+    // current subscribers, swapped for a new array on subscribe/cancel like SimulationEvents
+    private volatile Feed[] feeds = NONE;
+    private volatile boolean closed = false;
+
+    // step events are happening in
+    private long now;
+
+    // start publishing the events of a multi lift simulation
+    public static StateStream attach(MultiLiftAlgorithm algorithm) {
+        MultiLiftBuilding building = algorithm.building;
+        return new StateStream(building.events(), building.getNumLifts(),
+                building.getFloors().GetFloors().size(), algorithm.getStepCount());
+    }
+
+    public static StateStream attach(Algorithm algorithm) {
+        Building building = algorithm.building;
+        return new StateStream(building.events(), 1, building.getFloors().GetFloors().size(),
+                algorithm.getStepCount());
+    }
+
+    StateStream(SimulationEvents events, int numLifts, int numFloors, long startStep) {
+        this.events = events;
+        this.numLifts = numLifts;
+        this.numFloors = numFloors;
+        this.now = startStep;
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "state-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        events.addListener(this);
+    }
+
+    // subscribe with a buffer of DEFAULT_BUFFER_SIZE that drops the oldest event when full
+    @Override
+    public void subscribe(Flow.Subscriber<? super Event> subscriber) {
+        subscribe(subscriber, DEFAULT_BUFFER_SIZE, Overflow.DROP_OLDEST);
+    }
+
+    /**
+     * @param bufferSize Most events held for the subscriber, rounded up to a power of two
+     * @param overflow What to lose when the subscriber falls behind and the buffer is full
+     */
+    public void subscribe(Flow.Subscriber<? super Event> subscriber, int bufferSize, Overflow overflow) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        if (bufferSize < 1 || bufferSize > 1 << 24) {
+            throw new IllegalArgumentException("Buffer size must be between 1 and 2^24, not " + bufferSize);
+        }
+        Feed feed = new Feed(subscriber, bufferSize, overflow);
+        synchronized (this) {
+            if (closed) {
+                feed.completed = true;
+            } else {
+                Feed[] current = feeds;
+                Feed[] updated = new Feed[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+                updated[current.length] = feed;
+                feeds = updated;
+            }
+        }
+        feed.signal();
+    }
+
+    public int getSubscriberCount() {
+        return feeds.length;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stop publishing. Every subscriber gets what is left in its buffer and then onComplete.
+     */
+    @Override
+    public void close() {
+        Feed[] current;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = feeds;
+            feeds = NONE;
+        }
+        events.removeListener(this);
+        for (Feed feed : current) {
+            feed.complete();
+        }
+        executor.shutdown();
+    }
+
+    private synchronized void remove(Feed feed) {
+        Feed[] current = feeds;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == feed) {
+                Feed[] updated = new Feed[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                feeds = updated;
+                return;
+            }
+        }
+    }
+
+    // hand an event to every subscriber, only called on the simulation thread
+    private void publish(Kind kind, int lift, int floor, int first, int second) {
+        Feed[] current = feeds;
+        if (current.length == 0) {
+            return;
+        }
+        Event event = new Event(kind, now, lift, floor, first, second);
+        for (int i = 0; i < current.length; i++) {
+            current[i].offer(event);
+        }
+    }
+
+    @Override
+    public void stepStarted(long step) {
+        now = step;
+    }
+
+    @Override
+    public void passengerArrived(int floor, int destination) {
+        publish(Kind.ARRIVED, -1, floor, destination, 0);
+    }
+
+    @Override
+    public void floorAssigned(int floor, int lift) {
+        publish(Kind.ASSIGNED, lift, floor, 0, 0);
+    }
+
+    @Override
+    public void liftStopped(int lift, int floor, int alighted, int boarded) {
+        publish(Kind.STOPPED, lift, floor, alighted, boarded);
+    }
+
+    @Override
+    public void liftMoved(int lift, int fromFloor, int toFloor) {
+        publish(Kind.MOVED, lift, toFloor, fromFloor, 0);
+    }
+
+    /**
+     * One subscriber's buffer and demand. Events go into a ring under the feed's lock, which
+     * is only ever held to add or take one event, never while calling the subscriber. Calls
+     * to the subscriber happen on one pool thread at a time, in the order events were added.
+     */
+    public final class Feed implements Flow.Subscription {
+        private final Flow.Subscriber<? super Event> subscriber;
+        private final Overflow overflow;
+        private final Event[] ring;
+        private final int mask;
+
+        // events ever added and taken, the ring holds those in between
+        private long head = 0;
+        private long tail = 0;
+
+        // where each lift's move and each floor's assignment went into the ring (-1 for none),
+        // so CONFLATE can find one that is still waiting without searching
+        private final long[] movedAt;
+        private final long[] assignedAt;
+
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        // calls to drain() that still need to run, only the caller that makes it 1 schedules it
+        private final AtomicInteger work = new AtomicInteger();
+
+        private volatile boolean subscribed = false;
+        private volatile boolean cancelled = false;
+        private volatile boolean completed = false;
+        private volatile Throwable error;
+
+        Feed(Flow.Subscriber<? super Event> subscriber, int bufferSize, Overflow overflow) {
+            this.subscriber = subscriber;
+            this.overflow = overflow;
+            int size = Math.max(1, Integer.highestOneBit(bufferSize - 1) << 1);
+            this.ring = new Event[size];
+            this.mask = size - 1;
+            if (overflow == Overflow.CONFLATE) {
+                movedAt = new long[numLifts];
+                assignedAt = new long[numFloors];
+                Arrays.fill(movedAt, -1);
+                Arrays.fill(assignedAt, -1);
+            } else {
+                movedAt = null;
+                assignedAt = null;
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Must request a positive number of events, not " + n);
+            } else {
+                // add to the demand, stopping at Long.MAX_VALUE
+                demand.getAndAccumulate(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            remove(this);
+            signal();
+        }
+
+        // events lost because this subscriber fell behind
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        // events waiting to be delivered
+        public synchronized int getBuffered() {
+            return (int) (tail - head);
+        }
+
+        public Overflow getOverflow() {
+            return overflow;
+        }
+
+        void offer(Event event) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (overflow == Overflow.CONFLATE && conflate(event)) {
+                    return;
+                }
+                if (tail - head == ring.length) {
+                    if (overflow == Overflow.DROP_NEWEST) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    ring[(int) head & mask] = null;
+                    head++;
+                    dropped.incrementAndGet();
+                }
+                if (overflow == Overflow.CONFLATE) {
+                    if (event.kind == Kind.MOVED) {
+                        movedAt[event.lift] = tail;
+                    } else if (event.kind == Kind.ASSIGNED) {
+                        assignedAt[event.floor] = tail;
+                    }
+                }
+                ring[(int) tail & mask] = event;
+                tail++;
+            }
+            if (demand.get() > 0) {
+                signal();
+            }
+        }
+
+        // replace a waiting event the new one supersedes, holding the lock
+        private boolean conflate(Event event) {
+            long at;
+            if (event.kind == Kind.MOVED) {
+                at = movedAt[event.lift];
+            } else if (event.kind == Kind.ASSIGNED) {
+                at = assignedAt[event.floor];
+            } else {
+                return false;
+            }
+            if (at < head) {
+                return false;
+            }
+            Event waiting = ring[(int) at & mask];
+            if (event.kind == Kind.MOVED) {
+                // one move from where the lift was when the subscriber last heard
+                event = new Event(Kind.MOVED, event.step, event.lift, event.floor, waiting.first, 0);
+            }
+            ring[(int) at & mask] = event;
+            dropped.incrementAndGet();
+            return true;
+        }
+
+        private synchronized Event poll() {
+            if (head == tail) {
+                return null;
+            }
+            Event event = ring[(int) head & mask];
+            ring[(int) head & mask] = null;
+            head++;
+            return event;
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        void signal() {
+            if (work.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // closing, deliver what is left on this thread instead
+                    drain();
+                }
+            }
+        }
+
+        // deliver as much as has been requested, on a pool thread
+        private void drain() {
+            int missed = 1;
+            try {
+                while (true) {
+                    if (!subscribed) {
+                        subscribed = true;
+                        subscriber.onSubscribe(this);
+                    }
+                    while (!cancelled && error == null && demand.get() > 0) {
+                        Event event = poll();
+                        if (event == null) {
+                            break;
+                        }
+                        demand.decrementAndGet();
+                        subscriber.onNext(event);
+                    }
+                    if (!cancelled && error != null) {
+                        cancelled = true;
+                        remove(this);
+                        subscriber.onError(error);
+                    } else if (!cancelled && completed && getBuffered() == 0) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                    }
+
+                    missed = work.addAndGet(-missed);
+                    if (missed == 0) {
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // a subscriber that throws is cancelled and never called again
+                cancelled = true;
+                remove(this);
+                System.err.println("State stream subscriber failed, cancelled it: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,581 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * Answers questions about a recorded run without running the simulation again,
+ * e.g. "p95 wait on floors 30-40 between steps 28800 and 32400" or "how often was lift 3 full".
+ *
+ * When opened the trace is read once to build a sparse index. Every SEGMENT_STEPS steps we keep:
+ *  - the building snapshot and file position (time index)
+ *  - when everyone still waiting at that point arrived (so waits can be worked out from there)
+ *  - which floors and lifts had anything happen in the segment (floor / lift index)
+ *
+ * A query only decodes the segments that overlap its step window and actually touched the
+ * floors or lift asked about. Segments are scanned in parallel and the results merged.
+ * Steps are the unit of time - at one step per second, 08:00-09:00 is steps 28800-32400.
+ */
+public class TraceAnalyzer {
+    public static final int DEFAULT_SEGMENT_STEPS = 1024;
+
+    private final TraceReader reader;
+    private final int segmentSteps;
+    private final long firstStep;
+    private final long lastStep;
+
+    // one entry per segment
+    private final ArrayList<Segment> segments = new ArrayList<>();
+
+    // index entry for a run of steps
+    private static final class Segment {
+        BuildingSnapshot start;
+        long position;
+        // floors with people waiting at the start, and when each of them arrived
+        int[] waitingFloors;
+        long[][] waitingArrivals;
+        BitSet touchedFloors = new BitSet();
+        BitSet touchedLifts = new BitSet();
+    }
+
+    public static TraceAnalyzer open(String filename) throws IOException {
+        return new TraceAnalyzer(new TraceReader(filename), DEFAULT_SEGMENT_STEPS);
+    }
+
+    public TraceAnalyzer(TraceReader reader, int segmentSteps) {
+        if (segmentSteps < 1) {
+            throw new IllegalArgumentException("Segment size must be at least 1 step");
+        }
+        this.reader = reader;
+        this.segmentSteps = segmentSteps;
+
+        // one pass to build the index
+        BuildingSnapshot state = reader.getInitialState();
+        firstStep = state.step;
+        reader.rewind();
+
+        ArrivalQueue[] waiting = new ArrivalQueue[state.getNumFloors()];
+        for (int floor = 0; floor < waiting.length; floor++) {
+            waiting[floor] = new ArrivalQueue();
+            for (int i = 0; i < state.queueLength[floor]; i++) {
+                waiting[floor].add(firstStep);
+            }
+        }
+
+        IndexBuilder builder = new IndexBuilder(waiting);
+        do {
+            if ((state.step - firstStep) % segmentSteps == 0) {
+                builder.segment = startSegment(state, waiting);
+            }
+        } while (reader.readStep(state, builder));
+        lastStep = state.step;
+    }
+
+    // keeps the arrival queues and activity sets up to date while indexing
+    private static final class IndexBuilder implements SimulationListener {
+        final ArrivalQueue[] waiting;
+        Segment segment;
+        long step;
+
+        IndexBuilder(ArrivalQueue[] waiting) {
+            this.waiting = waiting;
+        }
+
+        @Override
+        public void stepStarted(long step) {
+            this.step = step;
+        }
+
+        @Override
+        public void passengerArrived(int floor, int destination) {
+            waiting[floor].add(step);
+            segment.touchedFloors.set(floor);
+        }
+
+        @Override
+        public void liftStopped(int lift, int floor, int alighted, int boarded) {
+            waiting[floor].remove(boarded);
+            segment.touchedFloors.set(floor);
+            segment.touchedLifts.set(lift);
+        }
+
+        @Override
+        public void liftMoved(int lift, int fromFloor, int toFloor) {
+            segment.touchedLifts.set(lift);
+        }
+    }
+
+    private Segment startSegment(BuildingSnapshot state, ArrivalQueue[] waiting) {
+        Segment segment = new Segment();
+        segment.start = state.copy();
+        segment.position = reader.getPosition();
+
+        int count = 0;
+        for (ArrivalQueue queue : waiting) {
+            if (queue.size > 0) {
+                count++;
+            }
+        }
+        segment.waitingFloors = new int[count];
+        segment.waitingArrivals = new long[count][];
+        int next = 0;
+        for (int floor = 0; floor < waiting.length; floor++) {
+            if (waiting[floor].size > 0) {
+                segment.waitingFloors[next] = floor;
+                segment.waitingArrivals[next] = waiting[floor].toArray();
+                next++;
+            }
+        }
+        segments.add(segment);
+        return segment;
+    }
+
+    public long getFirstStep() {
+        return firstStep;
+    }
+
+    public long getLastStep() {
+        return lastStep;
+    }
+
+    public int getNumFloors() {
+        return reader.getNumFloors();
+    }
+
+    public int getNumLifts() {
+        return reader.getNumLifts();
+    }
+
+    /**
+     * Waiting and queue statistics for a range of floors over a window of steps.
+     * A passenger counts towards the window if they were picked up during it.
+     * @param lowFloor First floor (inclusive)
+     * @param highFloor Last floor (inclusive)
+     * @param fromStep Start of the window (inclusive)
+     * @param toStep End of the window (exclusive)
+     */
+    public FloorStats floorStats(int lowFloor, int highFloor, long fromStep, long toStep) {
+        long from = Math.max(fromStep, firstStep);
+        long to = Math.min(toStep, lastStep);
+        if (from >= to) {
+            return new FloorStats();
+        }
+        return segmentsFor(from, to)
+                .parallel()
+                .mapToObj(i -> scanFloors(i, lowFloor, highFloor, from, to))
+                .reduce(new FloorStats(), FloorStats::merge);
+    }
+
+    /**
+     * Statistics for one lift over a window of steps.
+     * @param fromStep Start of the window (inclusive)
+     * @param toStep End of the window (exclusive)
+     */
+    public LiftStats liftStats(int lift, long fromStep, long toStep) {
+        long from = Math.max(fromStep, firstStep);
+        long to = Math.min(toStep, lastStep);
+        if (from >= to) {
+            return new LiftStats();
+        }
+        return segmentsFor(from, to)
+                .parallel()
+                .mapToObj(i -> scanLift(i, lift, from, to))
+                .reduce(new LiftStats(), LiftStats::merge);
+    }
+
+    /**
+     * Floor statistics for each window of windowSteps steps between fromStep and toStep.
+     */
+    public FloorStats[] floorStatsPerWindow(int lowFloor, int highFloor, long fromStep, long toStep,
+                                            long windowSteps) {
+        int windows = (int) ((toStep - fromStep + windowSteps - 1) / windowSteps);
+        FloorStats[] result = new FloorStats[windows];
+        for (int w = 0; w < windows; w++) {
+            long start = fromStep + w * windowSteps;
+            result[w] = floorStats(lowFloor, highFloor, start, Math.min(toStep, start + windowSteps));
+        }
+        return result;
+    }
+
+    // indexes of the segments overlapping [from, to)
+    private IntStream segmentsFor(long from, long to) {
+        int first = (int) ((from - firstStep) / segmentSteps);
+        int last = (int) ((to - 1 - firstStep) / segmentSteps);
+        return IntStream.rangeClosed(first, Math.min(last, segments.size() - 1));
+    }
+
+    private boolean touchesFloors(Segment segment, int lowFloor, int highFloor) {
+        int next = segment.touchedFloors.nextSetBit(lowFloor);
+        return next >= 0 && next <= highFloor;
+    }
+
+    // decode (or skip) one segment working out waits for the floors asked about
+    private FloorStats scanFloors(int index, int lowFloor, int highFloor, long from, long to) {
+        Segment segment = segments.get(index);
+        FloorStats stats = new FloorStats();
+        long end = Math.min(to, segment.start.step + segmentSteps);
+
+        // nobody arrived or was picked up on these floors - the queues stayed as they were
+        if (!touchesFloors(segment, lowFloor, highFloor)) {
+            long steps = end - Math.max(from, segment.start.step);
+            stats.steps = steps;
+            for (int floor = lowFloor; floor <= highFloor; floor++) {
+                stats.queueLengthSum += steps * segment.start.queueLength[floor];
+            }
+            return stats;
+        }
+
+        // set up the arrival queues for just the floors we care about
+        ArrivalQueue[] waiting = new ArrivalQueue[highFloor - lowFloor + 1];
+        for (int i = 0; i < waiting.length; i++) {
+            waiting[i] = new ArrivalQueue();
+        }
+        for (int i = 0; i < segment.waitingFloors.length; i++) {
+            int floor = segment.waitingFloors[i];
+            if (floor >= lowFloor && floor <= highFloor) {
+                for (long arrival : segment.waitingArrivals[i]) {
+                    waiting[floor - lowFloor].add(arrival);
+                }
+            }
+        }
+
+        BuildingSnapshot state = segment.start.copy();
+        TraceReader cursor = reader.copy();
+        cursor.setPosition(segment.position);
+
+        SimulationListener listener = new SimulationListener() {
+            long step;
+
+            @Override
+            public void stepStarted(long step) {
+                this.step = step;
+            }
+
+            @Override
+            public void passengerArrived(int floor, int destination) {
+                if (floor >= lowFloor && floor <= highFloor) {
+                    waiting[floor - lowFloor].add(step);
+                    if (step >= from) {
+                        stats.arrived++;
+                    }
+                }
+            }
+
+            @Override
+            public void liftStopped(int lift, int floor, int alighted, int boarded) {
+                if (floor >= lowFloor && floor <= highFloor) {
+                    ArrivalQueue queue = waiting[floor - lowFloor];
+                    for (int i = 0; i < boarded; i++) {
+                        long arrival = queue.poll();
+                        if (step >= from) {
+                            stats.addWait(step - arrival);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void stepFinished(long step) {
+                if (step >= from) {
+                    for (int floor = lowFloor; floor <= highFloor; floor++) {
+                        stats.queueLengthSum += state.queueLength[floor];
+                    }
+                    stats.steps++;
+                }
+            }
+        };
+
+        while (state.step < end && cursor.readStep(state, listener)) {
+            // listener does the work
+        }
+        return stats;
+    }
+
+    // decode (or skip) one segment for a lift
+    private LiftStats scanLift(int index, int lift, long from, long to) {
+        Segment segment = segments.get(index);
+        LiftStats stats = new LiftStats();
+        long start = Math.max(from, segment.start.step);
+        long end = Math.min(to, segment.start.step + segmentSteps);
+
+        // nothing happened to this lift in the segment - it looked the same the whole time
+        if (!segment.touchedLifts.get(lift)) {
+            long steps = end - start;
+            stats.steps = steps;
+            stats.idleSteps = steps;
+            if (segment.start.liftOccupancy[lift] >= segment.start.liftCapacity[lift]) {
+                stats.fullSteps = steps;
+            }
+            stats.occupancySum = steps * segment.start.liftOccupancy[lift];
+            return stats;
+        }
+
+        BuildingSnapshot state = segment.start.copy();
+        TraceReader cursor = reader.copy();
+        cursor.setPosition(segment.position);
+
+        SimulationListener listener = new SimulationListener() {
+            boolean busy;
+
+            @Override
+            public void stepStarted(long step) {
+                busy = false;
+            }
+
+            @Override
+            public void liftStopped(int which, int floor, int alighted, int boarded) {
+                if (which == lift && state.step >= from) {
+                    stats.stops++;
+                    stats.boarded += boarded;
+                    stats.alighted += alighted;
+                    busy = true;
+                }
+            }
+
+            @Override
+            public void liftMoved(int which, int fromFloor, int toFloor) {
+                if (which == lift && state.step >= from) {
+                    stats.floorsTravelled += Math.abs(toFloor - fromFloor);
+                    busy = true;
+                }
+            }
+
+            @Override
+            public void stepFinished(long step) {
+                if (step >= from) {
+                    stats.steps++;
+                    if (!busy) {
+                        stats.idleSteps++;
+                    }
+                    if (state.liftOccupancy[lift] >= state.liftCapacity[lift]) {
+                        stats.fullSteps++;
+                    }
+                    stats.occupancySum += state.liftOccupancy[lift];
+                }
+            }
+        };
+
+        while (state.step < end && cursor.readStep(state, listener)) {
+            // listener does the work
+        }
+        return stats;
+    }
+
+    /**
+     * Results of a floor query
+     */
+    public static final class FloorStats {
+        long steps;
+        long arrived;
+        long queueLengthSum;
+
+        // waits of everyone picked up in the window (sorted on demand)
+        private long[] waits = new long[16];
+        private int waitCount;
+        private boolean sorted = true;
+
+        void addWait(long wait) {
+            if (waitCount == waits.length) {
+                waits = Arrays.copyOf(waits, waitCount * 2);
+            }
+            waits[waitCount++] = wait;
+            sorted = false;
+        }
+
+        FloorStats merge(FloorStats other) {
+            FloorStats merged = new FloorStats();
+            merged.steps = steps + other.steps;
+            merged.arrived = arrived + other.arrived;
+            merged.queueLengthSum = queueLengthSum + other.queueLengthSum;
+            merged.waits = Arrays.copyOf(waits, Math.max(16, waitCount + other.waitCount));
+            System.arraycopy(other.waits, 0, merged.waits, waitCount, other.waitCount);
+            merged.waitCount = waitCount + other.waitCount;
+            merged.sorted = merged.waitCount == 0;
+            return merged;
+        }
+
+        public long getArrived() {
+            return arrived;
+        }
+
+        public long getPickedUp() {
+            return waitCount;
+        }
+
+        // average number of people waiting across the floors, per step
+        public double getMeanQueueLength() {
+            return steps == 0 ? 0 : (double) queueLengthSum / steps;
+        }
+
+        public double getMeanWait() {
+            if (waitCount == 0) {
+                return 0;
+            }
+            long total = 0;
+            for (int i = 0; i < waitCount; i++) {
+                total += waits[i];
+            }
+            return (double) total / waitCount;
+        }
+
+        // wait (in steps) that p percent of passengers waited no longer than
+        public long getWaitPercentile(double p) {
+            if (waitCount == 0) {
+                return 0;
+            }
+            if (!sorted) {
+                Arrays.sort(waits, 0, waitCount);
+                sorted = true;
+            }
+            int rank = (int) Math.ceil(p / 100.0 * waitCount) - 1;
+            return waits[Math.max(0, Math.min(waitCount - 1, rank))];
+        }
+
+        public long getMaxWait() {
+            return getWaitPercentile(100);
+        }
+
+        @Override
+        public String toString() {
+            return "FloorStats[pickedUp=" + waitCount + ", arrived=" + arrived
+                    + ", meanWait=" + String.format("%.2f", getMeanWait())
+                    + ", p95Wait=" + getWaitPercentile(95) + ", maxWait=" + getMaxWait()
+                    + ", meanQueue=" + String.format("%.2f", getMeanQueueLength()) + "]";
+        }
+    }
+
+    /**
+     * Results of a lift query
+     */
+    public static final class LiftStats {
+        long steps;
+        long fullSteps;
+        long idleSteps;
+        long stops;
+        long boarded;
+        long alighted;
+        long floorsTravelled;
+        long occupancySum;
+
+        LiftStats merge(LiftStats other) {
+            LiftStats merged = new LiftStats();
+            merged.steps = steps + other.steps;
+            merged.fullSteps = fullSteps + other.fullSteps;
+            merged.idleSteps = idleSteps + other.idleSteps;
+            merged.stops = stops + other.stops;
+            merged.boarded = boarded + other.boarded;
+            merged.alighted = alighted + other.alighted;
+            merged.floorsTravelled = floorsTravelled + other.floorsTravelled;
+            merged.occupancySum = occupancySum + other.occupancySum;
+            return merged;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        public long getFullSteps() {
+            return fullSteps;
+        }
+
+        // fraction of steps the lift spent full
+        public double getFractionFull() {
+            return steps == 0 ? 0 : (double) fullSteps / steps;
+        }
+
+        public long getIdleSteps() {
+            return idleSteps;
+        }
+
+        public long getStops() {
+            return stops;
+        }
+
+        public long getBoarded() {
+            return boarded;
+        }
+
+        public long getAlighted() {
+            return alighted;
+        }
+
+        public long getFloorsTravelled() {
+            return floorsTravelled;
+        }
+
+        public double getMeanOccupancy() {
+            return steps == 0 ? 0 : (double) occupancySum / steps;
+        }
+
+        @Override
+        public String toString() {
+            return "LiftStats[steps=" + steps + ", full=" + String.format("%.1f%%", 100 * getFractionFull())
+                    + ", idle=" + idleSteps + ", stops=" + stops + ", boarded=" + boarded
+                    + ", alighted=" + alighted + ", floors=" + floorsTravelled + "]";
+        }
+    }
+
+    // FIFO of arrival steps for one floor, same order as the floor's Queue
+    private static final class ArrivalQueue {
+        long[] items = new long[4];
+        int head;
+        int size;
+
+        void add(long arrival) {
+            if (size == items.length) {
+                long[] bigger = new long[items.length * 2];
+                for (int i = 0; i < size; i++) {
+                    bigger[i] = items[(head + i) % items.length];
+                }
+                items = bigger;
+                head = 0;
+            }
+            items[(head + size) % items.length] = arrival;
+            size++;
+        }
+
+        long poll() {
+            if (size == 0) {
+                return 0; // someone was boarded that the trace never saw arrive
+            }
+            long arrival = items[head];
+            head = (head + 1) % items.length;
+            size--;
+            return arrival;
+        }
+
+        void remove(int count) {
+            for (int i = 0; i < count; i++) {
+                poll();
+            }
+        }
+
+        long[] toArray() {
+            long[] result = new long[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = items[(head + i) % items.length];
+            }
+            return result;
+        }
+    }
+
+    // command line: TraceAnalyzer <trace> floors <low> <high> [from to] | lift <n> [from to]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java TraceAnalyzer <trace> floors <low> <high> [fromStep toStep]");
+            System.out.println("       java TraceAnalyzer <trace> lift <index> [fromStep toStep]");
+            return;
+        }
+        TraceAnalyzer analyzer = open(args[0]);
+        if (args[1].equals("floors") && args.length >= 4) {
+            long from = args.length >= 6 ? Long.parseLong(args[4]) : analyzer.getFirstStep();
+            long to = args.length >= 6 ? Long.parseLong(args[5]) : analyzer.getLastStep();
+            System.out.println(analyzer.floorStats(Integer.parseInt(args[2]), Integer.parseInt(args[3]), from, to));
+        } else {
+            long from = args.length >= 5 ? Long.parseLong(args[3]) : analyzer.getFirstStep();
+            long to = args.length >= 5 ? Long.parseLong(args[4]) : analyzer.getLastStep();
+            System.out.println(analyzer.liftStats(Integer.parseInt(args[2]), from, to));
+        }
+    }
+}
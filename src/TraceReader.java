@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a trace written by TraceRecorder one step at a time.
+ * The file is memory mapped and decoded in place. Each step is applied to a
+ * BuildingSnapshot and the events in it are passed to a SimulationListener,
+ * so anything that listens to a live building can also be fed from a trace.
+ * Several readers can share one mapping (see copy()) to scan different parts in parallel.
+ */
+public class TraceReader {
+    private final ByteBuffer data;
+    private final BuildingSnapshot initial;
+
+    // offset where the first block starts
+    private final int firstBlockOffset;
+
+    // where we are - the next byte to read and the end of the current block
+    private int position;
+    private int blockEnd;
+
+    // a step ran off the end of its block
+    private boolean truncated = false;
+
+    public TraceReader(String filename) throws IOException {
+        this(Paths.get(filename));
+    }
+
+    public TraceReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Trace is too large to map: " + channel.size() + " bytes");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (data.limit() < 6 || data.getInt(0) != TraceRecorder.MAGIC) {
+            throw new IOException("Not a trace file: " + path);
+        }
+        if (data.getShort(4) != TraceRecorder.VERSION) {
+            throw new IOException("Unsupported trace version " + data.getShort(4));
+        }
+
+        // read the starting state
+        position = 6;
+        int numFloors = readVarint();
+        int numLifts = readVarint();
+        initial = new BuildingSnapshot(numFloors, numLifts);
+        for (int i = 0; i < numLifts; i++) {
+            initial.liftCapacity[i] = readVarint();
+            initial.liftFloor[i] = readVarint();
+            initial.liftUp[i] = data.get(position++) != 0;
+            initial.liftOccupancy[i] = readVarint();
+        }
+        for (int floor = 0; floor < numFloors; floor++) {
+            initial.queueLength[floor] = readVarint();
+            initial.assignment[floor] = readVarint() - 1;
+        }
+
+        firstBlockOffset = position;
+        blockEnd = position;
+
+        // the recorder may have been attached part way through a run
+        if (firstBlockOffset + TraceRecorder.BLOCK_HEADER_SIZE <= data.limit()) {
+            initial.step = data.getLong(firstBlockOffset);
+        }
+    }
+
+    // another reader over the same mapped file, starting where this one is
+    private TraceReader(TraceReader other) {
+        data = other.data.duplicate();
+        initial = other.initial;
+        firstBlockOffset = other.firstBlockOffset;
+        position = other.position;
+        blockEnd = other.blockEnd;
+        truncated = other.truncated;
+    }
+
+    public TraceReader copy() {
+        return new TraceReader(this);
+    }
+
+    // the state of the building before the first step
+    public BuildingSnapshot getInitialState() {
+        return initial.copy();
+    }
+
+    public int getNumFloors() {
+        return initial.getNumFloors();
+    }
+
+    public int getNumLifts() {
+        return initial.getNumLifts();
+    }
+
+    // go back to the first step
+    public void rewind() {
+        position = firstBlockOffset;
+        blockEnd = firstBlockOffset;
+    }
+
+    // current read position, with the end of its block, so we can come back here later
+    long getPosition() {
+        return ((long) blockEnd << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    void setPosition(long saved) {
+        position = (int) saved;
+        blockEnd = (int) (saved >>> 32);
+    }
+
+    // true once a step was found cut short (e.g. the file was not closed properly)
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    // size of the whole trace in bytes
+    public int size() {
+        return data.limit();
+    }
+
+    /**
+     * Decode the next step and apply it to state.
+     * @param state Snapshot to update, must be at the step just before this one
+     * @param listener Gets the events from the step, can be null
+     * @return false when there are no more steps, or the next one is cut short (see isTruncated)
+     *         - anything read from a cut short step has already been applied to state
+     */
+    public boolean readStep(BuildingSnapshot state, SimulationListener listener) {
+        if (position == blockEnd) {
+            if (position + TraceRecorder.BLOCK_HEADER_SIZE > data.limit()) {
+                return false;
+            }
+            // skip the first step and step count, we only need the length
+            int payloadLength = data.getInt(position + 12);
+            position += TraceRecorder.BLOCK_HEADER_SIZE;
+            // never read past the end of the file, even if the block says it goes further
+            blockEnd = (int) Math.min((long) position + payloadLength, data.limit());
+        }
+
+        long step = state.step;
+        if (listener != null) {
+            listener.stepStarted(step);
+        }
+
+        while (true) {
+            if (position >= blockEnd) {
+                // the block ended without an OP_END_STEP
+                System.out.println("Warning: trace step " + step + " is cut short at byte " + position);
+                truncated = true;
+                position = blockEnd;
+                return false;
+            }
+            byte op = data.get(position++);
+            switch (op) {
+                case TraceRecorder.OP_END_STEP:
+                    if (listener != null) {
+                        listener.stepFinished(step);
+                    }
+                    state.step = step + 1;
+                    return true;
+                case TraceRecorder.OP_MOVE: {
+                    int lift = readVarint();
+                    int from = state.liftFloor[lift];
+                    int to = from + readSigned();
+                    state.liftFloor[lift] = to;
+                    if (listener != null) {
+                        listener.liftMoved(lift, from, to);
+                    }
+                    break;
+                }
+                case TraceRecorder.OP_DIRECTION: {
+                    int lift = readVarint();
+                    state.liftUp[lift] = data.get(position++) != 0;
+                    break;
+                }
+                case TraceRecorder.OP_OCCUPANCY: {
+                    int lift = readVarint();
+                    state.liftOccupancy[lift] += readSigned();
+                    break;
+                }
+                case TraceRecorder.OP_STOP: {
+                    int lift = readVarint();
+                    int floor = state.liftFloor[lift] + readSigned();
+                    int alighted = readVarint();
+                    int boarded = readVarint();
+                    state.queueLength[floor] -= boarded;
+                    if (listener != null) {
+                        listener.liftStopped(lift, floor, alighted, boarded);
+                    }
+                    break;
+                }
+                case TraceRecorder.OP_ARRIVE: {
+                    int floor = readVarint();
+                    int destination = readVarint();
+                    state.queueLength[floor]++;
+                    if (listener != null) {
+                        listener.passengerArrived(floor, destination);
+                    }
+                    break;
+                }
+                case TraceRecorder.OP_ASSIGN: {
+                    int floor = readVarint();
+                    int lift = readVarint() - 1;
+                    state.assignment[floor] = lift;
+                    if (listener != null) {
+                        listener.floorAssigned(floor, lift);
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Corrupt trace: unknown op " + op + " at byte " + (position - 1));
+            }
+        }
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get(position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private int readSigned() {
+        int raw = readVarint();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
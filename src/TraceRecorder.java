@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records what happens on every step of a run into a compact binary trace file.
+ *
+ * File layout:
+ *   header  - magic, version, number of floors and lifts, then the starting state
+ *             (per lift: capacity, floor, direction, occupancy; per floor: queue length, assigned lift)
+ *   blocks  - each block is [first step (8 bytes), step count (4), payload length (4)] + payload
+ *
+ * The payload is a list of step records. A step record is a run of ops ending in OP_END_STEP.
+ * Numbers are varints and anything that goes up and down (floors, occupancy) is stored as a
+ * zigzag delta from the last value, so a quiet step costs one byte and a lift moving one floor
+ * costs three.
+ *
+ * Records are written into a direct ByteBuffer which is reused for every block and written
+ * out to a FileChannel once it is mostly full, so recording never touches the disk per step.
+ */
+public class TraceRecorder implements SimulationListener, AutoCloseable {
+    static final int MAGIC = 0x4C545243; // "LTRC"
+    static final short VERSION = 1;
+
+    // op codes for the records inside a step
+    static final byte OP_END_STEP = 0;
+    static final byte OP_MOVE = 1;        // lift, floor delta
+    static final byte OP_DIRECTION = 2;   // lift, 1 = up / 0 = down
+    static final byte OP_OCCUPANCY = 3;   // lift, occupancy delta
+    static final byte OP_STOP = 4;        // lift, floor delta from the lift, alighted, boarded
+    static final byte OP_ARRIVE = 5;      // floor, destination
+    static final byte OP_ASSIGN = 6;      // floor, lift + 1 (0 = cleared)
+
+    static final int BLOCK_HEADER_SIZE = 16;
+
+    // biggest single op: op byte + 4 varints of up to 5 bytes
+    private static final int MAX_OP_SIZE = 21;
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    private final SimulationEvents events;
+    private final LiftState[] lifts;
+
+    // reused buffer, blocks are built here then written to the channel
+    private ByteBuffer buffer;
+    private final int flushThreshold;
+
+    // state as of the last record we wrote, used to work out deltas
+    private final int[] liftFloor;
+    private final boolean[] liftUp;
+    private final int[] liftOccupancy;
+
+    // details of the block currently being filled
+    private boolean blockOpen = false;
+    private long blockFirstStep = -1;
+    private int blockSteps = 0;
+
+    // step the next record belongs to (events between steps go with the next step)
+    private long nextStep = 0;
+
+    // something was recorded since the last OP_END_STEP
+    private boolean stepHasOps = false;
+
+    private long stepsRecorded = 0;
+    private long bytesWritten = 0;
+    private boolean closed = false;
+
+    // record a single lift algorithm
+    public TraceRecorder(String filename, Algorithm algorithm) throws IOException {
+        this(Paths.get(filename), algorithm.building.events(), algorithm.building.getFloors(),
+                new LiftState[] { algorithm.building.getLift() }, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    // record a multi lift algorithm, including the dispatcher's assignments
+    public TraceRecorder(String filename, MultiLiftAlgorithm algorithm) throws IOException {
+        this(Paths.get(filename), algorithm.building.events(), algorithm.building.getFloors(),
+                algorithm.building.getAllLifts(), algorithm.dispatcher, DEFAULT_BUFFER_SIZE);
+    }
+
+    TraceRecorder(Path path, SimulationEvents events, FloorsState floors, LiftState[] lifts,
+                  RequestDispatcher dispatcher, int bufferSize) throws IOException {
+        this.events = events;
+        this.lifts = lifts;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.flushThreshold = bufferSize - bufferSize / 4;
+
+        this.liftFloor = new int[lifts.length];
+        this.liftUp = new boolean[lifts.length];
+        this.liftOccupancy = new int[lifts.length];
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        writeHeader(floors, dispatcher);
+        events.addListener(this);
+    }
+
+    // writes the file header with the full starting state of the building
+    private void writeHeader(FloorsState floors, RequestDispatcher dispatcher) throws IOException {
+        int numFloors = floors.GetFloors().size();
+
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        putVarint(numFloors);
+        putVarint(lifts.length);
+
+        for (int i = 0; i < lifts.length; i++) {
+            ensureSpace(MAX_OP_SIZE);
+            LiftState lift = lifts[i];
+            liftFloor[i] = lift.getCurrentFloor();
+            liftUp[i] = lift.isGoingUp();
+            liftOccupancy[i] = lift.Occupancy();
+
+            putVarint(lift.getCapacity());
+            putVarint(liftFloor[i]);
+            buffer.put((byte) (liftUp[i] ? 1 : 0));
+            putVarint(liftOccupancy[i]);
+        }
+
+        for (int floor = 0; floor < numFloors; floor++) {
+            ensureSpace(MAX_OP_SIZE);
+            putVarint(floors.GetFloors().get(floor).GetFloorRequests().size());
+            putVarint(dispatcher == null ? 0 : dispatcher.getAssignment(floor) + 1);
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // starts a new block if there isn't one - leaves room for the header which is filled in on flush
+    private void openBlock() {
+        if (!blockOpen) {
+            blockOpen = true;
+            blockFirstStep = nextStep;
+            buffer.position(BLOCK_HEADER_SIZE);
+        }
+    }
+
+    @Override
+    public void stepStarted(long step) {
+        openBlock();
+        if (blockSteps == 0) {
+            blockFirstStep = step;
+        }
+        nextStep = step;
+    }
+
+    @Override
+    public void passengerArrived(int floor, int destination) {
+        openBlock();
+        ensureSpace(MAX_OP_SIZE);
+        buffer.put(OP_ARRIVE);
+        putVarint(floor);
+        putVarint(destination);
+        stepHasOps = true;
+    }
+
+    @Override
+    public void liftStopped(int lift, int floor, int alighted, int boarded) {
+        openBlock();
+        ensureSpace(MAX_OP_SIZE);
+        buffer.put(OP_STOP);
+        putVarint(lift);
+        putSigned(floor - liftFloor[lift]);
+        putVarint(alighted);
+        putVarint(boarded);
+        stepHasOps = true;
+    }
+
+    @Override
+    public void floorAssigned(int floor, int lift) {
+        openBlock();
+        ensureSpace(MAX_OP_SIZE);
+        buffer.put(OP_ASSIGN);
+        putVarint(floor);
+        putVarint(lift + 1);
+        stepHasOps = true;
+    }
+
+    @Override
+    public void stepFinished(long step) {
+        openBlock();
+
+        // compare every lift against what we last wrote and only record the changes
+        for (int i = 0; i < lifts.length; i++) {
+            LiftState lift = lifts[i];
+            int floor = lift.getCurrentFloor();
+            boolean up = lift.isGoingUp();
+            int occupancy = lift.Occupancy();
+
+            ensureSpace(3 * MAX_OP_SIZE);
+            if (floor != liftFloor[i]) {
+                buffer.put(OP_MOVE);
+                putVarint(i);
+                putSigned(floor - liftFloor[i]);
+                liftFloor[i] = floor;
+            }
+            if (up != liftUp[i]) {
+                buffer.put(OP_DIRECTION);
+                putVarint(i);
+                buffer.put((byte) (up ? 1 : 0));
+                liftUp[i] = up;
+            }
+            if (occupancy != liftOccupancy[i]) {
+                buffer.put(OP_OCCUPANCY);
+                putVarint(i);
+                putSigned(occupancy - liftOccupancy[i]);
+                liftOccupancy[i] = occupancy;
+            }
+        }
+
+        ensureSpace(1);
+        buffer.put(OP_END_STEP);
+        stepHasOps = false;
+        blockSteps++;
+        stepsRecorded++;
+        nextStep = step + 1;
+
+        // blocks always end on a step boundary
+        if (buffer.position() >= flushThreshold) {
+            flushBlock();
+        }
+    }
+
+    // writes the current block out to the file
+    private void flushBlock() {
+        if (!blockOpen) {
+            return;
+        }
+        int payloadLength = buffer.position() - BLOCK_HEADER_SIZE;
+        buffer.putLong(0, blockFirstStep);
+        buffer.putInt(8, blockSteps);
+        buffer.putInt(12, payloadLength);
+
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write trace block", e);
+        }
+        buffer.clear();
+
+        blockOpen = false;
+        blockFirstStep = -1;
+        blockSteps = 0;
+    }
+
+    // a single step wrote more than a whole buffer - swap in a bigger one
+    private void ensureSpace(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    // 7 bits per byte, high bit set means more bytes follow
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // zigzag so small negative numbers stay small
+    private void putSigned(int value) {
+        putVarint((value << 1) ^ (value >> 31));
+    }
+
+    public long getStepsRecorded() {
+        return stepsRecorded;
+    }
+
+    // bytes written to disk so far (doesn't include the block still in memory)
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // stops recording and writes out anything still buffered
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        events.removeListener(this);
+
+        // anything that happened after the last step is written as one more step
+        if (stepHasOps) {
+            stepFinished(nextStep);
+        }
+        flushBlock();
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Replays a recorded trace and can jump to any step.
+ *
+ * When the trace is opened it is decoded once and a full snapshot (keyframe) is kept
+ * every N steps along with where that step starts in the file. Seeking copies the
+ * nearest keyframe at or before the target and replays at most N - 1 steps from it,
+ * so the cost of a seek doesn't depend on how long the trace is.
+ */
+public class TraceReplay {
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+    private final TraceReader reader;
+    private final int keyframeInterval;
+
+    // keyframe i holds the state at firstStep + i * keyframeInterval
+    private final ArrayList<BuildingSnapshot> keyframes = new ArrayList<>();
+    private final ArrayList<Long> keyframePositions = new ArrayList<>();
+
+    private final long firstStep;
+    private final long lastStep;
+
+    // the state we are currently showing
+    private final BuildingSnapshot current;
+
+    public TraceReplay(String filename) throws IOException {
+        this(new TraceReader(filename), DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public TraceReplay(TraceReader reader, int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1");
+        }
+        this.reader = reader;
+        this.keyframeInterval = keyframeInterval;
+
+        // one pass through the whole trace to build the keyframes
+        BuildingSnapshot state = reader.getInitialState();
+        firstStep = state.step;
+        reader.rewind();
+        do {
+            if ((state.step - firstStep) % keyframeInterval == 0) {
+                keyframes.add(state.copy());
+                keyframePositions.add(reader.getPosition());
+            }
+        } while (reader.readStep(state, null));
+        lastStep = state.step;
+
+        // start at the beginning
+        current = keyframes.get(0).copy();
+        reader.setPosition(keyframePositions.get(0));
+    }
+
+    // first step in the trace (usually 0)
+    public long getFirstStep() {
+        return firstStep;
+    }
+
+    // number of steps that have run by the end of the trace
+    public long getLastStep() {
+        return lastStep;
+    }
+
+    public long getStepCount() {
+        return lastStep - firstStep;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public int getNumFloors() {
+        return reader.getNumFloors();
+    }
+
+    public int getNumLifts() {
+        return reader.getNumLifts();
+    }
+
+    /**
+     * Jump to the state after the given number of steps.
+     * The returned snapshot is reused - copy it if you need to keep it.
+     */
+    public BuildingSnapshot seek(long step) {
+        if (step < firstStep || step > lastStep) {
+            throw new IllegalArgumentException("Step " + step + " is outside the trace ("
+                    + firstStep + " to " + lastStep + ")");
+        }
+
+        // no need to go back to a keyframe if we are already close enough going forwards
+        long keyframeStep = firstStep + (step - firstStep) / keyframeInterval * keyframeInterval;
+        if (current.step > step || current.step < keyframeStep) {
+            int index = (int) ((keyframeStep - firstStep) / keyframeInterval);
+            current.copyFrom(keyframes.get(index));
+            reader.setPosition(keyframePositions.get(index));
+        }
+
+        while (current.step < step) {
+            reader.readStep(current, null);
+        }
+        return current;
+    }
+
+    /**
+     * Move forward by some steps (or as far as the trace goes).
+     * Used for playback at any speed - the caller decides how many steps per frame.
+     */
+    public BuildingSnapshot advance(long steps) {
+        return seek(Math.min(lastStep, current.step + steps));
+    }
+
+    // the state we are currently at
+    public BuildingSnapshot current() {
+        return current;
+    }
+
+    public boolean isAtEnd() {
+        return current.step >= lastStep;
+    }
+
+    /**
+     * Replays the steps between two points and passes every event to the listener.
+     * This is how headless analysis runs over a trace.
+     */
+    public void play(long fromStep, long toStep, SimulationListener listener) {
+        seek(fromStep);
+        long end = Math.min(toStep, lastStep);
+        while (current.step < end) {
+            reader.readStep(current, listener);
+        }
+    }
+}